@@ -21,8 +21,10 @@ import androidx.annotation.CheckResult;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import java.util.ArrayDeque;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nonnull;
 
 /**
@@ -34,6 +36,12 @@ import javax.annotation.Nonnull;
  * <p>Events are also guaranteed to be only sent to the listeners registered at the time the event
  * was enqueued and haven't been removed since.
  *
+ * <p>Listeners can be {@link #add(Object, int...) subscribed} to a subset of the event flags, in
+ * which case they only receive those events. Senders can check whether an event has any recipient
+ * with {@link #hasListenersFor(int)} before doing any work to create the event. Sending events
+ * doesn't lock or copy the set of listeners, and the queued events are reused, so that frequent
+ * events can be sent without allocations.
+ *
  * @param <T> The listener type.
  * @param <E> The {@link MutableFlags} type used to indicate which events occurred.
  */
@@ -76,8 +84,10 @@ public final class ListenerSet<T, E extends MutableFlags> {
   private final Supplier<E> eventFlagsSupplier;
   private final IterationFinishedEvent<T, E> iterationFinishedEvent;
   private final CopyOnWriteArraySet<ListenerHolder<T, E>> listeners;
-  private final ArrayDeque<Runnable> flushingEvents;
-  private final ArrayDeque<Runnable> queuedEvents;
+  private final AtomicReference<ListenerSnapshot<T, E>> listenerSnapshot;
+  private final ArrayDeque<QueuedEvent<T, E>> flushingEvents;
+  private final ArrayDeque<QueuedEvent<T, E>> queuedEvents;
+  private final ArrayDeque<QueuedEvent<T, E>> queuedEventPool;
 
   private boolean released;
 
@@ -99,6 +109,7 @@ public final class ListenerSet<T, E extends MutableFlags> {
       IterationFinishedEvent<T, E> iterationFinishedEvent) {
     this(
         /* listeners= */ new CopyOnWriteArraySet<>(),
+        /* listenerSnapshot= */ new AtomicReference<>(ListenerSnapshot.create(ImmutableList.of())),
         looper,
         clock,
         eventFlagsSupplier,
@@ -107,16 +118,19 @@ public final class ListenerSet<T, E extends MutableFlags> {
 
   private ListenerSet(
       CopyOnWriteArraySet<ListenerHolder<T, E>> listeners,
+      AtomicReference<ListenerSnapshot<T, E>> listenerSnapshot,
       Looper looper,
       Clock clock,
       Supplier<E> eventFlagsSupplier,
       IterationFinishedEvent<T, E> iterationFinishedEvent) {
     this.clock = clock;
     this.listeners = listeners;
+    this.listenerSnapshot = listenerSnapshot;
     this.eventFlagsSupplier = eventFlagsSupplier;
     this.iterationFinishedEvent = iterationFinishedEvent;
     flushingEvents = new ArrayDeque<>();
     queuedEvents = new ArrayDeque<>();
+    queuedEventPool = new ArrayDeque<>();
     // It's safe to use "this" because we don't send a message before exiting the constructor.
     @SuppressWarnings("methodref.receiver.bound.invalid")
     HandlerWrapper handler = clock.createHandler(looper, this::handleMessage);
@@ -134,7 +148,8 @@ public final class ListenerSet<T, E extends MutableFlags> {
   @CheckResult
   public ListenerSet<T, E> copy(
       Looper looper, IterationFinishedEvent<T, E> iterationFinishedEvent) {
-    return new ListenerSet<>(listeners, looper, clock, eventFlagsSupplier, iterationFinishedEvent);
+    return new ListenerSet<>(
+        listeners, listenerSnapshot, looper, clock, eventFlagsSupplier, iterationFinishedEvent);
   }
 
   /**
@@ -145,11 +160,24 @@ public final class ListenerSet<T, E extends MutableFlags> {
    * @param listener The listener to be added.
    */
   public void add(T listener) {
-    if (released) {
-      return;
+    addListenerHolder(listener, /* subscribedEventFlags= */ null);
+  }
+
+  /**
+   * Adds a listener to the set that only receives events with the given flags, and events sent
+   * without a flag.
+   *
+   * <p>If a listener is already present, it will not be added again.
+   *
+   * @param listener The listener to be added.
+   * @param eventFlags The flags of the events the listener receives.
+   */
+  public void add(T listener, int... eventFlags) {
+    MutableFlags subscribedEventFlags = new MutableFlags();
+    for (int eventFlag : eventFlags) {
+      subscribedEventFlags.add(eventFlag);
     }
-    Assertions.checkNotNull(listener);
-    listeners.add(new ListenerHolder<>(listener, eventFlagsSupplier));
+    addListenerHolder(listener, subscribedEventFlags);
   }
 
   /**
@@ -166,6 +194,20 @@ public final class ListenerSet<T, E extends MutableFlags> {
         listeners.remove(listenerHolder);
       }
     }
+    updateListenerSnapshot();
+  }
+
+  /**
+   * Returns whether any listener receives events with the given flag.
+   *
+   * <p>This method may be called from any thread.
+   *
+   * @param eventFlag An integer flag indicating the type of the event, or {@link C#INDEX_UNSET} for
+   *     events without flag.
+   * @return Whether any listener receives events with the given flag.
+   */
+  public boolean hasListenersFor(int eventFlag) {
+    return listenerSnapshot.get().hasListenersFor(eventFlag);
   }
 
   /**
@@ -176,14 +218,12 @@ public final class ListenerSet<T, E extends MutableFlags> {
    * @param event The event.
    */
   public void queueEvent(int eventFlag, Event<T> event) {
-    CopyOnWriteArraySet<ListenerHolder<T, E>> listenerSnapshot =
-        new CopyOnWriteArraySet<>(listeners);
-    queuedEvents.add(
-        () -> {
-          for (ListenerHolder<T, E> holder : listenerSnapshot) {
-            holder.invoke(eventFlag, event);
-          }
-        });
+    @Nullable QueuedEvent<T, E> queuedEvent = queuedEventPool.pollFirst();
+    if (queuedEvent == null) {
+      queuedEvent = new QueuedEvent<>();
+    }
+    queuedEvent.set(listenerSnapshot.get().listeners, eventFlag, event);
+    queuedEvents.add(queuedEvent);
   }
 
   /** Notifies listeners of events previously enqueued with {@link #queueEvent(int, Event)}. */
@@ -203,7 +243,9 @@ public final class ListenerSet<T, E extends MutableFlags> {
     }
     while (!flushingEvents.isEmpty()) {
       flushingEvents.peekFirst().run();
-      flushingEvents.removeFirst();
+      QueuedEvent<T, E> queuedEvent = flushingEvents.removeFirst();
+      queuedEvent.clear();
+      queuedEventPool.add(queuedEvent);
     }
   }
 
@@ -230,6 +272,7 @@ public final class ListenerSet<T, E extends MutableFlags> {
       listenerHolder.release(iterationFinishedEvent);
     }
     listeners.clear();
+    updateListenerSnapshot();
     released = true;
   }
 
@@ -249,7 +292,9 @@ public final class ListenerSet<T, E extends MutableFlags> {
 
   private boolean handleMessage(Message message) {
     if (message.what == MSG_ITERATION_FINISHED) {
-      for (ListenerHolder<T, E> holder : listeners) {
+      ImmutableList<ListenerHolder<T, E>> listeners = listenerSnapshot.get().listeners;
+      for (int i = 0; i < listeners.size(); i++) {
+        ListenerHolder<T, E> holder = listeners.get(i);
         holder.iterationFinished(eventFlagsSupplier, iterationFinishedEvent);
         if (handler.hasMessages(MSG_ITERATION_FINISHED)) {
           // The invocation above triggered new events (and thus scheduled a new message). We need
@@ -268,16 +313,112 @@ public final class ListenerSet<T, E extends MutableFlags> {
     return true;
   }
 
+  private void addListenerHolder(T listener, @Nullable MutableFlags subscribedEventFlags) {
+    if (released) {
+      return;
+    }
+    Assertions.checkNotNull(listener);
+    listeners.add(new ListenerHolder<>(listener, subscribedEventFlags, eventFlagsSupplier));
+    updateListenerSnapshot();
+  }
+
+  private void updateListenerSnapshot() {
+    // Listeners may be added and removed from any thread, so rebuild the snapshot under a lock to
+    // ensure the last published snapshot reflects the last modification.
+    synchronized (listeners) {
+      listenerSnapshot.set(ListenerSnapshot.create(ImmutableList.copyOf(listeners)));
+    }
+  }
+
+  /** An immutable snapshot of the listeners and the events they are subscribed to. */
+  private static final class ListenerSnapshot<T, E extends MutableFlags> {
+
+    public final ImmutableList<ListenerHolder<T, E>> listeners;
+
+    private final boolean hasUnfilteredListener;
+    private final MutableFlags subscribedEventFlags;
+
+    public static <T, E extends MutableFlags> ListenerSnapshot<T, E> create(
+        ImmutableList<ListenerHolder<T, E>> listeners) {
+      boolean hasUnfilteredListener = false;
+      MutableFlags subscribedEventFlags = new MutableFlags();
+      for (int i = 0; i < listeners.size(); i++) {
+        @Nullable MutableFlags listenerEventFlags = listeners.get(i).subscribedEventFlags;
+        if (listenerEventFlags == null) {
+          hasUnfilteredListener = true;
+        } else {
+          for (int j = 0; j < listenerEventFlags.size(); j++) {
+            subscribedEventFlags.add(listenerEventFlags.get(j));
+          }
+        }
+      }
+      return new ListenerSnapshot<>(listeners, hasUnfilteredListener, subscribedEventFlags);
+    }
+
+    private ListenerSnapshot(
+        ImmutableList<ListenerHolder<T, E>> listeners,
+        boolean hasUnfilteredListener,
+        MutableFlags subscribedEventFlags) {
+      this.listeners = listeners;
+      this.hasUnfilteredListener = hasUnfilteredListener;
+      this.subscribedEventFlags = subscribedEventFlags;
+    }
+
+    public boolean hasListenersFor(int eventFlag) {
+      if (listeners.isEmpty()) {
+        return false;
+      }
+      return hasUnfilteredListener
+          || eventFlag == C.INDEX_UNSET
+          || subscribedEventFlags.contains(eventFlag);
+    }
+  }
+
+  /** An event queued for the listeners registered at the time it was queued. */
+  private static final class QueuedEvent<T, E extends MutableFlags> {
+
+    private ImmutableList<ListenerHolder<T, E>> listeners;
+    private int eventFlag;
+    @Nullable private Event<T> event;
+
+    public QueuedEvent() {
+      listeners = ImmutableList.of();
+    }
+
+    public void set(ImmutableList<ListenerHolder<T, E>> listeners, int eventFlag, Event<T> event) {
+      this.listeners = listeners;
+      this.eventFlag = eventFlag;
+      this.event = event;
+    }
+
+    public void clear() {
+      listeners = ImmutableList.of();
+      event = null;
+    }
+
+    public void run() {
+      Event<T> event = Assertions.checkNotNull(this.event);
+      for (int i = 0; i < listeners.size(); i++) {
+        listeners.get(i).invoke(eventFlag, event);
+      }
+    }
+  }
+
   private static final class ListenerHolder<T, E extends MutableFlags> {
 
     @Nonnull public final T listener;
+    @Nullable public final MutableFlags subscribedEventFlags;
 
     private E eventsFlags;
     private boolean needsIterationFinishedEvent;
     private boolean released;
 
-    public ListenerHolder(@Nonnull T listener, Supplier<E> eventFlagSupplier) {
+    public ListenerHolder(
+        @Nonnull T listener,
+        @Nullable MutableFlags subscribedEventFlags,
+        Supplier<E> eventFlagSupplier) {
       this.listener = listener;
+      this.subscribedEventFlags = subscribedEventFlags;
       this.eventsFlags = eventFlagSupplier.get();
     }
 
@@ -289,7 +430,7 @@ public final class ListenerSet<T, E extends MutableFlags> {
     }
 
     public void invoke(int eventFlag, Event<T> event) {
-      if (!released) {
+      if (!released && isSubscribedTo(eventFlag)) {
         if (eventFlag != C.INDEX_UNSET) {
           eventsFlags.add(eventFlag);
         }
@@ -298,6 +439,12 @@ public final class ListenerSet<T, E extends MutableFlags> {
       }
     }
 
+    private boolean isSubscribedTo(int eventFlag) {
+      return subscribedEventFlags == null
+          || eventFlag == C.INDEX_UNSET
+          || subscribedEventFlags.contains(eventFlag);
+    }
+
     public void iterationFinished(
         Supplier<E> eventFlagSupplier, IterationFinishedEvent<T, E> event) {
       if (!released && needsIterationFinishedEvent) {
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer2.util;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -26,6 +28,7 @@ import android.os.Handler;
 import android.os.Looper;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.AllocationCounter;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InOrder;
@@ -408,6 +411,88 @@ public class ListenerSetTest {
     verifyNoMoreInteractions(listener);
   }
 
+  @Test
+  public void add_withEventFlags_onlyReceivesSubscribedEventsAndEventsWithoutFlag() {
+    ListenerSet<TestListener, Flags> listenerSet =
+        new ListenerSet<>(
+            Looper.myLooper(), Clock.DEFAULT, Flags::new, TestListener::iterationFinished);
+    TestListener listener1 = mock(TestListener.class);
+    TestListener listener2 = mock(TestListener.class);
+    listenerSet.add(listener1, EVENT_ID_2);
+    listenerSet.add(listener2);
+
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    listenerSet.sendEvent(EVENT_ID_2, TestListener::callback2);
+    listenerSet.sendEvent(/* eventFlag= */ C.INDEX_UNSET, TestListener::callback3);
+    ShadowLooper.runMainLooperToNextTask();
+
+    verify(listener1).callback2();
+    verify(listener1).callback3();
+    verify(listener1).iterationFinished(Flags.create(EVENT_ID_2));
+    verify(listener2).callback1();
+    verify(listener2).callback2();
+    verify(listener2).callback3();
+    verify(listener2).iterationFinished(Flags.create(EVENT_ID_1, EVENT_ID_2));
+    verifyNoMoreInteractions(listener1, listener2);
+  }
+
+  @Test
+  public void hasListenersFor_returnsWhetherAnyListenerReceivesEvent() {
+    ListenerSet<TestListener, Flags> listenerSet =
+        new ListenerSet<>(
+            Looper.myLooper(), Clock.DEFAULT, Flags::new, TestListener::iterationFinished);
+    TestListener listener1 = mock(TestListener.class);
+    TestListener listener2 = mock(TestListener.class);
+
+    assertThat(listenerSet.hasListenersFor(C.INDEX_UNSET)).isFalse();
+    listenerSet.add(listener1, EVENT_ID_2);
+    assertThat(listenerSet.hasListenersFor(EVENT_ID_1)).isFalse();
+    assertThat(listenerSet.hasListenersFor(EVENT_ID_2)).isTrue();
+    assertThat(listenerSet.hasListenersFor(C.INDEX_UNSET)).isTrue();
+    listenerSet.add(listener2);
+    assertThat(listenerSet.hasListenersFor(EVENT_ID_1)).isTrue();
+    listenerSet.remove(listener2);
+    assertThat(listenerSet.hasListenersFor(EVENT_ID_1)).isFalse();
+    listenerSet.release();
+    assertThat(listenerSet.hasListenersFor(EVENT_ID_2)).isFalse();
+  }
+
+  @Test
+  public void hasListenersFor_inCopiedSet_reflectsListenersAddedToOriginal() {
+    ListenerSet<TestListener, Flags> listenerSet =
+        new ListenerSet<>(
+            Looper.myLooper(), Clock.DEFAULT, Flags::new, TestListener::iterationFinished);
+    ListenerSet<TestListener, Flags> copiedListenerSet =
+        listenerSet.copy(Looper.myLooper(), TestListener::iterationFinished);
+
+    listenerSet.add(mock(TestListener.class), EVENT_ID_1);
+
+    assertThat(copiedListenerSet.hasListenersFor(EVENT_ID_1)).isTrue();
+  }
+
+  @Test
+  public void sendEvent_repeatedly_doesNotAllocatePerEvent() {
+    assumeTrue(AllocationCounter.isSupported());
+    ListenerSet<TestListener, Flags> listenerSet =
+        new ListenerSet<>(
+            Looper.myLooper(), Clock.DEFAULT, Flags::new, TestListener::iterationFinished);
+    // Use plain listeners, as mocks allocate when recording invocations.
+    listenerSet.add(new TestListener() {});
+    listenerSet.add(new TestListener() {}, EVENT_ID_1);
+    int eventCount = 100_000;
+    // Warm up, so that the pooled events and the iteration finished message exist.
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+
+    long allocatedBytes = AllocationCounter.getAllocatedBytes();
+    for (int i = 0; i < eventCount; i++) {
+      listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    }
+    double bytesPerEvent =
+        (double) (AllocationCounter.getAllocatedBytes() - allocatedBytes) / eventCount;
+
+    assertThat(bytesPerEvent).isLessThan(1);
+  }
+
   private interface TestListener {
     default void callback1() {}
 
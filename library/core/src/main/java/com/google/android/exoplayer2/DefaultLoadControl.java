@@ -23,6 +23,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
@@ -94,6 +95,30 @@ public class DefaultLoadControl implements LoadControl {
    */
   public static final int DEFAULT_MIN_BUFFER_SIZE = 200 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
 
+  /**
+   * The default fraction of the buffer durations to which dynamic buffer durations are scaled down
+   * on stable networks.
+   */
+  public static final float DEFAULT_MIN_DYNAMIC_BUFFER_DURATION_FRACTION = 0.3f;
+
+  /**
+   * The throughput variation, weighted by the fraction of the bandwidth used by the selected
+   * tracks, from which dynamic buffer durations are not scaled down.
+   */
+  private static final float FULL_BUFFER_DURATION_THROUGHPUT_VARIATION = 0.5f;
+
+  /**
+   * The throughput variation, weighted by the fraction of the bandwidth used by the selected
+   * tracks, from which dynamic buffer durations are scaled up to their maximum.
+   */
+  private static final float MAX_BUFFER_DURATION_THROUGHPUT_VARIATION = 1f;
+
+  /**
+   * The factor by which the size of the maximum buffer duration of media at the highest bitrate is
+   * multiplied to obtain a bitrate based target buffer size.
+   */
+  private static final float BITRATE_BASED_BUFFER_SIZE_MARGIN = 1.25f;
+
   /** Builder for {@link DefaultLoadControl}. */
   public static final class Builder {
 
@@ -106,6 +131,9 @@ public class DefaultLoadControl implements LoadControl {
     private boolean prioritizeTimeOverSizeThresholds;
     private int backBufferDurationMs;
     private boolean retainBackBufferFromKeyframe;
+    @Nullable private BandwidthMeter bandwidthMeter;
+    private float minDynamicBufferDurationFraction;
+    private float maxDynamicBufferDurationFraction;
     private boolean buildCalled;
 
     /** Constructs a new instance. */
@@ -118,6 +146,8 @@ public class DefaultLoadControl implements LoadControl {
       prioritizeTimeOverSizeThresholds = DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
       backBufferDurationMs = DEFAULT_BACK_BUFFER_DURATION_MS;
       retainBackBufferFromKeyframe = DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
+      minDynamicBufferDurationFraction = DEFAULT_MIN_DYNAMIC_BUFFER_DURATION_FRACTION;
+      maxDynamicBufferDurationFraction = 1f;
     }
 
     /**
@@ -218,6 +248,77 @@ public class DefaultLoadControl implements LoadControl {
       return this;
     }
 
+    /**
+     * Enables dynamic buffer durations, which adapt to the stability of the network and to the
+     * bitrate of the selected tracks.
+     *
+     * <p>The minimum and maximum buffer durations are used as set when the network is unstable or
+     * its stability is unknown. They are scaled down to as little as {@code
+     * minDynamicBufferDurationFraction} of their values when the throughput of recent transfers
+     * varies little relative to the bandwidth left unused by the selected tracks, which saves
+     * memory. The durations required to start playback are not affected.
+     *
+     * <p>Selected formats without a known bitrate, such as text and metadata formats, are
+     * ignored when comparing the bitrate of the selected tracks to the bandwidth.
+     *
+     * <p>If no target buffer size is {@link #setTargetBufferBytes(int) set}, the target buffer
+     * size is additionally capped based on the highest bitrate of the selected tracks.
+     *
+     * <p>Equivalent to {@link #setDynamicBufferDurations(BandwidthMeter, float, float)} with a
+     * {@code maxDynamicBufferDurationFraction} of 1, so buffer durations are never scaled up.
+     *
+     * @param bandwidthMeter The {@link BandwidthMeter} providing the {@link
+     *     BandwidthMeter#getThroughputCoefficientOfVariation() throughput variation}. Should be the
+     *     bandwidth meter used by the player.
+     * @param minDynamicBufferDurationFraction The minimum fraction of the buffer durations that
+     *     is used, between 0 (exclusive) and 1.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setDynamicBufferDurations(
+        BandwidthMeter bandwidthMeter, float minDynamicBufferDurationFraction) {
+      return setDynamicBufferDurations(
+          bandwidthMeter,
+          minDynamicBufferDurationFraction,
+          /* maxDynamicBufferDurationFraction= */ 1f);
+    }
+
+    /**
+     * Enables dynamic buffer durations, which adapt to the stability of the network and to the
+     * bitrate of the selected tracks.
+     *
+     * <p>Behaves like {@link #setDynamicBufferDurations(BandwidthMeter, float)}, but additionally
+     * scales the minimum and maximum buffer durations up to as much as {@code
+     * maxDynamicBufferDurationFraction} of their values when the throughput of recent transfers
+     * varies a lot relative to the bandwidth left unused by the selected tracks, or when the
+     * selected tracks need more bandwidth than is available. The larger buffer gives adaptive
+     * track selections more time to switch down before playback stalls. The memory used is still
+     * limited by the target buffer size.
+     *
+     * @param bandwidthMeter The {@link BandwidthMeter} providing the {@link
+     *     BandwidthMeter#getThroughputCoefficientOfVariation() throughput variation}. Should be the
+     *     bandwidth meter used by the player.
+     * @param minDynamicBufferDurationFraction The minimum fraction of the buffer durations that
+     *     is used, between 0 (exclusive) and 1.
+     * @param maxDynamicBufferDurationFraction The maximum fraction of the buffer durations that
+     *     is used, greater than or equal to 1.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setDynamicBufferDurations(
+        BandwidthMeter bandwidthMeter,
+        float minDynamicBufferDurationFraction,
+        float maxDynamicBufferDurationFraction) {
+      checkState(!buildCalled);
+      Assertions.checkArgument(
+          minDynamicBufferDurationFraction > 0 && minDynamicBufferDurationFraction <= 1);
+      Assertions.checkArgument(maxDynamicBufferDurationFraction >= 1);
+      this.bandwidthMeter = bandwidthMeter;
+      this.minDynamicBufferDurationFraction = minDynamicBufferDurationFraction;
+      this.maxDynamicBufferDurationFraction = maxDynamicBufferDurationFraction;
+      return this;
+    }
+
     /** @deprecated use {@link #build} instead. */
     @Deprecated
     public DefaultLoadControl createDefaultLoadControl() {
@@ -240,7 +341,10 @@ public class DefaultLoadControl implements LoadControl {
           targetBufferBytes,
           prioritizeTimeOverSizeThresholds,
           backBufferDurationMs,
-          retainBackBufferFromKeyframe);
+          retainBackBufferFromKeyframe,
+          bandwidthMeter,
+          minDynamicBufferDurationFraction,
+          maxDynamicBufferDurationFraction);
     }
   }
 
@@ -254,9 +358,13 @@ public class DefaultLoadControl implements LoadControl {
   private final boolean prioritizeTimeOverSizeThresholds;
   private final long backBufferDurationUs;
   private final boolean retainBackBufferFromKeyframe;
+  @Nullable private final BandwidthMeter bandwidthMeter;
+  private final float minDynamicBufferDurationFraction;
+  private final float maxDynamicBufferDurationFraction;
 
   private int targetBufferBytes;
   private boolean isLoading;
+  @Nullable private ExoTrackSelection[] trackSelections;
 
   /** Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class. */
   @SuppressWarnings("deprecation")
@@ -283,6 +391,34 @@ public class DefaultLoadControl implements LoadControl {
       boolean prioritizeTimeOverSizeThresholds,
       int backBufferDurationMs,
       boolean retainBackBufferFromKeyframe) {
+    this(
+        allocator,
+        minBufferMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds,
+        backBufferDurationMs,
+        retainBackBufferFromKeyframe,
+        /* bandwidthMeter= */ null,
+        /* minDynamicBufferDurationFraction= */ 1f,
+        /* maxDynamicBufferDurationFraction= */ 1f);
+  }
+
+  protected DefaultLoadControl(
+      DefaultAllocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe,
+      @Nullable BandwidthMeter bandwidthMeter,
+      float minDynamicBufferDurationFraction,
+      float maxDynamicBufferDurationFraction) {
     assertGreaterOrEqual(bufferForPlaybackMs, 0, "bufferForPlaybackMs", "0");
     assertGreaterOrEqual(
         bufferForPlaybackAfterRebufferMs, 0, "bufferForPlaybackAfterRebufferMs", "0");
@@ -308,6 +444,9 @@ public class DefaultLoadControl implements LoadControl {
     this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
     this.backBufferDurationUs = C.msToUs(backBufferDurationMs);
     this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+    this.bandwidthMeter = bandwidthMeter;
+    this.minDynamicBufferDurationFraction = minDynamicBufferDurationFraction;
+    this.maxDynamicBufferDurationFraction = maxDynamicBufferDurationFraction;
   }
 
   @Override
@@ -318,6 +457,7 @@ public class DefaultLoadControl implements LoadControl {
   @Override
   public void onTracksSelected(
       Renderer[] renderers, TrackGroupArray trackGroups, ExoTrackSelection[] trackSelections) {
+    this.trackSelections = trackSelections;
     targetBufferBytes =
         targetBufferBytesOverwrite == C.LENGTH_UNSET
             ? calculateTargetBufferBytes(renderers, trackSelections)
@@ -355,6 +495,13 @@ public class DefaultLoadControl implements LoadControl {
       long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
     boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
     long minBufferUs = this.minBufferUs;
+    long maxBufferUs = this.maxBufferUs;
+    if (bandwidthMeter != null) {
+      float bufferDurationFraction = getDynamicBufferDurationFraction(bandwidthMeter);
+      minBufferUs =
+          max((long) (minBufferUs * bufferDurationFraction), bufferForPlaybackAfterRebufferUs);
+      maxBufferUs = max((long) (maxBufferUs * bufferDurationFraction), minBufferUs);
+    }
     if (playbackSpeed > 1) {
       // The playback speed is faster than real time, so scale up the minimum required media
       // duration to keep enough media buffered for a playout duration of minBufferUs.
@@ -403,19 +550,98 @@ public class DefaultLoadControl implements LoadControl {
       Renderer[] renderers, ExoTrackSelection[] trackSelectionArray) {
     int targetBufferSize = 0;
     for (int i = 0; i < renderers.length; i++) {
-      if (trackSelectionArray[i] != null) {
-        targetBufferSize += getDefaultBufferSize(renderers[i].getTrackType());
+      @Nullable ExoTrackSelection trackSelection = trackSelectionArray[i];
+      if (trackSelection != null) {
+        int bufferSize = getDefaultBufferSize(renderers[i].getTrackType());
+        if (bandwidthMeter != null) {
+          bufferSize = min(bufferSize, getBitrateBasedBufferSize(trackSelection));
+        }
+        targetBufferSize += bufferSize;
       }
     }
     return max(DEFAULT_MIN_BUFFER_SIZE, targetBufferSize);
   }
 
+  /**
+   * Returns the fraction of the buffer durations to use, which is lower the more stable the
+   * throughput is relative to the bandwidth left unused by the selected tracks, and higher the
+   * less stable it is.
+   */
+  private float getDynamicBufferDurationFraction(BandwidthMeter bandwidthMeter) {
+    float throughputVariation = bandwidthMeter.getThroughputCoefficientOfVariation();
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    long selectedBitrate = getSelectedBitrate();
+    if (throughputVariation == C.RATE_UNSET || bitrateEstimate <= 0 || selectedBitrate == 0) {
+      return 1f;
+    }
+    float bandwidthFraction = (float) selectedBitrate / bitrateEstimate;
+    if (bandwidthFraction >= 1f) {
+      // The buffer is draining, so keep as much of it as possible.
+      return maxDynamicBufferDurationFraction;
+    }
+    float weightedVariation = throughputVariation * bandwidthFraction;
+    if (weightedVariation <= FULL_BUFFER_DURATION_THROUGHPUT_VARIATION) {
+      return minDynamicBufferDurationFraction
+          + (1f - minDynamicBufferDurationFraction)
+              * (weightedVariation / FULL_BUFFER_DURATION_THROUGHPUT_VARIATION);
+    }
+    return 1f
+        + (maxDynamicBufferDurationFraction - 1f)
+            * min(
+                1f,
+                (weightedVariation - FULL_BUFFER_DURATION_THROUGHPUT_VARIATION)
+                    / (MAX_BUFFER_DURATION_THROUGHPUT_VARIATION
+                        - FULL_BUFFER_DURATION_THROUGHPUT_VARIATION));
+  }
+
+  /**
+   * Returns the sum of the bitrates of the selected formats with a known bitrate, or 0 if none is
+   * known.
+   */
+  private long getSelectedBitrate() {
+    if (trackSelections == null) {
+      return 0;
+    }
+    long selectedBitrate = 0;
+    for (@Nullable ExoTrackSelection trackSelection : trackSelections) {
+      if (trackSelection != null) {
+        int bitrate = trackSelection.getSelectedFormat().bitrate;
+        if (bitrate != Format.NO_VALUE) {
+          selectedBitrate += bitrate;
+        }
+      }
+    }
+    return selectedBitrate;
+  }
+
+  /**
+   * Returns the size in bytes of the largest dynamic maximum buffer duration of media at the
+   * highest bitrate of the given track selection, with a margin, or {@link Integer#MAX_VALUE} if a
+   * bitrate is unknown.
+   */
+  private int getBitrateBasedBufferSize(ExoTrackSelection trackSelection) {
+    int maxBitrate = 0;
+    for (int i = 0; i < trackSelection.length(); i++) {
+      int bitrate = trackSelection.getFormat(i).bitrate;
+      if (bitrate == Format.NO_VALUE) {
+        return Integer.MAX_VALUE;
+      }
+      maxBitrate = max(maxBitrate, bitrate);
+    }
+    double bufferSize =
+        (double) maxBitrate * maxBufferUs * maxDynamicBufferDurationFraction
+            / (8 * C.MICROS_PER_SECOND)
+            * BITRATE_BASED_BUFFER_SIZE_MARGIN;
+    return (int) min(bufferSize, Integer.MAX_VALUE);
+  }
+
   private void reset(boolean resetAllocator) {
     targetBufferBytes =
         targetBufferBytesOverwrite == C.LENGTH_UNSET
             ? DEFAULT_MIN_BUFFER_SIZE
             : targetBufferBytesOverwrite;
     isLoading = false;
+    trackSelections = null;
     if (resetAllocator) {
       allocator.reset();
     }
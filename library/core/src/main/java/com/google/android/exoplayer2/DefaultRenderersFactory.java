@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.audio.AudioSink;
 import com.google.android.exoplayer2.audio.DefaultAudioSink;
 import com.google.android.exoplayer2.audio.DefaultAudioSink.DefaultAudioProcessorChain;
 import com.google.android.exoplayer2.audio.MediaCodecAudioRenderer;
+import com.google.android.exoplayer2.mediacodec.MediaCodecPool;
 import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
 import com.google.android.exoplayer2.metadata.MetadataOutput;
 import com.google.android.exoplayer2.metadata.MetadataRenderer;
@@ -96,6 +97,7 @@ public class DefaultRenderersFactory implements RenderersFactory {
   private boolean enableDecoderFallback;
   private MediaCodecSelector mediaCodecSelector;
   private boolean enableAsyncQueueing;
+  @Nullable private MediaCodecPool codecPool;
   private boolean forceAsyncQueueingSynchronizationWorkaround;
   private boolean enableSynchronizeCodecInteractionsWithQueueing;
   private boolean enableFloatOutput;
@@ -199,6 +201,21 @@ public class DefaultRenderersFactory implements RenderersFactory {
     return this;
   }
 
+  /**
+   * Sets a {@link MediaCodecPool} for both {@link MediaCodecAudioRenderer} and {@link
+   * MediaCodecVideoRenderer} instances. Using the same pool for the renderers of multiple players
+   * allows a player to adopt the codecs released by another player.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param codecPool The {@link MediaCodecPool}, or null to not pool codecs.
+   * @return This factory, for convenience.
+   */
+  public DefaultRenderersFactory experimentalSetMediaCodecPool(@Nullable MediaCodecPool codecPool) {
+    this.codecPool = codecPool;
+    return this;
+  }
+
   /**
    * Sets whether to enable fallback to lower-priority decoders if decoder initialization fails.
    * This may result in using a decoder that is less efficient or slower than the primary decoder.
@@ -380,6 +397,7 @@ public class DefaultRenderersFactory implements RenderersFactory {
         forceAsyncQueueingSynchronizationWorkaround);
     videoRenderer.experimentalSetSynchronizeCodecInteractionsWithQueueingEnabled(
         enableSynchronizeCodecInteractionsWithQueueing);
+    videoRenderer.experimentalSetCodecPool(codecPool);
     out.add(videoRenderer);
 
     if (extensionRendererMode == EXTENSION_RENDERER_MODE_OFF) {
@@ -481,6 +499,7 @@ public class DefaultRenderersFactory implements RenderersFactory {
         forceAsyncQueueingSynchronizationWorkaround);
     audioRenderer.experimentalSetSynchronizeCodecInteractionsWithQueueingEnabled(
         enableSynchronizeCodecInteractionsWithQueueing);
+    audioRenderer.experimentalSetCodecPool(codecPool);
     out.add(audioRenderer);
 
     if (extensionRendererMode == EXTENSION_RENDERER_MODE_OFF) {
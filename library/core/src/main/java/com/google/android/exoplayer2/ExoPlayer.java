@@ -163,6 +163,8 @@ public interface ExoPlayer extends Player {
     private boolean buildCalled;
 
     private long setForegroundModeTimeoutMs;
+    private boolean dynamicSchedulingEnabled;
+    @Nullable private PlaybackThreadPool playbackThreadPool;
 
     /**
      * Creates a builder with a list of {@link Renderer Renderers}.
@@ -244,6 +246,45 @@ public interface ExoPlayer extends Player {
       return this;
     }
 
+    /**
+     * Sets whether the playback loop is only run when renderers need to make progress, rather than
+     * at a fixed interval.
+     *
+     * <p>When enabled, the player uses {@link Renderer#getDurationToProgressUs(long, long)} to
+     * determine when to run the next iteration of its playback loop during playback, which may
+     * reduce power consumption. The playback position reported by the player is only updated when
+     * the loop runs.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param dynamicSchedulingEnabled Whether to enable dynamic scheduling.
+     * @return This builder.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder experimentalSetDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+      Assertions.checkState(!buildCalled);
+      this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
+      return this;
+    }
+
+    /**
+     * Sets the {@link PlaybackThreadPool} providing the thread on which the player runs its
+     * playback loop. Players that use the same pool share its threads. If not set, or set to {@code
+     * null}, the player uses a dedicated thread.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param playbackThreadPool The {@link PlaybackThreadPool}, or {@code null}.
+     * @return This builder.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder experimentalSetPlaybackThreadPool(
+        @Nullable PlaybackThreadPool playbackThreadPool) {
+      Assertions.checkState(!buildCalled);
+      this.playbackThreadPool = playbackThreadPool;
+      return this;
+    }
+
     /**
      * Sets the {@link TrackSelector} that will be used by the player.
      *
@@ -438,6 +479,7 @@ public interface ExoPlayer extends Player {
               livePlaybackSpeedControl,
               releaseTimeoutMs,
               pauseAtEndOfMediaItems,
+              playbackThreadPool,
               clock,
               looper,
               /* wrappingPlayer= */ null);
@@ -445,6 +487,9 @@ public interface ExoPlayer extends Player {
       if (setForegroundModeTimeoutMs > 0) {
         player.experimentalSetForegroundModeTimeoutMs(setForegroundModeTimeoutMs);
       }
+      if (dynamicSchedulingEnabled) {
+        player.experimentalSetDynamicSchedulingEnabled(true);
+      }
       return player;
     }
   }
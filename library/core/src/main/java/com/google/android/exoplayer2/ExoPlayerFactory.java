@@ -259,6 +259,7 @@ public final class ExoPlayerFactory {
         new DefaultLivePlaybackSpeedControl.Builder().build(),
         ExoPlayer.DEFAULT_RELEASE_TIMEOUT_MS,
         /* pauseAtEndOfMediaItems= */ false,
+        /* playbackThreadPool= */ null,
         Clock.DEFAULT,
         applicationLooper,
         /* wrappingPlayer= */ null);
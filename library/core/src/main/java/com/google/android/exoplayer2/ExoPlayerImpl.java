@@ -73,7 +73,6 @@ import java.util.List;
   private final ExoPlayerImplInternal internalPlayer;
   private final ListenerSet<Player.EventListener, Player.Events> listeners;
   private final Timeline.Period period;
-  private final List<MediaSourceHolderSnapshot> mediaSourceHolderSnapshots;
   private final boolean useLazyPreparation;
   private final MediaSourceFactory mediaSourceFactory;
   @Nullable private final AnalyticsCollector analyticsCollector;
@@ -89,6 +88,7 @@ import java.util.List;
   @PlayWhenReadyChangeReason private int pendingPlayWhenReadyChangeReason;
   private boolean foregroundMode;
   private SeekParameters seekParameters;
+  private PlaylistIndex playlistIndex;
   private ShuffleOrder shuffleOrder;
   private boolean pauseAtEndOfMediaItems;
 
@@ -116,6 +116,8 @@ import java.util.List;
    * @param livePlaybackSpeedControl The {@link LivePlaybackSpeedControl}.
    * @param releaseTimeoutMs The timeout for calls to {@link #release()} in milliseconds.
    * @param pauseAtEndOfMediaItems Whether to pause playback at the end of each media item.
+   * @param playbackThreadPool The {@link PlaybackThreadPool} providing the thread on which the
+   *     playback loop runs, or {@code null} to run it on a dedicated thread.
    * @param clock The {@link Clock}.
    * @param applicationLooper The {@link Looper} that must be used for all calls to the player and
    *     which is used to call listeners on.
@@ -135,6 +137,7 @@ import java.util.List;
       LivePlaybackSpeedControl livePlaybackSpeedControl,
       long releaseTimeoutMs,
       boolean pauseAtEndOfMediaItems,
+      @Nullable PlaybackThreadPool playbackThreadPool,
       Clock clock,
       Looper applicationLooper,
       @Nullable Player wrappingPlayer) {
@@ -166,7 +169,7 @@ import java.util.List;
             clock,
             Player.Events::new,
             (listener, eventFlags) -> listener.onEvents(playerForListeners, eventFlags));
-    mediaSourceHolderSnapshots = new ArrayList<>();
+    playlistIndex = PlaylistIndex.EMPTY;
     shuffleOrder = new ShuffleOrder.DefaultShuffleOrder(/* length= */ 0);
     emptyTrackSelectorResult =
         new TrackSelectorResult(
@@ -199,6 +202,7 @@ import java.util.List;
             livePlaybackSpeedControl,
             releaseTimeoutMs,
             pauseAtEndOfMediaItems,
+            playbackThreadPool,
             applicationLooper,
             clock,
             playbackInfoUpdateListener);
@@ -218,6 +222,19 @@ import java.util.List;
     internalPlayer.experimentalSetForegroundModeTimeoutMs(timeoutMs);
   }
 
+  /**
+   * Sets whether the playback loop is only run when renderers need to make progress, rather than
+   * at a fixed interval. See {@link Renderer#getDurationToProgressUs(long, long)}.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the player is used.
+   *
+   * @param dynamicSchedulingEnabled Whether to enable dynamic scheduling.
+   */
+  public void experimentalSetDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    internalPlayer.experimentalSetDynamicSchedulingEnabled(dynamicSchedulingEnabled);
+  }
+
   @Override
   public void experimentalSetOffloadSchedulingEnabled(boolean offloadSchedulingEnabled) {
     internalPlayer.experimentalSetOffloadSchedulingEnabled(offloadSchedulingEnabled);
@@ -410,7 +427,7 @@ import java.util.List;
 
   @Override
   public void addMediaItems(List<MediaItem> mediaItems) {
-    addMediaItems(/* index= */ mediaSourceHolderSnapshots.size(), mediaItems);
+    addMediaItems(/* index= */ playlistIndex.size(), mediaItems);
   }
 
   @Override
@@ -430,7 +447,7 @@ import java.util.List;
 
   @Override
   public void addMediaSources(List<MediaSource> mediaSources) {
-    addMediaSources(/* index= */ mediaSourceHolderSnapshots.size(), mediaSources);
+    addMediaSources(/* index= */ playlistIndex.size(), mediaSources);
   }
 
   @Override
@@ -472,12 +489,12 @@ import java.util.List;
     Assertions.checkArgument(
         fromIndex >= 0
             && fromIndex <= toIndex
-            && toIndex <= mediaSourceHolderSnapshots.size()
+            && toIndex <= playlistIndex.size()
             && newFromIndex >= 0);
     Timeline oldTimeline = getCurrentTimeline();
     pendingOperationAcks++;
-    newFromIndex = min(newFromIndex, mediaSourceHolderSnapshots.size() - (toIndex - fromIndex));
-    Util.moveItems(mediaSourceHolderSnapshots, fromIndex, toIndex, newFromIndex);
+    newFromIndex = min(newFromIndex, playlistIndex.size() - (toIndex - fromIndex));
+    playlistIndex = playlistIndex.move(fromIndex, toIndex, newFromIndex);
     Timeline newTimeline = createMaskingTimeline();
     PlaybackInfo newPlaybackInfo =
         maskTimelineAndPosition(
@@ -496,7 +513,7 @@ import java.util.List;
 
   @Override
   public void clearMediaItems() {
-    removeMediaItems(/* fromIndex= */ 0, /* toIndex= */ mediaSourceHolderSnapshots.size());
+    removeMediaItems(/* fromIndex= */ 0, /* toIndex= */ playlistIndex.size());
   }
 
   @Override
@@ -714,7 +731,7 @@ import java.util.List;
     if (reset) {
       playbackInfo =
           removeMediaItemsInternal(
-              /* fromIndex= */ 0, /* toIndex= */ mediaSourceHolderSnapshots.size());
+              /* fromIndex= */ 0, /* toIndex= */ playlistIndex.size());
       playbackInfo = playbackInfo.copyWithPlaybackError(null);
     } else {
       playbackInfo = this.playbackInfo.copyWithLoadingMediaPeriodId(this.playbackInfo.periodId);
@@ -954,11 +971,9 @@ import java.util.List;
         maskingPeriodIndex = 0;
       }
       if (!newTimeline.isEmpty()) {
-        List<Timeline> timelines = ((PlaylistTimeline) newTimeline).getChildTimelines();
-        checkState(timelines.size() == mediaSourceHolderSnapshots.size());
-        for (int i = 0; i < timelines.size(); i++) {
-          mediaSourceHolderSnapshots.get(i).timeline = timelines.get(i);
-        }
+        PlaylistIndex newPlaylistIndex = ((PlaylistTimeline) newTimeline).getPlaylistIndex();
+        checkState(newPlaylistIndex.size() == playlistIndex.size());
+        playlistIndex = newPlaylistIndex;
       }
       boolean positionDiscontinuity = hasPendingDiscontinuity;
       hasPendingDiscontinuity = false;
@@ -1155,9 +1170,9 @@ import java.util.List;
     int currentWindowIndex = getCurrentWindowIndexInternal();
     long currentPositionMs = getCurrentPosition();
     pendingOperationAcks++;
-    if (!mediaSourceHolderSnapshots.isEmpty()) {
+    if (playlistIndex.size() > 0) {
       removeMediaSourceHolders(
-          /* fromIndex= */ 0, /* toIndexExclusive= */ mediaSourceHolderSnapshots.size());
+          /* fromIndex= */ 0, /* toIndexExclusive= */ playlistIndex.size());
     }
     List<MediaSourceList.MediaSourceHolder> holders =
         addMediaSourceHolders(/* index= */ 0, mediaSources);
@@ -1208,9 +1223,8 @@ import java.util.List;
       MediaSourceList.MediaSourceHolder holder =
           new MediaSourceList.MediaSourceHolder(mediaSources.get(i), useLazyPreparation);
       holders.add(holder);
-      mediaSourceHolderSnapshots.add(
-          i + index, new MediaSourceHolderSnapshot(holder.uid, holder.mediaSource.getTimeline()));
     }
+    playlistIndex = playlistIndex.insert(index, holders);
     shuffleOrder =
         shuffleOrder.cloneAndInsert(
             /* insertionIndex= */ index, /* insertionCount= */ holders.size());
@@ -1219,10 +1233,10 @@ import java.util.List;
 
   private PlaybackInfo removeMediaItemsInternal(int fromIndex, int toIndex) {
     Assertions.checkArgument(
-        fromIndex >= 0 && toIndex >= fromIndex && toIndex <= mediaSourceHolderSnapshots.size());
+        fromIndex >= 0 && toIndex >= fromIndex && toIndex <= playlistIndex.size());
     int currentWindowIndex = getCurrentWindowIndex();
     Timeline oldTimeline = getCurrentTimeline();
-    int currentMediaSourceCount = mediaSourceHolderSnapshots.size();
+    int currentMediaSourceCount = playlistIndex.size();
     pendingOperationAcks++;
     removeMediaSourceHolders(fromIndex, /* toIndexExclusive= */ toIndex);
     Timeline newTimeline = createMaskingTimeline();
@@ -1246,14 +1260,12 @@ import java.util.List;
   }
 
   private void removeMediaSourceHolders(int fromIndex, int toIndexExclusive) {
-    for (int i = toIndexExclusive - 1; i >= fromIndex; i--) {
-      mediaSourceHolderSnapshots.remove(i);
-    }
+    playlistIndex = playlistIndex.remove(fromIndex, toIndexExclusive);
     shuffleOrder = shuffleOrder.cloneAndRemove(fromIndex, toIndexExclusive);
   }
 
   private Timeline createMaskingTimeline() {
-    return new PlaylistTimeline(mediaSourceHolderSnapshots, shuffleOrder);
+    return new PlaylistTimeline(playlistIndex, shuffleOrder);
   }
 
   private PlaybackInfo maskTimelineAndPosition(
@@ -1427,26 +1439,4 @@ import java.util.List;
         && playbackInfo.playWhenReady
         && playbackInfo.playbackSuppressionReason == PLAYBACK_SUPPRESSION_REASON_NONE;
   }
-
-  private static final class MediaSourceHolderSnapshot implements MediaSourceInfoHolder {
-
-    private final Object uid;
-
-    private Timeline timeline;
-
-    public MediaSourceHolderSnapshot(Object uid, Timeline timeline) {
-      this.uid = uid;
-      this.timeline = timeline;
-    }
-
-    @Override
-    public Object getUid() {
-      return uid;
-    }
-
-    @Override
-    public Timeline getTimeline() {
-      return timeline;
-    }
-  }
 }
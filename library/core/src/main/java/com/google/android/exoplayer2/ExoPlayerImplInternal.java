@@ -166,7 +166,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private final LoadControl loadControl;
   private final BandwidthMeter bandwidthMeter;
   private final HandlerWrapper handler;
-  private final HandlerThread internalPlaybackThread;
+  @Nullable private final HandlerThread internalPlaybackThread;
+  @Nullable private final PlaybackThreadPool playbackThreadPool;
   private final Looper playbackLooper;
   private final Timeline.Window window;
   private final Timeline.Period period;
@@ -196,6 +197,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private boolean foregroundMode;
   private boolean requestForRendererSleep;
   private boolean offloadSchedulingEnabled;
+  private boolean dynamicSchedulingEnabled;
 
   private int enabledRendererCount;
   @Nullable private SeekPosition pendingInitialSeekPosition;
@@ -219,6 +221,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
       LivePlaybackSpeedControl livePlaybackSpeedControl,
       long releaseTimeoutMs,
       boolean pauseAtEndOfWindow,
+      @Nullable PlaybackThreadPool playbackThreadPool,
       Looper applicationLooper,
       Clock clock,
       PlaybackInfoUpdateListener playbackInfoUpdateListener) {
@@ -261,9 +264,16 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     // Note: The documentation for Process.THREAD_PRIORITY_AUDIO that states "Applications can
     // not normally change to this priority" is incorrect.
-    internalPlaybackThread = new HandlerThread("ExoPlayer:Playback", Process.THREAD_PRIORITY_AUDIO);
-    internalPlaybackThread.start();
-    playbackLooper = internalPlaybackThread.getLooper();
+    this.playbackThreadPool = playbackThreadPool;
+    if (playbackThreadPool != null) {
+      internalPlaybackThread = null;
+      playbackLooper = playbackThreadPool.obtainLooper();
+    } else {
+      internalPlaybackThread =
+          new HandlerThread("ExoPlayer:Playback", Process.THREAD_PRIORITY_AUDIO);
+      internalPlaybackThread.start();
+      playbackLooper = internalPlaybackThread.getLooper();
+    }
     handler = clock.createHandler(playbackLooper, this);
   }
 
@@ -271,6 +281,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
     this.setForegroundModeTimeoutMs = setForegroundModeTimeoutMs;
   }
 
+  public void experimentalSetDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
+  }
+
   public void experimentalSetOffloadSchedulingEnabled(boolean offloadSchedulingEnabled) {
     handler
         .obtainMessage(
@@ -367,7 +381,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   @Override
   public synchronized void sendMessage(PlayerMessage message) {
-    if (released || !internalPlaybackThread.isAlive()) {
+    if (released || !playbackLooper.getThread().isAlive()) {
       Log.w(TAG, "Ignoring messages sent after release.");
       message.markAsProcessed(/* isDelivered= */ false);
       return;
@@ -382,7 +396,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
    * @return Whether the operations succeeded. If false, the operation timed out.
    */
   public synchronized boolean setForegroundMode(boolean foregroundMode) {
-    if (released || !internalPlaybackThread.isAlive()) {
+    if (released || !playbackLooper.getThread().isAlive()) {
       return true;
     }
     if (foregroundMode) {
@@ -404,7 +418,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
    * @return Whether the release succeeded. If false, the release timed out.
    */
   public synchronized boolean release() {
-    if (released || !internalPlaybackThread.isAlive()) {
+    if (released || !playbackLooper.getThread().isAlive()) {
       return true;
     }
     handler.sendEmptyMessage(MSG_RELEASE);
@@ -932,6 +946,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     boolean renderersEnded = true;
     boolean renderersAllowPlayback = true;
+    long minDurationToProgressUs = C.TIME_UNSET;
     if (playingPeriodHolder.prepared) {
       long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
       playingPeriodHolder.mediaPeriod.discardBuffer(
@@ -941,10 +956,16 @@ import java.util.concurrent.atomic.AtomicBoolean;
         if (!isRendererEnabled(renderer)) {
           continue;
         }
-        // TODO: Each renderer should return the maximum delay before which it wishes to be called
-        // again. The minimum of these values should then be used as the delay before the next
-        // invocation of this method.
         renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
+        if (dynamicSchedulingEnabled) {
+          long durationToProgressUs =
+              renderer.getDurationToProgressUs(
+                  rendererPositionUs, rendererPositionElapsedRealtimeUs);
+          minDurationToProgressUs =
+              minDurationToProgressUs == C.TIME_UNSET
+                  ? durationToProgressUs
+                  : min(minDurationToProgressUs, durationToProgressUs);
+        }
         renderersEnded = renderersEnded && renderer.isEnded();
         // Determine whether the renderer allows playback to continue. Playback can continue if the
         // renderer is ready or ended. Also continue playback if the renderer is reading ahead into
@@ -1020,8 +1041,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
 
     boolean sleepingForOffload = false;
-    if ((shouldPlayWhenReady() && playbackInfo.playbackState == Player.STATE_READY)
-        || playbackInfo.playbackState == Player.STATE_BUFFERING) {
+    if (shouldPlayWhenReady() && playbackInfo.playbackState == Player.STATE_READY) {
+      sleepingForOffload =
+          !maybeScheduleWakeup(
+              operationStartTimeMs, getActiveIntervalMs(minDurationToProgressUs));
+    } else if (playbackInfo.playbackState == Player.STATE_BUFFERING) {
       sleepingForOffload = !maybeScheduleWakeup(operationStartTimeMs, ACTIVE_INTERVAL_MS);
     } else if (enabledRendererCount != 0 && playbackInfo.playbackState != Player.STATE_ENDED) {
       scheduleNextWork(operationStartTimeMs, IDLE_INTERVAL_MS);
@@ -1061,6 +1085,22 @@ import java.util.concurrent.atomic.AtomicBoolean;
     return window.isLive() && window.isDynamic && window.windowStartTimeMs != C.TIME_UNSET;
   }
 
+  /**
+   * Returns the interval after which the next iteration of the rendering loop should run during
+   * playback, given the minimum duration of media after which the enabled renderers need to be
+   * called again, or {@link C#TIME_UNSET} if unknown.
+   */
+  private long getActiveIntervalMs(long minDurationToProgressUs) {
+    if (!dynamicSchedulingEnabled || minDurationToProgressUs == C.TIME_UNSET) {
+      return ACTIVE_INTERVAL_MS;
+    }
+    // Renderers report durations of media, which elapse faster or slower than real time depending
+    // on the playback speed.
+    long intervalMs =
+        (long) (C.usToMs(minDurationToProgressUs) / playbackInfo.playbackParameters.speed);
+    return Util.constrainValue(intervalMs, ACTIVE_INTERVAL_MS, IDLE_INTERVAL_MS);
+  }
+
   private void scheduleNextWork(long thisOperationStartTimeMs, long intervalMs) {
     handler.removeMessages(MSG_DO_SOME_WORK);
     handler.sendEmptyMessageAtTime(MSG_DO_SOME_WORK, thisOperationStartTimeMs + intervalMs);
@@ -1328,7 +1368,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
         /* resetError= */ false);
     loadControl.onReleased();
     setState(Player.STATE_IDLE);
-    internalPlaybackThread.quit();
+    if (playbackThreadPool != null) {
+      // Other players may continue to use the thread, so only drop the messages of this player.
+      handler.removeCallbacksAndMessages(/* token= */ null);
+      playbackThreadPool.releaseLooper(playbackLooper);
+    } else {
+      Assertions.checkNotNull(internalPlaybackThread).quit();
+    }
     synchronized (this) {
       released = true;
       notifyAll();
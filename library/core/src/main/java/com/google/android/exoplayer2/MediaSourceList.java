@@ -79,6 +79,7 @@ import java.util.Set;
   private final Set<MediaSourceHolder> enabledMediaSourceHolders;
 
   private ShuffleOrder shuffleOrder;
+  private PlaylistIndex playlistIndex;
   private boolean isPrepared;
 
   @Nullable private TransferListener mediaTransferListener;
@@ -99,6 +100,7 @@ import java.util.Set;
       Handler analyticsCollectorHandler) {
     mediaSourceListInfoListener = listener;
     shuffleOrder = new DefaultShuffleOrder(0);
+    playlistIndex = PlaylistIndex.EMPTY;
     mediaSourceByMediaPeriod = new IdentityHashMap<>();
     mediaSourceByUid = new HashMap<>();
     mediaSourceHolders = new ArrayList<>();
@@ -137,22 +139,25 @@ import java.util.Set;
       int index, List<MediaSourceHolder> holders, ShuffleOrder shuffleOrder) {
     if (!holders.isEmpty()) {
       this.shuffleOrder = shuffleOrder;
-      for (int insertionIndex = index; insertionIndex < index + holders.size(); insertionIndex++) {
-        MediaSourceHolder holder = holders.get(insertionIndex - index);
-        if (insertionIndex > 0) {
-          MediaSourceHolder previousHolder = mediaSourceHolders.get(insertionIndex - 1);
-          Timeline previousTimeline = previousHolder.mediaSource.getTimeline();
-          holder.reset(
-              /* firstWindowIndexInChild= */ previousHolder.firstWindowIndexInChild
-                  + previousTimeline.getWindowCount());
-        } else {
-          holder.reset(/* firstWindowIndexInChild= */ 0);
-        }
-        Timeline newTimeline = holder.mediaSource.getTimeline();
-        correctOffsets(
-            /* startIndex= */ insertionIndex,
-            /* windowOffsetUpdate= */ newTimeline.getWindowCount());
-        mediaSourceHolders.add(insertionIndex, holder);
+      int firstWindowIndex = 0;
+      if (index > 0) {
+        MediaSourceHolder previousHolder = mediaSourceHolders.get(index - 1);
+        Timeline previousTimeline = previousHolder.mediaSource.getTimeline();
+        firstWindowIndex =
+            previousHolder.firstWindowIndexInChild + previousTimeline.getWindowCount();
+      }
+      int windowOffset = firstWindowIndex;
+      for (int i = 0; i < holders.size(); i++) {
+        MediaSourceHolder holder = holders.get(i);
+        holder.reset(/* firstWindowIndexInChild= */ windowOffset);
+        windowOffset += holder.mediaSource.getTimeline().getWindowCount();
+      }
+      correctOffsets(
+          /* startIndex= */ index, /* windowOffsetUpdate= */ windowOffset - firstWindowIndex);
+      mediaSourceHolders.addAll(index, holders);
+      playlistIndex = playlistIndex.insert(index, holders);
+      for (int i = 0; i < holders.size(); i++) {
+        MediaSourceHolder holder = holders.get(i);
         mediaSourceByUid.put(holder.uid, holder);
         if (isPrepared) {
           prepareChildSource(holder);
@@ -236,6 +241,7 @@ import java.util.Set;
     int endIndex = max(newEndIndex, toIndex - 1);
     int windowOffset = mediaSourceHolders.get(startIndex).firstWindowIndexInChild;
     Util.moveItems(mediaSourceHolders, fromIndex, toIndex, newFromIndex);
+    playlistIndex = playlistIndex.move(fromIndex, toIndex, newFromIndex);
     for (int i = startIndex; i <= endIndex; i++) {
       MediaSourceHolder holder = mediaSourceHolders.get(i);
       holder.firstWindowIndexInChild = windowOffset;
@@ -350,13 +356,7 @@ import java.util.Set;
     if (mediaSourceHolders.isEmpty()) {
       return Timeline.EMPTY;
     }
-    int windowOffset = 0;
-    for (int i = 0; i < mediaSourceHolders.size(); i++) {
-      MediaSourceHolder mediaSourceHolder = mediaSourceHolders.get(i);
-      mediaSourceHolder.firstWindowIndexInChild = windowOffset;
-      windowOffset += mediaSourceHolder.mediaSource.getTimeline().getWindowCount();
-    }
-    return new PlaylistTimeline(mediaSourceHolders, shuffleOrder);
+    return new PlaylistTimeline(playlistIndex, shuffleOrder);
   }
 
   // Internal methods.
@@ -388,20 +388,43 @@ import java.util.Set;
   }
 
   private void removeMediaSourcesInternal(int fromIndex, int toIndex) {
-    for (int index = toIndex - 1; index >= fromIndex; index--) {
-      MediaSourceHolder holder = mediaSourceHolders.remove(index);
+    if (fromIndex == toIndex) {
+      return;
+    }
+    List<MediaSourceHolder> removedHolders =
+        new ArrayList<>(mediaSourceHolders.subList(fromIndex, toIndex));
+    mediaSourceHolders.subList(fromIndex, toIndex).clear();
+    playlistIndex = playlistIndex.remove(fromIndex, toIndex);
+    int removedWindowCount = 0;
+    for (int i = removedHolders.size() - 1; i >= 0; i--) {
+      MediaSourceHolder holder = removedHolders.get(i);
       mediaSourceByUid.remove(holder.uid);
-      Timeline oldTimeline = holder.mediaSource.getTimeline();
-      correctOffsets(
-          /* startIndex= */ index, /* windowOffsetUpdate= */ -oldTimeline.getWindowCount());
+      removedWindowCount += holder.mediaSource.getTimeline().getWindowCount();
       holder.isRemoved = true;
       if (isPrepared) {
         maybeReleaseChildSource(holder);
       }
     }
+    correctOffsets(/* startIndex= */ fromIndex, /* windowOffsetUpdate= */ -removedWindowCount);
+  }
+
+  private void onChildTimelineRefreshed(MediaSourceHolder holder) {
+    int childIndex = playlistIndex.getChildIndexByUid(holder.uid);
+    if (childIndex == C.INDEX_UNSET) {
+      // The holder has been removed from the playlist.
+      return;
+    }
+    Timeline timeline = holder.mediaSource.getTimeline();
+    int windowOffsetUpdate =
+        timeline.getWindowCount() - playlistIndex.getTimeline(childIndex).getWindowCount();
+    playlistIndex = playlistIndex.updateTimeline(holder.uid, timeline);
+    correctOffsets(/* startIndex= */ childIndex + 1, windowOffsetUpdate);
   }
 
   private void correctOffsets(int startIndex, int windowOffsetUpdate) {
+    if (windowOffsetUpdate == 0) {
+      return;
+    }
     for (int i = startIndex; i < mediaSourceHolders.size(); i++) {
       MediaSourceHolder mediaSourceHolder = mediaSourceHolders.get(i);
       mediaSourceHolder.firstWindowIndexInChild += windowOffsetUpdate;
@@ -433,7 +456,10 @@ import java.util.Set;
   private void prepareChildSource(MediaSourceHolder holder) {
     MediaSource mediaSource = holder.mediaSource;
     MediaSource.MediaSourceCaller caller =
-        (source, timeline) -> mediaSourceListInfoListener.onPlaylistUpdateRequested();
+        (source, timeline) -> {
+          onChildTimelineRefreshed(holder);
+          mediaSourceListInfoListener.onPlaylistUpdateRequested();
+        };
     ForwardingEventListener eventListener = new ForwardingEventListener(holder);
     childSources.put(holder, new MediaSourceAndListener(mediaSource, caller, eventListener));
     mediaSource.addEventListener(Util.createHandlerForCurrentOrMainLooper(), eventListener);
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded pool of playback threads that can be shared by multiple {@link ExoPlayer} instances.
+ *
+ * <p>By default each player runs its internal playback loop on a dedicated thread. When many
+ * players are used at the same time, for example to show a grid of muted previews, they can
+ * instead share the threads of a pool by passing the same instance to {@link
+ * ExoPlayer.Builder#experimentalSetPlaybackThreadPool(PlaybackThreadPool)} or {@link
+ * SimpleExoPlayer.Builder#experimentalSetPlaybackThreadPool(PlaybackThreadPool)}.
+ *
+ * <p>Each player is assigned to the thread that's used by the fewest players when it's created, and
+ * a new thread is only started if all existing threads are in use and the maximum number of threads
+ * hasn't been reached. Messages of players sharing a thread are handled in the order in which they
+ * become due, so each player gets a fair share of the thread. Threads are stopped when the last
+ * player using them is released.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class PlaybackThreadPool {
+
+  private final int maxThreadCount;
+  private final List<PlaybackThread> threads;
+
+  /**
+   * Creates a pool.
+   *
+   * @param maxThreadCount The maximum number of playback threads that are used at the same time.
+   */
+  public PlaybackThreadPool(int maxThreadCount) {
+    Assertions.checkArgument(maxThreadCount > 0);
+    this.maxThreadCount = maxThreadCount;
+    threads = new ArrayList<>();
+  }
+
+  /** Returns the maximum number of playback threads that are used at the same time. */
+  public int getMaxThreadCount() {
+    return maxThreadCount;
+  }
+
+  /** Returns the number of playback threads that are currently running. */
+  public synchronized int getThreadCount() {
+    return threads.size();
+  }
+
+  /**
+   * Returns the {@link Looper} of the thread on which a new player should run its playback loop.
+   * {@link #releaseLooper(Looper)} must be called once the player is released.
+   */
+  /* package */ synchronized Looper obtainLooper() {
+    @Nullable PlaybackThread leastUsedThread = null;
+    for (int i = 0; i < threads.size(); i++) {
+      PlaybackThread thread = threads.get(i);
+      if (leastUsedThread == null || thread.playerCount < leastUsedThread.playerCount) {
+        leastUsedThread = thread;
+      }
+    }
+    if (leastUsedThread == null
+        || (leastUsedThread.playerCount > 0 && threads.size() < maxThreadCount)) {
+      leastUsedThread = new PlaybackThread();
+      threads.add(leastUsedThread);
+    }
+    leastUsedThread.playerCount++;
+    return leastUsedThread.looper;
+  }
+
+  /**
+   * Releases a {@link Looper} obtained from {@link #obtainLooper()}. The thread of the looper is
+   * stopped once it's no longer used by any player.
+   *
+   * @param looper The {@link Looper} to release.
+   */
+  /* package */ synchronized void releaseLooper(Looper looper) {
+    for (int i = 0; i < threads.size(); i++) {
+      PlaybackThread thread = threads.get(i);
+      if (thread.looper == looper) {
+        thread.playerCount--;
+        if (thread.playerCount == 0) {
+          threads.remove(i);
+          thread.handlerThread.quit();
+        }
+        return;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  private static final class PlaybackThread {
+
+    public final HandlerThread handlerThread;
+    public final Looper looper;
+    public int playerCount;
+
+    public PlaybackThread() {
+      // Note: The documentation for Process.THREAD_PRIORITY_AUDIO that states "Applications can
+      // not normally change to this priority" is incorrect.
+      handlerThread = new HandlerThread("ExoPlayer:Playback", Process.THREAD_PRIORITY_AUDIO);
+      handlerThread.start();
+      looper = handlerThread.getLooper();
+    }
+  }
+}
@@ -0,0 +1,697 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable index of the child timelines of a playlist, supporting lookups and edits in
+ * logarithmic time.
+ *
+ * <p>The children are stored in a search tree ordered by labels that are assigned on insertion, and
+ * each node holds the number of children, windows and periods in its subtree, so that the first
+ * window and period index of a child are prefix sums along a path of the tree. A second tree maps
+ * the uids of the children to their labels. Edits copy only the nodes on the paths they change, so
+ * an edited index shares most of its nodes with the original one, which remains valid.
+ *
+ * <p>Both trees are kept weight-balanced by rebuilding subtrees that become unbalanced.
+ */
+/* package */ final class PlaylistIndex {
+
+  /** An empty index. */
+  public static final PlaylistIndex EMPTY =
+      new PlaylistIndex(/* root= */ null, /* uidRoot= */ null);
+
+  // The largest label. Labels are positive, so that differences between labels can't overflow.
+  private static final long MAX_LABEL = Long.MAX_VALUE;
+  // The default distance between the labels of adjacent children, leaving room for insertions.
+  private static final long LABEL_SPACING = 1L << 32;
+
+  @Nullable private final Node root;
+  @Nullable private final UidNode uidRoot;
+
+  /**
+   * Creates an index of the given children.
+   *
+   * @param holders The {@link MediaSourceInfoHolder holders} of the children, in playlist order.
+   * @return The index.
+   */
+  public static PlaylistIndex create(Collection<? extends MediaSourceInfoHolder> holders) {
+    if (holders.isEmpty()) {
+      return EMPTY;
+    }
+    int size = holders.size();
+    long spacing = min(LABEL_SPACING, MAX_LABEL / (size + 1));
+    long firstLabel = (MAX_LABEL - spacing * (size - 1)) / 2;
+    Node[] nodes = new Node[size];
+    int index = 0;
+    for (MediaSourceInfoHolder holder : holders) {
+      nodes[index] =
+          new Node(
+              firstLabel + index * spacing,
+              holder.getUid(),
+              holder.getTimeline(),
+              /* left= */ null,
+              /* right= */ null);
+      index++;
+    }
+    return new PlaylistIndex(buildTree(nodes, /* from= */ 0, /* to= */ size), buildUidTree(nodes));
+  }
+
+  private PlaylistIndex(@Nullable Node root, @Nullable UidNode uidRoot) {
+    this.root = root;
+    this.uidRoot = uidRoot;
+  }
+
+  /** Returns the number of children. */
+  public int size() {
+    return root == null ? 0 : root.size;
+  }
+
+  /** Returns the total number of windows of all children. */
+  public int getWindowCount() {
+    return root == null ? 0 : root.windowCount;
+  }
+
+  /** Returns the total number of periods of all children. */
+  public int getPeriodCount() {
+    return root == null ? 0 : root.periodCount;
+  }
+
+  /** Returns the timeline of the child at the given index. */
+  public Timeline getTimeline(int childIndex) {
+    return getNode(childIndex).timeline;
+  }
+
+  /** Returns the uid of the child at the given index. */
+  public Object getUid(int childIndex) {
+    return getNode(childIndex).uid;
+  }
+
+  /** Returns the timelines of all children, in playlist order. */
+  public List<Timeline> getTimelines() {
+    List<Node> nodes = new ArrayList<>(size());
+    flatten(root, nodes);
+    List<Timeline> timelines = new ArrayList<>(nodes.size());
+    for (int i = 0; i < nodes.size(); i++) {
+      timelines.add(nodes.get(i).timeline);
+    }
+    return timelines;
+  }
+
+  /**
+   * Returns the index of the child with the given uid, or {@link C#INDEX_UNSET} if there is no such
+   * child.
+   */
+  public int getChildIndexByUid(Object uid) {
+    @Nullable UidNode uidNode = findUidNode(uidRoot, uid, uid.hashCode());
+    if (uidNode == null) {
+      return C.INDEX_UNSET;
+    }
+    long label = uidNode.label;
+    int childIndex = 0;
+    @Nullable Node node = root;
+    while (node != null) {
+      if (label < node.label) {
+        node = node.left;
+      } else {
+        childIndex += size(node.left);
+        if (label == node.label) {
+          return childIndex;
+        }
+        childIndex++;
+        node = node.right;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  /** Returns the index of the child containing the window with the given index. */
+  public int getChildIndexByWindowIndex(int windowIndex) {
+    Assertions.checkIndex(windowIndex, /* start= */ 0, /* limit= */ getWindowCount());
+    int childIndex = 0;
+    Node node = Assertions.checkNotNull(root);
+    while (true) {
+      int leftWindowCount = windowCount(node.left);
+      int nodeWindowCount = node.timeline.getWindowCount();
+      if (windowIndex < leftWindowCount) {
+        node = Assertions.checkNotNull(node.left);
+      } else if (windowIndex < leftWindowCount + nodeWindowCount) {
+        return childIndex + size(node.left);
+      } else {
+        windowIndex -= leftWindowCount + nodeWindowCount;
+        childIndex += size(node.left) + 1;
+        node = Assertions.checkNotNull(node.right);
+      }
+    }
+  }
+
+  /** Returns the index of the child containing the period with the given index. */
+  public int getChildIndexByPeriodIndex(int periodIndex) {
+    Assertions.checkIndex(periodIndex, /* start= */ 0, /* limit= */ getPeriodCount());
+    int childIndex = 0;
+    Node node = Assertions.checkNotNull(root);
+    while (true) {
+      int leftPeriodCount = periodCount(node.left);
+      int nodePeriodCount = node.timeline.getPeriodCount();
+      if (periodIndex < leftPeriodCount) {
+        node = Assertions.checkNotNull(node.left);
+      } else if (periodIndex < leftPeriodCount + nodePeriodCount) {
+        return childIndex + size(node.left);
+      } else {
+        periodIndex -= leftPeriodCount + nodePeriodCount;
+        childIndex += size(node.left) + 1;
+        node = Assertions.checkNotNull(node.right);
+      }
+    }
+  }
+
+  /** Returns the index of the first window of the child at the given index. */
+  public int getFirstWindowIndex(int childIndex) {
+    Assertions.checkIndex(childIndex, /* start= */ 0, /* limit= */ size());
+    int windowIndex = 0;
+    Node node = Assertions.checkNotNull(root);
+    while (true) {
+      int leftSize = size(node.left);
+      if (childIndex < leftSize) {
+        node = Assertions.checkNotNull(node.left);
+      } else {
+        windowIndex += windowCount(node.left);
+        if (childIndex == leftSize) {
+          return windowIndex;
+        }
+        windowIndex += node.timeline.getWindowCount();
+        childIndex -= leftSize + 1;
+        node = Assertions.checkNotNull(node.right);
+      }
+    }
+  }
+
+  /** Returns the index of the first period of the child at the given index. */
+  public int getFirstPeriodIndex(int childIndex) {
+    Assertions.checkIndex(childIndex, /* start= */ 0, /* limit= */ size());
+    int periodIndex = 0;
+    Node node = Assertions.checkNotNull(root);
+    while (true) {
+      int leftSize = size(node.left);
+      if (childIndex < leftSize) {
+        node = Assertions.checkNotNull(node.left);
+      } else {
+        periodIndex += periodCount(node.left);
+        if (childIndex == leftSize) {
+          return periodIndex;
+        }
+        periodIndex += node.timeline.getPeriodCount();
+        childIndex -= leftSize + 1;
+        node = Assertions.checkNotNull(node.right);
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of the index with children inserted.
+   *
+   * @param index The index at which the children are inserted.
+   * @param holders The {@link MediaSourceInfoHolder holders} of the inserted children. Their uids
+   *     must not be in the index already.
+   * @return The new index.
+   */
+  public PlaylistIndex insert(int index, List<? extends MediaSourceInfoHolder> holders) {
+    int size = size();
+    Assertions.checkArgument(index >= 0 && index <= size);
+    int insertionCount = holders.size();
+    if (insertionCount == 0) {
+      return this;
+    }
+    if (root == null || insertionCount > size) {
+      return rebuildWithInsertion(index, holders);
+    }
+    long previousLabel = index > 0 ? getNode(index - 1).label : 0;
+    long nextLabel = index < size ? getNode(index).label : MAX_LABEL;
+    long spacing = min(LABEL_SPACING, (nextLabel - previousLabel) / (insertionCount + 1));
+    if (spacing == 0) {
+      // There's no room for the new labels, so relabel all children.
+      return rebuildWithInsertion(index, holders);
+    }
+    // Insert next to the neighboring label, so that there's room for later insertions at the start
+    // and end of the playlist.
+    long firstLabel = index == 0 ? nextLabel - spacing * insertionCount : previousLabel + spacing;
+    @Nullable Node newRoot = root;
+    @Nullable UidNode newUidRoot = uidRoot;
+    for (int i = 0; i < insertionCount; i++) {
+      MediaSourceInfoHolder holder = holders.get(i);
+      long label = firstLabel + i * spacing;
+      newRoot =
+          insertNode(
+              newRoot,
+              new Node(
+                  label,
+                  holder.getUid(),
+                  holder.getTimeline(),
+                  /* left= */ null,
+                  /* right= */ null));
+      newUidRoot =
+          insertUidNode(
+              newUidRoot,
+              new UidNode(holder.getUid(), label, /* left= */ null, /* right= */ null));
+    }
+    return new PlaylistIndex(newRoot, newUidRoot);
+  }
+
+  /**
+   * Returns a copy of the index with a range of children removed.
+   *
+   * @param fromIndex The index of the first removed child.
+   * @param toIndex The index after the last removed child.
+   * @return The new index.
+   */
+  public PlaylistIndex remove(int fromIndex, int toIndex) {
+    int size = size();
+    Assertions.checkArgument(fromIndex >= 0 && fromIndex <= toIndex && toIndex <= size);
+    int removalCount = toIndex - fromIndex;
+    if (removalCount == 0) {
+      return this;
+    }
+    if (removalCount > size / 2) {
+      List<Node> nodes = new ArrayList<>(size);
+      flatten(root, nodes);
+      nodes.subList(fromIndex, toIndex).clear();
+      return create(nodes);
+    }
+    @Nullable Node newRoot = root;
+    @Nullable UidNode newUidRoot = uidRoot;
+    for (int i = 0; i < removalCount; i++) {
+      Node node = getNode(Assertions.checkNotNull(newRoot), fromIndex);
+      newRoot = deleteNode(Assertions.checkNotNull(newRoot), node.label);
+      newUidRoot =
+          deleteUidNode(Assertions.checkNotNull(newUidRoot), node.uid.hashCode(), node.label);
+    }
+    return new PlaylistIndex(newRoot, newUidRoot);
+  }
+
+  /**
+   * Returns a copy of the index with a range of children moved.
+   *
+   * @param fromIndex The index of the first moved child.
+   * @param toIndex The index after the last moved child.
+   * @param newFromIndex The new index of the first moved child, after the move.
+   * @return The new index.
+   */
+  public PlaylistIndex move(int fromIndex, int toIndex, int newFromIndex) {
+    Assertions.checkArgument(
+        fromIndex >= 0
+            && fromIndex <= toIndex
+            && toIndex <= size()
+            && newFromIndex >= 0
+            && newFromIndex <= size() - (toIndex - fromIndex));
+    if (fromIndex == toIndex || fromIndex == newFromIndex) {
+      return this;
+    }
+    List<Node> movedNodes = new ArrayList<>(toIndex - fromIndex);
+    for (int i = fromIndex; i < toIndex; i++) {
+      movedNodes.add(getNode(i));
+    }
+    return remove(fromIndex, toIndex).insert(newFromIndex, movedNodes);
+  }
+
+  /**
+   * Returns a copy of the index with the timeline of a child replaced.
+   *
+   * @param uid The uid of the child.
+   * @param timeline The new timeline of the child.
+   * @return The new index, or this index if there's no child with the given uid.
+   */
+  public PlaylistIndex updateTimeline(Object uid, Timeline timeline) {
+    @Nullable UidNode uidNode = findUidNode(uidRoot, uid, uid.hashCode());
+    if (uidNode == null) {
+      return this;
+    }
+    return new PlaylistIndex(
+        replaceTimeline(Assertions.checkNotNull(root), uidNode.label, timeline), uidRoot);
+  }
+
+  /**
+   * Returns the number of tree nodes of this index that aren't shared with another index. For an
+   * index derived from {@code other} by edits, this is the number of nodes that the edits
+   * allocated.
+   */
+  @VisibleForTesting
+  /* package */ int getUnsharedNodeCount(PlaylistIndex other) {
+    Set<Object> otherNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<Node> nodes = new ArrayList<>(other.size());
+    flatten(other.root, nodes);
+    otherNodes.addAll(nodes);
+    List<UidNode> uidNodes = new ArrayList<>(other.size());
+    flatten(other.uidRoot, uidNodes);
+    otherNodes.addAll(uidNodes);
+    return countUnsharedNodes(root, otherNodes) + countUnsharedNodes(uidRoot, otherNodes);
+  }
+
+  private Node getNode(int childIndex) {
+    Assertions.checkIndex(childIndex, /* start= */ 0, /* limit= */ size());
+    return getNode(Assertions.checkNotNull(root), childIndex);
+  }
+
+  private PlaylistIndex rebuildWithInsertion(
+      int index, List<? extends MediaSourceInfoHolder> holders) {
+    List<MediaSourceInfoHolder> allHolders = new ArrayList<>(size() + holders.size());
+    flatten(root, allHolders);
+    allHolders.addAll(index, holders);
+    return create(allHolders);
+  }
+
+  // Operations on the tree of children.
+
+  private static Node getNode(Node node, int childIndex) {
+    while (true) {
+      int leftSize = size(node.left);
+      if (childIndex < leftSize) {
+        node = Assertions.checkNotNull(node.left);
+      } else if (childIndex == leftSize) {
+        return node;
+      } else {
+        childIndex -= leftSize + 1;
+        node = Assertions.checkNotNull(node.right);
+      }
+    }
+  }
+
+  private static Node insertNode(@Nullable Node node, Node newNode) {
+    if (node == null) {
+      return newNode;
+    }
+    return newNode.label < node.label
+        ? balance(node.withChildren(insertNode(node.left, newNode), node.right))
+        : balance(node.withChildren(node.left, insertNode(node.right, newNode)));
+  }
+
+  @Nullable
+  private static Node deleteNode(Node node, long label) {
+    if (label < node.label) {
+      return balance(
+          node.withChildren(deleteNode(Assertions.checkNotNull(node.left), label), node.right));
+    } else if (label > node.label) {
+      return balance(
+          node.withChildren(node.left, deleteNode(Assertions.checkNotNull(node.right), label)));
+    } else if (node.left == null) {
+      return node.right;
+    } else if (node.right == null) {
+      return node.left;
+    }
+    Node successor = getNode(node.right, /* childIndex= */ 0);
+    return balance(
+        new Node(
+            successor.label,
+            successor.uid,
+            successor.timeline,
+            node.left,
+            deleteNode(node.right, successor.label)));
+  }
+
+  private static Node replaceTimeline(Node node, long label, Timeline timeline) {
+    if (label < node.label) {
+      return node.withChildren(
+          replaceTimeline(Assertions.checkNotNull(node.left), label, timeline), node.right);
+    } else if (label > node.label) {
+      return node.withChildren(
+          node.left, replaceTimeline(Assertions.checkNotNull(node.right), label, timeline));
+    }
+    return new Node(node.label, node.uid, timeline, node.left, node.right);
+  }
+
+  private static Node balance(Node node) {
+    if (!isUnbalanced(node.size, size(node.left), size(node.right))) {
+      return node;
+    }
+    List<Node> nodes = new ArrayList<>(node.size);
+    flatten(node, nodes);
+    return Assertions.checkNotNull(
+        buildTree(nodes.toArray(new Node[0]), /* from= */ 0, /* to= */ nodes.size()));
+  }
+
+  @Nullable
+  private static Node buildTree(Node[] nodes, int from, int to) {
+    if (from == to) {
+      return null;
+    }
+    int middle = (from + to) >>> 1;
+    Node node = nodes[middle];
+    return new Node(
+        node.label,
+        node.uid,
+        node.timeline,
+        buildTree(nodes, from, middle),
+        buildTree(nodes, middle + 1, to));
+  }
+
+  private static void flatten(@Nullable Node node, List<? super Node> nodes) {
+    while (node != null) {
+      flatten(node.left, nodes);
+      nodes.add(node);
+      node = node.right;
+    }
+  }
+
+  // Operations on the tree of uids, which is ordered by the hash code and then the label.
+
+  @Nullable
+  private static UidNode findUidNode(@Nullable UidNode node, Object uid, int hash) {
+    while (node != null) {
+      if (hash < node.hash) {
+        node = node.left;
+      } else if (hash > node.hash) {
+        node = node.right;
+      } else if (node.uid.equals(uid)) {
+        return node;
+      } else {
+        // Uids with the same hash code may be in either subtree.
+        @Nullable UidNode leftNode = findUidNode(node.left, uid, hash);
+        return leftNode != null ? leftNode : findUidNode(node.right, uid, hash);
+      }
+    }
+    return null;
+  }
+
+  private static UidNode insertUidNode(@Nullable UidNode node, UidNode newNode) {
+    if (node == null) {
+      return newNode;
+    }
+    return compare(newNode.hash, newNode.label, node) < 0
+        ? balance(node.withChildren(insertUidNode(node.left, newNode), node.right))
+        : balance(node.withChildren(node.left, insertUidNode(node.right, newNode)));
+  }
+
+  @Nullable
+  private static UidNode deleteUidNode(UidNode node, int hash, long label) {
+    int comparison = compare(hash, label, node);
+    if (comparison < 0) {
+      return balance(
+          node.withChildren(
+              deleteUidNode(Assertions.checkNotNull(node.left), hash, label), node.right));
+    } else if (comparison > 0) {
+      return balance(
+          node.withChildren(
+              node.left, deleteUidNode(Assertions.checkNotNull(node.right), hash, label)));
+    } else if (node.left == null) {
+      return node.right;
+    } else if (node.right == null) {
+      return node.left;
+    }
+    UidNode successor = node.right;
+    while (successor.left != null) {
+      successor = successor.left;
+    }
+    return balance(
+        new UidNode(
+            successor.uid,
+            successor.label,
+            node.left,
+            deleteUidNode(node.right, successor.hash, successor.label)));
+  }
+
+  private static int compare(int hash, long label, UidNode node) {
+    int hashComparison = Integer.compare(hash, node.hash);
+    return hashComparison != 0 ? hashComparison : Long.compare(label, node.label);
+  }
+
+  private static UidNode balance(UidNode node) {
+    if (!isUnbalanced(node.size, size(node.left), size(node.right))) {
+      return node;
+    }
+    List<UidNode> nodes = new ArrayList<>(node.size);
+    flatten(node, nodes);
+    return Assertions.checkNotNull(
+        buildUidTree(nodes.toArray(new UidNode[0]), /* from= */ 0, /* to= */ nodes.size()));
+  }
+
+  @Nullable
+  private static UidNode buildUidTree(Node[] nodes) {
+    // Sort by hash code and then label. The labels increase with the index, so sort by the index.
+    long[] sortKeys = new long[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      sortKeys[i] = ((long) nodes[i].uid.hashCode() << 32) | i;
+    }
+    Arrays.sort(sortKeys);
+    UidNode[] uidNodes = new UidNode[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      Node node = nodes[(int) sortKeys[i]];
+      uidNodes[i] = new UidNode(node.uid, node.label, /* left= */ null, /* right= */ null);
+    }
+    return buildUidTree(uidNodes, /* from= */ 0, /* to= */ uidNodes.length);
+  }
+
+  @Nullable
+  private static UidNode buildUidTree(UidNode[] nodes, int from, int to) {
+    if (from == to) {
+      return null;
+    }
+    int middle = (from + to) >>> 1;
+    return nodes[middle].withChildren(
+        buildUidTree(nodes, from, middle), buildUidTree(nodes, middle + 1, to));
+  }
+
+  private static void flatten(@Nullable UidNode node, List<UidNode> nodes) {
+    while (node != null) {
+      flatten(node.left, nodes);
+      nodes.add(node);
+      node = node.right;
+    }
+  }
+
+  // Helpers.
+
+  private static int countUnsharedNodes(@Nullable Node node, Set<Object> sharedNodes) {
+    if (node == null || sharedNodes.contains(node)) {
+      return 0;
+    }
+    return 1
+        + countUnsharedNodes(node.left, sharedNodes)
+        + countUnsharedNodes(node.right, sharedNodes);
+  }
+
+  private static int countUnsharedNodes(@Nullable UidNode node, Set<Object> sharedNodes) {
+    if (node == null || sharedNodes.contains(node)) {
+      return 0;
+    }
+    return 1
+        + countUnsharedNodes(node.left, sharedNodes)
+        + countUnsharedNodes(node.right, sharedNodes);
+  }
+
+  /**
+   * Returns whether a subtree needs to be rebuilt, because one of its children holds more than
+   * three quarters of its nodes. Small subtrees are never rebuilt.
+   */
+  private static boolean isUnbalanced(int size, int leftSize, int rightSize) {
+    return 4 * max(leftSize, rightSize) > 3 * size + 4;
+  }
+
+  private static int size(@Nullable Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static int size(@Nullable UidNode node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static int windowCount(@Nullable Node node) {
+    return node == null ? 0 : node.windowCount;
+  }
+
+  private static int periodCount(@Nullable Node node) {
+    return node == null ? 0 : node.periodCount;
+  }
+
+  /** A child in the tree of children. The counts include all children in the node's subtree. */
+  private static final class Node implements MediaSourceInfoHolder {
+
+    public final long label;
+    public final Object uid;
+    public final Timeline timeline;
+    @Nullable public final Node left;
+    @Nullable public final Node right;
+    public final int size;
+    public final int windowCount;
+    public final int periodCount;
+
+    public Node(
+        long label, Object uid, Timeline timeline, @Nullable Node left, @Nullable Node right) {
+      this.label = label;
+      this.uid = uid;
+      this.timeline = timeline;
+      this.left = left;
+      this.right = right;
+      size = size(left) + 1 + size(right);
+      windowCount = windowCount(left) + timeline.getWindowCount() + windowCount(right);
+      periodCount = periodCount(left) + timeline.getPeriodCount() + periodCount(right);
+    }
+
+    public Node withChildren(@Nullable Node left, @Nullable Node right) {
+      return new Node(label, uid, timeline, left, right);
+    }
+
+    @Override
+    public Object getUid() {
+      return uid;
+    }
+
+    @Override
+    public Timeline getTimeline() {
+      return timeline;
+    }
+  }
+
+  /** A mapping from a uid to the label of its child in the tree of uids. */
+  private static final class UidNode {
+
+    public final Object uid;
+    public final int hash;
+    public final long label;
+    @Nullable public final UidNode left;
+    @Nullable public final UidNode right;
+    public final int size;
+
+    public UidNode(Object uid, long label, @Nullable UidNode left, @Nullable UidNode right) {
+      this(uid, uid.hashCode(), label, left, right);
+    }
+
+    private UidNode(
+        Object uid, int hash, long label, @Nullable UidNode left, @Nullable UidNode right) {
+      this.uid = uid;
+      this.hash = hash;
+      this.label = label;
+      this.left = left;
+      this.right = right;
+      size = size(left) + 1 + size(right);
+    }
+
+    public UidNode withChildren(@Nullable UidNode left, @Nullable UidNode right) {
+      return new UidNode(uid, hash, label, left, right);
+    }
+  }
+}
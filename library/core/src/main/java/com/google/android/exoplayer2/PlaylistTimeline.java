@@ -16,98 +16,82 @@
 package com.google.android.exoplayer2;
 
 import com.google.android.exoplayer2.source.ShuffleOrder;
-import com.google.android.exoplayer2.util.Util;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 
 /** Timeline exposing concatenated timelines of playlist media sources. */
 /* package */ final class PlaylistTimeline extends AbstractConcatenatedTimeline {
 
-  private final int windowCount;
-  private final int periodCount;
-  private final int[] firstPeriodInChildIndices;
-  private final int[] firstWindowInChildIndices;
-  private final Timeline[] timelines;
-  private final Object[] uids;
-  private final HashMap<Object, Integer> childIndexByUid;
+  private final PlaylistIndex playlistIndex;
 
   /** Creates an instance. */
   public PlaylistTimeline(
       Collection<? extends MediaSourceInfoHolder> mediaSourceInfoHolders,
       ShuffleOrder shuffleOrder) {
+    this(PlaylistIndex.create(mediaSourceInfoHolders), shuffleOrder);
+  }
+
+  /**
+   * Creates an instance from a {@link PlaylistIndex}, which allows creating the timeline of an
+   * edited playlist without iterating over all its media sources.
+   */
+  public PlaylistTimeline(PlaylistIndex playlistIndex, ShuffleOrder shuffleOrder) {
     super(/* isAtomic= */ false, shuffleOrder);
-    int childCount = mediaSourceInfoHolders.size();
-    firstPeriodInChildIndices = new int[childCount];
-    firstWindowInChildIndices = new int[childCount];
-    timelines = new Timeline[childCount];
-    uids = new Object[childCount];
-    childIndexByUid = new HashMap<>();
-    int index = 0;
-    int windowCount = 0;
-    int periodCount = 0;
-    for (MediaSourceInfoHolder mediaSourceInfoHolder : mediaSourceInfoHolders) {
-      timelines[index] = mediaSourceInfoHolder.getTimeline();
-      firstWindowInChildIndices[index] = windowCount;
-      firstPeriodInChildIndices[index] = periodCount;
-      windowCount += timelines[index].getWindowCount();
-      periodCount += timelines[index].getPeriodCount();
-      uids[index] = mediaSourceInfoHolder.getUid();
-      childIndexByUid.put(uids[index], index++);
-    }
-    this.windowCount = windowCount;
-    this.periodCount = periodCount;
+    this.playlistIndex = playlistIndex;
+  }
+
+  /** Returns the {@link PlaylistIndex} of the child timelines. */
+  /* package */ PlaylistIndex getPlaylistIndex() {
+    return playlistIndex;
   }
 
   /** Returns the child timelines. */
   /* package */ List<Timeline> getChildTimelines() {
-    return Arrays.asList(timelines);
+    return playlistIndex.getTimelines();
   }
 
   @Override
   protected int getChildIndexByPeriodIndex(int periodIndex) {
-    return Util.binarySearchFloor(firstPeriodInChildIndices, periodIndex + 1, false, false);
+    return playlistIndex.getChildIndexByPeriodIndex(periodIndex);
   }
 
   @Override
   protected int getChildIndexByWindowIndex(int windowIndex) {
-    return Util.binarySearchFloor(firstWindowInChildIndices, windowIndex + 1, false, false);
+    return playlistIndex.getChildIndexByWindowIndex(windowIndex);
   }
 
   @Override
   protected int getChildIndexByChildUid(Object childUid) {
-    Integer index = childIndexByUid.get(childUid);
-    return index == null ? C.INDEX_UNSET : index;
+    return playlistIndex.getChildIndexByUid(childUid);
   }
 
   @Override
   protected Timeline getTimelineByChildIndex(int childIndex) {
-    return timelines[childIndex];
+    return playlistIndex.getTimeline(childIndex);
   }
 
   @Override
   protected int getFirstPeriodIndexByChildIndex(int childIndex) {
-    return firstPeriodInChildIndices[childIndex];
+    return playlistIndex.getFirstPeriodIndex(childIndex);
   }
 
   @Override
   protected int getFirstWindowIndexByChildIndex(int childIndex) {
-    return firstWindowInChildIndices[childIndex];
+    return playlistIndex.getFirstWindowIndex(childIndex);
   }
 
   @Override
   protected Object getChildUidByChildIndex(int childIndex) {
-    return uids[childIndex];
+    return playlistIndex.getUid(childIndex);
   }
 
   @Override
   public int getWindowCount() {
-    return windowCount;
+    return playlistIndex.getWindowCount();
   }
 
   @Override
   public int getPeriodCount() {
-    return periodCount;
+    return playlistIndex.getPeriodCount();
   }
 }
@@ -229,6 +229,12 @@ public interface Renderer extends PlayerMessage.Target {
    */
   int STATE_STARTED = 2;
 
+  /**
+   * The default value returned by {@link #getDurationToProgressUs(long, long)}, matching the
+   * interval at which the player calls {@link #render(long, long)} during playback.
+   */
+  long DEFAULT_DURATION_TO_PROGRESS_US = 10_000;
+
   /**
    * Returns the name of this renderer, for logging and debugging purposes. Should typically be the
    * renderer's (un-obfuscated) class name.
@@ -440,6 +446,29 @@ public interface Renderer extends PlayerMessage.Target {
    */
   void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException;
 
+  /**
+   * Returns the minimum duration of playback after which the renderer needs {@link #render(long,
+   * long)} to be called again in order to make progress, in microseconds.
+   *
+   * <p>This is used by the player to avoid waking up the playback thread more often than needed
+   * when dynamic scheduling is enabled. Renderers that can't predict when they'll next be able to
+   * make progress should return {@link #DEFAULT_DURATION_TO_PROGRESS_US}, which is the default
+   * implementation.
+   *
+   * <p>This method may be called when the renderer is in the following states: {@link
+   * #STATE_ENABLED}, {@link #STATE_STARTED}.
+   *
+   * @param positionUs The current media time in microseconds, measured at the start of the current
+   *     iteration of the rendering loop.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds,
+   *     measured at the start of the current iteration of the rendering loop.
+   * @return The duration after which {@link #render(long, long)} should be called again, in
+   *     microseconds.
+   */
+  default long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    return DEFAULT_DURATION_TO_PROGRESS_US;
+  }
+
   /**
    * Whether the renderer is able to immediately render media from the current position.
    * <p>
@@ -117,6 +117,8 @@ public class SimpleExoPlayer extends BasePlayer
     private long releaseTimeoutMs;
     private long detachSurfaceTimeoutMs;
     private boolean pauseAtEndOfMediaItems;
+    private boolean dynamicSchedulingEnabled;
+    @Nullable private PlaybackThreadPool playbackThreadPool;
     private boolean buildCalled;
 
     /**
@@ -518,6 +520,45 @@ public class SimpleExoPlayer extends BasePlayer
       return this;
     }
 
+    /**
+     * Sets whether the playback loop is only run when renderers need to make progress, rather than
+     * at a fixed interval.
+     *
+     * <p>When enabled, the player uses {@link Renderer#getDurationToProgressUs(long, long)} to
+     * determine when to run the next iteration of its playback loop during playback, which may
+     * reduce power consumption. The playback position reported by the player is only updated when
+     * the loop runs.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param dynamicSchedulingEnabled Whether to enable dynamic scheduling.
+     * @return This builder.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder experimentalSetDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+      Assertions.checkState(!buildCalled);
+      this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
+      return this;
+    }
+
+    /**
+     * Sets the {@link PlaybackThreadPool} providing the thread on which the player runs its
+     * playback loop. Players that use the same pool share its threads. If not set, or set to {@code
+     * null}, the player uses a dedicated thread.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param playbackThreadPool The {@link PlaybackThreadPool}, or {@code null}.
+     * @return This builder.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder experimentalSetPlaybackThreadPool(
+        @Nullable PlaybackThreadPool playbackThreadPool) {
+      Assertions.checkState(!buildCalled);
+      this.playbackThreadPool = playbackThreadPool;
+      return this;
+    }
+
     /**
      * Sets the {@link LivePlaybackSpeedControl} that will control the playback speed when playing
      * live streams, in order to maintain a steady target offset from the live stream edge.
@@ -681,9 +722,13 @@ public class SimpleExoPlayer extends BasePlayer
             builder.livePlaybackSpeedControl,
             builder.releaseTimeoutMs,
             builder.pauseAtEndOfMediaItems,
+            builder.playbackThreadPool,
             builder.clock,
             builder.looper,
             /* wrappingPlayer= */ this);
+    if (builder.dynamicSchedulingEnabled) {
+      player.experimentalSetDynamicSchedulingEnabled(true);
+    }
     player.addListener(componentListener);
 
     audioBecomingNoisyManager =
@@ -1031,6 +1076,20 @@ public class SimpleExoPlayer extends BasePlayer
     analyticsCollector.addListener(listener);
   }
 
+  /**
+   * Adds an {@link AnalyticsListener} that only receives the given analytics events. Frequent
+   * events that no listener receives are not generated, which saves work on the playback thread.
+   *
+   * @param listener The listener to be added.
+   * @param eventFlags The {@link AnalyticsListener.EventFlags} of the events the listener receives.
+   */
+  public void addAnalyticsListener(
+      AnalyticsListener listener, @AnalyticsListener.EventFlags int... eventFlags) {
+    // Don't verify application thread. We allow calls to this method from any thread.
+    Assertions.checkNotNull(listener);
+    analyticsCollector.addListener(listener, eventFlags);
+  }
+
   /**
    * Removes an {@link AnalyticsListener}.
    *
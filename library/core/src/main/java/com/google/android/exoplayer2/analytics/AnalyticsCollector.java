@@ -46,6 +46,7 @@ import com.google.android.exoplayer2.source.MediaSourceEventListener;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.CdnSelector;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.ListenerSet;
@@ -69,6 +70,7 @@ public class AnalyticsCollector
         VideoRendererEventListener,
         MediaSourceEventListener,
         BandwidthMeter.EventListener,
+        CdnSelector.EventListener,
         DrmSessionEventListener {
 
   private final Clock clock;
@@ -111,6 +113,23 @@ public class AnalyticsCollector
     listeners.add(listener);
   }
 
+  /**
+   * Adds a listener that only receives the given analytics events.
+   *
+   * <p>Frequent events, like {@link AnalyticsListener#onAudioPositionAdvancing} and {@link
+   * AnalyticsListener#onVideoFrameProcessingOffset}, are not generated at all if no listener
+   * receives them, so listeners that only need a few events should subscribe to just those.
+   *
+   * @param listener The listener to add.
+   * @param eventFlags The {@link AnalyticsListener.EventFlags} of the events the listener receives.
+   */
+  @CallSuper
+  public void addListener(
+      AnalyticsListener listener, @AnalyticsListener.EventFlags int... eventFlags) {
+    Assertions.checkNotNull(listener);
+    listeners.add(listener, eventFlags);
+  }
+
   /**
    * Removes a previously added analytics event listener.
    *
@@ -198,6 +217,9 @@ public class AnalyticsCollector
    * @param metadata The metadata.
    */
   public final void onMetadata(Metadata metadata) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_METADATA)) {
+      return;
+    }
     EventTime eventTime = generateCurrentPlayerMediaPeriodEventTime();
     sendEvent(
         eventTime,
@@ -251,6 +273,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onAudioPositionAdvancing(long playoutStartSystemTimeMs) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_AUDIO_POSITION_ADVANCING)) {
+      return;
+    }
     EventTime eventTime = generateReadingMediaPeriodEventTime();
     sendEvent(
         eventTime,
@@ -396,6 +421,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onDroppedFrames(int count, long elapsedMs) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_DROPPED_VIDEO_FRAMES)) {
+      return;
+    }
     EventTime eventTime = generatePlayingMediaPeriodEventTime();
     sendEvent(
         eventTime,
@@ -448,6 +476,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onVideoFrameProcessingOffset(long totalProcessingOffsetUs, int frameCount) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_VIDEO_FRAME_PROCESSING_OFFSET)) {
+      return;
+    }
     EventTime eventTime = generatePlayingMediaPeriodEventTime();
     sendEvent(
         eventTime,
@@ -483,6 +514,9 @@ public class AnalyticsCollector
       @Nullable MediaPeriodId mediaPeriodId,
       LoadEventInfo loadEventInfo,
       MediaLoadData mediaLoadData) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_LOAD_STARTED)) {
+      return;
+    }
     EventTime eventTime = generateMediaPeriodEventTime(windowIndex, mediaPeriodId);
     sendEvent(
         eventTime,
@@ -496,6 +530,9 @@ public class AnalyticsCollector
       @Nullable MediaPeriodId mediaPeriodId,
       LoadEventInfo loadEventInfo,
       MediaLoadData mediaLoadData) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_LOAD_COMPLETED)) {
+      return;
+    }
     EventTime eventTime = generateMediaPeriodEventTime(windowIndex, mediaPeriodId);
     sendEvent(
         eventTime,
@@ -509,6 +546,9 @@ public class AnalyticsCollector
       @Nullable MediaPeriodId mediaPeriodId,
       LoadEventInfo loadEventInfo,
       MediaLoadData mediaLoadData) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_LOAD_CANCELED)) {
+      return;
+    }
     EventTime eventTime = generateMediaPeriodEventTime(windowIndex, mediaPeriodId);
     sendEvent(
         eventTime,
@@ -545,6 +585,9 @@ public class AnalyticsCollector
   @Override
   public final void onDownstreamFormatChanged(
       int windowIndex, @Nullable MediaPeriodId mediaPeriodId, MediaLoadData mediaLoadData) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_DOWNSTREAM_FORMAT_CHANGED)) {
+      return;
+    }
     EventTime eventTime = generateMediaPeriodEventTime(windowIndex, mediaPeriodId);
     sendEvent(
         eventTime,
@@ -719,6 +762,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onBandwidthSample(int elapsedMs, long bytes, long bitrate) {
+    if (!listeners.hasListenersFor(AnalyticsListener.EVENT_BANDWIDTH_ESTIMATE)) {
+      return;
+    }
     EventTime eventTime = generateLoadingMediaPeriodEventTime();
     sendEvent(
         eventTime,
@@ -726,6 +772,17 @@ public class AnalyticsCollector
         listener -> listener.onBandwidthEstimate(eventTime, elapsedMs, bytes, bitrate));
   }
 
+  // CdnSelector.EventListener implementation.
+
+  @Override
+  public final void onCdnStatsUpdated(CdnSelector.CdnStats cdnStats) {
+    EventTime eventTime = generateLoadingMediaPeriodEventTime();
+    sendEvent(
+        eventTime,
+        AnalyticsListener.EVENT_CDN_STATS_UPDATED,
+        listener -> listener.onCdnStatsUpdated(eventTime, cdnStats));
+  }
+
   // DefaultDrmSessionManager.EventListener implementation.
 
   @Override
@@ -42,6 +42,7 @@ import com.google.android.exoplayer2.source.MediaLoadData;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.CdnSelector;
 import com.google.android.exoplayer2.util.MutableFlags;
 import com.google.common.base.Objects;
 import java.io.IOException;
@@ -198,6 +199,7 @@ public interface AnalyticsListener {
     EVENT_DRM_KEYS_REMOVED,
     EVENT_DRM_SESSION_RELEASED,
     EVENT_PLAYER_RELEASED,
+    EVENT_CDN_STATS_UPDATED,
   })
   @interface EventFlags {}
   /** {@link Player#getCurrentTimeline()} changed. */
@@ -312,6 +314,8 @@ public interface AnalyticsListener {
   int EVENT_DRM_SESSION_RELEASED = 1035;
   /** The player was released. */
   int EVENT_PLAYER_RELEASED = 1036;
+  /** The statistics of a CDN used by a {@link CdnSelector} were updated. */
+  int EVENT_CDN_STATS_UPDATED = 1037;
 
   /** Time information of an event. */
   final class EventTime {
@@ -1023,6 +1027,17 @@ public interface AnalyticsListener {
    */
   default void onPlayerReleased(EventTime eventTime) {}
 
+  /**
+   * Called when the statistics of a CDN used by a {@link CdnSelector} have been updated.
+   *
+   * <p>This method is only called if the {@link AnalyticsCollector} has been added as a {@link
+   * CdnSelector.EventListener}.
+   *
+   * @param eventTime The event time.
+   * @param cdnStats The updated {@link CdnSelector.CdnStats}.
+   */
+  default void onCdnStatsUpdated(EventTime eventTime, CdnSelector.CdnStats cdnStats) {}
+
   /**
    * Called after one or more events occurred.
    *
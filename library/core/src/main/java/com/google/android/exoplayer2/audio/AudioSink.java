@@ -309,6 +309,16 @@ public interface AudioSink {
   /** Signals to the sink that the next buffer may be discontinuous with the previous buffer. */
   void handleDiscontinuity();
 
+  /**
+   * Signals to the sink that the next buffer is the first buffer of the next stream, for example
+   * the next item in a playlist. The next buffer may be discontinuous with the previous buffer.
+   *
+   * <p>The default implementation calls {@link #handleDiscontinuity()}.
+   */
+  default void handleStreamTransition() {
+    handleDiscontinuity();
+  }
+
   /**
    * Attempts to process data from a {@link ByteBuffer}, starting from its current position and
    * ending at its limit (exclusive). The position of the {@link ByteBuffer} is advanced by the
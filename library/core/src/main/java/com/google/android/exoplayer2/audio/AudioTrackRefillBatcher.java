@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * Batches writes to an {@link android.media.AudioTrack}. Once the track's buffer is full, writing
+ * is held off until the buffered duration falls to a threshold, so that the buffer is refilled in
+ * one batch rather than topped up every time a little audio has played out. This lets the playback
+ * thread sleep between refills.
+ */
+/* package */ final class AudioTrackRefillBatcher {
+
+  private final float refillThreshold;
+
+  private boolean waitingForRefill;
+
+  /**
+   * Creates an instance.
+   *
+   * @param refillThreshold The fraction of the buffer duration that must remain buffered for
+   *     writing to be held off after the buffer becomes full.
+   */
+  public AudioTrackRefillBatcher(float refillThreshold) {
+    Assertions.checkArgument(refillThreshold >= 0 && refillThreshold <= 1);
+    this.refillThreshold = refillThreshold;
+  }
+
+  /** Called when the track's buffer is full, so that writing is held off until a refill. */
+  public void onBufferFull() {
+    waitingForRefill = true;
+  }
+
+  /**
+   * Returns whether audio should be written to the track.
+   *
+   * @param bufferedDurationUs The duration of audio that's buffered in the track but not played.
+   * @param bufferDurationUs The duration of audio the track's buffer can hold.
+   * @return Whether audio should be written to the track.
+   */
+  public boolean shouldWrite(long bufferedDurationUs, long bufferDurationUs) {
+    if (waitingForRefill && bufferedDurationUs > bufferDurationUs * refillThreshold) {
+      return false;
+    }
+    waitingForRefill = false;
+    return true;
+  }
+
+  /** Resets the batcher, for example after the track is flushed. */
+  public void reset() {
+    waitingForRefill = false;
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
+/**
+ * Audio processor for crossfading between consecutive streams of 16-bit PCM audio with the same
+ * format.
+ *
+ * <p>The processor holds back the last frames of its input, up to the crossfade duration. If the
+ * end of stream is queued while {@link #setCrossfadeOnEndOfStream(boolean) crossfading on end of
+ * stream} is enabled and the next stream has the same format, the held back frames are faded out
+ * while the start of the next stream is faded in, using equal power gain curves. Otherwise, the
+ * held back frames are output unchanged at the end of the stream.
+ *
+ * <p>Each crossfade shortens the output by the overlapped duration. If a stream is shorter than
+ * the crossfade duration, only the available frames are overlapped. Users must account for the
+ * shortened output when mapping output frames to media time. {@link DefaultAudioSink} does this by
+ * mapping the start time of the next stream to the first crossfaded output frame.
+ */
+/* package */ final class CrossfadeAudioProcessor extends BaseAudioProcessor {
+
+  private long durationUs;
+  private boolean crossfadeOnEndOfStream;
+  private AudioFormat configuredInputAudioFormat;
+  private int channelCount;
+
+  // A ring buffer of the most recent input frames, which are held back for the next crossfade.
+  private short[] heldBackSamples;
+  private int heldBackCapacityFrames;
+  private int heldBackStartFrame;
+  private int heldBackFrameCount;
+
+  // The frames that are faded out at the start of the current stream.
+  private short[] fadeOutSamples;
+  private int fadeOutSampleRate;
+  private int fadeOutChannelCount;
+  private int fadeOutFrameCount;
+  private int fadeOutPosition;
+
+  /** Creates a new crossfade processor, which is inactive until a duration is set. */
+  public CrossfadeAudioProcessor() {
+    configuredInputAudioFormat = AudioFormat.NOT_SET;
+    heldBackSamples = new short[0];
+    fadeOutSamples = new short[0];
+  }
+
+  /**
+   * Sets the duration of crossfades between streams. Pass 0 to disable crossfading. After calling
+   * this method, call {@link #configure(AudioFormat)} to apply the new setting.
+   *
+   * @param durationUs The crossfade duration, in microseconds.
+   */
+  public void setDurationUs(long durationUs) {
+    Assertions.checkArgument(durationUs >= 0);
+    this.durationUs = durationUs;
+  }
+
+  /**
+   * Sets whether the next end of stream is a transition to another stream, which should be
+   * crossfaded with the end of the current stream. Must be enabled when the processor is flushed
+   * after the transition, and should be disabled before the next stream is queued.
+   *
+   * @param crossfadeOnEndOfStream Whether to crossfade into the next stream.
+   */
+  public void setCrossfadeOnEndOfStream(boolean crossfadeOnEndOfStream) {
+    this.crossfadeOnEndOfStream = crossfadeOnEndOfStream;
+  }
+
+  @Override
+  protected AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    configuredInputAudioFormat = durationUs > 0 ? inputAudioFormat : AudioFormat.NOT_SET;
+    return durationUs > 0 ? inputAudioFormat : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    int frameCount = (limit - position) / inputAudioFormat.bytesPerFrame;
+    if (frameCount == 0) {
+      return;
+    }
+    int outputFrameCount = max(0, heldBackFrameCount + frameCount - heldBackCapacityFrames);
+    ByteBuffer buffer = replaceOutputBuffer(outputFrameCount * outputAudioFormat.bytesPerFrame);
+    for (int frame = 0; frame < frameCount; frame++) {
+      int heldBackFrame;
+      if (heldBackFrameCount == heldBackCapacityFrames) {
+        // Output the oldest held back frame and reuse its slot for the new frame.
+        heldBackFrame = heldBackStartFrame;
+        int offset = heldBackFrame * channelCount;
+        for (int channel = 0; channel < channelCount; channel++) {
+          buffer.putShort(heldBackSamples[offset + channel]);
+        }
+        heldBackStartFrame = (heldBackStartFrame + 1) % heldBackCapacityFrames;
+      } else {
+        heldBackFrame = (heldBackStartFrame + heldBackFrameCount) % heldBackCapacityFrames;
+        heldBackFrameCount++;
+      }
+
+      int offset = heldBackFrame * channelCount;
+      if (fadeOutPosition < fadeOutFrameCount) {
+        double angle = (fadeOutPosition + 0.5) / fadeOutFrameCount * Math.PI / 2;
+        float fadeInGain = (float) Math.sin(angle);
+        float fadeOutGain = (float) Math.cos(angle);
+        int fadeOutOffset = fadeOutPosition * channelCount;
+        for (int channel = 0; channel < channelCount; channel++) {
+          float sample =
+              inputBuffer.getShort() * fadeInGain
+                  + fadeOutSamples[fadeOutOffset + channel] * fadeOutGain;
+          heldBackSamples[offset + channel] = clampToShort(sample);
+        }
+        fadeOutPosition++;
+      } else {
+        for (int channel = 0; channel < channelCount; channel++) {
+          heldBackSamples[offset + channel] = inputBuffer.getShort();
+        }
+      }
+    }
+    inputBuffer.position(limit);
+    buffer.flip();
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    if (crossfadeOnEndOfStream && isNextStreamCompatible()) {
+      if (heldBackFrameCount > 0) {
+        // Keep the held back frames to fade them out at the start of the next stream. Any part of
+        // an earlier fade out that hasn't been mixed into this stream yet is dropped.
+        for (int frame = 0; frame < heldBackFrameCount; frame++) {
+          System.arraycopy(
+              heldBackSamples,
+              ((heldBackStartFrame + frame) % heldBackCapacityFrames) * channelCount,
+              fadeOutSamples,
+              frame * channelCount,
+              channelCount);
+        }
+        fadeOutSampleRate = inputAudioFormat.sampleRate;
+        fadeOutChannelCount = channelCount;
+        fadeOutFrameCount = heldBackFrameCount;
+        fadeOutPosition = 0;
+        heldBackStartFrame = 0;
+        heldBackFrameCount = 0;
+      }
+      return;
+    }
+
+    // Output the held back frames, followed by the rest of any fade out that the stream was too
+    // short to cover.
+    int remainingFadeOutFrameCount = fadeOutFrameCount - fadeOutPosition;
+    ByteBuffer buffer =
+        replaceOutputBuffer(
+            (heldBackFrameCount + remainingFadeOutFrameCount) * outputAudioFormat.bytesPerFrame);
+    for (int frame = 0; frame < heldBackFrameCount; frame++) {
+      int offset = ((heldBackStartFrame + frame) % heldBackCapacityFrames) * channelCount;
+      for (int channel = 0; channel < channelCount; channel++) {
+        buffer.putShort(heldBackSamples[offset + channel]);
+      }
+    }
+    for (; fadeOutPosition < fadeOutFrameCount; fadeOutPosition++) {
+      double angle = (fadeOutPosition + 0.5) / fadeOutFrameCount * Math.PI / 2;
+      float fadeOutGain = (float) Math.cos(angle);
+      int offset = fadeOutPosition * channelCount;
+      for (int channel = 0; channel < channelCount; channel++) {
+        buffer.putShort(clampToShort(fadeOutSamples[offset + channel] * fadeOutGain));
+      }
+    }
+    buffer.flip();
+    heldBackStartFrame = 0;
+    heldBackFrameCount = 0;
+    fadeOutFrameCount = 0;
+    fadeOutPosition = 0;
+  }
+
+  @Override
+  protected void onFlush() {
+    heldBackStartFrame = 0;
+    heldBackFrameCount = 0;
+    if (!isActive()) {
+      heldBackCapacityFrames = 0;
+      fadeOutFrameCount = 0;
+      fadeOutPosition = 0;
+      return;
+    }
+    channelCount = inputAudioFormat.channelCount;
+    heldBackCapacityFrames =
+        (int) max(1, durationUs * inputAudioFormat.sampleRate / C.MICROS_PER_SECOND);
+    boolean keepFadeOut =
+        crossfadeOnEndOfStream
+            && fadeOutSampleRate == inputAudioFormat.sampleRate
+            && fadeOutChannelCount == channelCount
+            && fadeOutFrameCount <= heldBackCapacityFrames;
+    if (!keepFadeOut) {
+      fadeOutFrameCount = 0;
+      fadeOutPosition = 0;
+    }
+    int capacitySamples = heldBackCapacityFrames * channelCount;
+    if (heldBackSamples.length != capacitySamples) {
+      heldBackSamples = new short[capacitySamples];
+      short[] newFadeOutSamples = new short[capacitySamples];
+      System.arraycopy(
+          fadeOutSamples,
+          /* srcPos= */ 0,
+          newFadeOutSamples,
+          /* destPos= */ 0,
+          min(fadeOutSamples.length, fadeOutFrameCount * channelCount));
+      fadeOutSamples = newFadeOutSamples;
+    }
+  }
+
+  @Override
+  protected void onReset() {
+    durationUs = 0;
+    crossfadeOnEndOfStream = false;
+    configuredInputAudioFormat = AudioFormat.NOT_SET;
+    heldBackSamples = new short[0];
+    heldBackCapacityFrames = 0;
+    fadeOutSamples = new short[0];
+    fadeOutFrameCount = 0;
+    fadeOutPosition = 0;
+  }
+
+  /**
+   * Returns whether the format the processor was most recently configured with matches the current
+   * input format, so that the end of the current stream can be crossfaded into the next stream.
+   */
+  private boolean isNextStreamCompatible() {
+    return configuredInputAudioFormat.sampleRate == inputAudioFormat.sampleRate
+        && configuredInputAudioFormat.channelCount == inputAudioFormat.channelCount
+        && configuredInputAudioFormat.encoding == inputAudioFormat.encoding;
+  }
+
+  private static short clampToShort(float sample) {
+    return (short) Util.constrainValue(Math.round(sample), Short.MIN_VALUE, Short.MAX_VALUE);
+  }
+}
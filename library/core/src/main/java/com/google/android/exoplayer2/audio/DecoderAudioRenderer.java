@@ -394,6 +394,7 @@ public abstract class DecoderAudioRenderer<
               .buildUpon()
               .setEncoderDelay(encoderDelay)
               .setEncoderPadding(encoderPadding)
+              .setMetadata(inputFormat.metadata)
               .build();
       audioSink.configure(outputFormat, /* specifiedBufferSize= */ 0, /* outputChannels= */ null);
       audioTrackNeedsConfigure = false;
@@ -129,17 +129,39 @@ public final class DefaultAudioSink implements AudioSink {
      * flushed.
      */
     long getSkippedOutputFrameCount();
+
+    /**
+     * Configures audio processors for the format of the PCM input to the sink, before they are
+     * configured. The default implementation does nothing.
+     *
+     * @param inputFormat The format of the PCM input, including its {@link Format#metadata}.
+     */
+    default void applyInputFormat(Format inputFormat) {}
+
+    /**
+     * Returns the audio processors that apply playback parameters to 32-bit float PCM, which are
+     * used instead of {@link #getAudioProcessors()} when the sink outputs float PCM. The returned
+     * processors must handle {@link C#ENCODING_PCM_FLOAT} input, and their speed adjustment must
+     * be reflected by {@link #getMediaDuration(long)}. This method is called once during
+     * initialization, and only if float output is enabled. The default implementation returns an
+     * empty array, in which case playback parameters are not applied when outputting float PCM.
+     */
+    default AudioProcessor[] getFloatPcmAudioProcessors() {
+      return new AudioProcessor[0];
+    }
   }
 
   /**
    * The default audio processor chain, which applies a (possibly empty) chain of user-defined audio
-   * processors followed by {@link SilenceSkippingAudioProcessor} and {@link SonicAudioProcessor}.
+   * processors followed by an optional {@link LoudnessNormalizationAudioProcessor}, {@link
+   * SilenceSkippingAudioProcessor} and {@link SonicAudioProcessor}.
    */
   public static class DefaultAudioProcessorChain implements AudioProcessorChain {
 
     private final AudioProcessor[] audioProcessors;
     private final SilenceSkippingAudioProcessor silenceSkippingAudioProcessor;
     private final SonicAudioProcessor sonicAudioProcessor;
+    @Nullable private final LoudnessNormalizationAudioProcessor loudnessNormalizationAudioProcessor;
 
     /**
      * Creates a new default chain of audio processors, with the user-defined {@code
@@ -157,9 +179,29 @@ public final class DefaultAudioSink implements AudioSink {
         AudioProcessor[] audioProcessors,
         SilenceSkippingAudioProcessor silenceSkippingAudioProcessor,
         SonicAudioProcessor sonicAudioProcessor) {
+      this(
+          audioProcessors,
+          silenceSkippingAudioProcessor,
+          sonicAudioProcessor,
+          /* loudnessNormalizationAudioProcessor= */ null);
+    }
+
+    /**
+     * Creates a new default chain of audio processors, with the user-defined {@code
+     * audioProcessors} applied before loudness normalization, silence skipping and speed adjustment
+     * processors. The metadata of each input format is passed to {@code
+     * loudnessNormalizationAudioProcessor}, if specified, which must be enabled separately.
+     */
+    public DefaultAudioProcessorChain(
+        AudioProcessor[] audioProcessors,
+        SilenceSkippingAudioProcessor silenceSkippingAudioProcessor,
+        SonicAudioProcessor sonicAudioProcessor,
+        @Nullable LoudnessNormalizationAudioProcessor loudnessNormalizationAudioProcessor) {
+      int processorCount =
+          audioProcessors.length + (loudnessNormalizationAudioProcessor != null ? 3 : 2);
       // The passed-in type may be more specialized than AudioProcessor[], so allocate a new array
       // rather than using Arrays.copyOf.
-      this.audioProcessors = new AudioProcessor[audioProcessors.length + 2];
+      this.audioProcessors = new AudioProcessor[processorCount];
       System.arraycopy(
           /* src= */ audioProcessors,
           /* srcPos= */ 0,
@@ -168,8 +210,12 @@ public final class DefaultAudioSink implements AudioSink {
           /* length= */ audioProcessors.length);
       this.silenceSkippingAudioProcessor = silenceSkippingAudioProcessor;
       this.sonicAudioProcessor = sonicAudioProcessor;
-      this.audioProcessors[audioProcessors.length] = silenceSkippingAudioProcessor;
-      this.audioProcessors[audioProcessors.length + 1] = sonicAudioProcessor;
+      this.loudnessNormalizationAudioProcessor = loudnessNormalizationAudioProcessor;
+      if (loudnessNormalizationAudioProcessor != null) {
+        this.audioProcessors[processorCount - 3] = loudnessNormalizationAudioProcessor;
+      }
+      this.audioProcessors[processorCount - 2] = silenceSkippingAudioProcessor;
+      this.audioProcessors[processorCount - 1] = sonicAudioProcessor;
     }
 
     @Override
@@ -199,6 +245,19 @@ public final class DefaultAudioSink implements AudioSink {
     public long getSkippedOutputFrameCount() {
       return silenceSkippingAudioProcessor.getSkippedFrames();
     }
+
+    @Override
+    public AudioProcessor[] getFloatPcmAudioProcessors() {
+      sonicAudioProcessor.setFloatPcmEnabled(true);
+      return new AudioProcessor[] {sonicAudioProcessor};
+    }
+
+    @Override
+    public void applyInputFormat(Format inputFormat) {
+      if (loudnessNormalizationAudioProcessor != null) {
+        loudnessNormalizationAudioProcessor.setMetadata(inputFormat.metadata);
+      }
+    }
   }
 
   /** The default playback speed. */
@@ -232,6 +291,13 @@ public final class DefaultAudioSink implements AudioSink {
   private static final long PASSTHROUGH_BUFFER_DURATION_US = 250_000;
   /** The length for offload {@link AudioTrack} buffers, in microseconds. */
   private static final long OFFLOAD_BUFFER_DURATION_US = 50_000_000;
+  /** The length for PCM {@link AudioTrack} buffers in power saving mode, in microseconds. */
+  private static final long POWER_SAVING_BUFFER_DURATION_US = 2_000_000;
+  /**
+   * The fraction of the {@link AudioTrack} buffer that must have played out before it's refilled
+   * in power saving mode.
+   */
+  private static final float POWER_SAVING_REFILL_THRESHOLD = 0.5f;
 
   /**
    * A multiplication factor to apply to the minimum buffer size requested by the underlying {@link
@@ -273,10 +339,12 @@ public final class DefaultAudioSink implements AudioSink {
   @Nullable private final AudioCapabilities audioCapabilities;
   private final AudioProcessorChain audioProcessorChain;
   private final boolean enableFloatOutput;
-  private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
-  private final TrimmingAudioProcessor trimmingAudioProcessor;
+  private final FusedPcmAudioProcessor fusedPcmAudioProcessor;
+  private final CrossfadeAudioProcessor crossfadeAudioProcessor;
+  private final AudioTrackRefillBatcher audioTrackRefillBatcher;
   private final AudioProcessor[] toIntPcmAvailableAudioProcessors;
   private final AudioProcessor[] toFloatPcmAvailableAudioProcessors;
+  private final boolean hasFloatPcmPlaybackParameterProcessors;
   private final ConditionVariable releasingConditionVariable;
   private final AudioTrackPositionTracker audioTrackPositionTracker;
   private final ArrayDeque<MediaPositionParameters> mediaPositionParametersCheckpoints;
@@ -320,6 +388,9 @@ public final class DefaultAudioSink implements AudioSink {
   private int drainingAudioProcessorIndex;
   private boolean handledEndOfStream;
   private boolean stoppedAudioTrack;
+  private long crossfadeDurationUs;
+  private boolean powerSavingModeEnabled;
+  private boolean streamTransitionPending;
 
   private boolean playing;
   private boolean externalAudioSessionIdProvided;
@@ -402,17 +473,23 @@ public final class DefaultAudioSink implements AudioSink {
     this.enableOffload = Util.SDK_INT >= 29 && enableOffload;
     releasingConditionVariable = new ConditionVariable(true);
     audioTrackPositionTracker = new AudioTrackPositionTracker(new PositionTrackerListener());
-    channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
-    trimmingAudioProcessor = new TrimmingAudioProcessor();
+    // Conversion to 16-bit, channel mapping and trimming are applied in a single pass.
+    fusedPcmAudioProcessor = new FusedPcmAudioProcessor();
     ArrayList<AudioProcessor> toIntPcmAudioProcessors = new ArrayList<>();
-    Collections.addAll(
-        toIntPcmAudioProcessors,
-        new ResamplingAudioProcessor(),
-        channelMappingAudioProcessor,
-        trimmingAudioProcessor);
+    toIntPcmAudioProcessors.add(fusedPcmAudioProcessor);
     Collections.addAll(toIntPcmAudioProcessors, audioProcessorChain.getAudioProcessors());
+    crossfadeAudioProcessor = new CrossfadeAudioProcessor();
+    toIntPcmAudioProcessors.add(crossfadeAudioProcessor);
+    audioTrackRefillBatcher = new AudioTrackRefillBatcher(POWER_SAVING_REFILL_THRESHOLD);
     toIntPcmAvailableAudioProcessors = toIntPcmAudioProcessors.toArray(new AudioProcessor[0]);
-    toFloatPcmAvailableAudioProcessors = new AudioProcessor[] {new FloatResamplingAudioProcessor()};
+    ArrayList<AudioProcessor> toFloatPcmAudioProcessors = new ArrayList<>();
+    toFloatPcmAudioProcessors.add(new FloatResamplingAudioProcessor());
+    if (this.enableFloatOutput) {
+      Collections.addAll(
+          toFloatPcmAudioProcessors, audioProcessorChain.getFloatPcmAudioProcessors());
+    }
+    hasFloatPcmPlaybackParameterProcessors = toFloatPcmAudioProcessors.size() > 1;
+    toFloatPcmAvailableAudioProcessors = toFloatPcmAudioProcessors.toArray(new AudioProcessor[0]);
     volume = 1f;
     audioAttributes = AudioAttributes.DEFAULT;
     audioSessionId = C.AUDIO_SESSION_ID_UNSET;
@@ -504,7 +581,8 @@ public final class DefaultAudioSink implements AudioSink {
               ? toFloatPcmAvailableAudioProcessors
               : toIntPcmAvailableAudioProcessors;
 
-      trimmingAudioProcessor.setTrimFrameCount(
+      crossfadeAudioProcessor.setDurationUs(crossfadeDurationUs);
+      fusedPcmAudioProcessor.setTrimFrameCount(
           inputFormat.encoderDelay, inputFormat.encoderPadding);
 
       if (Util.SDK_INT < 21 && inputFormat.channelCount == 8 && outputChannels == null) {
@@ -515,7 +593,8 @@ public final class DefaultAudioSink implements AudioSink {
           outputChannels[i] = i;
         }
       }
-      channelMappingAudioProcessor.setChannelMap(outputChannels);
+      fusedPcmAudioProcessor.setChannelMap(outputChannels);
+      audioProcessorChain.applyInputFormat(inputFormat);
 
       AudioProcessor.AudioFormat outputFormat =
           new AudioProcessor.AudioFormat(
@@ -583,6 +662,7 @@ public final class DefaultAudioSink implements AudioSink {
             outputEncoding,
             specifiedBufferSize,
             enableAudioTrackPlaybackParams,
+            powerSavingModeEnabled,
             availableAudioProcessors);
     if (isAudioTrackInitialized()) {
       this.pendingConfiguration = pendingConfiguration;
@@ -661,6 +741,15 @@ public final class DefaultAudioSink implements AudioSink {
     startMediaTimeUsNeedsSync = true;
   }
 
+  @Override
+  public void handleStreamTransition() {
+    // The resynchronization adds a media position checkpoint at the first frame written for the new
+    // stream. If the end of the previous stream is crossfaded, the overlapped frames are never
+    // written, so the checkpoint also skips the overlapped duration of the media timeline.
+    startMediaTimeUsNeedsSync = true;
+    streamTransitionPending = true;
+  }
+
   @Override
   @SuppressWarnings("ReferenceEquality")
   public boolean handleBuffer(
@@ -668,6 +757,14 @@ public final class DefaultAudioSink implements AudioSink {
       throws InitializationException, WriteException {
     Assertions.checkArgument(inputBuffer == null || buffer == inputBuffer);
 
+    if (streamTransitionPending) {
+      // Crossfade into the new stream when draining the audio processors, unless the audio track
+      // needs to be recreated.
+      crossfadeAudioProcessor.setCrossfadeOnEndOfStream(
+          pendingConfiguration == null || pendingConfiguration.canReuseAudioTrack(configuration));
+      streamTransitionPending = false;
+    }
+
     if (pendingConfiguration != null) {
       if (!drainToEndOfStream()) {
         // There's still pending data in audio processors to write to the track.
@@ -726,6 +823,15 @@ public final class DefaultAudioSink implements AudioSink {
       return false;
     }
 
+    if (powerSavingModeEnabled
+        && configuration.outputMode == OUTPUT_MODE_PCM
+        && !audioTrackRefillBatcher.shouldWrite(
+            C.msToUs(audioTrackPositionTracker.getPendingBufferDurationMs(getWrittenFrames())),
+            configuration.getBufferDurationUs())) {
+      // Wait until enough audio has played out to refill the audio track in one batch.
+      return false;
+    }
+
     if (inputBuffer == null) {
       // We are seeing this buffer for the first time.
       Assertions.checkArgument(buffer.order() == ByteOrder.LITTLE_ENDIAN);
@@ -759,7 +865,7 @@ public final class DefaultAudioSink implements AudioSink {
       long expectedPresentationTimeUs =
           startMediaTimeUs
               + configuration.inputFramesToDurationUs(
-                  getSubmittedFrames() - trimmingAudioProcessor.getTrimmedFrameCount());
+                  getSubmittedFrames() - fusedPcmAudioProcessor.getTrimmedFrameCount());
       if (!startMediaTimeUsNeedsSync
           && Math.abs(expectedPresentationTimeUs - presentationTimeUs) > 200000) {
         Log.e(
@@ -781,7 +887,9 @@ public final class DefaultAudioSink implements AudioSink {
         long adjustmentUs = presentationTimeUs - expectedPresentationTimeUs;
         startMediaTimeUs += adjustmentUs;
         startMediaTimeUsNeedsSync = false;
-        // Re-apply playback parameters because the startMediaTimeUs changed.
+        // Re-apply playback parameters because the startMediaTimeUs changed. This also maps the
+        // current buffer's start time to the next written frame, which is the first crossfaded
+        // frame if the previous stream's held back frames are being crossfaded into this buffer.
         applyAudioProcessorPlaybackParametersAndSkipSilence(presentationTimeUs);
         if (listener != null && adjustmentUs != 0) {
           listener.onPositionDiscontinuity();
@@ -794,6 +902,8 @@ public final class DefaultAudioSink implements AudioSink {
         submittedEncodedFrames += framesPerEncodedSample * encodedAccessUnitCount;
       }
 
+      // The audio processors are drained, so any crossfade into this stream has been set up.
+      crossfadeAudioProcessor.setCrossfadeOnEndOfStream(false);
       inputBuffer = buffer;
       inputBufferAccessUnitCount = encodedAccessUnitCount;
     }
@@ -959,6 +1069,9 @@ public final class DefaultAudioSink implements AudioSink {
 
     if (configuration.outputMode == OUTPUT_MODE_PCM) {
       writtenPcmBytes += bytesWritten;
+      if (bytesWritten < bytesRemaining) {
+        audioTrackRefillBatcher.onBufferFull();
+      }
     }
     if (bytesWritten == bytesRemaining) {
       if (configuration.outputMode != OUTPUT_MODE_PCM) {
@@ -1067,6 +1180,49 @@ public final class DefaultAudioSink implements AudioSink {
     return getMediaPositionParameters().skipSilence;
   }
 
+  /**
+   * Sets the duration of crossfades between consecutive streams, which are signaled using {@link
+   * #handleStreamTransition()}. The end of each stream is overlapped with the start of the next
+   * stream if both have the same format, so that the audio track doesn't need to be recreated.
+   * Crossfading is only applied when outputting 16-bit integer PCM, and takes effect from the next
+   * call to {@link #configure(Format, int, int[])}.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param crossfadeDurationUs The crossfade duration, in microseconds, or 0 to disable
+   *     crossfading.
+   */
+  public void experimentalSetCrossfadeDurationUs(long crossfadeDurationUs) {
+    Assertions.checkArgument(crossfadeDurationUs >= 0);
+    this.crossfadeDurationUs = crossfadeDurationUs;
+  }
+
+  /**
+   * Sets whether to use power saving mode for PCM output, which is intended for audio-only playback
+   * in the background. In power saving mode, a much larger {@link AudioTrack} buffer is used, and
+   * once it's full it's only refilled after half of it has played out.
+   *
+   * <p>Power saving mode only reduces how often the playback thread wakes up if {@link
+   * com.google.android.exoplayer2.ExoPlayer.Builder#experimentalSetDynamicSchedulingEnabled
+   * dynamic scheduling} is also enabled on the player, which lets the thread sleep until the next
+   * refill is due. Without it, the playback thread still wakes up every 10 ms during playback, and
+   * only the number of writes to the {@link AudioTrack} is reduced.
+   *
+   * <p>The larger buffer takes effect when the audio track is next created, and increases the
+   * latency of changes such as volume and playback speed adjustments that are applied by audio
+   * processors.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param powerSavingModeEnabled Whether to use power saving mode.
+   */
+  public void experimentalSetPowerSavingModeEnabled(boolean powerSavingModeEnabled) {
+    this.powerSavingModeEnabled = powerSavingModeEnabled;
+    if (!powerSavingModeEnabled) {
+      audioTrackRefillBatcher.reset();
+    }
+  }
+
   @Override
   public void setAudioAttributes(AudioAttributes audioAttributes) {
     if (this.audioAttributes.equals(audioAttributes)) {
@@ -1267,7 +1423,10 @@ public final class DefaultAudioSink implements AudioSink {
     drainingAudioProcessorIndex = C.INDEX_UNSET;
     avSyncHeader = null;
     bytesUntilNextAvSync = 0;
-    trimmingAudioProcessor.resetTrimmedFrameCount();
+    fusedPcmAudioProcessor.resetTrimmedFrameCount();
+    audioTrackRefillBatcher.reset();
+    streamTransitionPending = false;
+    crossfadeAudioProcessor.setCrossfadeOnEndOfStream(false);
     flushAudioProcessors();
   }
 
@@ -1336,7 +1495,7 @@ public final class DefaultAudioSink implements AudioSink {
             ? audioProcessorChain.applyPlaybackParameters(getAudioProcessorPlaybackParameters())
             : PlaybackParameters.DEFAULT;
     boolean skipSilenceEnabled =
-        shouldApplyAudioProcessorPlaybackParameters()
+        shouldApplyAudioProcessorSkipSilence()
             ? audioProcessorChain.applySkipSilenceEnabled(getSkipSilenceEnabled())
             : DEFAULT_SKIP_SILENCE;
     mediaPositionParametersCheckpoints.add(
@@ -1362,9 +1521,21 @@ public final class DefaultAudioSink implements AudioSink {
     //   https://github.com/google/ExoPlayer/issues/4803);
     // - when playing encoded audio via passthrough/offload, because modifying the audio stream
     //   would require decoding/re-encoding; and
-    // - when outputting float PCM audio, because SonicAudioProcessor outputs 16-bit integer PCM.
+    // - when outputting float PCM audio, unless the audio processor chain provides processors
+    //   that apply playback parameters to float PCM.
     return !tunneling
         && MimeTypes.AUDIO_RAW.equals(configuration.inputFormat.sampleMimeType)
+        && (!shouldUseFloatOutput(configuration.inputFormat.pcmEncoding)
+            || hasFloatPcmPlaybackParameterProcessors);
+  }
+
+  /**
+   * Returns whether audio processor silence skipping should be applied in the current
+   * configuration.
+   */
+  private boolean shouldApplyAudioProcessorSkipSilence() {
+    // Silence skipping only handles 16-bit integer PCM, so it's not applied when outputting float.
+    return shouldApplyAudioProcessorPlaybackParameters()
         && !shouldUseFloatOutput(configuration.inputFormat.pcmEncoding);
   }
 
@@ -1930,6 +2101,7 @@ public final class DefaultAudioSink implements AudioSink {
         int outputEncoding,
         int specifiedBufferSize,
         boolean enableAudioTrackPlaybackParams,
+        boolean powerSavingModeEnabled,
         AudioProcessor[] availableAudioProcessors) {
       this.inputFormat = inputFormat;
       this.inputPcmFrameSize = inputPcmFrameSize;
@@ -1941,7 +2113,9 @@ public final class DefaultAudioSink implements AudioSink {
       this.availableAudioProcessors = availableAudioProcessors;
 
       // Call computeBufferSize() last as it depends on the other configuration values.
-      this.bufferSize = computeBufferSize(specifiedBufferSize, enableAudioTrackPlaybackParams);
+      this.bufferSize =
+          computeBufferSize(
+              specifiedBufferSize, enableAudioTrackPlaybackParams, powerSavingModeEnabled);
     }
 
     /** Returns if the configurations are sufficiently compatible to reuse the audio track. */
@@ -1961,6 +2135,11 @@ public final class DefaultAudioSink implements AudioSink {
       return (frameCount * C.MICROS_PER_SECOND) / outputSampleRate;
     }
 
+    /** Returns the duration of audio the audio track's buffer can hold, for PCM output. */
+    public long getBufferDurationUs() {
+      return framesToDurationUs(bufferSize / outputPcmFrameSize);
+    }
+
     public long durationUsToFrames(long durationUs) {
       return (durationUs * outputSampleRate) / C.MICROS_PER_SECOND;
     }
@@ -2065,14 +2244,17 @@ public final class DefaultAudioSink implements AudioSink {
     }
 
     private int computeBufferSize(
-        int specifiedBufferSize, boolean enableAudioTrackPlaybackParameters) {
+        int specifiedBufferSize,
+        boolean enableAudioTrackPlaybackParameters,
+        boolean powerSavingModeEnabled) {
       if (specifiedBufferSize != 0) {
         return specifiedBufferSize;
       }
       switch (outputMode) {
         case OUTPUT_MODE_PCM:
           return getPcmDefaultBufferSize(
-              enableAudioTrackPlaybackParameters ? MAX_PLAYBACK_SPEED : DEFAULT_PLAYBACK_SPEED);
+              enableAudioTrackPlaybackParameters ? MAX_PLAYBACK_SPEED : DEFAULT_PLAYBACK_SPEED,
+              powerSavingModeEnabled);
         case OUTPUT_MODE_OFFLOAD:
           return getEncodedDefaultBufferSize(OFFLOAD_BUFFER_DURATION_US);
         case OUTPUT_MODE_PASSTHROUGH:
@@ -2090,14 +2272,19 @@ public final class DefaultAudioSink implements AudioSink {
       return (int) (bufferDurationUs * rate / C.MICROS_PER_SECOND);
     }
 
-    private int getPcmDefaultBufferSize(float maxAudioTrackPlaybackSpeed) {
+    private int getPcmDefaultBufferSize(
+        float maxAudioTrackPlaybackSpeed, boolean powerSavingModeEnabled) {
       int minBufferSize =
           AudioTrack.getMinBufferSize(outputSampleRate, outputChannelConfig, outputEncoding);
       Assertions.checkState(minBufferSize != AudioTrack.ERROR_BAD_VALUE);
       int multipliedBufferSize = minBufferSize * BUFFER_MULTIPLICATION_FACTOR;
-      int minAppBufferSize = (int) durationUsToFrames(MIN_BUFFER_DURATION_US) * outputPcmFrameSize;
+      long minBufferDurationUs =
+          powerSavingModeEnabled ? POWER_SAVING_BUFFER_DURATION_US : MIN_BUFFER_DURATION_US;
+      long maxBufferDurationUs =
+          powerSavingModeEnabled ? POWER_SAVING_BUFFER_DURATION_US : MAX_BUFFER_DURATION_US;
+      int minAppBufferSize = (int) durationUsToFrames(minBufferDurationUs) * outputPcmFrameSize;
       int maxAppBufferSize =
-          max(minBufferSize, (int) durationUsToFrames(MAX_BUFFER_DURATION_US) * outputPcmFrameSize);
+          max(minBufferSize, (int) durationUsToFrames(maxBufferDurationUs) * outputPcmFrameSize);
       int bufferSize =
           Util.constrainValue(multipliedBufferSize, minAppBufferSize, maxAppBufferSize);
       if (maxAudioTrackPlaybackSpeed != 1f) {
@@ -66,6 +66,11 @@ public class ForwardingAudioSink implements AudioSink {
     sink.handleDiscontinuity();
   }
 
+  @Override
+  public void handleStreamTransition() {
+    sink.handleStreamTransition();
+  }
+
   @Override
   public boolean handleBuffer(
       ByteBuffer buffer, long presentationTimeUs, int encodedAccessUnitCount)
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An {@link AudioProcessor} that converts PCM audio to 16-bit integer PCM, applies a channel
+ * mapping and trims frames from the start and end of the data in a single pass.
+ *
+ * <p>The output is the same as the output of a {@link ResamplingAudioProcessor}, a {@link
+ * ChannelMappingAudioProcessor} and a {@link TrimmingAudioProcessor} applied one after the other,
+ * but each input sample is only read and written once, and no intermediate buffers are needed.
+ * Frames trimmed from the start of the data are skipped without being converted.
+ *
+ * <p>The input encodings supported by {@link ResamplingAudioProcessor} are supported.
+ */
+/* package */ final class FusedPcmAudioProcessor extends BaseAudioProcessor {
+
+  @Nullable private int[] pendingOutputChannels;
+  private int trimStartFrames;
+  private int trimEndFrames;
+  private boolean reconfigurationPending;
+
+  @Nullable private int[] channelMap;
+  private boolean isIdentityChannelMap;
+  private int bytesPerInputSample;
+  private int pendingTrimStartFrames;
+  private byte[] endBuffer;
+  private ByteBuffer endByteBuffer;
+  private int endBufferSize;
+  private long trimmedFrameCount;
+
+  /** Creates a new fused PCM audio processor. */
+  public FusedPcmAudioProcessor() {
+    endBuffer = Util.EMPTY_BYTE_ARRAY;
+    endByteBuffer = EMPTY_BUFFER;
+  }
+
+  /**
+   * Resets the channel mapping. After calling this method, call {@link #configure(AudioFormat)} to
+   * start using the new channel map.
+   *
+   * @param outputChannels The mapping from input to output channel indices, or {@code null} to
+   *     leave the input unchanged.
+   * @see AudioSink#configure(com.google.android.exoplayer2.Format, int, int[])
+   */
+  public void setChannelMap(@Nullable int[] outputChannels) {
+    pendingOutputChannels = outputChannels;
+  }
+
+  /**
+   * Sets the number of audio frames to trim from the start and end of audio passed to this
+   * processor. After calling this method, call {@link #configure(AudioFormat)} to apply the new
+   * trimming frame counts.
+   *
+   * @param trimStartFrames The number of audio frames to trim from the start of audio.
+   * @param trimEndFrames The number of audio frames to trim from the end of audio.
+   * @see AudioSink#configure(com.google.android.exoplayer2.Format, int, int[])
+   */
+  public void setTrimFrameCount(int trimStartFrames, int trimEndFrames) {
+    this.trimStartFrames = trimStartFrames;
+    this.trimEndFrames = trimEndFrames;
+  }
+
+  /** Sets the trimmed frame count returned by {@link #getTrimmedFrameCount()} to zero. */
+  public void resetTrimmedFrameCount() {
+    trimmedFrameCount = 0;
+  }
+
+  /**
+   * Returns the number of audio frames trimmed since the last call to {@link
+   * #resetTrimmedFrameCount()}.
+   */
+  public long getTrimmedFrameCount() {
+    return trimmedFrameCount;
+  }
+
+  @Override
+  public AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    @C.PcmEncoding int encoding = inputAudioFormat.encoding;
+    if (encoding != C.ENCODING_PCM_8BIT
+        && encoding != C.ENCODING_PCM_16BIT
+        && encoding != C.ENCODING_PCM_16BIT_BIG_ENDIAN
+        && encoding != C.ENCODING_PCM_24BIT
+        && encoding != C.ENCODING_PCM_32BIT
+        && encoding != C.ENCODING_PCM_FLOAT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    boolean active = encoding != C.ENCODING_PCM_16BIT || trimStartFrames != 0 || trimEndFrames != 0;
+    int outputChannelCount = inputAudioFormat.channelCount;
+    @Nullable int[] outputChannels = pendingOutputChannels;
+    if (outputChannels != null) {
+      active |= inputAudioFormat.channelCount != outputChannels.length;
+      for (int i = 0; i < outputChannels.length; i++) {
+        int channelIndex = outputChannels[i];
+        if (channelIndex >= inputAudioFormat.channelCount) {
+          throw new UnhandledAudioFormatException(inputAudioFormat);
+        }
+        active |= (channelIndex != i);
+      }
+      outputChannelCount = outputChannels.length;
+    }
+    reconfigurationPending = true;
+    return active
+        ? new AudioFormat(inputAudioFormat.sampleRate, outputChannelCount, C.ENCODING_PCM_16BIT)
+        : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    int inputBytesPerFrame = inputAudioFormat.bytesPerFrame;
+    int frameCount = (limit - position) / inputBytesPerFrame;
+
+    if (frameCount == 0) {
+      return;
+    }
+
+    // Skip any pending start frames, without converting them.
+    int trimFrames = min(frameCount, pendingTrimStartFrames);
+    trimmedFrameCount += trimFrames;
+    pendingTrimStartFrames -= trimFrames;
+    position += trimFrames * inputBytesPerFrame;
+    frameCount -= trimFrames;
+    if (pendingTrimStartFrames > 0) {
+      // Nothing to output yet.
+      inputBuffer.position(limit);
+      return;
+    }
+
+    // endBuffer must be kept as full as possible, so that we trim the right amount of media if we
+    // don't receive any more input. The output is any surplus frames currently in endBuffer
+    // followed by any surplus frames in the new input, and the remaining input frames are converted
+    // directly into endBuffer.
+    int outputBytesPerFrame = outputAudioFormat.bytesPerFrame;
+    int endBufferFrames = endBufferSize / outputBytesPerFrame;
+    int endBufferCapacityFrames = endBuffer.length / outputBytesPerFrame;
+    int framesToOutput = max(0, endBufferFrames + frameCount - endBufferCapacityFrames);
+    ByteBuffer buffer = replaceOutputBuffer(framesToOutput * outputBytesPerFrame);
+
+    // Output from endBuffer.
+    int endBufferFramesToOutput = min(framesToOutput, endBufferFrames);
+    int endBufferBytesToOutput = endBufferFramesToOutput * outputBytesPerFrame;
+    buffer.put(endBuffer, 0, endBufferBytesToOutput);
+
+    // Output from inputBuffer.
+    int inputFramesToOutput = framesToOutput - endBufferFramesToOutput;
+    convertFrames(inputBuffer, position, inputFramesToOutput, buffer);
+    position += inputFramesToOutput * inputBytesPerFrame;
+
+    // Compact endBuffer, then repopulate it using the new input.
+    endBufferSize -= endBufferBytesToOutput;
+    System.arraycopy(endBuffer, endBufferBytesToOutput, endBuffer, 0, endBufferSize);
+    int inputFramesToBuffer = frameCount - inputFramesToOutput;
+    endByteBuffer.clear();
+    endByteBuffer.position(endBufferSize);
+    convertFrames(inputBuffer, position, inputFramesToBuffer, endByteBuffer);
+    endBufferSize += inputFramesToBuffer * outputBytesPerFrame;
+
+    inputBuffer.position(limit);
+    buffer.flip();
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    if (super.isEnded() && endBufferSize > 0) {
+      // Because audio processors may be drained in the middle of the stream we assume that the
+      // contents of the end buffer need to be output. For gapless transitions, configure will
+      // always be called, so the end buffer is cleared in onQueueEndOfStream.
+      replaceOutputBuffer(endBufferSize).put(endBuffer, 0, endBufferSize).flip();
+      endBufferSize = 0;
+    }
+    return super.getOutput();
+  }
+
+  @Override
+  public boolean isEnded() {
+    return super.isEnded() && endBufferSize == 0;
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    if (reconfigurationPending) {
+      // Trim audio in the end buffer.
+      if (endBufferSize > 0) {
+        trimmedFrameCount += endBufferSize / outputAudioFormat.bytesPerFrame;
+      }
+      endBufferSize = 0;
+    }
+  }
+
+  @Override
+  protected void onFlush() {
+    if (outputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+      // The processor is not active.
+      channelMap = null;
+      reconfigurationPending = false;
+      endBufferSize = 0;
+      return;
+    }
+    if (reconfigurationPending) {
+      // Flushing activates the new configuration, so prepare to trim frames from the start/end.
+      reconfigurationPending = false;
+      @Nullable int[] outputChannels = pendingOutputChannels;
+      channelMap = new int[outputAudioFormat.channelCount];
+      isIdentityChannelMap = inputAudioFormat.channelCount == outputAudioFormat.channelCount;
+      for (int i = 0; i < channelMap.length; i++) {
+        channelMap[i] = outputChannels != null ? outputChannels[i] : i;
+        isIdentityChannelMap &= channelMap[i] == i;
+      }
+      bytesPerInputSample = inputAudioFormat.bytesPerFrame / inputAudioFormat.channelCount;
+      endBuffer = new byte[trimEndFrames * outputAudioFormat.bytesPerFrame];
+      endByteBuffer = ByteBuffer.wrap(endBuffer).order(ByteOrder.nativeOrder());
+      pendingTrimStartFrames = trimStartFrames;
+    }
+
+    // Flushing also occurs when seeking within a stream. Like TrimmingAudioProcessor, this
+    // implementation doesn't trim the start again after a seek to the start, and doesn't cancel
+    // pending start trimming after a seek to a non-zero position, as input timestamps aren't
+    // available here.
+
+    // Any data in the end buffer should no longer be output if we are playing from a different
+    // position, so discard it and refill the buffer using new input.
+    endBufferSize = 0;
+  }
+
+  @Override
+  protected void onReset() {
+    pendingOutputChannels = null;
+    channelMap = null;
+    endBuffer = Util.EMPTY_BYTE_ARRAY;
+    endByteBuffer = EMPTY_BUFFER;
+  }
+
+  /**
+   * Converts {@code frameCount} frames starting at {@code position} in {@code inputBuffer} to
+   * 16-bit PCM with the output channel layout, and writes them to {@code outputBuffer}. The
+   * position of {@code inputBuffer} is not changed.
+   */
+  private void convertFrames(
+      ByteBuffer inputBuffer, int position, int frameCount, ByteBuffer outputBuffer) {
+    if (frameCount == 0) {
+      return;
+    }
+    int[] channelMap = Assertions.checkNotNull(this.channelMap);
+    int inputBytesPerFrame = inputAudioFormat.bytesPerFrame;
+    int limit = position + frameCount * inputBytesPerFrame;
+    int bytesPerInputSample = this.bytesPerInputSample;
+    // The switch is hoisted out of the per-sample loops, so that each loop body is a short sequence
+    // of absolute reads and relative writes.
+    switch (inputAudioFormat.encoding) {
+      case C.ENCODING_PCM_16BIT:
+        if (isIdentityChannelMap) {
+          // Only trimming is applied, so copy the frames in bulk.
+          int originalPosition = inputBuffer.position();
+          int originalLimit = inputBuffer.limit();
+          inputBuffer.limit(limit);
+          inputBuffer.position(position);
+          outputBuffer.put(inputBuffer);
+          inputBuffer.limit(originalLimit);
+          inputBuffer.position(originalPosition);
+        } else {
+          for (int frame = position; frame < limit; frame += inputBytesPerFrame) {
+            for (int channelIndex : channelMap) {
+              outputBuffer.putShort(inputBuffer.getShort(frame + 2 * channelIndex));
+            }
+          }
+        }
+        break;
+      case C.ENCODING_PCM_8BIT:
+        // 8 -> 16 bit resampling. Shift each byte from [0, 256) to [-128, 128) and scale up.
+        for (int frame = position; frame < limit; frame += inputBytesPerFrame) {
+          for (int channelIndex : channelMap) {
+            outputBuffer.put((byte) 0);
+            outputBuffer.put((byte) ((inputBuffer.get(frame + channelIndex) & 0xFF) - 128));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_16BIT_BIG_ENDIAN:
+        // Big endian to little endian resampling. Swap the byte order.
+        for (int frame = position; frame < limit; frame += inputBytesPerFrame) {
+          for (int channelIndex : channelMap) {
+            int sample = frame + channelIndex * bytesPerInputSample;
+            outputBuffer.put(inputBuffer.get(sample + 1));
+            outputBuffer.put(inputBuffer.get(sample));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_24BIT:
+        // 24 -> 16 bit resampling. Drop the least significant byte.
+        for (int frame = position; frame < limit; frame += inputBytesPerFrame) {
+          for (int channelIndex : channelMap) {
+            int sample = frame + channelIndex * bytesPerInputSample;
+            outputBuffer.put(inputBuffer.get(sample + 1));
+            outputBuffer.put(inputBuffer.get(sample + 2));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_32BIT:
+        // 32 -> 16 bit resampling. Drop the two least significant bytes.
+        for (int frame = position; frame < limit; frame += inputBytesPerFrame) {
+          for (int channelIndex : channelMap) {
+            int sample = frame + channelIndex * bytesPerInputSample;
+            outputBuffer.put(inputBuffer.get(sample + 2));
+            outputBuffer.put(inputBuffer.get(sample + 3));
+          }
+        }
+        break;
+      case C.ENCODING_PCM_FLOAT:
+        // 32 bit floating point -> 16 bit resampling. Floating point values are in the range
+        // [-1.0, 1.0], so need to be scaled by Short.MAX_VALUE.
+        for (int frame = position; frame < limit; frame += inputBytesPerFrame) {
+          for (int channelIndex : channelMap) {
+            // Clamp to avoid integer overflow if the floating point values exceed their nominal
+            // range.
+            float floatValue =
+                Util.constrainValue(
+                    inputBuffer.getFloat(frame + channelIndex * bytesPerInputSample),
+                    /* min= */ -1,
+                    /* max= */ 1);
+            short shortValue = (short) (floatValue * Short.MAX_VALUE);
+            outputBuffer.put((byte) (shortValue & 0xFF));
+            outputBuffer.put((byte) ((shortValue >> 8) & 0xFF));
+          }
+        }
+        break;
+      case C.ENCODING_INVALID:
+      case Format.NO_VALUE:
+      default:
+        // Never happens.
+        throw new IllegalStateException();
+    }
+  }
+}
@@ -0,0 +1,616 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.metadata.Metadata;
+import com.google.android.exoplayer2.metadata.flac.VorbisComment;
+import com.google.android.exoplayer2.metadata.id3.CommentFrame;
+import com.google.android.exoplayer2.metadata.id3.InternalFrame;
+import com.google.android.exoplayer2.metadata.id3.TextInformationFrame;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@link AudioProcessor} that normalizes the loudness of 16-bit integer or 32-bit float PCM
+ * audio to a target loudness. The output encoding is the same as the input encoding.
+ *
+ * <p>If the {@link #setMetadata(Metadata) metadata} of the track specifies its loudness, a constant
+ * gain is applied. The following metadata is supported, in order of preference:
+ *
+ * <ul>
+ *   <li>ReplayGain track gain, in ID3 {@code TXXX} frames, Vorbis comments or MP4 {@code ----}
+ *       atoms ({@code REPLAYGAIN_TRACK_GAIN}).
+ *   <li>EBU R128 track gain, in Vorbis comments ({@code R128_TRACK_GAIN}).
+ *   <li>iTunes Sound Check, in ID3 {@code COMM} frames or MP4 {@code ----} atoms ({@code
+ *       iTunNORM}).
+ * </ul>
+ *
+ * <p>Otherwise, the integrated loudness of the audio played so far is measured as specified in
+ * ITU-R BS.1770 (as used by EBU R128), and the gain is adjusted smoothly as the measurement
+ * converges.
+ *
+ * <p>Samples are processed in float, and a look-ahead peak limiter prevents the gain from causing
+ * clipping. The limiter delays the audio by the look-ahead duration, and the delayed audio is
+ * output when the end of stream is queued. No memory is allocated while processing, except to grow
+ * the output buffer.
+ *
+ * <p>The processor is disabled by default. It can be added to the chain of a {@link
+ * DefaultAudioSink} using {@link
+ * DefaultAudioSink.DefaultAudioProcessorChain#DefaultAudioProcessorChain(AudioProcessor[],
+ * SilenceSkippingAudioProcessor, SonicAudioProcessor, LoudnessNormalizationAudioProcessor)}, in
+ * which case the metadata of each track is set automatically.
+ */
+public final class LoudnessNormalizationAudioProcessor extends BaseAudioProcessor {
+
+  /** The default target loudness, in LUFS, which is the ReplayGain 2.0 reference loudness. */
+  public static final float DEFAULT_TARGET_LOUDNESS_LUFS = -18f;
+  /** The default maximum gain that's applied to quiet audio, in decibels. */
+  public static final float DEFAULT_MAX_GAIN_DB = 12f;
+  /** The default look-ahead duration of the peak limiter, in microseconds. */
+  public static final long DEFAULT_LOOK_AHEAD_US = 5_000;
+
+  /** The reference loudness of ReplayGain and iTunes Sound Check gains, in LUFS. */
+  private static final float REPLAY_GAIN_REFERENCE_LUFS = -18f;
+  /** The reference loudness of EBU R128 gains, in LUFS. */
+  private static final float R128_GAIN_REFERENCE_LUFS = -23f;
+
+  private static final String REPLAY_GAIN_TRACK_GAIN = "REPLAYGAIN_TRACK_GAIN";
+  private static final String R128_TRACK_GAIN = "R128_TRACK_GAIN";
+  private static final String ITUNES_NORMALIZATION = "iTunNORM";
+
+  /** The maximum output sample magnitude, about -0.2 dBFS. */
+  private static final float LIMITER_CEILING = 0.977f;
+
+  private static final long LIMITER_RELEASE_TIME_US = 100_000;
+  private static final long GAIN_SMOOTHING_TIME_US = 1_000_000;
+  private static final int SUB_BLOCK_DURATION_MS = 100;
+  private static final int SUB_BLOCKS_PER_BLOCK = 4;
+  private static final double ABSOLUTE_GATE_LUFS = -70;
+  private static final double RELATIVE_GATE_LU = -10;
+  private static final double HISTOGRAM_MAX_LUFS = 10;
+  private static final double HISTOGRAM_BINS_PER_LU = 10;
+  private static final int HISTOGRAM_BIN_COUNT =
+      (int) ((HISTOGRAM_MAX_LUFS - ABSOLUTE_GATE_LUFS) * HISTOGRAM_BINS_PER_LU);
+
+  private final float targetLoudnessLufs;
+  private final float maxGainDb;
+  private final long lookAheadUs;
+  private final long[] histogramBlockCounts;
+  private final double[] histogramBlockEnergies;
+  private final double[] subBlockMeanSquares;
+
+  private boolean enabled;
+  @Nullable private Metadata metadata;
+  private float configuredMetadataGainDb;
+
+  // State that's set up when the processor is flushed.
+  private int channelCount;
+  private boolean useMeter;
+  private float normalizationGain;
+  private float targetNormalizationGain;
+  private float gainSmoothingCoefficient;
+
+  // Loudness meter state.
+  private double[] channelWeights;
+  private double[] filterCoefficients;
+  private double[] filterState;
+  private int subBlockFrameCount;
+  private int subBlockFramePosition;
+  private double subBlockSumOfSquares;
+  private int completedSubBlockCount;
+  private long totalBlockCount;
+  private double totalBlockEnergy;
+
+  // Limiter state.
+  private int lookAheadFrameCount;
+  private float[] delayLine;
+  private float[] requiredGains;
+  private long[] minimumQueue;
+  private int minimumQueueHead;
+  private int minimumQueueSize;
+  private long inputFrameIndex;
+  private float limiterGain;
+  private float limiterAttackCoefficient;
+  private float limiterReleaseCoefficient;
+  private boolean endOfStreamPending;
+
+  /** Creates a processor with default parameters. */
+  public LoudnessNormalizationAudioProcessor() {
+    this(DEFAULT_TARGET_LOUDNESS_LUFS, DEFAULT_MAX_GAIN_DB, DEFAULT_LOOK_AHEAD_US);
+  }
+
+  /**
+   * Creates a processor.
+   *
+   * @param targetLoudnessLufs The loudness to normalize audio to, in LUFS.
+   * @param maxGainDb The maximum gain that's applied to quiet audio, in decibels.
+   * @param lookAheadUs The look-ahead duration of the peak limiter, in microseconds.
+   */
+  public LoudnessNormalizationAudioProcessor(
+      float targetLoudnessLufs, float maxGainDb, long lookAheadUs) {
+    Assertions.checkArgument(lookAheadUs >= 0);
+    this.targetLoudnessLufs = targetLoudnessLufs;
+    this.maxGainDb = maxGainDb;
+    this.lookAheadUs = lookAheadUs;
+    histogramBlockCounts = new long[HISTOGRAM_BIN_COUNT];
+    histogramBlockEnergies = new double[HISTOGRAM_BIN_COUNT];
+    subBlockMeanSquares = new double[SUB_BLOCKS_PER_BLOCK];
+    configuredMetadataGainDb = Float.NaN;
+    normalizationGain = 1f;
+    channelWeights = new double[0];
+    filterCoefficients = new double[0];
+    filterState = new double[0];
+    delayLine = new float[0];
+    requiredGains = new float[0];
+    minimumQueue = new long[0];
+  }
+
+  /**
+   * Sets whether to normalize loudness. After calling this method, call {@link
+   * #configure(AudioFormat)} to apply the new setting. The setting is kept when the processor is
+   * {@link #reset()}.
+   *
+   * @param enabled Whether to normalize loudness.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Sets the metadata of the track to be processed, from which the gain is determined if possible.
+   * After calling this method, call {@link #configure(AudioFormat)} to apply the new metadata. The
+   * metadata is kept when the processor is {@link #reset()}.
+   *
+   * @param metadata The metadata of the track, or {@code null} if the track has no metadata.
+   */
+  public void setMetadata(@Nullable Metadata metadata) {
+    this.metadata = metadata;
+  }
+
+  /** Returns the normalization gain that's currently applied, in decibels. */
+  public float getGainDb() {
+    return (float) (20 * Math.log10(normalizationGain));
+  }
+
+  @Override
+  protected AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    configuredMetadataGainDb = getMetadataGainDb(metadata, targetLoudnessLufs);
+    return enabled ? inputAudioFormat : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    int frameCount = (limit - position) / inputAudioFormat.bytesPerFrame;
+    if (frameCount == 0) {
+      return;
+    }
+    long outputFrameCount =
+        max(0, inputFrameIndex + frameCount - max(lookAheadFrameCount, inputFrameIndex));
+    ByteBuffer buffer =
+        replaceOutputBuffer((int) outputFrameCount * outputAudioFormat.bytesPerFrame);
+    boolean isFloat = inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+    int bytesPerSample = isFloat ? 4 : 2;
+    for (int frame = 0; frame < frameCount; frame++) {
+      int frameOffset = position + frame * inputAudioFormat.bytesPerFrame;
+      int delayLineOffset = getDelayLineOffset(inputFrameIndex);
+      for (int channel = 0; channel < channelCount; channel++) {
+        int sampleOffset = frameOffset + channel * bytesPerSample;
+        float sample =
+            isFloat
+                ? inputBuffer.getFloat(sampleOffset)
+                : inputBuffer.getShort(sampleOffset) / 32768f;
+        if (useMeter) {
+          meterSample(channel, sample);
+        }
+        delayLine[delayLineOffset + channel] = sample;
+      }
+      if (useMeter) {
+        onMeteredFrame();
+      }
+      processFrame(buffer, delayLineOffset);
+    }
+    inputBuffer.position(limit);
+    buffer.flip();
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    if (endOfStreamPending && !hasPendingOutput()) {
+      endOfStreamPending = false;
+      // Feed silence through the limiter to output the frames in the delay line.
+      int delayedFrameCount = (int) min(inputFrameIndex, lookAheadFrameCount);
+      ByteBuffer buffer =
+          replaceOutputBuffer(delayedFrameCount * outputAudioFormat.bytesPerFrame);
+      for (int frame = 0; frame < delayedFrameCount; frame++) {
+        int delayLineOffset = getDelayLineOffset(inputFrameIndex);
+        Arrays.fill(delayLine, delayLineOffset, delayLineOffset + channelCount, 0f);
+        processFrame(buffer, delayLineOffset);
+      }
+      buffer.flip();
+    }
+    return super.getOutput();
+  }
+
+  @Override
+  public boolean isEnded() {
+    return super.isEnded() && !endOfStreamPending;
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    endOfStreamPending = isActive();
+  }
+
+  @Override
+  protected void onFlush() {
+    endOfStreamPending = false;
+    if (!isActive()) {
+      return;
+    }
+    channelCount = inputAudioFormat.channelCount;
+    int sampleRate = inputAudioFormat.sampleRate;
+    useMeter = Float.isNaN(configuredMetadataGainDb);
+    if (useMeter) {
+      normalizationGain = 1f;
+      targetNormalizationGain = 1f;
+      gainSmoothingCoefficient = getSmoothingCoefficient(GAIN_SMOOTHING_TIME_US, sampleRate);
+      setUpMeter(sampleRate);
+    } else {
+      normalizationGain = dbToLinear(min(configuredMetadataGainDb, maxGainDb));
+      targetNormalizationGain = normalizationGain;
+    }
+
+    lookAheadFrameCount = (int) (lookAheadUs * sampleRate / C.MICROS_PER_SECOND);
+    int ringFrameCount = lookAheadFrameCount + 1;
+    if (delayLine.length != ringFrameCount * channelCount) {
+      delayLine = new float[ringFrameCount * channelCount];
+      requiredGains = new float[ringFrameCount];
+      minimumQueue = new long[ringFrameCount];
+    }
+    minimumQueueHead = 0;
+    minimumQueueSize = 0;
+    inputFrameIndex = 0;
+    limiterGain = 1f;
+    limiterAttackCoefficient =
+        getSmoothingCoefficient(max(1, lookAheadUs / 4), sampleRate);
+    limiterReleaseCoefficient = getSmoothingCoefficient(LIMITER_RELEASE_TIME_US, sampleRate);
+  }
+
+  @Override
+  protected void onReset() {
+    // Whether normalization is enabled and the track's metadata are configuration, which is applied
+    // again when the processor is next configured. Only the gain state is reset.
+    configuredMetadataGainDb = Float.NaN;
+    normalizationGain = 1f;
+    targetNormalizationGain = 1f;
+    totalBlockCount = 0;
+    totalBlockEnergy = 0;
+    Arrays.fill(histogramBlockCounts, 0);
+    Arrays.fill(histogramBlockEnergies, 0);
+  }
+
+  /**
+   * Returns the gain in decibels that normalizes a track to {@code targetLoudnessLufs} according to
+   * its {@code metadata}, or {@link Float#NaN} if the metadata doesn't specify the loudness.
+   */
+  /* package */ static float getMetadataGainDb(
+      @Nullable Metadata metadata, float targetLoudnessLufs) {
+    if (metadata == null) {
+      return Float.NaN;
+    }
+    float replayGainDb = Float.NaN;
+    float r128GainDb = Float.NaN;
+    float soundCheckGainDb = Float.NaN;
+    for (int i = 0; i < metadata.length(); i++) {
+      Metadata.Entry entry = metadata.get(i);
+      @Nullable String key = null;
+      @Nullable String value = null;
+      if (entry instanceof TextInformationFrame) {
+        key = ((TextInformationFrame) entry).description;
+        value = ((TextInformationFrame) entry).value;
+      } else if (entry instanceof VorbisComment) {
+        key = ((VorbisComment) entry).key;
+        value = ((VorbisComment) entry).value;
+      } else if (entry instanceof InternalFrame) {
+        key = ((InternalFrame) entry).description;
+        value = ((InternalFrame) entry).text;
+      } else if (entry instanceof CommentFrame) {
+        key = ((CommentFrame) entry).description;
+        value = ((CommentFrame) entry).text;
+      }
+      if (key == null || value == null) {
+        continue;
+      }
+      if (REPLAY_GAIN_TRACK_GAIN.equalsIgnoreCase(key)) {
+        replayGainDb = parseReplayGainDb(value);
+      } else if (R128_TRACK_GAIN.equalsIgnoreCase(key)) {
+        r128GainDb = parseR128GainDb(value);
+      } else if (ITUNES_NORMALIZATION.equalsIgnoreCase(key)) {
+        soundCheckGainDb = parseSoundCheckGainDb(value);
+      }
+    }
+    if (!Float.isNaN(replayGainDb)) {
+      return replayGainDb + targetLoudnessLufs - REPLAY_GAIN_REFERENCE_LUFS;
+    } else if (!Float.isNaN(r128GainDb)) {
+      return r128GainDb + targetLoudnessLufs - R128_GAIN_REFERENCE_LUFS;
+    } else if (!Float.isNaN(soundCheckGainDb)) {
+      return soundCheckGainDb + targetLoudnessLufs - REPLAY_GAIN_REFERENCE_LUFS;
+    }
+    return Float.NaN;
+  }
+
+  // Internal methods.
+
+  private int getDelayLineOffset(long frameIndex) {
+    return (int) (frameIndex % (lookAheadFrameCount + 1)) * channelCount;
+  }
+
+  /**
+   * Applies the normalization gain to the frame at {@code delayLineOffset}, which has just been
+   * added to the delay line, and writes the frame that leaves the delay line to {@code buffer} if
+   * the delay line is full.
+   */
+  private void processFrame(ByteBuffer buffer, int delayLineOffset) {
+    if (useMeter) {
+      normalizationGain += (targetNormalizationGain - normalizationGain) * gainSmoothingCoefficient;
+    }
+    float peak = 0;
+    for (int channel = 0; channel < channelCount; channel++) {
+      float sample = delayLine[delayLineOffset + channel] * normalizationGain;
+      delayLine[delayLineOffset + channel] = sample;
+      peak = max(peak, Math.abs(sample));
+    }
+    float requiredGain = peak > LIMITER_CEILING ? LIMITER_CEILING / peak : 1f;
+    int ringFrameCount = lookAheadFrameCount + 1;
+    long outputFrameIndex = inputFrameIndex - lookAheadFrameCount;
+
+    // Maintain the indices of frames in the look-ahead window in a queue whose required gains are
+    // increasing, so that the minimum required gain in the window is at the head of the queue. The
+    // frame leaving the window is removed first, as its ring buffer slot is reused below.
+    if (minimumQueueSize > 0 && minimumQueue[minimumQueueHead] < outputFrameIndex) {
+      minimumQueueHead = (minimumQueueHead + 1) % ringFrameCount;
+      minimumQueueSize--;
+    }
+    requiredGains[(int) (inputFrameIndex % ringFrameCount)] = requiredGain;
+    while (minimumQueueSize > 0) {
+      long lastFrameIndex =
+          minimumQueue[(minimumQueueHead + minimumQueueSize - 1) % ringFrameCount];
+      if (requiredGains[(int) (lastFrameIndex % ringFrameCount)] < requiredGain) {
+        break;
+      }
+      minimumQueueSize--;
+    }
+    minimumQueue[(minimumQueueHead + minimumQueueSize) % ringFrameCount] = inputFrameIndex;
+    minimumQueueSize++;
+    inputFrameIndex++;
+    if (outputFrameIndex < 0) {
+      return;
+    }
+
+    float windowGain =
+        requiredGains[(int) (minimumQueue[minimumQueueHead] % ringFrameCount)];
+    float coefficient =
+        windowGain < limiterGain ? limiterAttackCoefficient : limiterReleaseCoefficient;
+    limiterGain += (windowGain - limiterGain) * coefficient;
+    int outputRingIndex = (int) (outputFrameIndex % ringFrameCount);
+    // Never exceed the gain required by the output frame itself, so the output can't clip.
+    float gain = min(limiterGain, requiredGains[outputRingIndex]);
+    int outputOffset = outputRingIndex * channelCount;
+    boolean isFloat = outputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+    for (int channel = 0; channel < channelCount; channel++) {
+      float sample = delayLine[outputOffset + channel] * gain;
+      if (isFloat) {
+        buffer.putFloat(sample);
+      } else {
+        buffer.putShort(
+            (short)
+                Util.constrainValue(
+                    Math.round(sample * 32768f), Short.MIN_VALUE, Short.MAX_VALUE));
+      }
+    }
+  }
+
+  private void setUpMeter(int sampleRate) {
+    channelWeights = new double[channelCount];
+    for (int channel = 0; channel < channelCount; channel++) {
+      // The LFE channel isn't measured and surround channels are weighted more heavily.
+      if (channelCount == 6 && channel == 3) {
+        channelWeights[channel] = 0;
+      } else if (channelCount == 6 && channel >= 4) {
+        channelWeights[channel] = 1.41;
+      } else {
+        channelWeights[channel] = 1;
+      }
+    }
+    filterCoefficients = getKWeightingFilterCoefficients(sampleRate);
+    filterState = new double[4 * channelCount];
+    subBlockFrameCount = sampleRate * SUB_BLOCK_DURATION_MS / 1000;
+    subBlockFramePosition = 0;
+    subBlockSumOfSquares = 0;
+    completedSubBlockCount = 0;
+    totalBlockCount = 0;
+    totalBlockEnergy = 0;
+    Arrays.fill(histogramBlockCounts, 0);
+    Arrays.fill(histogramBlockEnergies, 0);
+  }
+
+  /** Applies the K-weighting filter to a sample and adds its weighted energy to the sub-block. */
+  private void meterSample(int channel, float sample) {
+    double[] c = filterCoefficients;
+    int stateOffset = channel * 4;
+    // High shelf stage, in transposed direct form II.
+    double x = sample;
+    double y = c[0] * x + filterState[stateOffset];
+    filterState[stateOffset] = c[1] * x - c[3] * y + filterState[stateOffset + 1];
+    filterState[stateOffset + 1] = c[2] * x - c[4] * y;
+    // High pass stage.
+    x = y;
+    y = c[5] * x + filterState[stateOffset + 2];
+    filterState[stateOffset + 2] = c[6] * x - c[8] * y + filterState[stateOffset + 3];
+    filterState[stateOffset + 3] = c[7] * x - c[9] * y;
+    subBlockSumOfSquares += channelWeights[channel] * y * y;
+  }
+
+  /** Completes a sub-block if needed, and updates the gain when a gating block is complete. */
+  private void onMeteredFrame() {
+    subBlockFramePosition++;
+    if (subBlockFramePosition < subBlockFrameCount) {
+      return;
+    }
+    subBlockMeanSquares[completedSubBlockCount % SUB_BLOCKS_PER_BLOCK] =
+        subBlockSumOfSquares / subBlockFrameCount;
+    completedSubBlockCount++;
+    subBlockFramePosition = 0;
+    subBlockSumOfSquares = 0;
+    if (completedSubBlockCount < SUB_BLOCKS_PER_BLOCK) {
+      return;
+    }
+
+    // Gating blocks are 400 ms long and overlap by 75%.
+    double blockEnergy = 0;
+    for (double meanSquare : subBlockMeanSquares) {
+      blockEnergy += meanSquare;
+    }
+    blockEnergy /= SUB_BLOCKS_PER_BLOCK;
+    double blockLoudness = energyToLoudness(blockEnergy);
+    if (blockLoudness <= ABSOLUTE_GATE_LUFS) {
+      return;
+    }
+    int bin = getHistogramBin(blockLoudness);
+    histogramBlockCounts[bin]++;
+    histogramBlockEnergies[bin] += blockEnergy;
+    totalBlockCount++;
+    totalBlockEnergy += blockEnergy;
+
+    // Apply the relative gate to get the integrated loudness.
+    double relativeGate = energyToLoudness(totalBlockEnergy / totalBlockCount) + RELATIVE_GATE_LU;
+    long gatedBlockCount = 0;
+    double gatedBlockEnergy = 0;
+    for (int i = getHistogramBin(relativeGate); i < HISTOGRAM_BIN_COUNT; i++) {
+      gatedBlockCount += histogramBlockCounts[i];
+      gatedBlockEnergy += histogramBlockEnergies[i];
+    }
+    if (gatedBlockCount == 0) {
+      return;
+    }
+    double integratedLoudness = energyToLoudness(gatedBlockEnergy / gatedBlockCount);
+    targetNormalizationGain =
+        dbToLinear((float) min(targetLoudnessLufs - integratedLoudness, maxGainDb));
+  }
+
+  private static int getHistogramBin(double loudness) {
+    int bin = (int) ((loudness - ABSOLUTE_GATE_LUFS) * HISTOGRAM_BINS_PER_LU);
+    return Util.constrainValue(bin, 0, HISTOGRAM_BIN_COUNT - 1);
+  }
+
+  private static double energyToLoudness(double energy) {
+    return -0.691 + 10 * Math.log10(energy);
+  }
+
+  private static float dbToLinear(float db) {
+    return (float) Math.pow(10, db / 20);
+  }
+
+  /**
+   * Returns the coefficient of a one pole smoothing filter with the given time constant, to be
+   * applied once per frame.
+   */
+  private static float getSmoothingCoefficient(long timeConstantUs, int sampleRate) {
+    return (float) (1 - Math.exp(-(double) C.MICROS_PER_SECOND / (timeConstantUs * sampleRate)));
+  }
+
+  /**
+   * Returns the coefficients of the two biquad stages of the ITU-R BS.1770 K-weighting filter for
+   * the given sample rate, as {b0, b1, b2, a1, a2} for each stage.
+   */
+  private static double[] getKWeightingFilterCoefficients(int sampleRate) {
+    // High shelf filter modelling the acoustic effect of the head.
+    double f0 = 1681.974450955533;
+    double gainDb = 3.999843853973347;
+    double q = 0.7071752369554196;
+    double k = Math.tan(Math.PI * f0 / sampleRate);
+    double vh = Math.pow(10, gainDb / 20);
+    double vb = Math.pow(vh, 0.4996667741545416);
+    double a0 = 1 + k / q + k * k;
+    double[] coefficients = new double[10];
+    coefficients[0] = (vh + vb * k / q + k * k) / a0;
+    coefficients[1] = 2 * (k * k - vh) / a0;
+    coefficients[2] = (vh - vb * k / q + k * k) / a0;
+    coefficients[3] = 2 * (k * k - 1) / a0;
+    coefficients[4] = (1 - k / q + k * k) / a0;
+    // High pass filter.
+    f0 = 38.13547087602444;
+    q = 0.5003270373238773;
+    k = Math.tan(Math.PI * f0 / sampleRate);
+    a0 = 1 + k / q + k * k;
+    coefficients[5] = 1;
+    coefficients[6] = -2;
+    coefficients[7] = 1;
+    coefficients[8] = 2 * (k * k - 1) / a0;
+    coefficients[9] = (1 - k / q + k * k) / a0;
+    return coefficients;
+  }
+
+  private static float parseReplayGainDb(String value) {
+    String trimmedValue = Util.toLowerInvariant(value.trim());
+    if (trimmedValue.endsWith("db")) {
+      trimmedValue = trimmedValue.substring(0, trimmedValue.length() - 2).trim();
+    }
+    try {
+      return Float.parseFloat(trimmedValue);
+    } catch (NumberFormatException e) {
+      return Float.NaN;
+    }
+  }
+
+  private static float parseR128GainDb(String value) {
+    // The gain is a Q7.8 fixed point number.
+    try {
+      return Integer.parseInt(value.trim()) / 256f;
+    } catch (NumberFormatException e) {
+      return Float.NaN;
+    }
+  }
+
+  private static float parseSoundCheckGainDb(String value) {
+    // The first two values are the normalization factors for the left and right channels, in
+    // thousandths of the reference level, as hexadecimal numbers.
+    String[] values = Util.split(value.trim(), "\\s+");
+    if (values.length < 2) {
+      return Float.NaN;
+    }
+    try {
+      long factor = max(Long.parseLong(values[0], 16), Long.parseLong(values[1], 16));
+      return factor > 0 ? (float) (-10 * Math.log10(factor / 1000.0)) : Float.NaN;
+    } catch (NumberFormatException e) {
+      return Float.NaN;
+    }
+  }
+}
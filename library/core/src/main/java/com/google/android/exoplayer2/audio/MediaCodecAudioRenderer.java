@@ -17,6 +17,8 @@ package com.google.android.exoplayer2.audio;
 
 import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.DISCARD_REASON_MAX_INPUT_SIZE_EXCEEDED;
 import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.REUSE_RESULT_NO;
+import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.REUSE_RESULT_YES_WITHOUT_RECONFIGURATION;
+import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.REUSE_RESULT_YES_WITH_FLUSH;
 import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static java.lang.Math.max;
 
@@ -45,6 +47,7 @@ import com.google.android.exoplayer2.decoder.DecoderReuseEvaluation;
 import com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.DecoderDiscardReasons;
 import com.google.android.exoplayer2.mediacodec.MediaCodecAdapter;
 import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecPool;
 import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer;
 import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
@@ -102,6 +105,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   private boolean allowFirstBufferPositionDiscontinuity;
   private boolean allowPositionDiscontinuity;
   private boolean audioSinkNeedsReset;
+  private long nextBufferToWritePresentationTimeUs;
 
   private boolean experimentalKeepAudioTrackOnSeek;
 
@@ -239,6 +243,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
         /* assumedMinimumCodecOperatingRate= */ 44100);
     this.context = context.getApplicationContext();
     this.audioSink = audioSink;
+    nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
     eventDispatcher = new EventDispatcher(eventHandler, eventListener);
     audioSink.setListener(new AudioSinkListener());
   }
@@ -382,6 +387,35 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
         discardReasons);
   }
 
+  @Override
+  protected boolean canReturnCodecToPool() {
+    return decryptOnlyCodecFormat == null;
+  }
+
+  @Override
+  protected Object getPooledCodecRendererState() {
+    return codecMaxInputSize;
+  }
+
+  @Override
+  protected boolean canAdoptPooledCodec(MediaCodecPool.PooledCodec pooledCodec, Format format) {
+    MediaCodecInfo codecInfo = pooledCodec.codecInfo;
+    @DecoderReuseEvaluation.DecoderReuseResult
+    int result = codecInfo.canReuseCodec(pooledCodec.format, format).result;
+    return (result == REUSE_RESULT_YES_WITH_FLUSH
+            || result == REUSE_RESULT_YES_WITHOUT_RECONFIGURATION)
+        && getCodecMaxInputSize(codecInfo, format)
+            <= (Integer) checkNotNull(pooledCodec.rendererState);
+  }
+
+  @Override
+  protected void onPooledCodecAdopted(MediaCodecPool.PooledCodec pooledCodec) {
+    codecMaxInputSize = (Integer) checkNotNull(pooledCodec.rendererState);
+    codecNeedsDiscardChannelsWorkaround =
+        codecNeedsDiscardChannelsWorkaround(pooledCodec.codecInfo.name);
+    decryptOnlyCodecFormat = null;
+  }
+
   @Override
   @Nullable
   public MediaClock getMediaClock() {
@@ -455,6 +489,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
               .setPcmEncoding(pcmEncoding)
               .setEncoderDelay(format.encoderDelay)
               .setEncoderPadding(format.encoderPadding)
+              .setMetadata(format.metadata)
               .setChannelCount(mediaFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT))
               .setSampleRate(mediaFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE))
               .build();
@@ -503,6 +538,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     }
 
     currentPositionUs = positionUs;
+    nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
     allowFirstBufferPositionDiscontinuity = true;
     allowPositionDiscontinuity = true;
   }
@@ -523,6 +559,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   @Override
   protected void onDisabled() {
     audioSinkNeedsReset = true;
+    nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
     try {
       audioSink.flush();
     } finally {
@@ -590,7 +627,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   @Override
   protected void onProcessedStreamChange() {
     super.onProcessedStreamChange();
-    audioSink.handleDiscontinuity();
+    audioSink.handleStreamTransition();
   }
 
   @Override
@@ -639,12 +676,26 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
         codec.releaseOutputBuffer(bufferIndex, false);
       }
       decoderCounters.renderedOutputBufferCount += sampleCount;
+      nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
       return true;
     }
 
+    nextBufferToWritePresentationTimeUs = bufferPresentationTimeUs;
     return false;
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (nextBufferToWritePresentationTimeUs == C.TIME_UNSET || getState() != STATE_STARTED) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The sink is full, so the next buffer can't be written until the audio that's queued ahead of
+    // it has partially played out. Wake up once half of it has been played, to leave ample margin
+    // before the sink underruns.
+    long queuedDurationUs = nextBufferToWritePresentationTimeUs - positionUs;
+    return max(DEFAULT_DURATION_TO_PROGRESS_US, queuedDurationUs / 2);
+  }
+
   @Override
   protected void renderToEndOfStream() throws ExoPlaybackException {
     try {
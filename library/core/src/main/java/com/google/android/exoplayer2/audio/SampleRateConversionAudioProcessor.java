@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.IntDef;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Util;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@link AudioProcessor} that converts the sample rate of 16-bit integer or 32-bit float PCM
+ * audio using a polyphase windowed-sinc filter. The output encoding is the same as the input
+ * encoding.
+ *
+ * <p>The filter coefficients for each phase are precomputed when the processor is flushed after
+ * being configured with a new pair of sample rates. For conversions whose rational ratio has more
+ * phases than are tabulated (which is not the case for common conversions such as 44.1 kHz to 48
+ * kHz) the nearest tabulated phase is used.
+ *
+ * <p>Converting the sample rate in the application rather than in the platform can be useful to
+ * avoid the platform resampler, or to capture the audio that's actually output with a {@link
+ * TeeAudioProcessor}, by placing this processor before the {@link TeeAudioProcessor} in the chain.
+ */
+public final class SampleRateConversionAudioProcessor extends BaseAudioProcessor {
+
+  /** Indicates that the output sample rate should be the same as the input. */
+  public static final int SAMPLE_RATE_NO_CHANGE = -1;
+
+  /** Conversion quality. One of {@link #QUALITY_HIGH} or {@link #QUALITY_LOW_CPU}. */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({QUALITY_HIGH, QUALITY_LOW_CPU})
+  public @interface Quality {}
+  /**
+   * High quality conversion, with a long filter whose stopband attenuation is close to the dynamic
+   * range of 16-bit audio.
+   */
+  public static final int QUALITY_HIGH = 0;
+  /**
+   * Lower quality conversion with a short filter, which uses a fraction of the CPU time of {@link
+   * #QUALITY_HIGH}.
+   */
+  public static final int QUALITY_LOW_CPU = 1;
+
+  private static final int HIGH_QUALITY_TAP_COUNT = 32;
+  private static final int HIGH_QUALITY_MAX_PHASE_COUNT = 512;
+  private static final double HIGH_QUALITY_KAISER_BETA = 9;
+  private static final double HIGH_QUALITY_ROLLOFF = 0.95;
+  private static final int LOW_CPU_TAP_COUNT = 8;
+  private static final int LOW_CPU_MAX_PHASE_COUNT = 128;
+  private static final double LOW_CPU_KAISER_BETA = 5;
+  private static final double LOW_CPU_ROLLOFF = 0.9;
+
+  @Quality private final int quality;
+
+  private int pendingOutputSampleRateHz;
+
+  // Filter parameters, which are set when the processor is flushed.
+  private int upsamplingFactor;
+  private int downsamplingFactor;
+  private int tapCount;
+  private int phaseCount;
+  private float[] filterTable;
+
+  // Stream state.
+  private int channelCount;
+  private float[] inputSamples;
+  private int inputFrameCount;
+  private int inputFramePosition;
+  private int phase;
+  private long totalInputFrameCount;
+  private long totalOutputFrameCount;
+  private boolean endOfStreamPending;
+
+  /** Creates a processor that converts the sample rate with {@link #QUALITY_HIGH}. */
+  public SampleRateConversionAudioProcessor() {
+    this(QUALITY_HIGH);
+  }
+
+  /**
+   * Creates a processor that converts the sample rate with the specified quality.
+   *
+   * @param quality The {@link Quality} of the conversion.
+   */
+  public SampleRateConversionAudioProcessor(@Quality int quality) {
+    this.quality = quality;
+    pendingOutputSampleRateHz = SAMPLE_RATE_NO_CHANGE;
+    filterTable = new float[0];
+    inputSamples = new float[0];
+  }
+
+  /**
+   * Sets the sample rate for output audio, in Hertz. Pass {@link #SAMPLE_RATE_NO_CHANGE} to output
+   * audio at the same sample rate as the input. After calling this method, call {@link
+   * #configure(AudioFormat)} to configure the processor with the new sample rate.
+   *
+   * @param sampleRateHz The sample rate for output audio, in Hertz.
+   * @see #configure(AudioFormat)
+   */
+  public void setOutputSampleRateHz(int sampleRateHz) {
+    pendingOutputSampleRateHz = sampleRateHz;
+  }
+
+  @Override
+  protected AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    int outputSampleRateHz =
+        pendingOutputSampleRateHz == SAMPLE_RATE_NO_CHANGE
+            ? inputAudioFormat.sampleRate
+            : pendingOutputSampleRateHz;
+    return outputSampleRateHz != inputAudioFormat.sampleRate
+        ? new AudioFormat(
+            outputSampleRateHz, inputAudioFormat.channelCount, inputAudioFormat.encoding)
+        : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    int frameCount = (limit - position) / inputAudioFormat.bytesPerFrame;
+    if (frameCount == 0) {
+      return;
+    }
+    int sampleCount = frameCount * channelCount;
+    ensureInputCapacity(frameCount);
+    int offset = inputFrameCount * channelCount;
+    if (inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+      for (int i = 0; i < sampleCount; i++) {
+        inputSamples[offset + i] = inputBuffer.getFloat(position + 4 * i);
+      }
+    } else {
+      for (int i = 0; i < sampleCount; i++) {
+        inputSamples[offset + i] = inputBuffer.getShort(position + 2 * i) / 32768f;
+      }
+    }
+    inputFrameCount += frameCount;
+    totalInputFrameCount += frameCount;
+    inputBuffer.position(limit);
+    outputFrames(/* maxFrameCount= */ Long.MAX_VALUE);
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    if (endOfStreamPending && !hasPendingOutput()) {
+      endOfStreamPending = false;
+      // Append enough silence to compute the output for the last input frames, and output the
+      // frames that correspond to the input duration.
+      int silenceFrameCount = tapCount / 2;
+      ensureInputCapacity(silenceFrameCount);
+      Arrays.fill(
+          inputSamples,
+          inputFrameCount * channelCount,
+          (inputFrameCount + silenceFrameCount) * channelCount,
+          0f);
+      inputFrameCount += silenceFrameCount;
+      long expectedOutputFrameCount =
+          Util.ceilDivide(totalInputFrameCount * upsamplingFactor, downsamplingFactor);
+      outputFrames(/* maxFrameCount= */ expectedOutputFrameCount - totalOutputFrameCount);
+    }
+    return super.getOutput();
+  }
+
+  @Override
+  public boolean isEnded() {
+    return super.isEnded() && !endOfStreamPending;
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    endOfStreamPending = outputAudioFormat.sampleRate != Format.NO_VALUE;
+  }
+
+  @Override
+  protected void onFlush() {
+    endOfStreamPending = false;
+    if (outputAudioFormat.sampleRate == Format.NO_VALUE) {
+      // The processor is not active.
+      return;
+    }
+    int gcd = gcd(inputAudioFormat.sampleRate, outputAudioFormat.sampleRate);
+    int upsamplingFactor = outputAudioFormat.sampleRate / gcd;
+    int downsamplingFactor = inputAudioFormat.sampleRate / gcd;
+    if (upsamplingFactor != this.upsamplingFactor
+        || downsamplingFactor != this.downsamplingFactor) {
+      this.upsamplingFactor = upsamplingFactor;
+      this.downsamplingFactor = downsamplingFactor;
+      computeFilterTable();
+    }
+    channelCount = inputAudioFormat.channelCount;
+    // Start with enough silence for the first output frame to be aligned with the first input
+    // frame, so that the conversion doesn't add any delay.
+    int halfTapCount = tapCount / 2;
+    inputFrameCount = 0;
+    ensureInputCapacity(halfTapCount - 1);
+    Arrays.fill(inputSamples, 0, (halfTapCount - 1) * channelCount, 0f);
+    inputFrameCount = halfTapCount - 1;
+    inputFramePosition = halfTapCount - 1;
+    phase = 0;
+    totalInputFrameCount = 0;
+    totalOutputFrameCount = 0;
+  }
+
+  @Override
+  protected void onReset() {
+    pendingOutputSampleRateHz = SAMPLE_RATE_NO_CHANGE;
+    upsamplingFactor = 0;
+    downsamplingFactor = 0;
+    filterTable = new float[0];
+    inputSamples = new float[0];
+    inputFrameCount = 0;
+  }
+
+  // Internal methods.
+
+  /**
+   * Computes as many output frames as possible from the buffered input, up to {@code
+   * maxFrameCount}, and writes them to a new output buffer.
+   */
+  private void outputFrames(long maxFrameCount) {
+    int halfTapCount = tapCount / 2;
+    // The output frame at inputFramePosition + phase / upsamplingFactor needs input frames up to
+    // inputFramePosition + halfTapCount.
+    long lastPosition = inputFrameCount - 1 - halfTapCount;
+    int frameCount = 0;
+    if (lastPosition >= inputFramePosition) {
+      long positionRange = lastPosition - inputFramePosition + 1;
+      frameCount =
+          (int)
+              max(
+                  0,
+                  min(
+                      maxFrameCount,
+                      Util.ceilDivide(
+                          positionRange * upsamplingFactor - phase, downsamplingFactor)));
+    }
+    boolean floatOutput = outputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+    ByteBuffer buffer = replaceOutputBuffer(frameCount * outputAudioFormat.bytesPerFrame);
+    float[] inputSamples = this.inputSamples;
+    float[] filterTable = this.filterTable;
+    int channelCount = this.channelCount;
+    int tapCount = this.tapCount;
+    for (int i = 0; i < frameCount; i++) {
+      int coefficientOffset = getPhaseIndex(phase) * tapCount;
+      int firstSampleIndex = (inputFramePosition - (halfTapCount - 1)) * channelCount;
+      for (int channel = 0; channel < channelCount; channel++) {
+        float sum = 0;
+        int sampleIndex = firstSampleIndex + channel;
+        for (int tap = 0; tap < tapCount; tap++) {
+          sum += inputSamples[sampleIndex] * filterTable[coefficientOffset + tap];
+          sampleIndex += channelCount;
+        }
+        if (floatOutput) {
+          buffer.putFloat(sum);
+        } else {
+          int value = Math.round(sum * 32768f);
+          buffer.putShort((short) Util.constrainValue(value, Short.MIN_VALUE, Short.MAX_VALUE));
+        }
+      }
+      phase += downsamplingFactor;
+      inputFramePosition += phase / upsamplingFactor;
+      phase %= upsamplingFactor;
+    }
+    totalOutputFrameCount += frameCount;
+    buffer.flip();
+
+    // Discard input frames that are no longer needed.
+    int discardFrameCount = min(inputFrameCount, max(0, inputFramePosition - (halfTapCount - 1)));
+    System.arraycopy(
+        inputSamples,
+        discardFrameCount * channelCount,
+        inputSamples,
+        0,
+        (inputFrameCount - discardFrameCount) * channelCount);
+    inputFrameCount -= discardFrameCount;
+    inputFramePosition -= discardFrameCount;
+  }
+
+  private int getPhaseIndex(int phase) {
+    return phaseCount == upsamplingFactor
+        ? phase
+        : (int) (((long) phase * phaseCount + upsamplingFactor / 2) / upsamplingFactor);
+  }
+
+  private void ensureInputCapacity(int additionalFrameCount) {
+    int requiredSampleCount = (inputFrameCount + additionalFrameCount) * channelCount;
+    if (inputSamples.length < requiredSampleCount) {
+      inputSamples =
+          Arrays.copyOf(inputSamples, 3 * inputSamples.length / 2 + requiredSampleCount);
+    }
+  }
+
+  /**
+   * Computes the coefficients of the filter for each tabulated phase. The table has one more phase
+   * than {@link #phaseCount}, so that rounding to the nearest phase never needs to wrap around to
+   * the next input frame.
+   */
+  private void computeFilterTable() {
+    int baseTapCount;
+    int maxPhaseCount;
+    double beta;
+    double rolloff;
+    if (quality == QUALITY_LOW_CPU) {
+      baseTapCount = LOW_CPU_TAP_COUNT;
+      maxPhaseCount = LOW_CPU_MAX_PHASE_COUNT;
+      beta = LOW_CPU_KAISER_BETA;
+      rolloff = LOW_CPU_ROLLOFF;
+    } else {
+      baseTapCount = HIGH_QUALITY_TAP_COUNT;
+      maxPhaseCount = HIGH_QUALITY_MAX_PHASE_COUNT;
+      beta = HIGH_QUALITY_KAISER_BETA;
+      rolloff = HIGH_QUALITY_ROLLOFF;
+    }
+    // When downsampling, the cutoff frequency is lowered to the output Nyquist frequency and the
+    // filter is lengthened accordingly, so that it spans the same number of output frames.
+    double ratio = (double) upsamplingFactor / downsamplingFactor;
+    double cutoff = 0.5 * rolloff * min(1, ratio);
+    int halfTapCount = (int) Math.ceil(baseTapCount / 2.0 * max(1, 1 / ratio));
+    tapCount = 2 * halfTapCount;
+    phaseCount = min(upsamplingFactor, maxPhaseCount);
+    filterTable = new float[(phaseCount + 1) * tapCount];
+    double besselI0Beta = besselI0(beta);
+    for (int phaseIndex = 0; phaseIndex <= phaseCount; phaseIndex++) {
+      double fraction = (double) phaseIndex / phaseCount;
+      int offset = phaseIndex * tapCount;
+      double sum = 0;
+      for (int tap = 0; tap < tapCount; tap++) {
+        // The distance from the output frame to the input frame of this tap, in input frames.
+        double distance = tap - (halfTapCount - 1) - fraction;
+        double x = distance / halfTapCount;
+        double window = x * x >= 1 ? 0 : besselI0(beta * Math.sqrt(1 - x * x)) / besselI0Beta;
+        double coefficient = 2 * cutoff * sinc(2 * cutoff * distance) * window;
+        filterTable[offset + tap] = (float) coefficient;
+        sum += coefficient;
+      }
+      // Normalize each phase to unity gain at DC.
+      for (int tap = 0; tap < tapCount; tap++) {
+        filterTable[offset + tap] = (float) (filterTable[offset + tap] / sum);
+      }
+    }
+  }
+
+  private static double sinc(double x) {
+    if (x == 0) {
+      return 1;
+    }
+    double piX = Math.PI * x;
+    return Math.sin(piX) / piX;
+  }
+
+  /** Returns the zeroth order modified Bessel function of the first kind of {@code x}. */
+  private static double besselI0(double x) {
+    double sum = 1;
+    double term = 1;
+    double halfX = x / 2;
+    for (int k = 1; k < 64; k++) {
+      term *= (halfX / k) * (halfX / k);
+      sum += term;
+      if (term < sum * 1e-12) {
+        break;
+      }
+    }
+    return sum;
+  }
+
+  private static int gcd(int a, int b) {
+    while (b != 0) {
+      int remainder = a % b;
+      a = b;
+      b = remainder;
+    }
+    return a;
+  }
+}
@@ -23,10 +23,15 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.util.Util;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 /**
  * An {@link AudioProcessor} that uses the Sonic library to modify audio speed/pitch/sample rate.
+ *
+ * <p>The processor handles 16-bit integer PCM input. If {@link #setFloatPcmEnabled(boolean) float
+ * PCM is enabled}, it also handles 32-bit float PCM input, which is processed and output as float
+ * PCM without loss of precision.
  */
 public final class SonicAudioProcessor implements AudioProcessor {
 
@@ -43,6 +48,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
   private static final int MIN_BYTES_FOR_DURATION_SCALING_CALCULATION = 1024;
 
   private int pendingOutputSampleRate;
+  private boolean floatPcmEnabled;
   private float speed;
   private float pitch;
 
@@ -53,8 +59,10 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   private boolean pendingSonicRecreation;
   @Nullable private Sonic sonic;
+  @Nullable private FloatSonic floatSonic;
   private ByteBuffer buffer;
   private ShortBuffer shortBuffer;
+  private FloatBuffer floatBuffer;
   private ByteBuffer outputBuffer;
   private long inputBytes;
   private long outputBytes;
@@ -70,6 +78,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
   }
@@ -114,6 +123,19 @@ public final class SonicAudioProcessor implements AudioProcessor {
     pendingOutputSampleRate = sampleRateHz;
   }
 
+  /**
+   * Sets whether 32-bit float PCM input is handled. If enabled, float input is time-stretched and
+   * resampled with float precision and output as float PCM. Otherwise, only 16-bit integer PCM
+   * input is handled. The default value is {@code false}. After calling this method, call {@link
+   * #configure(AudioFormat)} to configure the processor.
+   *
+   * @param floatPcmEnabled Whether 32-bit float PCM input is handled.
+   * @see #configure(AudioFormat)
+   */
+  public void setFloatPcmEnabled(boolean floatPcmEnabled) {
+    this.floatPcmEnabled = floatPcmEnabled;
+  }
+
   /**
    * Returns the media duration corresponding to the specified playout duration, taking speed
    * adjustment into account.
@@ -127,7 +149,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
    */
   public long getMediaDuration(long playoutDuration) {
     if (outputBytes >= MIN_BYTES_FOR_DURATION_SCALING_CALCULATION) {
-      long processedInputBytes = inputBytes - checkNotNull(sonic).getPendingInputBytes();
+      long processedInputBytes = inputBytes - getPendingInputBytes();
       return outputAudioFormat.sampleRate == inputAudioFormat.sampleRate
           ? Util.scaleLargeTimestamp(playoutDuration, processedInputBytes, outputBytes)
           : Util.scaleLargeTimestamp(
@@ -141,7 +163,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public AudioFormat configure(AudioFormat inputAudioFormat) throws UnhandledAudioFormatException {
-    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && (!floatPcmEnabled || inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT)) {
       throw new UnhandledAudioFormatException(inputAudioFormat);
     }
     int outputSampleRateHz =
@@ -150,7 +173,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
             : pendingOutputSampleRate;
     pendingInputAudioFormat = inputAudioFormat;
     pendingOutputAudioFormat =
-        new AudioFormat(outputSampleRateHz, inputAudioFormat.channelCount, C.ENCODING_PCM_16BIT);
+        new AudioFormat(
+            outputSampleRateHz, inputAudioFormat.channelCount, inputAudioFormat.encoding);
     pendingSonicRecreation = true;
     return pendingOutputAudioFormat;
   }
@@ -168,11 +192,13 @@ public final class SonicAudioProcessor implements AudioProcessor {
     if (!inputBuffer.hasRemaining()) {
       return;
     }
-    Sonic sonic = checkNotNull(this.sonic);
-    ShortBuffer shortBuffer = inputBuffer.asShortBuffer();
     int inputSize = inputBuffer.remaining();
     inputBytes += inputSize;
-    sonic.queueInput(shortBuffer);
+    if (floatSonic != null) {
+      floatSonic.queueInput(inputBuffer.asFloatBuffer());
+    } else {
+      checkNotNull(sonic).queueInput(inputBuffer.asShortBuffer());
+    }
     inputBuffer.position(inputBuffer.position() + inputSize);
   }
 
@@ -181,28 +207,33 @@ public final class SonicAudioProcessor implements AudioProcessor {
     // TODO(internal b/174554082): assert sonic is non-null here and in getOutput.
     if (sonic != null) {
       sonic.queueEndOfStream();
+    } else if (floatSonic != null) {
+      floatSonic.queueEndOfStream();
     }
     inputEnded = true;
   }
 
   @Override
   public ByteBuffer getOutput() {
-    @Nullable Sonic sonic = this.sonic;
-    if (sonic != null) {
-      int outputSize = sonic.getOutputSize();
-      if (outputSize > 0) {
-        if (buffer.capacity() < outputSize) {
-          buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
-          shortBuffer = buffer.asShortBuffer();
-        } else {
-          buffer.clear();
-          shortBuffer.clear();
-        }
-        sonic.getOutput(shortBuffer);
-        outputBytes += outputSize;
-        buffer.limit(outputSize);
-        outputBuffer = buffer;
+    int outputSize = getOutputSize();
+    if (outputSize > 0) {
+      if (buffer.capacity() < outputSize) {
+        buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
+        shortBuffer = buffer.asShortBuffer();
+        floatBuffer = buffer.asFloatBuffer();
+      } else {
+        buffer.clear();
+        shortBuffer.clear();
+        floatBuffer.clear();
+      }
+      if (floatSonic != null) {
+        floatSonic.getOutput(floatBuffer);
+      } else {
+        checkNotNull(sonic).getOutput(shortBuffer);
       }
+      outputBytes += outputSize;
+      buffer.limit(outputSize);
+      outputBuffer = buffer;
     }
     ByteBuffer outputBuffer = this.outputBuffer;
     this.outputBuffer = EMPTY_BUFFER;
@@ -211,7 +242,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public boolean isEnded() {
-    return inputEnded && (sonic == null || sonic.getOutputSize() == 0);
+    return inputEnded && getOutputSize() == 0;
   }
 
   @Override
@@ -220,15 +251,29 @@ public final class SonicAudioProcessor implements AudioProcessor {
       inputAudioFormat = pendingInputAudioFormat;
       outputAudioFormat = pendingOutputAudioFormat;
       if (pendingSonicRecreation) {
-        sonic =
-            new Sonic(
-                inputAudioFormat.sampleRate,
-                inputAudioFormat.channelCount,
-                speed,
-                pitch,
-                outputAudioFormat.sampleRate);
+        if (inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+          sonic = null;
+          floatSonic =
+              new FloatSonic(
+                  inputAudioFormat.sampleRate,
+                  inputAudioFormat.channelCount,
+                  speed,
+                  pitch,
+                  outputAudioFormat.sampleRate);
+        } else {
+          floatSonic = null;
+          sonic =
+              new Sonic(
+                  inputAudioFormat.sampleRate,
+                  inputAudioFormat.channelCount,
+                  speed,
+                  pitch,
+                  outputAudioFormat.sampleRate);
+        }
       } else if (sonic != null) {
         sonic.flush();
+      } else if (floatSonic != null) {
+        floatSonic.flush();
       }
     }
     outputBuffer = EMPTY_BUFFER;
@@ -247,13 +292,30 @@ public final class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
     pendingSonicRecreation = false;
     sonic = null;
+    floatSonic = null;
     inputBytes = 0;
     outputBytes = 0;
     inputEnded = false;
   }
 
+  private int getPendingInputBytes() {
+    return floatSonic != null
+        ? floatSonic.getPendingInputBytes()
+        : checkNotNull(sonic).getPendingInputBytes();
+  }
+
+  private int getOutputSize() {
+    if (floatSonic != null) {
+      return floatSonic.getOutputSize();
+    } else if (sonic != null) {
+      return sonic.getOutputSize();
+    } else {
+      return 0;
+    }
+  }
 }
@@ -39,15 +39,19 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /**
  * Performs {@link MediaCodec} input buffer queueing on a background thread.
  *
+ * <p>Input buffers that are submitted while queueing is already scheduled on the background thread
+ * are queued by the same task, so that submitting many small input buffers in quick succession, as
+ * happens for low bitrate audio, doesn't require a message and a wake-up of the background thread
+ * per input buffer.
+ *
  * <p>The implementation of this class assumes that its public methods will be called from the same
  * thread.
  */
 @RequiresApi(23)
 class AsynchronousMediaCodecBufferEnqueuer {
 
-  private static final int MSG_QUEUE_INPUT_BUFFER = 0;
-  private static final int MSG_QUEUE_SECURE_INPUT_BUFFER = 1;
-  private static final int MSG_OPEN_CV = 2;
+  private static final int MSG_QUEUE_PENDING_INPUT_BUFFERS = 0;
+  private static final int MSG_OPEN_CV = 1;
 
   @GuardedBy("MESSAGE_PARAMS_INSTANCE_POOL")
   private static final ArrayDeque<MessageParams> MESSAGE_PARAMS_INSTANCE_POOL = new ArrayDeque<>();
@@ -60,6 +64,13 @@ class AsynchronousMediaCodecBufferEnqueuer {
   private final AtomicReference<@NullableType RuntimeException> pendingRuntimeException;
   private final ConditionVariable conditionVariable;
   private final boolean needsSynchronizationWorkaround;
+
+  @GuardedBy("pendingInputBuffers")
+  private final ArrayDeque<MessageParams> pendingInputBuffers;
+
+  @GuardedBy("pendingInputBuffers")
+  private boolean queueingScheduled;
+
   private boolean started;
 
   /**
@@ -89,6 +100,7 @@ class AsynchronousMediaCodecBufferEnqueuer {
     this.handlerThread = handlerThread;
     this.conditionVariable = conditionVariable;
     pendingRuntimeException = new AtomicReference<>();
+    pendingInputBuffers = new ArrayDeque<>();
     needsSynchronizationWorkaround =
         forceQueueingSynchronizationWorkaround || needsSynchronizationWorkaround();
   }
@@ -121,9 +133,9 @@ class AsynchronousMediaCodecBufferEnqueuer {
       int index, int offset, int size, long presentationTimeUs, int flags) {
     maybeThrowException();
     MessageParams messageParams = getMessageParams();
-    messageParams.setQueueParams(index, offset, size, presentationTimeUs, flags);
-    Message message = castNonNull(handler).obtainMessage(MSG_QUEUE_INPUT_BUFFER, messageParams);
-    message.sendToTarget();
+    messageParams.setQueueParams(
+        index, offset, size, presentationTimeUs, flags, /* secure= */ false);
+    addPendingInputBuffer(messageParams);
   }
 
   /**
@@ -139,11 +151,10 @@ class AsynchronousMediaCodecBufferEnqueuer {
       int index, int offset, CryptoInfo info, long presentationTimeUs, int flags) {
     maybeThrowException();
     MessageParams messageParams = getMessageParams();
-    messageParams.setQueueParams(index, offset, /* size= */ 0, presentationTimeUs, flags);
+    messageParams.setQueueParams(
+        index, offset, /* size= */ 0, presentationTimeUs, flags, /* secure= */ true);
     copy(info, messageParams.cryptoInfo);
-    Message message =
-        castNonNull(handler).obtainMessage(MSG_QUEUE_SECURE_INPUT_BUFFER, messageParams);
-    message.sendToTarget();
+    addPendingInputBuffer(messageParams);
   }
 
   /** Flushes the instance. */
@@ -174,6 +185,22 @@ class AsynchronousMediaCodecBufferEnqueuer {
     blockUntilHandlerThreadIsIdle();
   }
 
+  /**
+   * Adds an input buffer to the pending input buffers, and schedules queueing the pending input
+   * buffers on the {@link #handlerThread} if it's not scheduled already.
+   */
+  private void addPendingInputBuffer(MessageParams messageParams) {
+    boolean scheduleQueueing;
+    synchronized (pendingInputBuffers) {
+      pendingInputBuffers.add(messageParams);
+      scheduleQueueing = !queueingScheduled;
+      queueingScheduled = true;
+    }
+    if (scheduleQueueing) {
+      castNonNull(handler).obtainMessage(MSG_QUEUE_PENDING_INPUT_BUFFERS).sendToTarget();
+    }
+  }
+
   private void maybeThrowException() {
     @Nullable RuntimeException exception = pendingRuntimeException.getAndSet(null);
     if (exception != null) {
@@ -188,6 +215,12 @@ class AsynchronousMediaCodecBufferEnqueuer {
   private void flushHandlerThread() throws InterruptedException {
     Handler handler = castNonNull(this.handler);
     handler.removeCallbacksAndMessages(null);
+    synchronized (pendingInputBuffers) {
+      while (!pendingInputBuffers.isEmpty()) {
+        recycleMessageParams(pendingInputBuffers.removeFirst());
+      }
+      queueingScheduled = false;
+    }
     blockUntilHandlerThreadIsIdle();
     // Check if any exceptions happened during the last queueing action.
     maybeThrowException();
@@ -207,21 +240,9 @@ class AsynchronousMediaCodecBufferEnqueuer {
   }
 
   private void doHandleMessage(Message msg) {
-    @Nullable MessageParams params = null;
     switch (msg.what) {
-      case MSG_QUEUE_INPUT_BUFFER:
-        params = (MessageParams) msg.obj;
-        doQueueInputBuffer(
-            params.index, params.offset, params.size, params.presentationTimeUs, params.flags);
-        break;
-      case MSG_QUEUE_SECURE_INPUT_BUFFER:
-        params = (MessageParams) msg.obj;
-        doQueueSecureInputBuffer(
-            params.index,
-            params.offset,
-            params.cryptoInfo,
-            params.presentationTimeUs,
-            params.flags);
+      case MSG_QUEUE_PENDING_INPUT_BUFFERS:
+        doQueuePendingInputBuffers();
         break;
       case MSG_OPEN_CV:
         conditionVariable.open();
@@ -229,7 +250,33 @@ class AsynchronousMediaCodecBufferEnqueuer {
       default:
         setPendingRuntimeException(new IllegalStateException(String.valueOf(msg.what)));
     }
-    if (params != null) {
+  }
+
+  /**
+   * Queues pending input buffers until there are none left, including input buffers that are
+   * added while queueing.
+   */
+  private void doQueuePendingInputBuffers() {
+    while (true) {
+      MessageParams params;
+      synchronized (pendingInputBuffers) {
+        if (pendingInputBuffers.isEmpty()) {
+          queueingScheduled = false;
+          return;
+        }
+        params = pendingInputBuffers.removeFirst();
+      }
+      if (params.secure) {
+        doQueueSecureInputBuffer(
+            params.index,
+            params.offset,
+            params.cryptoInfo,
+            params.presentationTimeUs,
+            params.flags);
+      } else {
+        doQueueInputBuffer(
+            params.index, params.offset, params.size, params.presentationTimeUs, params.flags);
+      }
       recycleMessageParams(params);
     }
   }
@@ -282,6 +329,7 @@ class AsynchronousMediaCodecBufferEnqueuer {
     public final MediaCodec.CryptoInfo cryptoInfo;
     public long presentationTimeUs;
     public int flags;
+    public boolean secure;
 
     MessageParams() {
       cryptoInfo = new MediaCodec.CryptoInfo();
@@ -289,12 +337,13 @@ class AsynchronousMediaCodecBufferEnqueuer {
 
     /** Convenience method for setting the queueing parameters. */
     public void setQueueParams(
-        int index, int offset, int size, long presentationTimeUs, int flags) {
+        int index, int offset, int size, long presentationTimeUs, int flags, boolean secure) {
       this.index = index;
       this.offset = offset;
       this.size = size;
       this.presentationTimeUs = presentationTimeUs;
       this.flags = flags;
+      this.secure = secure;
     }
   }
 
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.os.Build;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Persists the decoders found by {@link MediaCodecUtil} for each {@link CodecKey}, so that they
+ * don't need to be found again by enumerating and querying all codecs in later processes.
+ *
+ * <p>{@link android.media.MediaCodecInfo.CodecCapabilities} can't be persisted, so only the names
+ * of the decoders are stored. The stored decoders are only used if the build fingerprint of the
+ * device is unchanged, since the available decoders can change with a system update.
+ *
+ * <p>The file is read on the thread that first accesses the store. It's written on a separate
+ * executor, so that storing decoders doesn't block the thread that queried them.
+ */
+/* package */ final class DecoderInfoStore {
+
+  /** A decoder stored for a {@link CodecKey}. */
+  public static final class Entry {
+
+    /** The name of the decoder, as in {@link MediaCodecInfo#name}. */
+    public final String name;
+    /** The MIME type that the decoder uses, as in {@link MediaCodecInfo#codecMimeType}. */
+    public final String codecMimeType;
+    /** Whether the decoder is secure, as in {@link MediaCodecInfo#secure}. */
+    public final boolean secure;
+
+    public Entry(String name, String codecMimeType, boolean secure) {
+      this.name = name;
+      this.codecMimeType = codecMimeType;
+      this.secure = secure;
+    }
+  }
+
+  private static final String TAG = "DecoderInfoStore";
+  private static final int VERSION = 1;
+
+  private final AtomicFile atomicFile;
+  private final String fingerprint;
+  private final Executor writeExecutor;
+
+  @GuardedBy("this")
+  private final HashMap<CodecKey, List<Entry>> entries;
+
+  @GuardedBy("this")
+  private boolean loaded;
+
+  @GuardedBy("this")
+  private boolean writePending;
+
+  /**
+   * Creates an instance.
+   *
+   * @param file The file in which the decoders are stored.
+   */
+  public DecoderInfoStore(File file) {
+    this(file, Build.FINGERPRINT, Util.newSingleThreadExecutor("ExoPlayer:DecoderInfoStore"));
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param file The file in which the decoders are stored.
+   * @param fingerprint The build fingerprint of the device. Stored decoders are ignored if they
+   *     were stored with a different fingerprint.
+   * @param writeExecutor The {@link Executor} on which the file is written.
+   */
+  /* package */ DecoderInfoStore(File file, String fingerprint, Executor writeExecutor) {
+    this.fingerprint = fingerprint;
+    this.writeExecutor = writeExecutor;
+    atomicFile = new AtomicFile(file);
+    entries = new HashMap<>();
+  }
+
+  /**
+   * Returns the stored decoders for a {@link CodecKey}, or null if they aren't stored. The file is
+   * read on the first call to this method or {@link #put(CodecKey, List)}.
+   */
+  @Nullable
+  public synchronized List<Entry> get(CodecKey key) {
+    maybeLoad();
+    return entries.get(key);
+  }
+
+  /**
+   * Stores the decoders for a {@link CodecKey} and schedules writing them to the file. Decoders
+   * stored before a pending write is executed are written together.
+   */
+  public synchronized void put(CodecKey key, List<Entry> decoders) {
+    maybeLoad();
+    entries.put(key, Collections.unmodifiableList(new ArrayList<>(decoders)));
+    if (!writePending) {
+      writePending = true;
+      writeExecutor.execute(this::writeFile);
+    }
+  }
+
+  @GuardedBy("this")
+  private void maybeLoad() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (!atomicFile.exists()) {
+      return;
+    }
+    @Nullable DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+      int version = input.readInt();
+      if (version != VERSION || !fingerprint.equals(input.readUTF())) {
+        // The stored decoders may not be available anymore. They'll be overwritten on the next
+        // write.
+        return;
+      }
+      HashMap<CodecKey, List<Entry>> storedEntries = new HashMap<>();
+      int keyCount = input.readInt();
+      for (int i = 0; i < keyCount; i++) {
+        CodecKey key =
+            new CodecKey(
+                /* mimeType= */ input.readUTF(),
+                /* secure= */ input.readBoolean(),
+                /* tunneling= */ input.readBoolean());
+        int decoderCount = input.readInt();
+        ArrayList<Entry> decoders = new ArrayList<>(decoderCount);
+        for (int j = 0; j < decoderCount; j++) {
+          decoders.add(
+              new Entry(
+                  /* name= */ input.readUTF(),
+                  /* codecMimeType= */ input.readUTF(),
+                  /* secure= */ input.readBoolean()));
+        }
+        storedEntries.put(key, Collections.unmodifiableList(decoders));
+      }
+      entries.putAll(storedEntries);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read decoder info store", e);
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  /** Writes the stored decoders to the file. Errors are logged, since persisting is best effort. */
+  private void writeFile() {
+    HashMap<CodecKey, List<Entry>> entriesToWrite;
+    synchronized (this) {
+      writePending = false;
+      entriesToWrite = new HashMap<>(entries);
+    }
+    @Nullable DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeUTF(fingerprint);
+      output.writeInt(entriesToWrite.size());
+      for (Map.Entry<CodecKey, List<Entry>> keyAndDecoders : entriesToWrite.entrySet()) {
+        CodecKey key = keyAndDecoders.getKey();
+        output.writeUTF(key.mimeType);
+        output.writeBoolean(key.secure);
+        output.writeBoolean(key.tunneling);
+        List<Entry> decoders = keyAndDecoders.getValue();
+        output.writeInt(decoders.size());
+        for (int i = 0; i < decoders.size(); i++) {
+          Entry decoder = decoders.get(i);
+          output.writeUTF(decoder.name);
+          output.writeUTF(decoder.codecMimeType);
+          output.writeBoolean(decoder.secure);
+        }
+      }
+      atomicFile.endWrite(output);
+      output = null;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write decoder info store", e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import android.media.MediaFormat;
+import android.view.Surface;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.Format;
+import com.google.common.base.Predicate;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A pool of configured and started codecs that can be shared between {@link MediaCodecRenderer}
+ * instances, including renderers of different players.
+ *
+ * <p>A renderer that is reset returns its codec to the pool instead of releasing it, and a renderer
+ * that needs a codec with the same name and MIME type adopts a pooled codec if it's compatible with
+ * the new format, which avoids the cost of creating, configuring and starting a new codec. This is
+ * most effective when many short items are played one after the other, for example in a feed.
+ *
+ * <p>Pooled codecs hold on to decoder resources, which may prevent other codecs from being created.
+ * The number of pooled codecs is therefore limited, and the least recently pooled codec is released
+ * when the limit is exceeded. {@link #clear()} should be called when pooled codecs are no longer
+ * needed.
+ *
+ * <p>This class is thread safe.
+ */
+public final class MediaCodecPool {
+
+  /** A codec held by a {@link MediaCodecPool}. */
+  public static final class PooledCodec {
+
+    /** The codec, which is flushed. */
+    public final MediaCodecAdapter codec;
+    /** The {@link MediaCodecInfo} of the codec. */
+    public final MediaCodecInfo codecInfo;
+    /** The {@link Format} that the codec was last used for. */
+    public final Format format;
+    /**
+     * The output {@link MediaFormat} of the codec. A flushed codec doesn't report its output format
+     * again, so the adopting renderer uses this format instead.
+     */
+    public final MediaFormat outputMediaFormat;
+    /**
+     * The operating rate of the codec, or {@link MediaCodecRenderer#CODEC_OPERATING_RATE_UNSET}.
+     */
+    public final float operatingRate;
+    /**
+     * A placeholder surface that the codec outputs to while it's pooled, or null if the codec isn't
+     * configured to output to a surface. The placeholder surface is owned by the pool until the
+     * codec is adopted, after which it's owned by the adopting renderer.
+     */
+    @Nullable public final Surface placeholderSurface;
+    /** The time it took to initialize the codec, in milliseconds. */
+    public final long initializationDurationMs;
+    /** Renderer specific state associated with the codec configuration, or null. */
+    @Nullable public final Object rendererState;
+
+    /**
+     * Creates an instance.
+     *
+     * @param codec The codec, which must be flushed.
+     * @param codecInfo The {@link MediaCodecInfo} of the codec.
+     * @param format The {@link Format} that the codec was last used for.
+     * @param outputMediaFormat The output {@link MediaFormat} of the codec.
+     * @param operatingRate The operating rate of the codec, or {@link
+     *     MediaCodecRenderer#CODEC_OPERATING_RATE_UNSET}.
+     * @param placeholderSurface A placeholder surface that the codec outputs to while it's pooled,
+     *     or null if the codec isn't configured to output to a surface.
+     * @param initializationDurationMs The time it took to initialize the codec, in milliseconds.
+     * @param rendererState Renderer specific state associated with the codec configuration, or
+     *     null.
+     */
+    public PooledCodec(
+        MediaCodecAdapter codec,
+        MediaCodecInfo codecInfo,
+        Format format,
+        MediaFormat outputMediaFormat,
+        float operatingRate,
+        @Nullable Surface placeholderSurface,
+        long initializationDurationMs,
+        @Nullable Object rendererState) {
+      this.codec = codec;
+      this.codecInfo = codecInfo;
+      this.format = format;
+      this.outputMediaFormat = outputMediaFormat;
+      this.operatingRate = operatingRate;
+      this.placeholderSurface = placeholderSurface;
+      this.initializationDurationMs = initializationDurationMs;
+      this.rendererState = rendererState;
+    }
+
+    private void release() {
+      try {
+        codec.release();
+      } finally {
+        if (placeholderSurface != null) {
+          placeholderSurface.release();
+        }
+      }
+    }
+  }
+
+  /** The default maximum number of pooled codecs. */
+  public static final int DEFAULT_MAX_POOLED_CODEC_COUNT = 2;
+
+  private final int maxPooledCodecCount;
+
+  @GuardedBy("this")
+  private final ArrayDeque<PooledCodec> pooledCodecs;
+
+  @GuardedBy("this")
+  private int hitCount;
+
+  @GuardedBy("this")
+  private int missCount;
+
+  @GuardedBy("this")
+  private long timeSavedMs;
+
+  /** Creates an instance that holds at most {@link #DEFAULT_MAX_POOLED_CODEC_COUNT} codecs. */
+  public MediaCodecPool() {
+    this(DEFAULT_MAX_POOLED_CODEC_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxPooledCodecCount The maximum number of pooled codecs. Must be positive.
+   */
+  public MediaCodecPool(int maxPooledCodecCount) {
+    checkArgument(maxPooledCodecCount > 0);
+    this.maxPooledCodecCount = maxPooledCodecCount;
+    pooledCodecs = new ArrayDeque<>();
+  }
+
+  /**
+   * Adds a codec to the pool. If the pool is full, the least recently added codec is released.
+   *
+   * @param pooledCodec The {@link PooledCodec}.
+   */
+  public synchronized void add(PooledCodec pooledCodec) {
+    pooledCodecs.addLast(pooledCodec);
+    if (pooledCodecs.size() > maxPooledCodecCount) {
+      pooledCodecs.removeFirst().release();
+    }
+  }
+
+  /**
+   * Removes and returns the most recently added codec with the given name and MIME type that
+   * satisfies the given condition, or returns null if there's no such codec.
+   *
+   * @param name The name of the codec, as in {@link MediaCodecInfo#name}.
+   * @param mimeType The MIME type that the codec is used for, as in {@link
+   *     MediaCodecInfo#mimeType}.
+   * @param canAdopt A {@link Predicate} that returns whether a pooled codec can be adopted.
+   * @return The adopted {@link PooledCodec}, or null.
+   */
+  @Nullable
+  public synchronized PooledCodec acquire(
+      String name, String mimeType, Predicate<PooledCodec> canAdopt) {
+    Iterator<PooledCodec> iterator = pooledCodecs.descendingIterator();
+    while (iterator.hasNext()) {
+      PooledCodec pooledCodec = iterator.next();
+      if (pooledCodec.codecInfo.name.equals(name)
+          && pooledCodec.codecInfo.mimeType.equals(mimeType)
+          && canAdopt.apply(pooledCodec)) {
+        iterator.remove();
+        hitCount++;
+        timeSavedMs += pooledCodec.initializationDurationMs;
+        return pooledCodec;
+      }
+    }
+    missCount++;
+    return null;
+  }
+
+  /** Releases all pooled codecs. */
+  public synchronized void clear() {
+    while (!pooledCodecs.isEmpty()) {
+      pooledCodecs.removeFirst().release();
+    }
+  }
+
+  /** Returns the number of pooled codecs. */
+  public synchronized int getPooledCodecCount() {
+    return pooledCodecs.size();
+  }
+
+  /** Returns the number of times a pooled codec was adopted. */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of times a codec was requested but no pooled codec could be adopted. */
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the total time saved by adopting pooled codecs, in milliseconds, estimated as the sum
+   * of the initialization durations of the adopted codecs.
+   */
+  public synchronized long getTimeSavedMs() {
+    return timeSavedMs;
+  }
+}
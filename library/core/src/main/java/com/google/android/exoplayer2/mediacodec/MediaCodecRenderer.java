@@ -36,6 +36,7 @@ import android.media.MediaCryptoException;
 import android.media.MediaFormat;
 import android.os.Bundle;
 import android.os.SystemClock;
+import android.view.Surface;
 import androidx.annotation.CallSuper;
 import androidx.annotation.CheckResult;
 import androidx.annotation.IntDef;
@@ -359,6 +360,8 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   private boolean enableAsynchronousBufferQueueing;
   private boolean forceAsyncQueueingSynchronizationWorkaround;
   private boolean enableSynchronizeCodecInteractionsWithQueueing;
+  @Nullable private MediaCodecPool codecPool;
+  private long codecInitializationDurationMs;
   @Nullable private ExoPlaybackException pendingPlaybackException;
   protected DecoderCounters decoderCounters;
   private long outputStreamStartPositionUs;
@@ -465,6 +468,20 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     enableSynchronizeCodecInteractionsWithQueueing = enabled;
   }
 
+  /**
+   * Sets a {@link MediaCodecPool} to which the codec is returned when the renderer is reset, and
+   * from which a compatible codec is adopted instead of initializing a new codec. The same pool can
+   * be set on renderers of different players. Codecs used with DRM are never pooled.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param codecPool The {@link MediaCodecPool}, or null to not pool codecs.
+   */
+  public void experimentalSetCodecPool(@Nullable MediaCodecPool codecPool) {
+    this.codecPool = codecPool;
+  }
+
   @Override
   @AdaptiveSupport
   public final int supportsMixedMimeTypeAdaptation() {
@@ -763,7 +780,9 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   protected void releaseCodec() {
     try {
       if (codec != null) {
-        codec.release();
+        if (!maybeReturnCodecToPool()) {
+          codec.release();
+        }
         decoderCounters.decoderReleaseCount++;
         onCodecReleased(codecInfo.name);
       }
@@ -781,6 +800,48 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
   }
 
+  /**
+   * Returns the codec to the {@link MediaCodecPool} if the renderer is being reset and the codec
+   * can be pooled.
+   *
+   * @return Whether the codec was returned to the pool. If false, the codec must be released.
+   */
+  private boolean maybeReturnCodecToPool() {
+    if (codecPool == null
+        || codec == null
+        || codecInfo == null
+        || codecInputFormat == null
+        || codecOutputMediaFormat == null
+        || getState() != STATE_DISABLED
+        || mediaCrypto != null
+        || codecDrmSession != null
+        || codecDrainAction != DRAIN_ACTION_NONE
+        || codecNeedsFlushWorkaround
+        || (codecNeedsEosFlushWorkaround && codecReceivedEos)
+        || !canReturnCodecToPool()) {
+      return false;
+    }
+    @Nullable Surface placeholderSurface;
+    try {
+      codec.flush();
+      placeholderSurface = detachCodecOutputSurface(codec);
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Failed to return codec to pool", e);
+      return false;
+    }
+    codecPool.add(
+        new MediaCodecPool.PooledCodec(
+            codec,
+            codecInfo,
+            codecInputFormat,
+            codecOutputMediaFormat,
+            codecOperatingRate,
+            placeholderSurface,
+            codecInitializationDurationMs,
+            getPooledCodecRendererState()));
+    return true;
+  }
+
   @Override
   protected void onStarted() {
     // Do nothing. Overridden to remove throws clause.
@@ -1091,6 +1152,24 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       codecOperatingRate = CODEC_OPERATING_RATE_UNSET;
     }
 
+    if (codecPool != null && crypto == null) {
+      Format format = inputFormat;
+      float operatingRate = codecOperatingRate;
+      @Nullable
+      MediaCodecPool.PooledCodec pooledCodec =
+          codecPool.acquire(
+              codecName,
+              codecInfo.mimeType,
+              candidate ->
+                  (candidate.operatingRate == operatingRate
+                          || operatingRate != CODEC_OPERATING_RATE_UNSET)
+                      && canAdoptPooledCodec(candidate, format));
+      if (pooledCodec != null) {
+        adoptPooledCodec(pooledCodec, codecOperatingRate);
+        return;
+      }
+    }
+
     try {
       codecInitializingTimestamp = SystemClock.elapsedRealtime();
       TraceUtil.beginSection("createCodec:" + codecName);
@@ -1124,6 +1203,64 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     this.codecInfo = codecInfo;
     this.codecOperatingRate = codecOperatingRate;
     codecInputFormat = inputFormat;
+    codecInitializationDurationMs = codecInitializedTimestamp - codecInitializingTimestamp;
+    initCodecWorkarounds(codecInfo);
+
+    if (getState() == STATE_STARTED) {
+      codecHotswapDeadlineMs = SystemClock.elapsedRealtime() + MAX_CODEC_HOTSWAP_TIME_MS;
+    }
+
+    decoderCounters.decoderInitCount++;
+    onCodecInitialized(codecName, codecInitializedTimestamp, codecInitializationDurationMs);
+  }
+
+  /**
+   * Adopts a codec from the {@link MediaCodecPool} instead of initializing a new codec.
+   *
+   * @param pooledCodec The {@link MediaCodecPool.PooledCodec} to adopt.
+   * @param codecOperatingRate The operating rate to set, or {@link #CODEC_OPERATING_RATE_UNSET}.
+   */
+  private void adoptPooledCodec(MediaCodecPool.PooledCodec pooledCodec, float codecOperatingRate) {
+    MediaCodecAdapter codecAdapter = pooledCodec.codec;
+    MediaCodecInfo codecInfo = pooledCodec.codecInfo;
+    try {
+      onPooledCodecAdopted(pooledCodec);
+      if (pooledCodec.operatingRate != codecOperatingRate) {
+        Bundle codecParameters = new Bundle();
+        codecParameters.putFloat(MediaFormat.KEY_OPERATING_RATE, codecOperatingRate);
+        codecAdapter.setParameters(codecParameters);
+      }
+    } catch (RuntimeException e) {
+      codecAdapter.release();
+      throw e;
+    } finally {
+      if (pooledCodec.placeholderSurface != null) {
+        pooledCodec.placeholderSurface.release();
+      }
+    }
+
+    this.codec = codecAdapter;
+    this.codecInfo = codecInfo;
+    this.codecOperatingRate = codecOperatingRate;
+    codecInputFormat = inputFormat;
+    codecInitializationDurationMs = pooledCodec.initializationDurationMs;
+    initCodecWorkarounds(codecInfo);
+    // The flushed codec won't report its output format again.
+    codecOutputMediaFormat = pooledCodec.outputMediaFormat;
+    codecOutputMediaFormatChanged = true;
+    codecHasOutputMediaFormat = true;
+
+    if (getState() == STATE_STARTED) {
+      codecHotswapDeadlineMs = SystemClock.elapsedRealtime() + MAX_CODEC_HOTSWAP_TIME_MS;
+    }
+
+    decoderCounters.decoderInitCount++;
+    onCodecInitialized(
+        codecInfo.name, SystemClock.elapsedRealtime(), /* initializationDurationMs= */ 0);
+  }
+
+  private void initCodecWorkarounds(MediaCodecInfo codecInfo) {
+    String codecName = codecInfo.name;
     codecAdaptationWorkaroundMode = codecAdaptationWorkaroundMode(codecName);
     codecNeedsDiscardToSpsWorkaround =
         codecNeedsDiscardToSpsWorkaround(codecName, codecInputFormat);
@@ -1139,14 +1276,6 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     if ("c2.android.mp3.decoder".equals(codecInfo.name)) {
       c2Mp3TimestampTracker = new C2Mp3TimestampTracker();
     }
-
-    if (getState() == STATE_STARTED) {
-      codecHotswapDeadlineMs = SystemClock.elapsedRealtime() + MAX_CODEC_HOTSWAP_TIME_MS;
-    }
-
-    decoderCounters.decoderInitCount++;
-    long elapsed = codecInitializedTimestamp - codecInitializingTimestamp;
-    onCodecInitialized(codecName, codecInitializedTimestamp, elapsed);
   }
 
   private boolean shouldContinueRendering(long renderStartTimeMs) {
@@ -1375,6 +1504,77 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     // Do nothing.
   }
 
+  /**
+   * Returns whether the codec can be returned to the {@link MediaCodecPool} when the renderer is
+   * reset. Called only if a pool is {@link #experimentalSetCodecPool set}, the codec isn't used
+   * with DRM and it can be flushed.
+   *
+   * <p>The default implementation returns false.
+   */
+  protected boolean canReturnCodecToPool() {
+    return false;
+  }
+
+  /**
+   * Called after the codec is flushed and before it's returned to the {@link MediaCodecPool}.
+   * Renderers that configure the codec with an output surface must switch the output of the codec
+   * to a new placeholder surface, so that the renderer's surface can be used by other codecs, and
+   * return the placeholder surface.
+   *
+   * <p>The default implementation returns null.
+   *
+   * @param codec The codec that's returned to the pool.
+   * @return The placeholder surface that the codec outputs to, or null if the codec doesn't output
+   *     to a surface.
+   */
+  @Nullable
+  protected Surface detachCodecOutputSurface(MediaCodecAdapter codec) {
+    return null;
+  }
+
+  /**
+   * Returns renderer specific state associated with the configuration of the codec, which is
+   * stored with the codec when it's returned to the {@link MediaCodecPool}.
+   *
+   * <p>The default implementation returns null.
+   */
+  @Nullable
+  protected Object getPooledCodecRendererState() {
+    return null;
+  }
+
+  /**
+   * Returns whether a codec from the {@link MediaCodecPool} can be adopted to decode a {@link
+   * Format}. Unlike {@link #canReuseCodec(MediaCodecInfo, Format, Format)}, implementations must
+   * evaluate the {@link MediaCodecPool.PooledCodec#rendererState} of the pooled codec rather than
+   * the state of the renderer. Codecs that need reconfiguration can't be adopted.
+   *
+   * <p>The default implementation returns false.
+   *
+   * @param pooledCodec The {@link MediaCodecPool.PooledCodec}.
+   * @param format The {@link Format} to decode.
+   * @return Whether the pooled codec can be adopted.
+   */
+  protected boolean canAdoptPooledCodec(MediaCodecPool.PooledCodec pooledCodec, Format format) {
+    return false;
+  }
+
+  /**
+   * Called when a codec from the {@link MediaCodecPool} is adopted, before {@link
+   * #onCodecInitialized(String, long, long)}. Implementations should restore their state from the
+   * {@link MediaCodecPool.PooledCodec#rendererState} of the pooled codec, and switch the output of
+   * the codec from the {@link MediaCodecPool.PooledCodec#placeholderSurface placeholder surface}
+   * to their own surface, if applicable. The placeholder surface is released after this method
+   * returns.
+   *
+   * <p>The default implementation is a no-op.
+   *
+   * @param pooledCodec The adopted {@link MediaCodecPool.PooledCodec}.
+   */
+  protected void onPooledCodecAdopted(MediaCodecPool.PooledCodec pooledCodec) {
+    // Do nothing.
+  }
+
   /**
    * Called when a {@link MediaCodec} has been released.
    *
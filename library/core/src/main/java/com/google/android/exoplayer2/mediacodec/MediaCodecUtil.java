@@ -27,16 +27,20 @@ import androidx.annotation.CheckResult;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import com.google.android.exoplayer2.video.ColorInfo;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
@@ -63,10 +67,15 @@ public final class MediaCodecUtil {
 
   private static final String TAG = "MediaCodecUtil";
   private static final Pattern PROFILE_PATTERN = Pattern.compile("^\\D?(\\d+)$");
+  private static final String SECURE_DECODER_NAME_SUFFIX = ".secure";
 
   @GuardedBy("MediaCodecUtil.class")
   private static final HashMap<CodecKey, List<MediaCodecInfo>> decoderInfosCache = new HashMap<>();
 
+  @GuardedBy("MediaCodecUtil.class")
+  @Nullable
+  private static DecoderInfoStore decoderInfoStore;
+
   // Codecs to constant mappings.
   // AVC.
   private static final String CODEC_ID_AVC1 = "avc1";
@@ -107,6 +116,56 @@ public final class MediaCodecUtil {
     }
   }
 
+  /**
+   * Optional call to warm the codec cache for multiple mime types in parallel, for example when the
+   * app starts.
+   *
+   * <p>Calling this method may speed up subsequent calls to {@link #getDecoderInfo(String, boolean,
+   * boolean)} and {@link #getDecoderInfos(String, boolean, boolean)}.
+   *
+   * @param executor The {@link Executor} on which the codecs are queried. A task is executed for
+   *     each mime type, so the mime types are queried in parallel if the executor uses multiple
+   *     threads.
+   * @param mimeTypes The mime types.
+   * @param secure Whether the decoder is required to support secure decryption. Always pass false
+   *     unless secure decryption really is required.
+   * @param tunneling Whether the decoder is required to support tunneling. Always pass false unless
+   *     tunneling really is required.
+   */
+  public static void warmDecoderInfoCache(
+      Executor executor, List<String> mimeTypes, boolean secure, boolean tunneling) {
+    for (int i = 0; i < mimeTypes.size(); i++) {
+      String mimeType = mimeTypes.get(i);
+      executor.execute(() -> warmDecoderInfoCache(mimeType, secure, tunneling));
+    }
+  }
+
+  /**
+   * Sets a file in which to persist the decoders found for each mime type, or null to not persist
+   * them.
+   *
+   * <p>If set, decoders found by an earlier process are restored from the file, instead of
+   * enumerating and querying all the codecs of the device again. Only the decoder capabilities of
+   * the restored decoders are queried. Decoders persisted on a device with a different build
+   * fingerprint (e.g. before a system update) are ignored.
+   *
+   * <p>This method should be called before the codec cache is used, for example when the app
+   * starts. The file is read by the first query, so call {@link #warmDecoderInfoCache(Executor,
+   * List, boolean, boolean)} afterwards to read it on a background thread. The file is written on a
+   * background thread.
+   *
+   * @param file The file, or null to not persist the decoders.
+   */
+  public static void setDecoderInfoCacheFile(@Nullable File file) {
+    setDecoderInfoStore(file == null ? null : new DecoderInfoStore(file));
+  }
+
+  @VisibleForTesting
+  /* package */ static synchronized void setDecoderInfoStore(
+      @Nullable DecoderInfoStore decoderInfoStore) {
+    MediaCodecUtil.decoderInfoStore = decoderInfoStore;
+  }
+
   /**
    * Clears the codec cache.
    *
@@ -158,31 +217,40 @@ public final class MediaCodecUtil {
    *     order given by {@link MediaCodecList}.
    * @throws DecoderQueryException If there was an error querying the available decoders.
    */
-  public static synchronized List<MediaCodecInfo> getDecoderInfos(
+  public static List<MediaCodecInfo> getDecoderInfos(
       String mimeType, boolean secure, boolean tunneling) throws DecoderQueryException {
     CodecKey key = new CodecKey(mimeType, secure, tunneling);
-    @Nullable List<MediaCodecInfo> cachedDecoderInfos = decoderInfosCache.get(key);
-    if (cachedDecoderInfos != null) {
-      return cachedDecoderInfos;
-    }
-    MediaCodecListCompat mediaCodecList =
-        Util.SDK_INT >= 21
-            ? new MediaCodecListCompatV21(secure, tunneling)
-            : new MediaCodecListCompatV16();
-    ArrayList<MediaCodecInfo> decoderInfos = getDecoderInfosInternal(key, mediaCodecList);
-    if (secure && decoderInfos.isEmpty() && 21 <= Util.SDK_INT && Util.SDK_INT <= 23) {
-      // Some devices don't list secure decoders on API level 21 [Internal: b/18678462]. Try the
-      // legacy path. We also try this path on API levels 22 and 23 as a defensive measure.
-      mediaCodecList = new MediaCodecListCompatV16();
-      decoderInfos = getDecoderInfosInternal(key, mediaCodecList);
-      if (!decoderInfos.isEmpty()) {
-        Log.w(TAG, "MediaCodecList API didn't list secure decoder for: " + mimeType
-            + ". Assuming: " + decoderInfos.get(0).name);
+    @Nullable DecoderInfoStore store;
+    synchronized (MediaCodecUtil.class) {
+      @Nullable List<MediaCodecInfo> cachedDecoderInfos = decoderInfosCache.get(key);
+      if (cachedDecoderInfos != null) {
+        return cachedDecoderInfos;
+      }
+      store = decoderInfoStore;
+    }
+    // The codecs are queried without holding the lock, so that different mime types can be queried
+    // in parallel.
+    @Nullable ArrayList<MediaCodecInfo> decoderInfos = null;
+    @Nullable List<DecoderInfoStore.Entry> storedDecoders = store != null ? store.get(key) : null;
+    if (storedDecoders != null) {
+      decoderInfos = getStoredDecoderInfos(key, storedDecoders);
+    }
+    if (decoderInfos == null) {
+      decoderInfos = queryDecoderInfos(key);
+      if (store != null) {
+        store.put(key, toDecoderInfoStoreEntries(decoderInfos));
       }
     }
     applyWorkarounds(mimeType, decoderInfos);
     List<MediaCodecInfo> unmodifiableDecoderInfos = Collections.unmodifiableList(decoderInfos);
-    decoderInfosCache.put(key, unmodifiableDecoderInfos);
+    synchronized (MediaCodecUtil.class) {
+      @Nullable List<MediaCodecInfo> cachedDecoderInfos = decoderInfosCache.get(key);
+      if (cachedDecoderInfos != null) {
+        // Another thread queried the same codecs concurrently.
+        return cachedDecoderInfos;
+      }
+      decoderInfosCache.put(key, unmodifiableDecoderInfos);
+    }
     return unmodifiableDecoderInfos;
   }
 
@@ -268,6 +336,128 @@ public final class MediaCodecUtil {
 
   // Internal methods.
 
+  /**
+   * Returns {@link MediaCodecInfo}s for the given codec {@link CodecKey} by enumerating and
+   * querying all the codecs of the device, in the order given by {@link MediaCodecList}.
+   *
+   * @param key The codec key.
+   * @return The codec information for usable codecs matching the specified key.
+   * @throws DecoderQueryException If there was an error querying the available decoders.
+   */
+  private static ArrayList<MediaCodecInfo> queryDecoderInfos(CodecKey key)
+      throws DecoderQueryException {
+    MediaCodecListCompat mediaCodecList =
+        Util.SDK_INT >= 21
+            ? new MediaCodecListCompatV21(key.secure, key.tunneling)
+            : new MediaCodecListCompatV16();
+    ArrayList<MediaCodecInfo> decoderInfos = getDecoderInfosInternal(key, mediaCodecList);
+    if (key.secure && decoderInfos.isEmpty() && 21 <= Util.SDK_INT && Util.SDK_INT <= 23) {
+      // Some devices don't list secure decoders on API level 21 [Internal: b/18678462]. Try the
+      // legacy path. We also try this path on API levels 22 and 23 as a defensive measure.
+      mediaCodecList = new MediaCodecListCompatV16();
+      decoderInfos = getDecoderInfosInternal(key, mediaCodecList);
+      if (!decoderInfos.isEmpty()) {
+        Log.w(TAG, "MediaCodecList API didn't list secure decoder for: " + key.mimeType
+            + ". Assuming: " + decoderInfos.get(0).name);
+      }
+    }
+    return decoderInfos;
+  }
+
+  /**
+   * Returns {@link MediaCodecInfo}s for the decoders stored in a {@link DecoderInfoStore}, or null
+   * if they can't be restored.
+   *
+   * <p>The codec list is only enumerated until the stored decoders have been found, and only the
+   * capabilities of the stored decoders are queried. Unlike {@link #queryDecoderInfos(CodecKey)},
+   * this doesn't check the supported types and capabilities of every other codec.
+   *
+   * @param key The codec key.
+   * @param storedDecoders The decoders stored for the key.
+   * @return The codec information for the stored decoders, or null if they can't be restored.
+   */
+  @Nullable
+  private static ArrayList<MediaCodecInfo> getStoredDecoderInfos(
+      CodecKey key, List<DecoderInfoStore.Entry> storedDecoders) {
+    ArrayList<MediaCodecInfo> decoderInfos = new ArrayList<>(storedDecoders.size());
+    if (storedDecoders.isEmpty()) {
+      return decoderInfos;
+    }
+    try {
+      MediaCodecListCompat mediaCodecList =
+          Util.SDK_INT >= 21
+              ? new MediaCodecListCompatV21(key.secure, key.tunneling)
+              : new MediaCodecListCompatV16();
+      HashSet<String> storedDecoderNames = new HashSet<>();
+      for (int i = 0; i < storedDecoders.size(); i++) {
+        storedDecoderNames.add(storedDecoders.get(i).name);
+        storedDecoderNames.add(getNameWithoutSecureSuffix(storedDecoders.get(i).name));
+      }
+      HashMap<String, android.media.MediaCodecInfo> codecInfosByName = new HashMap<>();
+      int numberOfCodecs = mediaCodecList.getCodecCount();
+      for (int i = 0; i < numberOfCodecs; i++) {
+        android.media.MediaCodecInfo codecInfo = mediaCodecList.getCodecInfoAt(i);
+        if (storedDecoderNames.contains(codecInfo.getName())) {
+          codecInfosByName.put(codecInfo.getName(), codecInfo);
+          if (codecInfosByName.size() == storedDecoderNames.size()) {
+            break;
+          }
+        }
+      }
+      for (int i = 0; i < storedDecoders.size(); i++) {
+        DecoderInfoStore.Entry storedDecoder = storedDecoders.get(i);
+        @Nullable
+        android.media.MediaCodecInfo codecInfo = codecInfosByName.get(storedDecoder.name);
+        boolean forceSecure = false;
+        if (codecInfo == null
+            && storedDecoder.secure
+            && storedDecoder.name.endsWith(SECURE_DECODER_NAME_SUFFIX)) {
+          // A secure decoder synthesized from a decoder that doesn't list secure decoders
+          // explicitly. See getDecoderInfosInternal.
+          codecInfo = codecInfosByName.get(getNameWithoutSecureSuffix(storedDecoder.name));
+          forceSecure = true;
+        }
+        if (codecInfo == null) {
+          return null;
+        }
+        decoderInfos.add(
+            MediaCodecInfo.newInstance(
+                storedDecoder.name,
+                key.mimeType,
+                storedDecoder.codecMimeType,
+                codecInfo.getCapabilitiesForType(storedDecoder.codecMimeType),
+                isHardwareAccelerated(codecInfo),
+                isSoftwareOnly(codecInfo),
+                isVendor(codecInfo),
+                /* forceDisableAdaptive= */ false,
+                forceSecure));
+      }
+      return decoderInfos;
+    } catch (RuntimeException e) {
+      // The stored decoders will be queried again.
+      Log.w(TAG, "Failed to restore stored decoders for: " + key.mimeType, e);
+      return null;
+    }
+  }
+
+  private static String getNameWithoutSecureSuffix(String name) {
+    return name.endsWith(SECURE_DECODER_NAME_SUFFIX)
+        ? name.substring(0, name.length() - SECURE_DECODER_NAME_SUFFIX.length())
+        : name;
+  }
+
+  private static List<DecoderInfoStore.Entry> toDecoderInfoStoreEntries(
+      List<MediaCodecInfo> decoderInfos) {
+    ArrayList<DecoderInfoStore.Entry> entries = new ArrayList<>(decoderInfos.size());
+    for (int i = 0; i < decoderInfos.size(); i++) {
+      MediaCodecInfo decoderInfo = decoderInfos.get(i);
+      entries.add(
+          new DecoderInfoStore.Entry(
+              decoderInfo.name, decoderInfo.codecMimeType, decoderInfo.secure));
+    }
+    return entries;
+  }
+
   /**
    * Returns {@link MediaCodecInfo}s for the given codec {@link CodecKey} in the order given by
    * {@code mediaCodecList}.
@@ -339,7 +529,7 @@ public final class MediaCodecUtil {
           } else if (!secureDecodersExplicit && secureSupported) {
             decoderInfos.add(
                 MediaCodecInfo.newInstance(
-                    name + ".secure",
+                    name + SECURE_DECODER_NAME_SUFFIX,
                     mimeType,
                     codecMimeType,
                     capabilities,
@@ -1027,7 +1217,7 @@ public final class MediaCodecUtil {
 
   }
 
-  private static final class CodecKey {
+  /* package */ static final class CodecKey {
 
     public final String mimeType;
     public final boolean secure;
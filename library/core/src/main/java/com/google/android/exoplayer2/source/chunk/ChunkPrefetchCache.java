@@ -0,0 +1,516 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds chunk data that was loaded ahead of time into memory, so that chunks loaded later can read
+ * it without making a request.
+ *
+ * <p>This is used to load the initialization (and first media) segments of the next period once the
+ * current period has been fully loaded, so that the transition to the next period doesn't have to
+ * wait for these requests to complete. Data is served at most once, after which it's removed from
+ * the cache.
+ *
+ * <p>The same data is never loaded twice. Loads that start while the data is being prefetched wait
+ * for the prefetch to finish and then read the prefetched data, and data that was already
+ * requested by a load isn't prefetched anymore. See {@link #getDataSourceForLoad}.
+ *
+ * <p>Prefetched data is held in memory outside of the {@link
+ * com.google.android.exoplayer2.upstream.Allocator}, so it isn't accounted for by the {@link
+ * com.google.android.exoplayer2.LoadControl}. The memory used is bounded by the maximum size of
+ * the cache, which should be taken into account when choosing the target buffer size.
+ *
+ * <p>The cache also records how long playback would have stalled at each period transition, which
+ * is the time it took to load the first media chunk of the next period minus the duration that was
+ * still buffered when that load was requested.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class ChunkPrefetchCache {
+
+  /** The default maximum number of bytes held by the cache. */
+  public static final int DEFAULT_MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+  /** The maximum number of recently requested keys that are remembered to skip their prefetch. */
+  private static final int MAX_REQUESTED_KEY_COUNT = 32;
+
+  private static final int READ_GRANULARITY = 16 * 1024;
+
+  private final int maxSizeBytes;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<Key, Entry> entries;
+
+  @GuardedBy("this")
+  private final HashSet<Key> prefetchingKeys;
+
+  @GuardedBy("this")
+  private final LinkedHashSet<Key> requestedKeys;
+
+  @GuardedBy("this")
+  private int sizeBytes;
+
+  @GuardedBy("this")
+  private int prefetchCount;
+
+  @GuardedBy("this")
+  private int hitCount;
+
+  @GuardedBy("this")
+  private int periodTransitionCount;
+
+  @GuardedBy("this")
+  private long periodTransitionStallDurationMs;
+
+  /** Creates an instance with the {@link #DEFAULT_MAX_SIZE_BYTES default maximum size}. */
+  public ChunkPrefetchCache() {
+    this(DEFAULT_MAX_SIZE_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxSizeBytes The maximum number of bytes held by the cache. The oldest data is evicted
+   *     when this size is exceeded.
+   */
+  public ChunkPrefetchCache(int maxSizeBytes) {
+    Assertions.checkArgument(maxSizeBytes > 0);
+    this.maxSizeBytes = maxSizeBytes;
+    entries = new LinkedHashMap<>();
+    prefetchingKeys = new HashSet<>();
+    requestedKeys = new LinkedHashSet<>();
+  }
+
+  /**
+   * Returns a {@link Chunk} that loads the data defined by {@code dataSpec} into this cache. The
+   * chunk doesn't load anything if the data is already held, being prefetched or was requested by
+   * a load when it's loaded. It stops loading if the data is larger than the maximum cache size.
+   *
+   * @param dataSource The source from which the data should be loaded.
+   * @param dataSpec Defines the data to be loaded.
+   * @param type See {@link Chunk#type}.
+   * @param trackFormat See {@link Chunk#trackFormat}.
+   * @return The {@link Chunk}.
+   */
+  public Chunk createPrefetchChunk(
+      DataSource dataSource, DataSpec dataSpec, int type, Format trackFormat) {
+    return new PrefetchChunk(dataSource, dataSpec, type, trackFormat);
+  }
+
+  /**
+   * Returns whether the data defined by {@code dataSpec} is held by the cache or being prefetched
+   * into it.
+   */
+  public synchronized boolean contains(DataSpec dataSpec) {
+    Key key = new Key(dataSpec);
+    return entries.containsKey(key) || prefetchingKeys.contains(key);
+  }
+
+  /**
+   * Returns the {@link DataSource} to use for a load of the data defined by {@code dataSpec}.
+   *
+   * <ul>
+   *   <li>If the data is held by the cache, it's removed and a source reading it from memory is
+   *       returned.
+   *   <li>If the data is being prefetched, a source is returned that waits for the prefetch to
+   *       finish when it's opened. It then reads the prefetched data, or from {@code upstream} if
+   *       the prefetch failed.
+   *   <li>Otherwise {@code upstream} is returned, and the data won't be prefetched anymore.
+   * </ul>
+   *
+   * @param upstream The {@link DataSource} from which the data is loaded if it isn't prefetched.
+   * @param dataSpec Defines the data to be loaded.
+   * @return The {@link DataSource} to use for the load.
+   */
+  public synchronized DataSource getDataSourceForLoad(DataSource upstream, DataSpec dataSpec) {
+    Key key = new Key(dataSpec);
+    if (prefetchingKeys.contains(key)) {
+      return new PrefetchJoiningDataSource(upstream, dataSpec);
+    }
+    @Nullable DataSource prefetchedDataSource = remove(dataSpec);
+    if (prefetchedDataSource != null) {
+      return prefetchedDataSource;
+    }
+    onRequested(key);
+    return upstream;
+  }
+
+  /**
+   * Removes the data defined by {@code dataSpec} from the cache, returning a {@link DataSource}
+   * from which it can be read. The returned source only supports reading (sub-ranges of) {@code
+   * dataSpec}.
+   *
+   * @param dataSpec Defines the data to be read.
+   * @return A {@link DataSource} from which the data can be read, or {@code null} if the data is
+   *     not held by the cache.
+   */
+  @Nullable
+  public synchronized DataSource remove(DataSpec dataSpec) {
+    @Nullable Entry entry = entries.remove(new Key(dataSpec));
+    if (entry == null) {
+      return null;
+    }
+    sizeBytes -= entry.data.length;
+    hitCount++;
+    return new PrefetchedDataSource(entry.data, dataSpec.position);
+  }
+
+  /** Returns the number of chunks that were loaded into the cache. */
+  public synchronized int getPrefetchCount() {
+    return prefetchCount;
+  }
+
+  /** Returns the number of chunks that were read from the cache. */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Records a transition to a period whose data may have been loaded into the cache.
+   *
+   * @param stallDurationMs The time for which playback stalled at the transition because the first
+   *     media chunk of the period wasn't loaded yet, in milliseconds, or 0 if it didn't stall.
+   */
+  public synchronized void onPeriodTransition(long stallDurationMs) {
+    periodTransitionCount++;
+    periodTransitionStallDurationMs += stallDurationMs;
+  }
+
+  /** Returns the number of period transitions recorded by {@link #onPeriodTransition}. */
+  public synchronized int getPeriodTransitionCount() {
+    return periodTransitionCount;
+  }
+
+  /**
+   * Returns the total time for which playback stalled at the period transitions recorded by {@link
+   * #onPeriodTransition}, in milliseconds.
+   */
+  public synchronized long getPeriodTransitionStallDurationMs() {
+    return periodTransitionStallDurationMs;
+  }
+
+  private synchronized boolean onPrefetchStarted(Key key) {
+    if (entries.containsKey(key) || prefetchingKeys.contains(key) || requestedKeys.contains(key)) {
+      return false;
+    }
+    prefetchingKeys.add(key);
+    return true;
+  }
+
+  private synchronized void onPrefetchEnded(Key key) {
+    prefetchingKeys.remove(key);
+    notifyAll();
+  }
+
+  /**
+   * Blocks until the data defined by {@code dataSpec} is no longer being prefetched, and then
+   * removes it from the cache as in {@link #remove(DataSpec)}.
+   */
+  @Nullable
+  private synchronized DataSource awaitPrefetchAndRemove(DataSpec dataSpec)
+      throws InterruptedException {
+    Key key = new Key(dataSpec);
+    while (prefetchingKeys.contains(key)) {
+      wait();
+    }
+    @Nullable DataSource prefetchedDataSource = remove(dataSpec);
+    if (prefetchedDataSource == null) {
+      onRequested(key);
+    }
+    return prefetchedDataSource;
+  }
+
+  private synchronized void onRequested(Key key) {
+    requestedKeys.remove(key);
+    requestedKeys.add(key);
+    if (requestedKeys.size() > MAX_REQUESTED_KEY_COUNT) {
+      Iterator<Key> iterator = requestedKeys.iterator();
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  private synchronized void put(Key key, byte[] data) {
+    if (data.length > maxSizeBytes) {
+      return;
+    }
+    @Nullable Entry previousEntry = entries.remove(key);
+    if (previousEntry != null) {
+      sizeBytes -= previousEntry.data.length;
+    }
+    entries.put(key, new Entry(data));
+    sizeBytes += data.length;
+    prefetchCount++;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (sizeBytes > maxSizeBytes) {
+      sizeBytes -= iterator.next().data.length;
+      iterator.remove();
+    }
+  }
+
+  private static final class Key {
+
+    private final Uri uri;
+    private final long position;
+    private final long length;
+
+    public Key(DataSpec dataSpec) {
+      uri = dataSpec.uri;
+      position = dataSpec.position;
+      length = dataSpec.length;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return position == other.position && length == other.length && uri.equals(other.uri);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = uri.hashCode();
+      result = 31 * result + (int) position;
+      result = 31 * result + (int) length;
+      return result;
+    }
+  }
+
+  private static final class Entry {
+
+    public final byte[] data;
+
+    public Entry(byte[] data) {
+      this.data = data;
+    }
+  }
+
+  private final class PrefetchChunk extends Chunk {
+
+    private final Key key;
+
+    private volatile boolean loadCanceled;
+
+    public PrefetchChunk(DataSource dataSource, DataSpec dataSpec, int type, Format trackFormat) {
+      super(
+          dataSource,
+          dataSpec,
+          type,
+          trackFormat,
+          C.SELECTION_REASON_UNKNOWN,
+          /* trackSelectionData= */ null,
+          /* startTimeUs= */ C.TIME_UNSET,
+          /* endTimeUs= */ C.TIME_UNSET);
+      key = new Key(dataSpec);
+    }
+
+    @Override
+    public void cancelLoad() {
+      loadCanceled = true;
+    }
+
+    @Override
+    public void load() throws IOException {
+      if (!onPrefetchStarted(key)) {
+        return;
+      }
+      try {
+        dataSource.open(dataSpec);
+        byte[] data = new byte[READ_GRANULARITY];
+        int limit = 0;
+        int bytesRead = 0;
+        while (bytesRead != C.RESULT_END_OF_INPUT && !loadCanceled && limit <= maxSizeBytes) {
+          if (data.length < limit + READ_GRANULARITY) {
+            data = Arrays.copyOf(data, data.length + READ_GRANULARITY);
+          }
+          bytesRead = dataSource.read(data, limit, READ_GRANULARITY);
+          if (bytesRead != C.RESULT_END_OF_INPUT) {
+            limit += bytesRead;
+          }
+        }
+        if (!loadCanceled && limit > 0 && limit <= maxSizeBytes) {
+          put(key, Arrays.copyOf(data, limit));
+        }
+      } finally {
+        Util.closeQuietly(dataSource);
+        onPrefetchEnded(key);
+      }
+    }
+  }
+
+  /**
+   * Reads data that was being prefetched when the load was created, once the prefetch finished.
+   * Reads from the upstream source if the prefetch failed.
+   */
+  private final class PrefetchJoiningDataSource implements DataSource {
+
+    private final DataSource upstream;
+    private final DataSpec prefetchDataSpec;
+
+    @Nullable private DataSource dataSource;
+    @Nullable private DataSource openedDataSource;
+
+    public PrefetchJoiningDataSource(DataSource upstream, DataSpec prefetchDataSpec) {
+      this.upstream = upstream;
+      this.prefetchDataSpec = prefetchDataSpec;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      if (dataSource == null) {
+        @Nullable DataSource prefetchedDataSource;
+        try {
+          prefetchedDataSource = awaitPrefetchAndRemove(prefetchDataSpec);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        dataSource = prefetchedDataSource != null ? prefetchedDataSource : upstream;
+      }
+      openedDataSource = dataSource;
+      return dataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      return Assertions.checkNotNull(openedDataSource).read(buffer, offset, readLength);
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return openedDataSource == null ? null : openedDataSource.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return openedDataSource == null
+          ? Collections.emptyMap()
+          : openedDataSource.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (openedDataSource != null) {
+        try {
+          openedDataSource.close();
+        } finally {
+          openedDataSource = null;
+        }
+      }
+    }
+  }
+
+  private static final class PrefetchedDataSource extends BaseDataSource {
+
+    private final byte[] data;
+    private final long basePosition;
+
+    @Nullable private Uri uri;
+    private int readPosition;
+    private int bytesRemaining;
+    private boolean opened;
+
+    public PrefetchedDataSource(byte[] data, long basePosition) {
+      super(/* isNetwork= */ false);
+      this.data = data;
+      this.basePosition = basePosition;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      uri = dataSpec.uri;
+      transferInitializing(dataSpec);
+      long offset = dataSpec.position - basePosition;
+      long available = data.length - offset;
+      if (offset < 0
+          || available < 0
+          || (dataSpec.length != C.LENGTH_UNSET && dataSpec.length > available)) {
+        throw new IOException(
+            "Unsatisfiable range: [" + dataSpec.position + ", " + dataSpec.length + "]");
+      }
+      readPosition = (int) offset;
+      bytesRemaining = (int) (dataSpec.length == C.LENGTH_UNSET ? available : dataSpec.length);
+      opened = true;
+      transferStarted(dataSpec);
+      return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (readLength == 0) {
+        return 0;
+      } else if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      readLength = min(readLength, bytesRemaining);
+      System.arraycopy(data, readPosition, buffer, offset, readLength);
+      readPosition += readLength;
+      bytesRemaining -= readLength;
+      bytesTransferred(readLength);
+      return readLength;
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return uri;
+    }
+
+    @Override
+    public void close() {
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+      uri = null;
+    }
+  }
+}
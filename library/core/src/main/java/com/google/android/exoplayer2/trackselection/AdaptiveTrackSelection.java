@@ -51,6 +51,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     private final int minDurationToRetainAfterDiscardMs;
     private final float bandwidthFraction;
     private final float bufferedFractionToLiveEdgeForQualityIncrease;
+    private final int chunkSizeLookaheadMs;
     private final Clock clock;
 
     /** Creates an adaptive track selection factory with default parameters. */
@@ -122,12 +123,57 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
         float bandwidthFraction,
         float bufferedFractionToLiveEdgeForQualityIncrease,
         Clock clock) {
+      this(
+          minDurationForQualityIncreaseMs,
+          maxDurationForQualityDecreaseMs,
+          minDurationToRetainAfterDiscardMs,
+          bandwidthFraction,
+          bufferedFractionToLiveEdgeForQualityIncrease,
+          /* chunkSizeLookaheadMs= */ 0,
+          clock);
+    }
+
+    /**
+     * Creates an adaptive track selection factory.
+     *
+     * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for the
+     *     selected track to switch to one of higher quality.
+     * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for the
+     *     selected track to switch to one of lower quality.
+     * @param minDurationToRetainAfterDiscardMs When switching to a track of significantly higher
+     *     quality, the selection may indicate that media already buffered at the lower quality can
+     *     be discarded to speed up the switch. This is the minimum duration of media that must be
+     *     retained at the lower quality.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param bufferedFractionToLiveEdgeForQualityIncrease For live streaming, the fraction of the
+     *     duration from current playback position to the live edge that has to be buffered before
+     *     the selected track can be switched to one of higher quality. This parameter is only
+     *     applied when the playback position is closer to the live edge than {@code
+     *     minDurationForQualityIncreaseMs}, which would otherwise prevent switching to a higher
+     *     quality from happening.
+     * @param chunkSizeLookaheadMs The duration of upcoming media whose chunk sizes are used to
+     *     estimate the bitrate of each track, or 0 to always use {@link Format#bitrate}. See {@link
+     *     AdaptiveTrackSelection#AdaptiveTrackSelection(TrackGroup, int[], BandwidthMeter, long,
+     *     long, long, float, float, List, long, Clock)}.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(
+        int minDurationForQualityIncreaseMs,
+        int maxDurationForQualityDecreaseMs,
+        int minDurationToRetainAfterDiscardMs,
+        float bandwidthFraction,
+        float bufferedFractionToLiveEdgeForQualityIncrease,
+        int chunkSizeLookaheadMs,
+        Clock clock) {
       this.minDurationForQualityIncreaseMs = minDurationForQualityIncreaseMs;
       this.maxDurationForQualityDecreaseMs = maxDurationForQualityDecreaseMs;
       this.minDurationToRetainAfterDiscardMs = minDurationToRetainAfterDiscardMs;
       this.bandwidthFraction = bandwidthFraction;
       this.bufferedFractionToLiveEdgeForQualityIncrease =
           bufferedFractionToLiveEdgeForQualityIncrease;
+      this.chunkSizeLookaheadMs = chunkSizeLookaheadMs;
       this.clock = clock;
     }
 
@@ -183,6 +229,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
           bandwidthFraction,
           bufferedFractionToLiveEdgeForQualityIncrease,
           adaptationCheckpoints,
+          chunkSizeLookaheadMs,
           clock);
     }
   }
@@ -202,7 +249,9 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
   private final float bandwidthFraction;
   private final float bufferedFractionToLiveEdgeForQualityIncrease;
   private final ImmutableList<AdaptationCheckpoint> adaptationCheckpoints;
+  private final long chunkSizeLookaheadUs;
   private final Clock clock;
+  private final int[] trackBitrates;
 
   private float playbackSpeed;
   private int selectedIndex;
@@ -267,6 +316,65 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       float bufferedFractionToLiveEdgeForQualityIncrease,
       List<AdaptationCheckpoint> adaptationCheckpoints,
       Clock clock) {
+    this(
+        group,
+        tracks,
+        bandwidthMeter,
+        minDurationForQualityIncreaseMs,
+        maxDurationForQualityDecreaseMs,
+        minDurationToRetainAfterDiscardMs,
+        bandwidthFraction,
+        bufferedFractionToLiveEdgeForQualityIncrease,
+        adaptationCheckpoints,
+        /* chunkSizeLookaheadMs= */ 0,
+        clock);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for the
+   *     selected track to switch to one of higher quality.
+   * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for the
+   *     selected track to switch to one of lower quality.
+   * @param minDurationToRetainAfterDiscardMs When switching to a track of significantly higher
+   *     quality, the selection may indicate that media already buffered at the lower quality can be
+   *     discarded to speed up the switch. This is the minimum duration of media that must be
+   *     retained at the lower quality.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use. Setting to a value less than 1 is recommended to account for
+   *     inaccuracies in the bandwidth estimator.
+   * @param bufferedFractionToLiveEdgeForQualityIncrease For live streaming, the fraction of the
+   *     duration from current playback position to the live edge that has to be buffered before the
+   *     selected track can be switched to one of higher quality. This parameter is only applied
+   *     when the playback position is closer to the live edge than {@code
+   *     minDurationForQualityIncreaseMs}, which would otherwise prevent switching to a higher
+   *     quality from happening.
+   * @param adaptationCheckpoints The {@link AdaptationCheckpoint checkpoints} that can be used to
+   *     calculate available bandwidth for this selection.
+   * @param chunkSizeLookaheadMs The duration of upcoming media whose chunk sizes are used to
+   *     estimate the bitrate of each track, or 0 to always use {@link Format#bitrate}. If the sizes
+   *     of the upcoming chunks of a track are known from the {@link MediaChunkIterator
+   *     MediaChunkIterators} passed to {@link #updateSelectedTrack}, for example from a DASH
+   *     segment index or HLS byte ranges, their average bitrate is used instead of {@link
+   *     Format#bitrate}. This allows switching down ahead of complex scenes and selecting a higher
+   *     quality for simple ones.
+   * @param clock The {@link Clock}.
+   */
+  protected AdaptiveTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      BandwidthMeter bandwidthMeter,
+      long minDurationForQualityIncreaseMs,
+      long maxDurationForQualityDecreaseMs,
+      long minDurationToRetainAfterDiscardMs,
+      float bandwidthFraction,
+      float bufferedFractionToLiveEdgeForQualityIncrease,
+      List<AdaptationCheckpoint> adaptationCheckpoints,
+      long chunkSizeLookaheadMs,
+      Clock clock) {
     super(group, tracks);
     this.bandwidthMeter = bandwidthMeter;
     this.minDurationForQualityIncreaseUs = minDurationForQualityIncreaseMs * 1000L;
@@ -276,7 +384,12 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     this.bufferedFractionToLiveEdgeForQualityIncrease =
         bufferedFractionToLiveEdgeForQualityIncrease;
     this.adaptationCheckpoints = ImmutableList.copyOf(adaptationCheckpoints);
+    this.chunkSizeLookaheadUs = chunkSizeLookaheadMs * 1000L;
     this.clock = clock;
+    trackBitrates = new int[length];
+    for (int i = 0; i < length; i++) {
+      trackBitrates[i] = getFormat(i).bitrate;
+    }
     playbackSpeed = 1f;
     reason = C.SELECTION_REASON_UNKNOWN;
     lastBufferEvaluationMs = C.TIME_UNSET;
@@ -309,6 +422,9 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       List<? extends MediaChunk> queue,
       MediaChunkIterator[] mediaChunkIterators) {
     long nowMs = clock.elapsedRealtime();
+    if (chunkSizeLookaheadUs > 0) {
+      updateTrackBitrates(mediaChunkIterators);
+    }
 
     // Make initial selection
     if (reason == C.SELECTION_REASON_UNKNOWN) {
@@ -459,7 +575,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     for (int i = 0; i < length; i++) {
       if (nowMs == Long.MIN_VALUE || !isBlacklisted(i, nowMs)) {
         Format format = getFormat(i);
-        if (canSelectFormat(format, format.bitrate, playbackSpeed, effectiveBitrate)) {
+        if (canSelectFormat(format, trackBitrates[i], playbackSpeed, effectiveBitrate)) {
           return i;
         } else {
           lowestBitrateAllowedIndex = i;
@@ -469,6 +585,53 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     return lowestBitrateAllowedIndex;
   }
 
+  private void updateTrackBitrates(MediaChunkIterator[] mediaChunkIterators) {
+    for (int i = 0; i < length; i++) {
+      int upcomingChunksBitrate =
+          i < mediaChunkIterators.length
+              ? getUpcomingChunksBitrate(mediaChunkIterators[i])
+              : Format.NO_VALUE;
+      trackBitrates[i] =
+          upcomingChunksBitrate != Format.NO_VALUE ? upcomingChunksBitrate : getFormat(i).bitrate;
+    }
+  }
+
+  /**
+   * Returns the average bitrate of the chunks starting within {@link #chunkSizeLookaheadUs} of the
+   * next chunk of the iterator, or {@link Format#NO_VALUE} if the size of any of them is unknown.
+   * The iterator is reset before returning.
+   */
+  private int getUpcomingChunksBitrate(MediaChunkIterator iterator) {
+    long firstChunkStartTimeUs = C.TIME_UNSET;
+    long lastChunkEndTimeUs = C.TIME_UNSET;
+    long totalLength = 0;
+    while (iterator.next()) {
+      long chunkStartTimeUs = iterator.getChunkStartTimeUs();
+      if (firstChunkStartTimeUs == C.TIME_UNSET) {
+        firstChunkStartTimeUs = chunkStartTimeUs;
+      } else if (chunkStartTimeUs - firstChunkStartTimeUs >= chunkSizeLookaheadUs) {
+        break;
+      }
+      long chunkLength = iterator.getDataSpec().length;
+      if (chunkLength == C.LENGTH_UNSET) {
+        iterator.reset();
+        return Format.NO_VALUE;
+      }
+      totalLength += chunkLength;
+      lastChunkEndTimeUs = iterator.getChunkEndTimeUs();
+    }
+    iterator.reset();
+    if (firstChunkStartTimeUs == C.TIME_UNSET || lastChunkEndTimeUs <= firstChunkStartTimeUs) {
+      return Format.NO_VALUE;
+    }
+    long bitrate =
+        totalLength
+            * C.BITS_PER_BYTE
+            * C.MICROS_PER_SECOND
+            / (lastChunkEndTimeUs - firstChunkStartTimeUs);
+    return (int) Math.min(bitrate, Integer.MAX_VALUE);
+  }
+
   private long minDurationForQualityIncreaseUs(long availableDurationUs) {
     boolean isAvailableDurationTooShort = availableDurationUs != C.TIME_UNSET
         && availableDurationUs <= minDurationForQualityIncreaseUs;
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.Iterables;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A buffer based adaptive {@link ExoTrackSelection}, whose selected track is updated using the
+ * BOLA algorithm, which selects the track that maximizes a utility function of the buffered
+ * duration. Unlike {@link AdaptiveTrackSelection}, the selection doesn't follow short-term changes
+ * of the bandwidth estimate, which makes it more stable on networks with bursty throughput.
+ *
+ * <p>The lowest quality track is selected while the buffered duration is below {@code
+ * minBufferMs}, and the highest quality track once it reaches {@code bufferTargetMs}. The bandwidth
+ * estimate is used in two cases where the buffered duration isn't a good indicator of the network
+ * conditions:
+ *
+ * <ul>
+ *   <li>At the start of playback and after a discontinuity or a rebuffer, the track is selected
+ *       based on the bandwidth estimate, and the buffer levels at which tracks are selected are
+ *       offset so that this selection is retained until the buffered duration changes.
+ *   <li>The selection only switches up to a track whose bitrate exceeds the bandwidth estimate if
+ *       the previously selected track already did, which avoids oscillating between tracks when
+ *       the buffered duration is close to a switching point.
+ * </ul>
+ *
+ * <p>To further limit oscillations, the selection only switches up once the buffered duration
+ * exceeds the switching point by a margin of two chunk durations.
+ *
+ * <p>See Spiteri et al., "BOLA: Near-Optimal Bitrate Adaptation for Online Videos", and "From
+ * Theory to Practice: Improving Bitrate Adaptation in the DASH Reference Player".
+ */
+public class BufferBasedTrackSelection extends BaseTrackSelection {
+
+  /** Factory for {@link BufferBasedTrackSelection} instances. */
+  public static class Factory implements ExoTrackSelection.Factory {
+
+    private final int minBufferMs;
+    private final int bufferTargetMs;
+    private final float bandwidthFraction;
+    private final Clock clock;
+
+    /** Creates a buffer based track selection factory with default parameters. */
+    public Factory() {
+      this(DEFAULT_MIN_BUFFER_MS, DEFAULT_BUFFER_TARGET_MS, DEFAULT_BANDWIDTH_FRACTION);
+    }
+
+    /**
+     * Creates a buffer based track selection factory.
+     *
+     * @param minBufferMs The buffered duration below which the lowest quality track is selected.
+     * @param bufferTargetMs The buffered duration from which the highest quality track is
+     *     selected. Must be greater than {@code minBufferMs}, and should be less than the duration
+     *     of media the {@link com.google.android.exoplayer2.LoadControl} buffers before it stops
+     *     loading.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     */
+    public Factory(int minBufferMs, int bufferTargetMs, float bandwidthFraction) {
+      this(minBufferMs, bufferTargetMs, bandwidthFraction, Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a buffer based track selection factory.
+     *
+     * @param minBufferMs The buffered duration below which the lowest quality track is selected.
+     * @param bufferTargetMs The buffered duration from which the highest quality track is
+     *     selected. Must be greater than {@code minBufferMs}, and should be less than the duration
+     *     of media the {@link com.google.android.exoplayer2.LoadControl} buffers before it stops
+     *     loading.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(int minBufferMs, int bufferTargetMs, float bandwidthFraction, Clock clock) {
+      Assertions.checkArgument(minBufferMs > 0 && bufferTargetMs > minBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.bufferTargetMs = bufferTargetMs;
+      this.bandwidthFraction = bandwidthFraction;
+      this.clock = clock;
+    }
+
+    @Override
+    public final @NullableType ExoTrackSelection[] createTrackSelections(
+        @NullableType Definition[] definitions,
+        BandwidthMeter bandwidthMeter,
+        MediaPeriodId mediaPeriodId,
+        Timeline timeline) {
+      ExoTrackSelection[] selections = new ExoTrackSelection[definitions.length];
+      for (int i = 0; i < definitions.length; i++) {
+        @Nullable Definition definition = definitions[i];
+        if (definition == null || definition.tracks.length == 0) {
+          continue;
+        }
+        selections[i] =
+            definition.tracks.length == 1
+                ? new FixedTrackSelection(
+                    definition.group, definition.tracks[0], definition.reason, definition.data)
+                : createBufferBasedTrackSelection(
+                    definition.group, bandwidthMeter, definition.tracks);
+      }
+      return selections;
+    }
+
+    /**
+     * Creates a single buffer based selection for the given group, bandwidth meter and tracks.
+     *
+     * @param group The {@link TrackGroup}.
+     * @param bandwidthMeter A {@link BandwidthMeter} which can be used to select tracks.
+     * @param tracks The indices of the selected tracks in the track group.
+     * @return A {@link BufferBasedTrackSelection} for the specified tracks.
+     */
+    protected BufferBasedTrackSelection createBufferBasedTrackSelection(
+        TrackGroup group, BandwidthMeter bandwidthMeter, int[] tracks) {
+      return new BufferBasedTrackSelection(
+          group,
+          tracks,
+          bandwidthMeter,
+          minBufferMs,
+          bufferTargetMs,
+          bandwidthFraction,
+          clock);
+    }
+  }
+
+  public static final int DEFAULT_MIN_BUFFER_MS = 10_000;
+  public static final int DEFAULT_BUFFER_TARGET_MS = 30_000;
+  public static final float DEFAULT_BANDWIDTH_FRACTION = 0.7f;
+
+  /**
+   * The number of chunk durations by which the buffer level must exceed the level at which a higher
+   * quality track is selected before switching up to it.
+   */
+  private static final int UPSWITCH_MARGIN_CHUNK_COUNT = 2;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final long minBufferUs;
+  private final long bufferTargetUs;
+  private final float bandwidthFraction;
+  private final Clock clock;
+  /**
+   * The utilities of the selected tracks, in order of decreasing bandwidth, or null if the bitrate
+   * of a track is unknown.
+   */
+  @Nullable private final double[] utilities;
+
+  private float playbackSpeed;
+  private int selectedIndex;
+  private int reason;
+  private boolean isStartup;
+  private long placeholderBufferUs;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   */
+  public BufferBasedTrackSelection(TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter) {
+    this(
+        group,
+        tracks,
+        bandwidthMeter,
+        DEFAULT_MIN_BUFFER_MS,
+        DEFAULT_BUFFER_TARGET_MS,
+        DEFAULT_BANDWIDTH_FRACTION,
+        Clock.DEFAULT);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param minBufferMs The buffered duration below which the lowest quality track is selected.
+   * @param bufferTargetMs The buffered duration from which the highest quality track is selected.
+   *     Must be greater than {@code minBufferMs}.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use. Setting to a value less than 1 is recommended to account for
+   *     inaccuracies in the bandwidth estimator.
+   * @param clock The {@link Clock}.
+   */
+  protected BufferBasedTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      BandwidthMeter bandwidthMeter,
+      long minBufferMs,
+      long bufferTargetMs,
+      float bandwidthFraction,
+      Clock clock) {
+    super(group, tracks);
+    Assertions.checkArgument(minBufferMs > 0 && bufferTargetMs > minBufferMs);
+    this.bandwidthMeter = bandwidthMeter;
+    this.minBufferUs = minBufferMs * 1000L;
+    this.bufferTargetUs = bufferTargetMs * 1000L;
+    this.bandwidthFraction = bandwidthFraction;
+    this.clock = clock;
+    utilities = getUtilities();
+    playbackSpeed = 1f;
+    reason = C.SELECTION_REASON_UNKNOWN;
+    isStartup = true;
+  }
+
+  @Override
+  public void enable() {
+    isStartup = true;
+    placeholderBufferUs = 0;
+  }
+
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+  }
+
+  @Override
+  public void onDiscontinuity() {
+    isStartup = true;
+    placeholderBufferUs = 0;
+  }
+
+  @Override
+  public void onRebuffer() {
+    isStartup = true;
+    placeholderBufferUs = 0;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+    int throughputIndex = determineThroughputSelectedIndex(nowMs);
+
+    // Make initial selection
+    if (reason == C.SELECTION_REASON_UNKNOWN) {
+      reason = C.SELECTION_REASON_INITIAL;
+      selectedIndex = throughputIndex;
+      return;
+    }
+
+    int previousSelectedIndex = selectedIndex;
+    int previousReason = reason;
+    int formatIndexOfPreviousChunk =
+        queue.isEmpty() ? C.INDEX_UNSET : indexOf(Iterables.getLast(queue).trackFormat);
+    if (formatIndexOfPreviousChunk != C.INDEX_UNSET) {
+      previousSelectedIndex = formatIndexOfPreviousChunk;
+      previousReason = Iterables.getLast(queue).trackSelectionReason;
+    }
+
+    long bufferTargetUs = this.bufferTargetUs;
+    if (availableDurationUs != C.TIME_UNSET) {
+      // For live streams, the buffered duration is limited by the distance to the live edge.
+      bufferTargetUs = min(bufferTargetUs, availableDurationUs);
+    }
+    long playoutBufferedDurationUs =
+        Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    int newSelectedIndex;
+    if (utilities == null || bufferTargetUs <= minBufferUs) {
+      newSelectedIndex = throughputIndex;
+    } else if (isStartup) {
+      // Select based on throughput, and offset the buffer levels so that the buffer based
+      // selection starts from the same track.
+      newSelectedIndex = throughputIndex;
+      if (bufferedDurationUs > 0) {
+        isStartup = false;
+        placeholderBufferUs =
+            max(
+                0,
+                getMinBufferLevelUs(newSelectedIndex, utilities, bufferTargetUs)
+                    - playoutBufferedDurationUs);
+      }
+    } else {
+      long bufferLevelUs = playoutBufferedDurationUs + placeholderBufferUs;
+      if (bufferLevelUs > bufferTargetUs) {
+        // Reduce the placeholder as the actual buffer grows, so that it doesn't hold the selection
+        // at a high quality when the buffer drains later.
+        placeholderBufferUs = max(0, placeholderBufferUs - (bufferLevelUs - bufferTargetUs));
+        bufferLevelUs = playoutBufferedDurationUs + placeholderBufferUs;
+      }
+      newSelectedIndex =
+          determineBufferSelectedIndex(nowMs, bufferLevelUs, utilities, bufferTargetUs);
+      if (newSelectedIndex < previousSelectedIndex) {
+        // Only switch up to a track whose bitrate exceeds the bandwidth estimate if the previous
+        // selection already did, to avoid oscillations.
+        newSelectedIndex = max(newSelectedIndex, min(previousSelectedIndex, throughputIndex));
+        if (!queue.isEmpty()) {
+          // Only switch up if the new track would still be selected with a smaller buffer, so that
+          // the selection doesn't switch back down after loading the next few chunks.
+          MediaChunk lastChunk = Iterables.getLast(queue);
+          long marginUs =
+              UPSWITCH_MARGIN_CHUNK_COUNT * (lastChunk.endTimeUs - lastChunk.startTimeUs);
+          int marginSelectedIndex =
+              determineBufferSelectedIndex(
+                  nowMs, bufferLevelUs - marginUs, utilities, bufferTargetUs);
+          newSelectedIndex = max(newSelectedIndex, min(previousSelectedIndex, marginSelectedIndex));
+        }
+      }
+    }
+    // If we adapted, update the trigger.
+    reason =
+        newSelectedIndex == previousSelectedIndex ? previousReason : C.SELECTION_REASON_ADAPTIVE;
+    selectedIndex = newSelectedIndex;
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  @Nullable
+  public Object getSelectionData() {
+    return null;
+  }
+
+  /**
+   * Returns the index of the highest quality track whose bitrate fits in the allocated bandwidth,
+   * or the lowest quality track if none fits.
+   */
+  private int determineThroughputSelectedIndex(long nowMs) {
+    long effectiveBitrate = (long) (bandwidthMeter.getBitrateEstimate() * bandwidthFraction);
+    int lowestBitrateAllowedIndex = 0;
+    for (int i = 0; i < length; i++) {
+      if (!isBlacklisted(i, nowMs)) {
+        Format format = getFormat(i);
+        if (Math.round(format.bitrate * playbackSpeed) <= effectiveBitrate) {
+          return i;
+        } else {
+          lowestBitrateAllowedIndex = i;
+        }
+      }
+    }
+    return lowestBitrateAllowedIndex;
+  }
+
+  /** Returns the index of the track that maximizes the BOLA score for the given buffer level. */
+  private int determineBufferSelectedIndex(
+      long nowMs, long bufferLevelUs, double[] utilities, long bufferTargetUs) {
+    double gp = getGp(utilities, bufferTargetUs);
+    double vp = minBufferUs / gp;
+    int bestIndex = C.INDEX_UNSET;
+    double bestScore = 0;
+    for (int i = 0; i < length; i++) {
+      if (isBlacklisted(i, nowMs)) {
+        continue;
+      }
+      double score = (vp * (utilities[i] + gp) - bufferLevelUs) / getFormat(i).bitrate;
+      if (bestIndex == C.INDEX_UNSET || score >= bestScore) {
+        // Prefer the lower quality track if scores are equal.
+        bestIndex = i;
+        bestScore = score;
+      }
+    }
+    return bestIndex == C.INDEX_UNSET ? length - 1 : bestIndex;
+  }
+
+  /** Returns the lowest buffer level at which the track at the given index is selected. */
+  private long getMinBufferLevelUs(int index, double[] utilities, long bufferTargetUs) {
+    double gp = getGp(utilities, bufferTargetUs);
+    double vp = minBufferUs / gp;
+    long bitrate = getFormat(index).bitrate;
+    double minBufferLevelUs = 0;
+    for (int i = index + 1; i < length; i++) {
+      // The track at index is preferred over the lower quality track at i above this level.
+      long lowerBitrate = getFormat(i).bitrate;
+      if (utilities[i] < utilities[index]) {
+        double levelUs =
+            vp
+                * (gp
+                    + (bitrate * utilities[i] - lowerBitrate * utilities[index])
+                        / (bitrate - lowerBitrate));
+        minBufferLevelUs = max(minBufferLevelUs, levelUs);
+      }
+    }
+    // Round up, as the lower quality track is preferred at the switching point itself.
+    return (long) minBufferLevelUs + 1;
+  }
+
+  /**
+   * Returns the BOLA parameter gamma * p, which is chosen so that the highest quality track is
+   * selected when the buffer level reaches the buffer target.
+   */
+  private double getGp(double[] utilities, long bufferTargetUs) {
+    return (utilities[0] - 1) / ((double) bufferTargetUs / minBufferUs - 1);
+  }
+
+  /**
+   * Returns the utilities of the selected tracks, which are the logarithms of their bitrates
+   * relative to the lowest bitrate, plus one. Returns null if the bitrate of a track is unknown or
+   * all tracks have the same bitrate.
+   */
+  @Nullable
+  private double[] getUtilities() {
+    int lowestBitrate = getFormat(length - 1).bitrate;
+    if (lowestBitrate <= 0 || getFormat(0).bitrate == lowestBitrate) {
+      return null;
+    }
+    double[] utilities = new double[length];
+    for (int i = 0; i < length; i++) {
+      utilities[i] = Math.log((double) getFormat(i).bitrate / lowestBitrate) + 1;
+    }
+    return utilities;
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.util.List;
+
+/**
+ * An {@link AdaptiveTrackSelection} that prefers tracks whose next chunk is fully cached, for
+ * example because the content was downloaded or previously watched at that quality.
+ *
+ * <p>The selection first determines the track that {@link AdaptiveTrackSelection} would select
+ * based on the bandwidth estimate and the buffered duration. It then selects the highest quality
+ * track whose next chunk is in the {@link Cache} instead, provided that the bitrate of that track
+ * is at least {@code minCachedTrackBitrateFraction} of the bitrate of the bandwidth based
+ * selection. Loading cached chunks saves bandwidth and is faster than loading from the network,
+ * which also reduces the startup time.
+ *
+ * <p>For the cached chunks to be used, media must be loaded through a {@link CacheDataSource} that
+ * uses the same {@link Cache} and {@link CacheKeyFactory}. Chunks that are already buffered are
+ * never discarded to be reloaded at a higher quality, since they may have been loaded from the
+ * cache.
+ */
+public class CacheAwareTrackSelection extends AdaptiveTrackSelection {
+
+  /** Factory for {@link CacheAwareTrackSelection} instances. */
+  public static class Factory extends AdaptiveTrackSelection.Factory {
+
+    private final Cache cache;
+    private final CacheKeyFactory cacheKeyFactory;
+    private final float minCachedTrackBitrateFraction;
+    private final int minDurationForQualityIncreaseMs;
+    private final int maxDurationForQualityDecreaseMs;
+    private final float bandwidthFraction;
+    private final float bufferedFractionToLiveEdgeForQualityIncrease;
+    private final Clock clock;
+
+    /**
+     * Creates a cache aware track selection factory with default parameters.
+     *
+     * @param cache The {@link Cache} from which media is loaded.
+     */
+    public Factory(Cache cache) {
+      this(
+          cache,
+          CacheKeyFactory.DEFAULT,
+          DEFAULT_MIN_CACHED_TRACK_BITRATE_FRACTION,
+          DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+          DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+          DEFAULT_BANDWIDTH_FRACTION,
+          DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE,
+          Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a cache aware track selection factory.
+     *
+     * @param cache The {@link Cache} from which media is loaded.
+     * @param cacheKeyFactory The {@link CacheKeyFactory} used by the {@link CacheDataSource} from
+     *     which media is loaded.
+     * @param minCachedTrackBitrateFraction The minimum bitrate of a cached track for it to be
+     *     preferred, as a fraction of the bitrate of the track that would be selected based on the
+     *     available bandwidth. Must be in the range (0, 1].
+     * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for the
+     *     selected track to switch to one of higher quality.
+     * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for the
+     *     selected track to switch to one of lower quality.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param bufferedFractionToLiveEdgeForQualityIncrease For live streaming, the fraction of the
+     *     duration from current playback position to the live edge that has to be buffered before
+     *     the selected track can be switched to one of higher quality. This parameter is only
+     *     applied when the playback position is closer to the live edge than {@code
+     *     minDurationForQualityIncreaseMs}, which would otherwise prevent switching to a higher
+     *     quality from happening.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(
+        Cache cache,
+        CacheKeyFactory cacheKeyFactory,
+        float minCachedTrackBitrateFraction,
+        int minDurationForQualityIncreaseMs,
+        int maxDurationForQualityDecreaseMs,
+        float bandwidthFraction,
+        float bufferedFractionToLiveEdgeForQualityIncrease,
+        Clock clock) {
+      super(
+          minDurationForQualityIncreaseMs,
+          maxDurationForQualityDecreaseMs,
+          DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+          bandwidthFraction,
+          bufferedFractionToLiveEdgeForQualityIncrease,
+          clock);
+      Assertions.checkArgument(
+          minCachedTrackBitrateFraction > 0 && minCachedTrackBitrateFraction <= 1);
+      this.cache = cache;
+      this.cacheKeyFactory = cacheKeyFactory;
+      this.minCachedTrackBitrateFraction = minCachedTrackBitrateFraction;
+      this.minDurationForQualityIncreaseMs = minDurationForQualityIncreaseMs;
+      this.maxDurationForQualityDecreaseMs = maxDurationForQualityDecreaseMs;
+      this.bandwidthFraction = bandwidthFraction;
+      this.bufferedFractionToLiveEdgeForQualityIncrease =
+          bufferedFractionToLiveEdgeForQualityIncrease;
+      this.clock = clock;
+    }
+
+    @Override
+    protected AdaptiveTrackSelection createAdaptiveTrackSelection(
+        TrackGroup group,
+        BandwidthMeter bandwidthMeter,
+        int[] tracks,
+        ImmutableList<AdaptationCheckpoint> adaptationCheckpoints) {
+      return new CacheAwareTrackSelection(
+          group,
+          tracks,
+          bandwidthMeter,
+          cache,
+          cacheKeyFactory,
+          minCachedTrackBitrateFraction,
+          minDurationForQualityIncreaseMs,
+          maxDurationForQualityDecreaseMs,
+          bandwidthFraction,
+          bufferedFractionToLiveEdgeForQualityIncrease,
+          adaptationCheckpoints,
+          clock);
+    }
+  }
+
+  public static final float DEFAULT_MIN_CACHED_TRACK_BITRATE_FRACTION = 0.5f;
+
+  private final Cache cache;
+  private final CacheKeyFactory cacheKeyFactory;
+  private final float minCachedTrackBitrateFraction;
+  private final Clock clock;
+
+  private int selectedIndex;
+  private int reason;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param cache The {@link Cache} from which media is loaded.
+   */
+  public CacheAwareTrackSelection(
+      TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter, Cache cache) {
+    this(
+        group,
+        tracks,
+        bandwidthMeter,
+        cache,
+        CacheKeyFactory.DEFAULT,
+        DEFAULT_MIN_CACHED_TRACK_BITRATE_FRACTION,
+        DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+        DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+        DEFAULT_BANDWIDTH_FRACTION,
+        DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE,
+        /* adaptationCheckpoints= */ ImmutableList.of(),
+        Clock.DEFAULT);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param cache The {@link Cache} from which media is loaded.
+   * @param cacheKeyFactory The {@link CacheKeyFactory} used by the {@link CacheDataSource} from
+   *     which media is loaded.
+   * @param minCachedTrackBitrateFraction The minimum bitrate of a cached track for it to be
+   *     preferred, as a fraction of the bitrate of the track that would be selected based on the
+   *     available bandwidth. Must be in the range (0, 1].
+   * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for the
+   *     selected track to switch to one of higher quality.
+   * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for the
+   *     selected track to switch to one of lower quality.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use. Setting to a value less than 1 is recommended to account for
+   *     inaccuracies in the bandwidth estimator.
+   * @param bufferedFractionToLiveEdgeForQualityIncrease For live streaming, the fraction of the
+   *     duration from current playback position to the live edge that has to be buffered before the
+   *     selected track can be switched to one of higher quality. This parameter is only applied
+   *     when the playback position is closer to the live edge than {@code
+   *     minDurationForQualityIncreaseMs}, which would otherwise prevent switching to a higher
+   *     quality from happening.
+   * @param adaptationCheckpoints The {@link AdaptationCheckpoint checkpoints} that can be used to
+   *     calculate available bandwidth for this selection.
+   * @param clock The {@link Clock}.
+   */
+  protected CacheAwareTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      BandwidthMeter bandwidthMeter,
+      Cache cache,
+      CacheKeyFactory cacheKeyFactory,
+      float minCachedTrackBitrateFraction,
+      long minDurationForQualityIncreaseMs,
+      long maxDurationForQualityDecreaseMs,
+      float bandwidthFraction,
+      float bufferedFractionToLiveEdgeForQualityIncrease,
+      List<AdaptationCheckpoint> adaptationCheckpoints,
+      Clock clock) {
+    super(
+        group,
+        tracks,
+        bandwidthMeter,
+        minDurationForQualityIncreaseMs,
+        maxDurationForQualityDecreaseMs,
+        DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+        bandwidthFraction,
+        bufferedFractionToLiveEdgeForQualityIncrease,
+        adaptationCheckpoints,
+        clock);
+    Assertions.checkArgument(
+        minCachedTrackBitrateFraction > 0 && minCachedTrackBitrateFraction <= 1);
+    this.cache = cache;
+    this.cacheKeyFactory = cacheKeyFactory;
+    this.minCachedTrackBitrateFraction = minCachedTrackBitrateFraction;
+    this.clock = clock;
+    reason = C.SELECTION_REASON_UNKNOWN;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    super.updateSelectedTrack(
+        playbackPositionUs, bufferedDurationUs, availableDurationUs, queue, mediaChunkIterators);
+    selectedIndex = super.getSelectedIndex();
+    reason = super.getSelectionReason();
+    int cachedIndex = getPreferredCachedIndex(mediaChunkIterators);
+    if (cachedIndex == C.INDEX_UNSET || cachedIndex == selectedIndex) {
+      return;
+    }
+    selectedIndex = cachedIndex;
+    if (reason == C.SELECTION_REASON_INITIAL) {
+      return;
+    }
+    @Nullable MediaChunk lastChunk = queue.isEmpty() ? null : Iterables.getLast(queue);
+    reason =
+        lastChunk != null && indexOf(lastChunk.trackFormat) == cachedIndex
+            ? lastChunk.trackSelectionReason
+            : C.SELECTION_REASON_ADAPTIVE;
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  public int evaluateQueueSize(long playbackPositionUs, List<? extends MediaChunk> queue) {
+    // Buffered chunks may have been loaded from the cache, and discarding them to reload them at a
+    // higher quality could cause them to be loaded from the network.
+    return queue.size();
+  }
+
+  /**
+   * Returns the index of the highest quality track whose next chunk is fully cached and whose
+   * bitrate is at least {@link #minCachedTrackBitrateFraction} of the bitrate of the bandwidth
+   * based selection, or {@link C#INDEX_UNSET} if there's no such track.
+   */
+  private int getPreferredCachedIndex(MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+    int minBitrate = (int) (getFormat(selectedIndex).bitrate * minCachedTrackBitrateFraction);
+    // Tracks are in order of decreasing bitrate.
+    for (int i = 0; i < length && i < mediaChunkIterators.length; i++) {
+      if (getFormat(i).bitrate < minBitrate) {
+        break;
+      }
+      if (!isBlacklisted(i, nowMs) && isNextChunkCached(mediaChunkIterators[i])) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private boolean isNextChunkCached(MediaChunkIterator iterator) {
+    if (!iterator.next()) {
+      iterator.reset();
+      return false;
+    }
+    DataSpec dataSpec = iterator.getDataSpec();
+    iterator.reset();
+    String cacheKey = cacheKeyFactory.buildCacheKey(dataSpec);
+    long length = dataSpec.length;
+    if (length == C.LENGTH_UNSET) {
+      long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+      if (contentLength == C.LENGTH_UNSET) {
+        return false;
+      }
+      length = contentLength - dataSpec.position;
+    }
+    return cache.isCached(cacheKey, dataSpec.position, length);
+  }
+}
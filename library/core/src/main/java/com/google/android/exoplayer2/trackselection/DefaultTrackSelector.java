@@ -42,7 +42,6 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Ordering;
 import com.google.common.primitives.Ints;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -1613,15 +1612,11 @@ public class DefaultTrackSelector extends MappingTrackSelector {
   private static final float FRACTION_TO_CONSIDER_FULLSCREEN = 0.98f;
 
   private static final int[] NO_TRACKS = new int[0];
-  /** Ordering of two format values. A known value is considered greater than Format#NO_VALUE. */
-  private static final Ordering<Integer> FORMAT_VALUE_ORDERING =
-      Ordering.from(
-          (first, second) ->
-              first == Format.NO_VALUE
-                  ? (second == Format.NO_VALUE ? 0 : -1)
-                  : (second == Format.NO_VALUE ? 1 : (first - second)));
-  /** Ordering where all elements are equal. */
-  private static final Ordering<Integer> NO_ORDER = Ordering.from((first, second) -> 0);
+  /**
+   * Text languages to compare against if no preference is given, allowing the selection of a text
+   * track with undetermined language.
+   */
+  private static final ImmutableList<String> UNDETERMINED_TEXT_LANGUAGES = ImmutableList.of("");
 
   private final ExoTrackSelection.Factory trackSelectionFactory;
   private final AtomicReference<Parameters> parametersReference;
@@ -2147,8 +2142,8 @@ public class DefaultTrackSelector extends MappingTrackSelector {
     @Nullable VideoTrackScore selectedTrackScore = null;
     for (int groupIndex = 0; groupIndex < groups.length; groupIndex++) {
       TrackGroup trackGroup = groups.get(groupIndex);
-      List<Integer> viewportFilteredTrackIndices =
-          getViewportFilteredTrackIndices(
+      int maxVideoPixelsToRetain =
+          getMaxVideoPixelsToRetain(
               trackGroup,
               params.viewportWidth,
               params.viewportHeight,
@@ -2167,7 +2162,7 @@ public class DefaultTrackSelector extends MappingTrackSelector {
                   format,
                   params,
                   trackFormatSupport[trackIndex],
-                  viewportFilteredTrackIndices.contains(trackIndex));
+                  isSuitableForViewport(format, maxVideoPixelsToRetain));
           if (!trackScore.isWithinMaxConstraints && !params.exceedVideoConstraintsIfNecessary) {
             // Track should not be selected.
             continue;
@@ -2215,6 +2210,7 @@ public class DefaultTrackSelector extends MappingTrackSelector {
     int selectedTrackIndex = C.INDEX_UNSET;
     int selectedGroupIndex = C.INDEX_UNSET;
     @Nullable AudioTrackScore selectedTrackScore = null;
+    String[] localeLanguages = Util.getSystemLanguageCodes();
     for (int groupIndex = 0; groupIndex < groups.length; groupIndex++) {
       TrackGroup trackGroup = groups.get(groupIndex);
       @Capabilities int[] trackFormatSupport = formatSupport[groupIndex];
@@ -2223,7 +2219,7 @@ public class DefaultTrackSelector extends MappingTrackSelector {
             trackFormatSupport[trackIndex], params.exceedRendererCapabilitiesIfNecessary)) {
           Format format = trackGroup.getFormat(trackIndex);
           AudioTrackScore trackScore =
-              new AudioTrackScore(format, params, trackFormatSupport[trackIndex]);
+              new AudioTrackScore(format, params, trackFormatSupport[trackIndex], localeLanguages);
           if (!trackScore.isWithinConstraints && !params.exceedAudioConstraintsIfNecessary) {
             // Track should not be selected.
             continue;
@@ -2558,15 +2554,22 @@ public class DefaultTrackSelector extends MappingTrackSelector {
       // Partial match where one language is a subset of the other (e.g. "zh-hans" and "zh-hans-hk")
       return 3;
     }
-    String formatMainLanguage = Util.splitAtFirst(formatLanguage, "-")[0];
-    String queryMainLanguage = Util.splitAtFirst(language, "-")[0];
-    if (formatMainLanguage.equals(queryMainLanguage)) {
+    int mainLanguageLength = getMainLanguageLength(formatLanguage);
+    if (mainLanguageLength == getMainLanguageLength(language)
+        && formatLanguage.regionMatches(
+            /* toffset= */ 0, language, /* ooffset= */ 0, mainLanguageLength)) {
       // Partial match where only the main language tag is the same (e.g. "fr-fr" and "fr-ca")
       return 2;
     }
     return 0;
   }
 
+  /** Returns the length of the main language tag of a language (e.g. 2 for "fr-ca"). */
+  private static int getMainLanguageLength(String language) {
+    int separatorIndex = language.indexOf('-');
+    return separatorIndex == -1 ? language.length() : separatorIndex;
+  }
+
   private static List<Integer> getViewportFilteredTrackIndices(
       TrackGroup group, int viewportWidth, int viewportHeight, boolean orientationMayChange) {
     // Initially include all indices.
@@ -2575,9 +2578,33 @@ public class DefaultTrackSelector extends MappingTrackSelector {
       selectedTrackIndices.add(i);
     }
 
+    int maxVideoPixelsToRetain =
+        getMaxVideoPixelsToRetain(group, viewportWidth, viewportHeight, orientationMayChange);
+    // Filter out formats that exceed maxVideoPixelsToRetain. These formats have an unnecessarily
+    // high resolution given the size at which the video will be displayed within the viewport. Also
+    // filter out formats with unknown dimensions, since we have some whose dimensions are known.
+    if (maxVideoPixelsToRetain != Integer.MAX_VALUE) {
+      for (int i = selectedTrackIndices.size() - 1; i >= 0; i--) {
+        Format format = group.getFormat(selectedTrackIndices.get(i));
+        if (!isSuitableForViewport(format, maxVideoPixelsToRetain)) {
+          selectedTrackIndices.remove(i);
+        }
+      }
+    }
+
+    return selectedTrackIndices;
+  }
+
+  /**
+   * Returns the number of pixels of the format in the group whose resolution is the smallest to
+   * exceed the maximum size at which it can be displayed within the viewport, or {@link
+   * Integer#MAX_VALUE} if no formats need to be filtered out for the viewport.
+   */
+  private static int getMaxVideoPixelsToRetain(
+      TrackGroup group, int viewportWidth, int viewportHeight, boolean orientationMayChange) {
     if (viewportWidth == Integer.MAX_VALUE || viewportHeight == Integer.MAX_VALUE) {
-      // Viewport dimensions not set. Return the full set of indices.
-      return selectedTrackIndices;
+      // Viewport dimensions not set.
+      return Integer.MAX_VALUE;
     }
 
     int maxVideoPixelsToRetain = Integer.MAX_VALUE;
@@ -2598,21 +2625,28 @@ public class DefaultTrackSelector extends MappingTrackSelector {
         }
       }
     }
+    return maxVideoPixelsToRetain;
+  }
 
-    // Filter out formats that exceed maxVideoPixelsToRetain. These formats have an unnecessarily
-    // high resolution given the size at which the video will be displayed within the viewport. Also
-    // filter out formats with unknown dimensions, since we have some whose dimensions are known.
-    if (maxVideoPixelsToRetain != Integer.MAX_VALUE) {
-      for (int i = selectedTrackIndices.size() - 1; i >= 0; i--) {
-        Format format = group.getFormat(selectedTrackIndices.get(i));
-        int pixelCount = format.getPixelCount();
-        if (pixelCount == Format.NO_VALUE || pixelCount > maxVideoPixelsToRetain) {
-          selectedTrackIndices.remove(i);
-        }
-      }
+  /**
+   * Returns whether a format is suitable for the viewport, given the value returned by {@link
+   * #getMaxVideoPixelsToRetain} for its group.
+   */
+  private static boolean isSuitableForViewport(Format format, int maxVideoPixelsToRetain) {
+    if (maxVideoPixelsToRetain == Integer.MAX_VALUE) {
+      return true;
     }
+    int pixelCount = format.getPixelCount();
+    return pixelCount != Format.NO_VALUE && pixelCount <= maxVideoPixelsToRetain;
+  }
 
-    return selectedTrackIndices;
+  /**
+   * Compares two format values. A known value is considered greater than {@link Format#NO_VALUE}.
+   */
+  private static int compareFormatValues(int first, int second) {
+    return first == Format.NO_VALUE
+        ? (second == Format.NO_VALUE ? 0 : -1)
+        : (second == Format.NO_VALUE ? 1 : Integer.compare(first, second));
   }
 
   /**
@@ -2704,24 +2738,19 @@ public class DefaultTrackSelector extends MappingTrackSelector {
       // - Within min constraints only: Prefer lower quality because it gets us closest to
       //   satisfying the violated max constraints.
       // - Outside min and max constraints: Arbitrarily prefer lower quality.
-      Ordering<Integer> qualityOrdering =
-          isWithinMaxConstraints && isWithinRendererCapabilities
-              ? FORMAT_VALUE_ORDERING
-              : FORMAT_VALUE_ORDERING.reverse();
+      // The comparisons are made on primitive values to avoid allocations, since this method is
+      // called for every pair of candidate tracks.
+      int qualityOrder = isWithinMaxConstraints && isWithinRendererCapabilities ? 1 : -1;
       return ComparisonChain.start()
           .compareFalseFirst(this.isWithinRendererCapabilities, other.isWithinRendererCapabilities)
           .compareFalseFirst(this.isWithinMaxConstraints, other.isWithinMaxConstraints)
           .compareFalseFirst(this.isWithinMinConstraints, other.isWithinMinConstraints)
+          .compare(other.preferredMimeTypeMatchIndex, this.preferredMimeTypeMatchIndex)
           .compare(
-              this.preferredMimeTypeMatchIndex,
-              other.preferredMimeTypeMatchIndex,
-              Ordering.natural().reverse())
-          .compare(
-              this.bitrate,
-              other.bitrate,
-              parameters.forceLowestBitrate ? FORMAT_VALUE_ORDERING.reverse() : NO_ORDER)
-          .compare(this.pixelCount, other.pixelCount, qualityOrdering)
-          .compare(this.bitrate, other.bitrate, qualityOrdering)
+              parameters.forceLowestBitrate ? compareFormatValues(other.bitrate, this.bitrate) : 0,
+              0)
+          .compare(qualityOrder * compareFormatValues(this.pixelCount, other.pixelCount), 0)
+          .compare(qualityOrder * compareFormatValues(this.bitrate, other.bitrate), 0)
           .result();
     }
   }
@@ -2750,6 +2779,14 @@ public class DefaultTrackSelector extends MappingTrackSelector {
     private final int preferredMimeTypeMatchIndex;
 
     public AudioTrackScore(Format format, Parameters parameters, @Capabilities int formatSupport) {
+      this(format, parameters, formatSupport, Util.getSystemLanguageCodes());
+    }
+
+    private AudioTrackScore(
+        Format format,
+        Parameters parameters,
+        @Capabilities int formatSupport,
+        String[] localeLanguages) {
       this.parameters = parameters;
       this.language = normalizeUndeterminedLanguageToNull(format.language);
       isWithinRendererCapabilities =
@@ -2780,7 +2817,6 @@ public class DefaultTrackSelector extends MappingTrackSelector {
           (format.bitrate == Format.NO_VALUE || format.bitrate <= parameters.maxAudioBitrate)
               && (format.channelCount == Format.NO_VALUE
                   || format.channelCount <= parameters.maxAudioChannelCount);
-      String[] localeLanguages = Util.getSystemLanguageCodes();
       int bestLocaleMatchIndex = Integer.MAX_VALUE;
       int bestLocaleMatchScore = 0;
       for (int i = 0; i < localeLanguages.length; i++) {
@@ -2817,40 +2853,28 @@ public class DefaultTrackSelector extends MappingTrackSelector {
     public int compareTo(AudioTrackScore other) {
       // If the formats are within constraints and renderer capabilities then prefer higher values
       // of channel count, sample rate and bit rate in that order. Otherwise, prefer lower values.
-      Ordering<Integer> qualityOrdering =
-          isWithinConstraints && isWithinRendererCapabilities
-              ? FORMAT_VALUE_ORDERING
-              : FORMAT_VALUE_ORDERING.reverse();
+      int qualityOrder = isWithinConstraints && isWithinRendererCapabilities ? 1 : -1;
       return ComparisonChain.start()
           .compareFalseFirst(this.isWithinRendererCapabilities, other.isWithinRendererCapabilities)
-          .compare(
-              this.preferredLanguageIndex,
-              other.preferredLanguageIndex,
-              Ordering.natural().reverse())
+          .compare(other.preferredLanguageIndex, this.preferredLanguageIndex)
           .compare(this.preferredLanguageScore, other.preferredLanguageScore)
           .compare(this.preferredRoleFlagsScore, other.preferredRoleFlagsScore)
           .compareFalseFirst(this.isWithinConstraints, other.isWithinConstraints)
+          .compare(other.preferredMimeTypeMatchIndex, this.preferredMimeTypeMatchIndex)
           .compare(
-              this.preferredMimeTypeMatchIndex,
-              other.preferredMimeTypeMatchIndex,
-              Ordering.natural().reverse())
-          .compare(
-              this.bitrate,
-              other.bitrate,
-              parameters.forceLowestBitrate ? FORMAT_VALUE_ORDERING.reverse() : NO_ORDER)
+              parameters.forceLowestBitrate ? compareFormatValues(other.bitrate, this.bitrate) : 0,
+              0)
           .compareFalseFirst(this.isDefaultSelectionFlag, other.isDefaultSelectionFlag)
-          .compare(
-              this.localeLanguageMatchIndex,
-              other.localeLanguageMatchIndex,
-              Ordering.natural().reverse())
+          .compare(other.localeLanguageMatchIndex, this.localeLanguageMatchIndex)
           .compare(this.localeLanguageScore, other.localeLanguageScore)
-          .compare(this.channelCount, other.channelCount, qualityOrdering)
-          .compare(this.sampleRate, other.sampleRate, qualityOrdering)
+          .compare(qualityOrder * compareFormatValues(this.channelCount, other.channelCount), 0)
+          .compare(qualityOrder * compareFormatValues(this.sampleRate, other.sampleRate), 0)
           .compare(
-              this.bitrate,
-              other.bitrate,
               // Only compare bit rates of tracks with matching language information.
-              Util.areEqual(this.language, other.language) ? qualityOrdering : NO_ORDER)
+              Util.areEqual(this.language, other.language)
+                  ? qualityOrder * compareFormatValues(this.bitrate, other.bitrate)
+                  : 0,
+              0)
           .result();
     }
   }
@@ -2886,11 +2910,9 @@ public class DefaultTrackSelector extends MappingTrackSelector {
       isForced = (maskedSelectionFlags & C.SELECTION_FLAG_FORCED) != 0;
       int bestLanguageIndex = Integer.MAX_VALUE;
       int bestLanguageScore = 0;
-      // Compare against empty (unset) language if no preference is given to allow the selection of
-      // a text track with undetermined language.
       ImmutableList<String> preferredLanguages =
           parameters.preferredTextLanguages.isEmpty()
-              ? ImmutableList.of("")
+              ? UNDETERMINED_TEXT_LANGUAGES
               : parameters.preferredTextLanguages;
       for (int i = 0; i < preferredLanguages.size(); i++) {
         int score =
@@ -2932,21 +2954,18 @@ public class DefaultTrackSelector extends MappingTrackSelector {
           ComparisonChain.start()
               .compareFalseFirst(
                   this.isWithinRendererCapabilities, other.isWithinRendererCapabilities)
-              .compare(
-                  this.preferredLanguageIndex,
-                  other.preferredLanguageIndex,
-                  Ordering.natural().reverse())
+              .compare(other.preferredLanguageIndex, this.preferredLanguageIndex)
               .compare(this.preferredLanguageScore, other.preferredLanguageScore)
               .compare(this.preferredRoleFlagsScore, other.preferredRoleFlagsScore)
-              .compareFalseFirst(this.isDefault, other.isDefault)
-              .compare(
-                  this.isForced,
-                  other.isForced,
-                  // Prefer non-forced to forced if a preferred text language has been matched.
-                  // Where both are provided the non-forced track will usually contain the forced
-                  // subtitles as a subset. Otherwise, prefer a forced track.
-                  preferredLanguageScore == 0 ? Ordering.natural() : Ordering.natural().reverse())
-              .compare(this.selectedAudioLanguageScore, other.selectedAudioLanguageScore);
+              .compareFalseFirst(this.isDefault, other.isDefault);
+      // Prefer non-forced to forced if a preferred text language has been matched. Where both are
+      // provided the non-forced track will usually contain the forced subtitles as a subset.
+      // Otherwise, prefer a forced track.
+      chain =
+          preferredLanguageScore == 0
+              ? chain.compareFalseFirst(this.isForced, other.isForced)
+              : chain.compareTrueFirst(this.isForced, other.isForced);
+      chain = chain.compare(this.selectedAudioLanguageScore, other.selectedAudioLanguageScore);
       if (preferredRoleFlagsScore == 0) {
         chain = chain.compareTrueFirst(this.hasCaptionRoleFlags, other.hasCaptionRoleFlags);
       }
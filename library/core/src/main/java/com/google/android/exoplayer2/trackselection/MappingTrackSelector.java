@@ -24,6 +24,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.C.FormatSupport;
 import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.Renderer;
 import com.google.android.exoplayer2.RendererCapabilities;
 import com.google.android.exoplayer2.RendererCapabilities.AdaptiveSupport;
@@ -39,12 +40,18 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.Arrays;
+import java.util.HashMap;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /**
  * Base class for {@link TrackSelector}s that first establish a mapping between {@link TrackGroup}s
  * and {@link Renderer}s, and then from that mapping create a {@link ExoTrackSelection} for each
  * renderer.
+ *
+ * <p>The {@link Capabilities} reported by {@link RendererCapabilities#supportsFormat(Format)} are
+ * cached per {@link Format}, so that selecting tracks again for the same or another period with the
+ * same formats doesn't query the renderers again. It's assumed that the support for a format
+ * doesn't change for a given {@link RendererCapabilities} instance.
  */
 public abstract class MappingTrackSelector extends TrackSelector {
 
@@ -303,6 +310,11 @@ public abstract class MappingTrackSelector extends TrackSelector {
     }
   }
 
+  /** The maximum number of formats whose support is cached, after which the cache is cleared. */
+  private static final int MAX_FORMAT_SUPPORT_CACHE_SIZE = 2048;
+
+  private final HashMap<Format, int[]> formatSupportCache = new HashMap<>();
+  @Nullable private RendererCapabilities[] formatSupportCacheRendererCapabilities;
   @Nullable private MappedTrackInfo currentMappedTrackInfo;
 
   /**
@@ -328,6 +340,7 @@ public abstract class MappingTrackSelector extends TrackSelector {
       MediaPeriodId mediaPeriodId,
       Timeline timeline)
       throws ExoPlaybackException {
+    maybeClearFormatSupportCache(rendererCapabilities);
     // Structures into which data will be written during the selection. The extra item at the end
     // of each array is to store data associated with track groups that cannot be associated with
     // any renderer.
@@ -348,18 +361,27 @@ public abstract class MappingTrackSelector extends TrackSelector {
     // renderer provides for each track in the group.
     for (int groupIndex = 0; groupIndex < trackGroups.length; groupIndex++) {
       TrackGroup group = trackGroups.get(groupIndex);
+      // Evaluate the support that each renderer provides for each track in the group.
+      @Capabilities int[][] trackFormatSupports = new int[group.length][];
+      for (int trackIndex = 0; trackIndex < group.length; trackIndex++) {
+        trackFormatSupports[trackIndex] =
+            getFormatSupports(rendererCapabilities, group.getFormat(trackIndex));
+      }
       // Associate the group to a preferred renderer.
       boolean preferUnassociatedRenderer =
           MimeTypes.getTrackType(group.getFormat(0).sampleMimeType) == C.TRACK_TYPE_METADATA;
       int rendererIndex =
           findRenderer(
-              rendererCapabilities, group, rendererTrackGroupCounts, preferUnassociatedRenderer);
-      // Evaluate the support that the renderer provides for each track in the group.
-      @Capabilities
-      int[] rendererFormatSupport =
-          rendererIndex == rendererCapabilities.length
-              ? new int[group.length]
-              : getFormatSupport(rendererCapabilities[rendererIndex], group);
+              rendererCapabilities.length,
+              trackFormatSupports,
+              rendererTrackGroupCounts,
+              preferUnassociatedRenderer);
+      @Capabilities int[] rendererFormatSupport = new int[group.length];
+      if (rendererIndex != rendererCapabilities.length) {
+        for (int trackIndex = 0; trackIndex < group.length; trackIndex++) {
+          rendererFormatSupport[trackIndex] = trackFormatSupports[trackIndex][rendererIndex];
+        }
+      }
       // Stash the results.
       int rendererTrackGroupCount = rendererTrackGroupCounts[rendererIndex];
       rendererTrackGroups[rendererIndex][rendererTrackGroupCount] = group;
@@ -457,32 +479,29 @@ public abstract class MappingTrackSelector extends TrackSelector {
    * group, then {@code renderers.length} is returned to indicate that the group was not mapped to
    * any renderer.
    *
-   * @param rendererCapabilities The {@link RendererCapabilities} of the renderers.
-   * @param group The track group to map to a renderer.
+   * @param rendererCount The number of renderers.
+   * @param trackFormatSupports The {@link Capabilities} of each renderer for each track in the
+   *     group, indexed by track and renderer (in that order).
    * @param rendererTrackGroupCounts The number of already mapped track groups for each renderer.
    * @param preferUnassociatedRenderer Whether renderers unassociated to any track group should be
    *     preferred.
    * @return The index of the renderer to which the track group was mapped, or {@code
    *     renderers.length} if it was not mapped to any renderer.
-   * @throws ExoPlaybackException If an error occurs finding a renderer.
    */
   private static int findRenderer(
-      RendererCapabilities[] rendererCapabilities,
-      TrackGroup group,
+      int rendererCount,
+      @Capabilities int[][] trackFormatSupports,
       int[] rendererTrackGroupCounts,
-      boolean preferUnassociatedRenderer)
-      throws ExoPlaybackException {
-    int bestRendererIndex = rendererCapabilities.length;
+      boolean preferUnassociatedRenderer) {
+    int bestRendererIndex = rendererCount;
     @FormatSupport int bestFormatSupportLevel = C.FORMAT_UNSUPPORTED_TYPE;
     boolean bestRendererIsUnassociated = true;
-    for (int rendererIndex = 0; rendererIndex < rendererCapabilities.length; rendererIndex++) {
-      RendererCapabilities rendererCapability = rendererCapabilities[rendererIndex];
+    for (int rendererIndex = 0; rendererIndex < rendererCount; rendererIndex++) {
       @FormatSupport int formatSupportLevel = C.FORMAT_UNSUPPORTED_TYPE;
-      for (int trackIndex = 0; trackIndex < group.length; trackIndex++) {
+      for (int trackIndex = 0; trackIndex < trackFormatSupports.length; trackIndex++) {
         @FormatSupport
         int trackFormatSupportLevel =
-            RendererCapabilities.getFormatSupport(
-                rendererCapability.supportsFormat(group.getFormat(trackIndex)));
+            RendererCapabilities.getFormatSupport(trackFormatSupports[trackIndex][rendererIndex]);
         formatSupportLevel = max(formatSupportLevel, trackFormatSupportLevel);
       }
       boolean rendererIsUnassociated = rendererTrackGroupCounts[rendererIndex] == 0;
@@ -500,22 +519,47 @@ public abstract class MappingTrackSelector extends TrackSelector {
   }
 
   /**
-   * Calls {@link RendererCapabilities#supportsFormat} for each track in the specified {@link
-   * TrackGroup}, returning the results in an array.
+   * Returns the {@link Capabilities} of each renderer for the specified {@link Format}, calling
+   * {@link RendererCapabilities#supportsFormat} if they aren't cached yet.
    *
-   * @param rendererCapabilities The {@link RendererCapabilities} of the renderer.
-   * @param group The track group to evaluate.
-   * @return An array containing {@link Capabilities} for each track in the group.
+   * @param rendererCapabilities The {@link RendererCapabilities} of the renderers.
+   * @param format The format to evaluate.
+   * @return An array containing {@link Capabilities} for each renderer. Must not be modified.
    * @throws ExoPlaybackException If an error occurs determining the format support.
    */
   @Capabilities
-  private static int[] getFormatSupport(RendererCapabilities rendererCapabilities, TrackGroup group)
+  private int[] getFormatSupports(RendererCapabilities[] rendererCapabilities, Format format)
       throws ExoPlaybackException {
-    @Capabilities int[] formatSupport = new int[group.length];
-    for (int i = 0; i < group.length; i++) {
-      formatSupport[i] = rendererCapabilities.supportsFormat(group.getFormat(i));
+    @Nullable @Capabilities int[] formatSupports = formatSupportCache.get(format);
+    if (formatSupports == null) {
+      formatSupports = new int[rendererCapabilities.length];
+      for (int i = 0; i < rendererCapabilities.length; i++) {
+        formatSupports[i] = rendererCapabilities[i].supportsFormat(format);
+      }
+      if (formatSupportCache.size() >= MAX_FORMAT_SUPPORT_CACHE_SIZE) {
+        formatSupportCache.clear();
+      }
+      formatSupportCache.put(format, formatSupports);
+    }
+    return formatSupports;
+  }
+
+  /** Clears the cached format support if the renderers have changed. */
+  private void maybeClearFormatSupportCache(RendererCapabilities[] rendererCapabilities) {
+    @Nullable RendererCapabilities[] cachedRendererCapabilities =
+        formatSupportCacheRendererCapabilities;
+    if (cachedRendererCapabilities != null
+        && cachedRendererCapabilities.length == rendererCapabilities.length) {
+      boolean rendererCapabilitiesChanged = false;
+      for (int i = 0; i < rendererCapabilities.length; i++) {
+        rendererCapabilitiesChanged |= cachedRendererCapabilities[i] != rendererCapabilities[i];
+      }
+      if (!rendererCapabilitiesChanged) {
+        return;
+      }
     }
-    return formatSupport;
+    formatSupportCache.clear();
+    formatSupportCacheRendererCapabilities = rendererCapabilities.clone();
   }
 
   /**
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.database.DatabaseIOException;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.VersionTable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Maintains an index of bandwidth estimates keyed by network. */
+/* package */ final class BandwidthEstimateIndex {
+
+  private static final String TABLE_NAME = DatabaseProvider.TABLE_PREFIX + "BandwidthEstimates";
+  private static final String INSTANCE_UID = "";
+  private static final int TABLE_VERSION = 1;
+
+  private static final String COLUMN_NETWORK_KEY = "network_key";
+  private static final String COLUMN_BITRATE_ESTIMATE = "bitrate_estimate";
+  private static final String COLUMN_UPDATE_TIMESTAMP = "update_timestamp";
+
+  private static final int COLUMN_INDEX_NETWORK_KEY = 0;
+  private static final int COLUMN_INDEX_BITRATE_ESTIMATE = 1;
+
+  private static final String WHERE_UPDATE_TIMESTAMP_NOT_LESS_THAN =
+      COLUMN_UPDATE_TIMESTAMP + " >= ?";
+
+  private static final String[] COLUMNS =
+      new String[] {COLUMN_NETWORK_KEY, COLUMN_BITRATE_ESTIMATE, COLUMN_UPDATE_TIMESTAMP};
+  private static final String TABLE_SCHEMA =
+      "("
+          + COLUMN_NETWORK_KEY
+          + " TEXT PRIMARY KEY NOT NULL,"
+          + COLUMN_BITRATE_ESTIMATE
+          + " INTEGER NOT NULL,"
+          + COLUMN_UPDATE_TIMESTAMP
+          + " INTEGER NOT NULL)";
+
+  private final DatabaseProvider databaseProvider;
+
+  private boolean initialized;
+
+  /** @param databaseProvider Provides the database in which the index is stored. */
+  public BandwidthEstimateIndex(DatabaseProvider databaseProvider) {
+    this.databaseProvider = databaseProvider;
+  }
+
+  /**
+   * Returns the bitrate estimates updated at or after the specified time, keyed by network.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param minUpdateTimestampMs The minimum update timestamp of the returned estimates, in
+   *     milliseconds since the epoch.
+   * @return The bitrate estimates in bits per second, keyed by network.
+   * @throws DatabaseIOException If an error occurs loading the estimates.
+   */
+  @WorkerThread
+  public Map<String, Long> getAll(long minUpdateTimestampMs) throws DatabaseIOException {
+    ensureInitialized();
+    try (Cursor cursor =
+        databaseProvider
+            .getReadableDatabase()
+            .query(
+                TABLE_NAME,
+                COLUMNS,
+                WHERE_UPDATE_TIMESTAMP_NOT_LESS_THAN,
+                new String[] {Long.toString(minUpdateTimestampMs)},
+                /* groupBy= */ null,
+                /* having= */ null,
+                /* orderBy= */ null)) {
+      Map<String, Long> bitrateEstimates = new HashMap<>(cursor.getCount());
+      while (cursor.moveToNext()) {
+        bitrateEstimates.put(
+            cursor.getString(COLUMN_INDEX_NETWORK_KEY),
+            cursor.getLong(COLUMN_INDEX_BITRATE_ESTIMATE));
+      }
+      return bitrateEstimates;
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  /**
+   * Sets the bitrate estimate of the given networks.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param networkKeys The keys of the networks.
+   * @param bitrateEstimate The bitrate estimate in bits per second.
+   * @param updateTimestampMs The time of the update, in milliseconds since the epoch.
+   * @throws DatabaseIOException If an error occurs setting the estimate.
+   */
+  @WorkerThread
+  public void set(List<String> networkKeys, long bitrateEstimate, long updateTimestampMs)
+      throws DatabaseIOException {
+    ensureInitialized();
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        for (int i = 0; i < networkKeys.size(); i++) {
+          ContentValues values = new ContentValues();
+          values.put(COLUMN_NETWORK_KEY, networkKeys.get(i));
+          values.put(COLUMN_BITRATE_ESTIMATE, bitrateEstimate);
+          values.put(COLUMN_UPDATE_TIMESTAMP, updateTimestampMs);
+          writableDatabase.replaceOrThrow(TABLE_NAME, /* nullColumnHack= */ null, values);
+        }
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  @WorkerThread
+  private void ensureInitialized() throws DatabaseIOException {
+    if (initialized) {
+      return;
+    }
+    try {
+      SQLiteDatabase readableDatabase = databaseProvider.getReadableDatabase();
+      int version =
+          VersionTable.getVersion(
+              readableDatabase, VersionTable.FEATURE_BANDWIDTH_ESTIMATES, INSTANCE_UID);
+      if (version != TABLE_VERSION) {
+        SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+        writableDatabase.beginTransactionNonExclusive();
+        try {
+          VersionTable.setVersion(
+              writableDatabase,
+              VersionTable.FEATURE_BANDWIDTH_ESTIMATES,
+              INSTANCE_UID,
+              TABLE_VERSION);
+          writableDatabase.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+          writableDatabase.execSQL("CREATE TABLE " + TABLE_NAME + " " + TABLE_SCHEMA);
+          writableDatabase.setTransactionSuccessful();
+        } finally {
+          writableDatabase.endTransaction();
+        }
+      }
+      initialized = true;
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+}
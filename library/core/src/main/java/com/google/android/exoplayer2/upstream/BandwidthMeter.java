@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.upstream;
 
 import android.os.Handler;
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -106,6 +107,23 @@ public interface BandwidthMeter {
   /** Returns the estimated bitrate. */
   long getBitrateEstimate();
 
+  /**
+   * Returns the estimated time from the start of a request to the first byte of its response, in
+   * microseconds, or {@link C#TIME_UNSET} if unknown.
+   */
+  default long getTimeToFirstByteEstimateUs() {
+    return C.TIME_UNSET;
+  }
+
+  /**
+   * Returns the coefficient of variation of the throughput of recent transfers, that is its
+   * standard deviation divided by its mean, or {@link C#RATE_UNSET} if unknown. Higher values
+   * indicate a less stable network.
+   */
+  default float getThroughputCoefficientOfVariation() {
+    return C.RATE_UNSET;
+  }
+
   /**
    * Returns the {@link TransferListener} that this instance uses to gather bandwidth information
    * from data transfers. May be null if the implementation does not listen to data transfers.
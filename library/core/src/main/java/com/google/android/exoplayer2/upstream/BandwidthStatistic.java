@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+/**
+ * Computes a bandwidth estimate from samples of data transfers, for use by {@link
+ * DefaultBandwidthMeter}.
+ *
+ * <p>Instances are stateful and must not be shared between bandwidth meters.
+ */
+public interface BandwidthStatistic {
+
+  /** Value returned by {@link #getBandwidthEstimate()} if no estimate is available. */
+  long ESTIMATE_NOT_AVAILABLE = Long.MIN_VALUE;
+
+  /**
+   * Adds a sample.
+   *
+   * @param bytes The number of bytes transferred.
+   * @param elapsedMs The time taken to transfer {@code bytes}, in milliseconds. Always positive.
+   */
+  void addSample(long bytes, long elapsedMs);
+
+  /**
+   * Returns the bandwidth estimate in bits per second, or {@link #ESTIMATE_NOT_AVAILABLE} if no
+   * estimate is available.
+   */
+  long getBandwidthEstimate();
+
+  /** Resets the statistic, discarding all samples. */
+  void reset();
+}
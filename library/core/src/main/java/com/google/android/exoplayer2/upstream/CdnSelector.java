@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import android.os.Handler;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks the throughput and error rate of a number of CDNs that serve the same content, and
+ * selects the CDN to which requests should be made.
+ *
+ * <p>Each CDN is identified by a base {@link Uri}. A request {@link Uri} belongs to a CDN if it
+ * has the same scheme and authority as the CDN's base {@link Uri}, and its path is the base path or
+ * is nested in it. It can be steered to another CDN by replacing the scheme, the authority and the
+ * base path. Requests are made through {@link MultiCdnDataSource} instances that share the same
+ * selector.
+ *
+ * <p>CDNs are ordered as follows:
+ *
+ * <ul>
+ *   <li>CDNs that failed recently are tried last.
+ *   <li>CDNs from which nothing has been loaded yet are tried first, in the order in which they
+ *       were declared, so that an estimate is obtained for each of them.
+ *   <li>Other CDNs are ordered by their throughput estimate, discounted by their error rate.
+ * </ul>
+ *
+ * <p>This class is thread-safe.
+ */
+public final class CdnSelector {
+
+  /** A listener of {@link CdnSelector} events. */
+  public interface EventListener {
+
+    /**
+     * Called when the statistics of a CDN have been updated, after a transfer from it completed,
+     * after a request to it failed or after it took part in a race.
+     *
+     * @param cdnStats The updated {@link CdnStats}.
+     */
+    void onCdnStatsUpdated(CdnStats cdnStats);
+  }
+
+  /** Statistics of a CDN. */
+  public static final class CdnStats {
+
+    /** The base {@link Uri} of the CDN. */
+    public final Uri baseUri;
+    /**
+     * The throughput estimate for the CDN in bits per second, or {@link #BITRATE_ESTIMATE_UNSET}
+     * if nothing has been loaded from the CDN yet.
+     */
+    public final long bitrateEstimate;
+    /** The fraction of recent requests to the CDN that failed, between 0 and 1. */
+    public final float errorRate;
+    /** The number of requests made to the CDN. */
+    public final int requestCount;
+    /** The number of requests to the CDN that failed. */
+    public final int errorCount;
+    /** The number of races in which the CDN took part. */
+    public final int raceCount;
+    /** The number of races that were won by the CDN. */
+    public final int raceWinCount;
+
+    /** Creates an instance. */
+    public CdnStats(
+        Uri baseUri,
+        long bitrateEstimate,
+        float errorRate,
+        int requestCount,
+        int errorCount,
+        int raceCount,
+        int raceWinCount) {
+      this.baseUri = baseUri;
+      this.bitrateEstimate = bitrateEstimate;
+      this.errorRate = errorRate;
+      this.requestCount = requestCount;
+      this.errorCount = errorCount;
+      this.raceCount = raceCount;
+      this.raceWinCount = raceWinCount;
+    }
+  }
+
+  /** Value of {@link CdnStats#bitrateEstimate} if nothing has been loaded from a CDN yet. */
+  public static final long BITRATE_ESTIMATE_UNSET = -1;
+  /** The default duration for which a CDN is tried last after a request to it failed. */
+  public static final long DEFAULT_EXCLUSION_DURATION_MS = 60_000;
+
+  /** Weight of a new sample in the exponentially weighted throughput and error rate estimates. */
+  private static final float SAMPLE_WEIGHT = 0.3f;
+
+  private final Clock clock;
+  private final long exclusionDurationMs;
+  private final CopyOnWriteArrayList<HandlerAndListener> listeners;
+
+  @GuardedBy("this")
+  private final List<Cdn> cdns;
+
+  /**
+   * Creates an instance with the {@link #DEFAULT_EXCLUSION_DURATION_MS default exclusion
+   * duration}.
+   *
+   * @param baseUris The base {@link Uri Uris} of the CDNs, in order of preference.
+   */
+  public CdnSelector(List<Uri> baseUris) {
+    this(baseUris, DEFAULT_EXCLUSION_DURATION_MS, Clock.DEFAULT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param baseUris The base {@link Uri Uris} of the CDNs, in order of preference.
+   * @param exclusionDurationMs The duration for which a CDN is tried last after a request to it
+   *     failed, in milliseconds.
+   */
+  public CdnSelector(List<Uri> baseUris, long exclusionDurationMs) {
+    this(baseUris, exclusionDurationMs, Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ CdnSelector(List<Uri> baseUris, long exclusionDurationMs, Clock clock) {
+    Assertions.checkArgument(!baseUris.isEmpty());
+    this.exclusionDurationMs = exclusionDurationMs;
+    this.clock = clock;
+    listeners = new CopyOnWriteArrayList<>();
+    cdns = new ArrayList<>();
+    for (int i = 0; i < baseUris.size(); i++) {
+      cdns.add(new Cdn(/* index= */ i, baseUris.get(i)));
+    }
+  }
+
+  /**
+   * Adds an {@link EventListener}.
+   *
+   * @param eventHandler A handler for events.
+   * @param eventListener A listener of events.
+   */
+  public void addEventListener(Handler eventHandler, EventListener eventListener) {
+    Assertions.checkNotNull(eventHandler);
+    Assertions.checkNotNull(eventListener);
+    removeEventListener(eventListener);
+    listeners.add(new HandlerAndListener(eventHandler, eventListener));
+  }
+
+  /**
+   * Removes an {@link EventListener}.
+   *
+   * @param eventListener The listener to be removed.
+   */
+  public void removeEventListener(EventListener eventListener) {
+    for (HandlerAndListener handlerAndListener : listeners) {
+      if (handlerAndListener.listener == eventListener) {
+        handlerAndListener.released = true;
+        listeners.remove(handlerAndListener);
+      }
+    }
+  }
+
+  /** Returns the number of CDNs. */
+  public synchronized int getCdnCount() {
+    return cdns.size();
+  }
+
+  /**
+   * Returns the {@link CdnStats} of a CDN.
+   *
+   * @param cdnIndex The index of the CDN, in the order in which the CDNs were declared.
+   * @return The {@link CdnStats} of the CDN.
+   */
+  public synchronized CdnStats getCdnStats(int cdnIndex) {
+    return getCdnStats(cdns.get(cdnIndex));
+  }
+
+  /**
+   * Returns the index of the CDN to which a {@link Uri} belongs, or {@link C#INDEX_UNSET} if it
+   * doesn't belong to any of the CDNs.
+   */
+  /* package */ synchronized int getCdnIndex(Uri uri) {
+    for (int i = 0; i < cdns.size(); i++) {
+      if (cdns.get(i).contains(uri)) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the {@link Uri} that requests {@code uri} from another CDN.
+   *
+   * @param uri A {@link Uri} belonging to the CDN with index {@code fromCdnIndex}.
+   * @param fromCdnIndex The index of the CDN to which {@code uri} belongs.
+   * @param toCdnIndex The index of the CDN from which to request the resource.
+   * @return The {@link Uri} of the resource on the other CDN.
+   */
+  /* package */ synchronized Uri getCdnUri(Uri uri, int fromCdnIndex, int toCdnIndex) {
+    if (fromCdnIndex == toCdnIndex) {
+      return uri;
+    }
+    Cdn fromCdn = cdns.get(fromCdnIndex);
+    Cdn toCdn = cdns.get(toCdnIndex);
+    String relativePath = getEncodedPath(uri).substring(fromCdn.basePath.length());
+    return uri.buildUpon()
+        .scheme(toCdn.baseUri.getScheme())
+        .encodedAuthority(toCdn.baseUri.getEncodedAuthority())
+        .encodedPath(toCdn.basePath + relativePath)
+        .build();
+  }
+
+  /** Returns the indices of the CDNs, in the order in which they should be tried. */
+  /* package */ synchronized int[] getCdnOrder() {
+    long nowMs = clock.elapsedRealtime();
+    List<Cdn> orderedCdns = new ArrayList<>(cdns);
+    Collections.sort(orderedCdns, (cdn1, cdn2) -> compareCdns(cdn1, cdn2, nowMs));
+    int[] cdnOrder = new int[orderedCdns.size()];
+    for (int i = 0; i < cdnOrder.length; i++) {
+      cdnOrder[i] = orderedCdns.get(i).index;
+    }
+    return cdnOrder;
+  }
+
+  /** Called when a request to a CDN is made. */
+  /* package */ synchronized void onRequestStarted(int cdnIndex) {
+    cdns.get(cdnIndex).requestCount++;
+  }
+
+  /**
+   * Called when a transfer from a CDN has completed.
+   *
+   * @param cdnIndex The index of the CDN.
+   * @param bytesTransferred The number of bytes transferred.
+   * @param elapsedMs The time taken by the transfer, including the time to first byte.
+   */
+  /* package */ void onTransferCompleted(int cdnIndex, long bytesTransferred, long elapsedMs) {
+    CdnStats cdnStats;
+    synchronized (this) {
+      Cdn cdn = cdns.get(cdnIndex);
+      if (bytesTransferred > 0 && elapsedMs > 0) {
+        long bitrate = bytesTransferred * C.BITS_PER_BYTE * 1000 / elapsedMs;
+        cdn.bitrateEstimate =
+            cdn.bitrateEstimate == BITRATE_ESTIMATE_UNSET
+                ? bitrate
+                : (long) (SAMPLE_WEIGHT * bitrate + (1 - SAMPLE_WEIGHT) * cdn.bitrateEstimate);
+      }
+      cdn.errorRate = (1 - SAMPLE_WEIGHT) * cdn.errorRate;
+      cdnStats = getCdnStats(cdn);
+    }
+    dispatchCdnStatsUpdated(cdnStats);
+  }
+
+  /** Called when a request to a CDN failed. */
+  /* package */ void onError(int cdnIndex) {
+    CdnStats cdnStats;
+    synchronized (this) {
+      Cdn cdn = cdns.get(cdnIndex);
+      cdn.errorCount++;
+      cdn.errorRate = SAMPLE_WEIGHT + (1 - SAMPLE_WEIGHT) * cdn.errorRate;
+      cdn.excludedUntilMs = clock.elapsedRealtime() + exclusionDurationMs;
+      cdnStats = getCdnStats(cdn);
+    }
+    dispatchCdnStatsUpdated(cdnStats);
+  }
+
+  /**
+   * Called when the same request was raced across two CDNs.
+   *
+   * @param winnerCdnIndex The index of the CDN that delivered the first bytes first.
+   * @param loserCdnIndex The index of the other CDN.
+   */
+  /* package */ void onRaceCompleted(int winnerCdnIndex, int loserCdnIndex) {
+    CdnStats winnerCdnStats;
+    CdnStats loserCdnStats;
+    synchronized (this) {
+      Cdn winner = cdns.get(winnerCdnIndex);
+      Cdn loser = cdns.get(loserCdnIndex);
+      winner.raceCount++;
+      winner.raceWinCount++;
+      loser.raceCount++;
+      winnerCdnStats = getCdnStats(winner);
+      loserCdnStats = getCdnStats(loser);
+    }
+    dispatchCdnStatsUpdated(winnerCdnStats);
+    dispatchCdnStatsUpdated(loserCdnStats);
+  }
+
+  private void dispatchCdnStatsUpdated(CdnStats cdnStats) {
+    for (HandlerAndListener handlerAndListener : listeners) {
+      if (!handlerAndListener.released) {
+        handlerAndListener.handler.post(
+            () -> {
+              if (!handlerAndListener.released) {
+                handlerAndListener.listener.onCdnStatsUpdated(cdnStats);
+              }
+            });
+      }
+    }
+  }
+
+  private static int compareCdns(Cdn cdn1, Cdn cdn2, long nowMs) {
+    boolean excluded1 = cdn1.excludedUntilMs > nowMs;
+    boolean excluded2 = cdn2.excludedUntilMs > nowMs;
+    if (excluded1 != excluded2) {
+      return excluded1 ? 1 : -1;
+    }
+    boolean unmeasured1 = cdn1.bitrateEstimate == BITRATE_ESTIMATE_UNSET;
+    boolean unmeasured2 = cdn2.bitrateEstimate == BITRATE_ESTIMATE_UNSET;
+    if (unmeasured1 || unmeasured2) {
+      return unmeasured1 == unmeasured2
+          ? Integer.compare(cdn1.index, cdn2.index)
+          : (unmeasured1 ? -1 : 1);
+    }
+    int result =
+        Double.compare(
+            cdn2.bitrateEstimate * (1 - cdn2.errorRate),
+            cdn1.bitrateEstimate * (1 - cdn1.errorRate));
+    return result != 0 ? result : Integer.compare(cdn1.index, cdn2.index);
+  }
+
+  private static String getEncodedPath(Uri uri) {
+    @Nullable String path = uri.getEncodedPath();
+    return path == null ? "" : path;
+  }
+
+  private static CdnStats getCdnStats(Cdn cdn) {
+    return new CdnStats(
+        cdn.baseUri,
+        cdn.bitrateEstimate,
+        cdn.errorRate,
+        cdn.requestCount,
+        cdn.errorCount,
+        cdn.raceCount,
+        cdn.raceWinCount);
+  }
+
+  private static final class Cdn {
+
+    public final int index;
+    public final Uri baseUri;
+    /** The encoded path of the base {@link Uri}, without trailing slash. */
+    public final String basePath;
+
+    public long bitrateEstimate;
+    public float errorRate;
+    public long excludedUntilMs;
+    public int requestCount;
+    public int errorCount;
+    public int raceCount;
+    public int raceWinCount;
+
+    public Cdn(int index, Uri baseUri) {
+      this.index = index;
+      this.baseUri = baseUri;
+      String basePath = getEncodedPath(baseUri);
+      this.basePath =
+          basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath;
+      bitrateEstimate = BITRATE_ESTIMATE_UNSET;
+      excludedUntilMs = C.TIME_UNSET;
+    }
+
+    /** Returns whether a {@link Uri} belongs to this CDN. */
+    public boolean contains(Uri uri) {
+      if (!Util.areEqual(
+              Util.toLowerInvariant(uri.getScheme()), Util.toLowerInvariant(baseUri.getScheme()))
+          || !Util.areEqual(
+              Util.toLowerInvariant(uri.getEncodedAuthority()),
+              Util.toLowerInvariant(baseUri.getEncodedAuthority()))) {
+        return false;
+      }
+      String path = getEncodedPath(uri);
+      // Compare whole path segments, so that /content doesn't contain /content2.
+      return path.startsWith(basePath)
+          && (path.length() == basePath.length() || path.charAt(basePath.length()) == '/');
+    }
+  }
+
+  private static final class HandlerAndListener {
+
+    public final Handler handler;
+    public final EventListener listener;
+
+    public volatile boolean released;
+
+    public HandlerAndListener(Handler handler, EventListener listener) {
+      this.handler = handler;
+      this.listener = listener;
+    }
+  }
+}
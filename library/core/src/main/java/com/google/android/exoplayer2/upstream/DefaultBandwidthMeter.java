@@ -15,18 +15,27 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import static java.lang.Math.min;
+
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.Looper;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.DatabaseIOException;
+import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.upstream.BandwidthMeter.EventListener.EventDispatcher;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.SlidingPercentile;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
@@ -37,15 +46,23 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
  * Estimates bandwidth by listening to data transfers.
  *
- * <p>The bandwidth estimate is calculated using a {@link SlidingPercentile} and is updated each
- * time a transfer ends. The initial estimate is based on the current operator's network country
- * code or the locale of the user, as well as the network connection type. This can be configured in
- * the {@link Builder}.
+ * <p>The bandwidth estimate is calculated using a {@link BandwidthStatistic}, by default a median
+ * over a {@link SlidingPercentile}, and is updated each time a transfer ends. The initial estimate
+ * is based on the current operator's network country code or the locale of the user, as well as
+ * the network connection type. This can be configured in the {@link Builder}.
+ *
+ * <p>The meter also estimates the time to first byte of requests, which is the time from the start
+ * of opening a connection to the first byte of the response.
+ *
+ * <p>If a {@link DatabaseProvider} is {@link Builder#setDatabaseProvider(DatabaseProvider) set},
+ * converged estimates are persisted per network and used as the initial estimate when the same
+ * network is used again, including in later sessions.
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter, TransferListener {
 
@@ -85,6 +102,23 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   /** Default maximum weight for the sliding window. */
   public static final int DEFAULT_SLIDING_WINDOW_MAX_WEIGHT = 2000;
 
+  /** The maximum age of persisted estimates that are used as initial estimates, in milliseconds. */
+  private static final long MAX_PERSISTED_ESTIMATE_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+  /** The minimum interval between two writes of the estimate to the database, in milliseconds. */
+  private static final long MIN_PERSIST_INTERVAL_MS = 10_000;
+
+  private static final String TAG = "DefaultBandwidthMeter";
+  private static final String UNKNOWN_SSID = "<unknown ssid>";
+
+  /** The number of recent requests whose times to first byte are used for the estimate. */
+  private static final int TIME_TO_FIRST_BYTE_SAMPLE_COUNT = 10;
+  /** The number of recent samples whose bitrates are used for the throughput variation. */
+  private static final int THROUGHPUT_VARIATION_SAMPLE_COUNT = 20;
+  /** The minimum number of samples required for the throughput variation to be known. */
+  private static final int MIN_THROUGHPUT_VARIATION_SAMPLE_COUNT = 3;
+  /** The maximum number of transfers awaiting their first byte that are tracked. */
+  private static final int MAX_PENDING_TRANSFER_COUNT = 16;
+
   /** Index for the Wifi group index in {@link #DEFAULT_INITIAL_BITRATE_COUNTRY_GROUPS}. */
   private static final int COUNTRY_GROUP_INDEX_WIFI = 0;
   /** Index for the 2G group index in {@link #DEFAULT_INITIAL_BITRATE_COUNTRY_GROUPS}. */
@@ -97,6 +131,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   private static final int COUNTRY_GROUP_INDEX_5G_NSA = 4;
 
   @Nullable private static DefaultBandwidthMeter singletonInstance;
+  @Nullable private static Executor sharedDatabaseExecutor;
 
   /** Builder for a bandwidth meter. */
   public static final class Builder {
@@ -105,8 +140,13 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
 
     private Map<Integer, Long> initialBitrateEstimates;
     private int slidingWindowMaxWeight;
+    @Nullable private BandwidthStatistic bandwidthStatistic;
+    private boolean excludeTimeToFirstByte;
     private Clock clock;
     private boolean resetOnNetworkTypeChange;
+    @Nullable private DatabaseProvider databaseProvider;
+    @Nullable private Executor databaseExecutor;
+    private boolean persistEstimatesPerNetwork;
 
     /**
      * Creates a builder with default parameters and without listener.
@@ -123,7 +163,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     }
 
     /**
-     * Sets the maximum weight for the sliding window.
+     * Sets the maximum weight for the sliding window. Ignored if a {@link BandwidthStatistic} is
+     * {@link #setBandwidthStatistic(BandwidthStatistic) set}.
      *
      * @param slidingWindowMaxWeight The maximum weight for the sliding window.
      * @return This builder.
@@ -133,6 +174,39 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return this;
     }
 
+    /**
+     * Sets the {@link BandwidthStatistic} computing the bandwidth estimate from the transfers. The
+     * default is a {@link SlidingPercentileBandwidthStatistic} computing the median.
+     *
+     * <p>The statistic must not be used by other bandwidth meters, so a new instance should be set
+     * before each call to {@link #build()}.
+     *
+     * @param bandwidthStatistic The {@link BandwidthStatistic}.
+     * @return This builder.
+     */
+    public Builder setBandwidthStatistic(BandwidthStatistic bandwidthStatistic) {
+      this.bandwidthStatistic = bandwidthStatistic;
+      return this;
+    }
+
+    /**
+     * Sets whether the time from the start of a transfer to its first byte is excluded from the
+     * bandwidth samples. The default value is {@code false}.
+     *
+     * <p>Excluding this time avoids underestimating the bandwidth when responses are delayed by
+     * the server, as is the case for blocking requests of low latency streams. The time until the
+     * first bytes of a transfer are reported is subtracted from the elapsed time of the sample,
+     * while all transferred bytes are still counted. The time to first byte is estimated
+     * separately in all cases.
+     *
+     * @param excludeTimeToFirstByte Whether to exclude the time to first byte.
+     * @return This builder.
+     */
+    public Builder setExcludeTimeToFirstByte(boolean excludeTimeToFirstByte) {
+      this.excludeTimeToFirstByte = excludeTimeToFirstByte;
+      return this;
+    }
+
     /**
      * Sets the initial bitrate estimate in bits per second that should be assumed when a bandwidth
      * estimate is unavailable.
@@ -198,6 +272,54 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return this;
     }
 
+    /**
+     * Sets the {@link DatabaseProvider} used to persist converged bitrate estimates, which are
+     * restored as the initial estimates of later sessions on the same network. Estimates are not
+     * persisted by default.
+     *
+     * <p>The database is accessed on a background thread that's shared by all meters.
+     *
+     * @param databaseProvider The {@link DatabaseProvider}.
+     * @return This builder.
+     */
+    public Builder setDatabaseProvider(DatabaseProvider databaseProvider) {
+      this.databaseProvider = databaseProvider;
+      this.databaseExecutor = null;
+      return this;
+    }
+
+    /**
+     * Sets the {@link DatabaseProvider} used to persist converged bitrate estimates, and the
+     * {@link Executor} on which the database is accessed.
+     *
+     * @param databaseProvider The {@link DatabaseProvider}.
+     * @param databaseExecutor The {@link Executor} on which the database is accessed.
+     * @return This builder.
+     * @see #setDatabaseProvider(DatabaseProvider)
+     */
+    public Builder setDatabaseProvider(
+        DatabaseProvider databaseProvider, Executor databaseExecutor) {
+      this.databaseProvider = databaseProvider;
+      this.databaseExecutor = databaseExecutor;
+      return this;
+    }
+
+    /**
+     * Sets whether persisted estimates are additionally keyed by the specific network, that is the
+     * mobile operator or the Wi-Fi network, rather than only by country and network type. The
+     * default value is {@code false}. Ignored if no {@link DatabaseProvider} is set.
+     *
+     * <p>Identifying the Wi-Fi network requires the {@code ACCESS_WIFI_STATE} and location
+     * permissions. Without them, estimates are keyed by network type only.
+     *
+     * @param persistEstimatesPerNetwork Whether to key persisted estimates by specific network.
+     * @return This builder.
+     */
+    public Builder setPersistEstimatesPerNetwork(boolean persistEstimatesPerNetwork) {
+      this.persistEstimatesPerNetwork = persistEstimatesPerNetwork;
+      return this;
+    }
+
     /**
      * Builds the bandwidth meter.
      *
@@ -207,9 +329,17 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return new DefaultBandwidthMeter(
           context,
           initialBitrateEstimates,
-          slidingWindowMaxWeight,
+          bandwidthStatistic != null
+              ? bandwidthStatistic
+              : new SlidingPercentileBandwidthStatistic(slidingWindowMaxWeight),
+          excludeTimeToFirstByte,
           clock,
-          resetOnNetworkTypeChange);
+          resetOnNetworkTypeChange,
+          databaseProvider == null ? null : new BandwidthEstimateIndex(databaseProvider),
+          databaseProvider == null || databaseExecutor != null
+              ? databaseExecutor
+              : getSharedDatabaseExecutor(),
+          persistEstimatesPerNetwork);
     }
 
     private static Map<Integer, Long> getInitialBitrateEstimatesForCountry(String countryCode) {
@@ -259,24 +389,51 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     return singletonInstance;
   }
 
+  /**
+   * Returns the {@link Executor} on which the database is accessed if no executor is set, which is
+   * shared by all instances so that creating many meters doesn't create many threads.
+   */
+  private static synchronized Executor getSharedDatabaseExecutor() {
+    if (sharedDatabaseExecutor == null) {
+      sharedDatabaseExecutor = Util.newSingleThreadExecutor("ExoPlayer:BandwidthMeterDatabase");
+    }
+    return sharedDatabaseExecutor;
+  }
+
   private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
   private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
 
   @Nullable private final Context context;
   private final ImmutableMap<Integer, Long> initialBitrateEstimates;
   private final EventDispatcher eventDispatcher;
-  private final SlidingPercentile slidingPercentile;
+  private final BandwidthStatistic bandwidthStatistic;
+  private final boolean excludeTimeToFirstByte;
   private final Clock clock;
+  private final HashMap<DataSpec, Long> pendingTransferStartTimesMs;
+  private final SlidingPercentile timeToFirstByteSlidingPercentile;
+  private final long[] recentSampleBitrates;
+  @Nullable private final BandwidthEstimateIndex bandwidthEstimateIndex;
+  @Nullable private final Executor databaseExecutor;
+  private final boolean persistEstimatesPerNetwork;
+  private final HashMap<String, Long> persistedBitrateEstimates;
 
   private int streamCount;
+  private boolean isAwaitingSampleFirstByte;
   private long sampleStartTimeMs;
+  private long sampleTimeToFirstByteMs;
   private long sampleBytesTransferred;
 
   @C.NetworkType private int networkType;
+  private List<String> networkKeys;
+  private boolean isBitrateEstimateMeasured;
+  private long lastPersistTimeMs;
   private long totalElapsedTimeMs;
   private long totalBytesTransferred;
   private long bitrateEstimate;
   private long lastReportedBitrateEstimate;
+  private long timeToFirstByteEstimateUs;
+  private int recentSampleCount;
+  private int nextRecentSampleIndex;
 
   private boolean networkTypeOverrideSet;
   @C.NetworkType private int networkTypeOverride;
@@ -287,25 +444,50 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     this(
         /* context= */ null,
         /* initialBitrateEstimates= */ ImmutableMap.of(),
-        DEFAULT_SLIDING_WINDOW_MAX_WEIGHT,
+        new SlidingPercentileBandwidthStatistic(DEFAULT_SLIDING_WINDOW_MAX_WEIGHT),
+        /* excludeTimeToFirstByte= */ false,
         Clock.DEFAULT,
-        /* resetOnNetworkTypeChange= */ false);
+        /* resetOnNetworkTypeChange= */ false,
+        /* bandwidthEstimateIndex= */ null,
+        /* databaseExecutor= */ null,
+        /* persistEstimatesPerNetwork= */ false);
   }
 
   private DefaultBandwidthMeter(
       @Nullable Context context,
       Map<Integer, Long> initialBitrateEstimates,
-      int maxWeight,
+      BandwidthStatistic bandwidthStatistic,
+      boolean excludeTimeToFirstByte,
       Clock clock,
-      boolean resetOnNetworkTypeChange) {
+      boolean resetOnNetworkTypeChange,
+      @Nullable BandwidthEstimateIndex bandwidthEstimateIndex,
+      @Nullable Executor databaseExecutor,
+      boolean persistEstimatesPerNetwork) {
     this.context = context == null ? null : context.getApplicationContext();
     this.initialBitrateEstimates = ImmutableMap.copyOf(initialBitrateEstimates);
     this.eventDispatcher = new EventDispatcher();
-    this.slidingPercentile = new SlidingPercentile(maxWeight);
+    this.bandwidthStatistic = bandwidthStatistic;
+    this.excludeTimeToFirstByte = excludeTimeToFirstByte;
     this.clock = clock;
+    pendingTransferStartTimesMs = new HashMap<>();
+    timeToFirstByteSlidingPercentile = new SlidingPercentile(TIME_TO_FIRST_BYTE_SAMPLE_COUNT);
+    timeToFirstByteEstimateUs = C.TIME_UNSET;
+    recentSampleBitrates = new long[THROUGHPUT_VARIATION_SAMPLE_COUNT];
+    this.bandwidthEstimateIndex = bandwidthEstimateIndex;
+    this.databaseExecutor = databaseExecutor;
+    this.persistEstimatesPerNetwork = persistEstimatesPerNetwork;
+    persistedBitrateEstimates = new HashMap<>();
+    lastPersistTimeMs = C.TIME_UNSET;
     // Set the initial network type and bitrate estimate
     networkType = context == null ? C.NETWORK_TYPE_UNKNOWN : Util.getNetworkType(context);
+    networkKeys = getNetworkKeys(networkType);
     bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+    // Load the persisted estimates, which replace the initial estimate once available.
+    if (bandwidthEstimateIndex != null && databaseExecutor != null) {
+      long minUpdateTimestampMs = clock.currentTimeMillis() - MAX_PERSISTED_ESTIMATE_AGE_MS;
+      databaseExecutor.execute(
+          () -> loadPersistedBitrateEstimates(bandwidthEstimateIndex, minUpdateTimestampMs));
+    }
     // Register to receive connectivity actions if possible.
     if (context != null && resetOnNetworkTypeChange) {
       ConnectivityActionReceiver connectivityActionReceiver =
@@ -333,6 +515,32 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     return bitrateEstimate;
   }
 
+  @Override
+  public synchronized long getTimeToFirstByteEstimateUs() {
+    return timeToFirstByteEstimateUs;
+  }
+
+  @Override
+  public synchronized float getThroughputCoefficientOfVariation() {
+    if (recentSampleCount < MIN_THROUGHPUT_VARIATION_SAMPLE_COUNT) {
+      return C.RATE_UNSET;
+    }
+    double sum = 0;
+    for (int i = 0; i < recentSampleCount; i++) {
+      sum += recentSampleBitrates[i];
+    }
+    double mean = sum / recentSampleCount;
+    if (mean == 0) {
+      return C.RATE_UNSET;
+    }
+    double squaredDeviationSum = 0;
+    for (int i = 0; i < recentSampleCount; i++) {
+      double deviation = recentSampleBitrates[i] - mean;
+      squaredDeviationSum += deviation * deviation;
+    }
+    return (float) (Math.sqrt(squaredDeviationSum / recentSampleCount) / mean);
+  }
+
   @Override
   public TransferListener getTransferListener() {
     return this;
@@ -351,8 +559,16 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   @Override
-  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
-    // Do nothing.
+  public synchronized void onTransferInitializing(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    if (pendingTransferStartTimesMs.size() >= MAX_PENDING_TRANSFER_COUNT) {
+      // Transfers that failed to open are never ended.
+      pendingTransferStartTimesMs.clear();
+    }
+    pendingTransferStartTimesMs.put(dataSpec, clock.elapsedRealtime());
   }
 
   @Override
@@ -361,8 +577,16 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
       return;
     }
+    long nowMs = clock.elapsedRealtime();
+    if (!pendingTransferStartTimesMs.containsKey(dataSpec)) {
+      // The transfer wasn't reported as initializing, so the time to first byte is measured from
+      // its start.
+      pendingTransferStartTimesMs.put(dataSpec, nowMs);
+    }
     if (streamCount == 0) {
-      sampleStartTimeMs = clock.elapsedRealtime();
+      sampleStartTimeMs = nowMs;
+      sampleTimeToFirstByteMs = 0;
+      isAwaitingSampleFirstByte = excludeTimeToFirstByte;
     }
     streamCount++;
   }
@@ -373,6 +597,19 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
       return;
     }
+    @Nullable Long transferStartTimeMs = pendingTransferStartTimesMs.remove(dataSpec);
+    if (transferStartTimeMs != null || isAwaitingSampleFirstByte) {
+      long nowMs = clock.elapsedRealtime();
+      if (transferStartTimeMs != null) {
+        onTimeToFirstByteSample(nowMs - transferStartTimeMs);
+      }
+      if (isAwaitingSampleFirstByte) {
+        // Record when the first bytes arrived, so that the time before them is subtracted from the
+        // elapsed time of the sample. The bytes themselves still count towards the sample.
+        sampleTimeToFirstByteMs = nowMs - sampleStartTimeMs;
+        isAwaitingSampleFirstByte = false;
+      }
+    }
     sampleBytesTransferred += bytes;
   }
 
@@ -382,19 +619,32 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return;
     }
     Assertions.checkState(streamCount > 0);
+    pendingTransferStartTimesMs.remove(dataSpec);
     long nowMs = clock.elapsedRealtime();
-    int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
+    int sampleElapsedTimeMs = getSampleElapsedTimeMs(nowMs);
     totalElapsedTimeMs += sampleElapsedTimeMs;
     totalBytesTransferred += sampleBytesTransferred;
     if (sampleElapsedTimeMs > 0) {
-      float bitsPerSecond = (sampleBytesTransferred * 8000f) / sampleElapsedTimeMs;
-      slidingPercentile.addSample((int) Math.sqrt(sampleBytesTransferred), bitsPerSecond);
-      if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
-          || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
-        bitrateEstimate = (long) slidingPercentile.getPercentile(0.5f);
+      bandwidthStatistic.addSample(sampleBytesTransferred, sampleElapsedTimeMs);
+      recentSampleBitrates[nextRecentSampleIndex] =
+          sampleBytesTransferred * 8000 / sampleElapsedTimeMs;
+      nextRecentSampleIndex = (nextRecentSampleIndex + 1) % THROUGHPUT_VARIATION_SAMPLE_COUNT;
+      recentSampleCount = min(recentSampleCount + 1, THROUGHPUT_VARIATION_SAMPLE_COUNT);
+      long bandwidthEstimate = bandwidthStatistic.getBandwidthEstimate();
+      if (bandwidthEstimate != BandwidthStatistic.ESTIMATE_NOT_AVAILABLE
+          && (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+              || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE)) {
+        bitrateEstimate = bandwidthEstimate;
+        isBitrateEstimateMeasured = true;
+        if (lastPersistTimeMs == C.TIME_UNSET
+            || nowMs - lastPersistTimeMs >= MIN_PERSIST_INTERVAL_MS) {
+          lastPersistTimeMs = nowMs;
+          persistBitrateEstimate();
+        }
       }
       maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
       sampleStartTimeMs = nowMs;
+      sampleTimeToFirstByteMs = 0;
       sampleBytesTransferred = 0;
     } // Else any sample bytes transferred will be carried forward into the next sample.
     streamCount--;
@@ -405,11 +655,17 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
         networkTypeOverrideSet
             ? networkTypeOverride
             : (context == null ? C.NETWORK_TYPE_UNKNOWN : Util.getNetworkType(context));
-    if (this.networkType == networkType) {
+    List<String> networkKeys = getNetworkKeys(networkType);
+    if (this.networkType == networkType && this.networkKeys.equals(networkKeys)) {
       return;
     }
 
+    if (isBitrateEstimateMeasured) {
+      // Persist the latest estimate of the previous network.
+      persistBitrateEstimate();
+    }
     this.networkType = networkType;
+    this.networkKeys = networkKeys;
     if (networkType == C.NETWORK_TYPE_OFFLINE
         || networkType == C.NETWORK_TYPE_UNKNOWN
         || networkType == C.NETWORK_TYPE_OTHER) {
@@ -420,15 +676,155 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     // Reset the bitrate estimate and report it, along with any bytes transferred.
     this.bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
     long nowMs = clock.elapsedRealtime();
-    int sampleElapsedTimeMs = streamCount > 0 ? (int) (nowMs - sampleStartTimeMs) : 0;
+    int sampleElapsedTimeMs = streamCount > 0 ? getSampleElapsedTimeMs(nowMs) : 0;
     maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
 
     // Reset the remainder of the state.
     sampleStartTimeMs = nowMs;
+    sampleTimeToFirstByteMs = 0;
     sampleBytesTransferred = 0;
+    isBitrateEstimateMeasured = false;
+    lastPersistTimeMs = C.TIME_UNSET;
     totalBytesTransferred = 0;
     totalElapsedTimeMs = 0;
-    slidingPercentile.reset();
+    bandwidthStatistic.reset();
+    recentSampleCount = 0;
+    nextRecentSampleIndex = 0;
+    timeToFirstByteSlidingPercentile.reset();
+    timeToFirstByteEstimateUs = C.TIME_UNSET;
+  }
+
+  private synchronized void onPersistedBitrateEstimatesLoaded(Map<String, Long> bitrateEstimates) {
+    for (Map.Entry<String, Long> entry : bitrateEstimates.entrySet()) {
+      // Estimates persisted by this meter in the meantime are more recent.
+      if (!persistedBitrateEstimates.containsKey(entry.getKey())) {
+        persistedBitrateEstimates.put(entry.getKey(), entry.getValue());
+      }
+    }
+    @Nullable Long persistedBitrateEstimate = getPersistedBitrateEstimate();
+    if (!isBitrateEstimateMeasured && persistedBitrateEstimate != null) {
+      bitrateEstimate = persistedBitrateEstimate;
+      maybeNotifyBandwidthSample(/* elapsedMs= */ 0, /* bytesTransferred= */ 0, bitrateEstimate);
+    }
+  }
+
+  private void loadPersistedBitrateEstimates(
+      BandwidthEstimateIndex bandwidthEstimateIndex, long minUpdateTimestampMs) {
+    Map<String, Long> bitrateEstimates;
+    try {
+      bitrateEstimates = bandwidthEstimateIndex.getAll(minUpdateTimestampMs);
+    } catch (DatabaseIOException e) {
+      Log.w(TAG, "Failed to load persisted bitrate estimates", e);
+      return;
+    }
+    onPersistedBitrateEstimatesLoaded(bitrateEstimates);
+  }
+
+  private void persistBitrateEstimate() {
+    if (bandwidthEstimateIndex == null
+        || databaseExecutor == null
+        || networkType == C.NETWORK_TYPE_OFFLINE
+        || networkType == C.NETWORK_TYPE_UNKNOWN
+        || networkType == C.NETWORK_TYPE_OTHER) {
+      return;
+    }
+    BandwidthEstimateIndex bandwidthEstimateIndex = this.bandwidthEstimateIndex;
+    List<String> networkKeys = this.networkKeys;
+    long bitrateEstimate = this.bitrateEstimate;
+    long updateTimestampMs = clock.currentTimeMillis();
+    for (int i = 0; i < networkKeys.size(); i++) {
+      persistedBitrateEstimates.put(networkKeys.get(i), bitrateEstimate);
+    }
+    databaseExecutor.execute(
+        () -> {
+          try {
+            bandwidthEstimateIndex.set(networkKeys, bitrateEstimate, updateTimestampMs);
+          } catch (DatabaseIOException e) {
+            Log.w(TAG, "Failed to persist bitrate estimate", e);
+          }
+        });
+  }
+
+  @Nullable
+  private Long getPersistedBitrateEstimate() {
+    for (int i = 0; i < networkKeys.size(); i++) {
+      @Nullable Long bitrateEstimate = persistedBitrateEstimates.get(networkKeys.get(i));
+      if (bitrateEstimate != null) {
+        return bitrateEstimate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the keys under which the estimates of the current network are persisted, from the most
+   * to the least specific.
+   */
+  private List<String> getNetworkKeys(@C.NetworkType int networkType) {
+    if (bandwidthEstimateIndex == null) {
+      return ImmutableList.of();
+    }
+    String networkTypeKey =
+        (context == null ? "" : Util.getCountryCode(context)) + "/" + networkType;
+    @Nullable
+    String networkIdentifier =
+        persistEstimatesPerNetwork ? getNetworkIdentifier(networkType) : null;
+    return networkIdentifier == null
+        ? ImmutableList.of(networkTypeKey)
+        : ImmutableList.of(networkTypeKey + "/" + networkIdentifier, networkTypeKey);
+  }
+
+  @Nullable
+  private String getNetworkIdentifier(@C.NetworkType int networkType) {
+    if (context == null) {
+      return null;
+    }
+    switch (networkType) {
+      case C.NETWORK_TYPE_2G:
+      case C.NETWORK_TYPE_3G:
+      case C.NETWORK_TYPE_4G:
+      case C.NETWORK_TYPE_5G:
+      case C.NETWORK_TYPE_CELLULAR_UNKNOWN:
+        @Nullable
+        TelephonyManager telephonyManager =
+            (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        @Nullable
+        String networkOperator =
+            telephonyManager == null ? null : telephonyManager.getNetworkOperator();
+        return TextUtils.isEmpty(networkOperator) ? null : networkOperator;
+      case C.NETWORK_TYPE_WIFI:
+        @Nullable
+        WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        @Nullable WifiInfo wifiInfo;
+        try {
+          wifiInfo = wifiManager == null ? null : wifiManager.getConnectionInfo();
+        } catch (SecurityException e) {
+          // Missing ACCESS_WIFI_STATE permission.
+          return null;
+        }
+        @Nullable String ssid = wifiInfo == null ? null : wifiInfo.getSSID();
+        if (ssid == null || ssid.equals(UNKNOWN_SSID)) {
+          // The SSID is hidden without location permission.
+          return null;
+        }
+        // Avoid storing the SSID itself.
+        return Integer.toHexString(ssid.hashCode());
+      default:
+        return null;
+    }
+  }
+
+  private int getSampleElapsedTimeMs(long nowMs) {
+    // Don't count the time to first byte if it's excluded. It's 0 if it isn't excluded.
+    return isAwaitingSampleFirstByte
+        ? 0
+        : (int) (nowMs - sampleStartTimeMs - sampleTimeToFirstByteMs);
+  }
+
+  private void onTimeToFirstByteSample(long timeToFirstByteMs) {
+    timeToFirstByteSlidingPercentile.addSample(/* weight= */ 1, timeToFirstByteMs);
+    timeToFirstByteEstimateUs =
+        C.msToUs((long) timeToFirstByteSlidingPercentile.getPercentile(/* percentile= */ 0.5f));
   }
 
   private void maybeNotifyBandwidthSample(
@@ -441,6 +837,10 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   private long getInitialBitrateEstimateForNetworkType(@C.NetworkType int networkType) {
+    @Nullable Long persistedBitrateEstimate = getPersistedBitrateEstimate();
+    if (persistedBitrateEstimate != null) {
+      return persistedBitrateEstimate;
+    }
     Long initialBitrateEstimate = initialBitrateEstimates.get(networkType);
     if (initialBitrateEstimate == null) {
       initialBitrateEstimate = initialBitrateEstimates.get(C.NETWORK_TYPE_UNKNOWN);
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A {@link BandwidthStatistic} computing two exponentially weighted moving averages of the sample
+ * bitrates, a fast one and a slow one, and returning the lower of the two. The fast average reacts
+ * quickly to bandwidth drops, while the slow average prevents overestimating the bandwidth after
+ * short bursts.
+ *
+ * <p>Each sample is weighted by its duration, so that the weight of past samples halves every
+ * half-life of transfer time.
+ */
+public final class ExponentialWeightedAverageBandwidthStatistic implements BandwidthStatistic {
+
+  /** The default half-life of the fast average, in milliseconds. */
+  public static final long DEFAULT_FAST_HALF_LIFE_MS = 3_000;
+  /** The default half-life of the slow average, in milliseconds. */
+  public static final long DEFAULT_SLOW_HALF_LIFE_MS = 8_000;
+
+  private final Average fastAverage;
+  private final Average slowAverage;
+
+  /** Creates a statistic with the default half-lives. */
+  public ExponentialWeightedAverageBandwidthStatistic() {
+    this(DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS);
+  }
+
+  /**
+   * Creates a statistic.
+   *
+   * @param fastHalfLifeMs The half-life of the fast average, in milliseconds.
+   * @param slowHalfLifeMs The half-life of the slow average, in milliseconds. Must be at least
+   *     {@code fastHalfLifeMs}.
+   */
+  public ExponentialWeightedAverageBandwidthStatistic(long fastHalfLifeMs, long slowHalfLifeMs) {
+    Assertions.checkArgument(fastHalfLifeMs > 0 && slowHalfLifeMs >= fastHalfLifeMs);
+    fastAverage = new Average(fastHalfLifeMs);
+    slowAverage = new Average(slowHalfLifeMs);
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    double bitsPerSecond = bytes * 8000d / elapsedMs;
+    fastAverage.addSample(bitsPerSecond, elapsedMs);
+    slowAverage.addSample(bitsPerSecond, elapsedMs);
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    if (!fastAverage.hasSamples()) {
+      return ESTIMATE_NOT_AVAILABLE;
+    }
+    return (long) min(fastAverage.getAverage(), slowAverage.getAverage());
+  }
+
+  @Override
+  public void reset() {
+    fastAverage.reset();
+    slowAverage.reset();
+  }
+
+  private static final class Average {
+
+    private final double halfLifeMs;
+
+    private double average;
+    /** The weight of the initial zero value remaining in {@link #average}, used to correct it. */
+    private double residualWeight;
+
+    public Average(long halfLifeMs) {
+      this.halfLifeMs = halfLifeMs;
+      residualWeight = 1;
+    }
+
+    public void addSample(double value, long durationMs) {
+      double decay = Math.pow(0.5, durationMs / halfLifeMs);
+      average = decay * average + (1 - decay) * value;
+      residualWeight *= decay;
+    }
+
+    public boolean hasSamples() {
+      return residualWeight < 1;
+    }
+
+    public double getAverage() {
+      return average / (1 - residualWeight);
+    }
+
+    public void reset() {
+      average = 0;
+      residualWeight = 1;
+    }
+  }
+}
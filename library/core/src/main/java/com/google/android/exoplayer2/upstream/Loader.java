@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -204,7 +205,8 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  private final Executor downloadExecutor;
+  @Nullable private final ExecutorService ownedExecutorService;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
@@ -213,7 +215,29 @@ public final class Loader implements LoaderErrorThrower {
    * @param threadName A name for the loader's thread.
    */
   public Loader(String threadName) {
-    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    ownedExecutorService = Util.newSingleThreadExecutor(threadName);
+    downloadExecutor = ownedExecutorService;
+  }
+
+  /**
+   * Creates a loader that runs its loads on the threads of a shared {@link LoaderThreadPool}.
+   *
+   * @param threadPool The {@link LoaderThreadPool}.
+   */
+  public Loader(LoaderThreadPool threadPool) {
+    ownedExecutorService = null;
+    downloadExecutor = threadPool.createSerialExecutor();
+  }
+
+  /**
+   * Creates a loader that runs its loads on the threads of a shared {@link LoaderThreadPool}, or on
+   * a dedicated thread if no pool is provided.
+   *
+   * @param threadName A name for the loader's thread, used if {@code threadPool} is null.
+   * @param threadPool The {@link LoaderThreadPool}, or null.
+   */
+  public static Loader create(String threadName, @Nullable LoaderThreadPool threadPool) {
+    return threadPool != null ? new Loader(threadPool) : new Loader(threadName);
   }
 
   /**
@@ -295,9 +319,11 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      downloadExecutor.execute(new ReleaseTask(callback));
+    }
+    if (ownedExecutorService != null) {
+      ownedExecutorService.shutdown();
     }
-    downloadExecutorService.shutdown();
   }
 
   // LoaderErrorThrower implementation.
@@ -409,18 +435,22 @@ public final class Loader implements LoaderErrorThrower {
           shouldLoad = !canceled;
           executorThread = Thread.currentThread();
         }
-        if (shouldLoad) {
-          TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
-          try {
-            loadable.load();
-          } finally {
-            TraceUtil.endSection();
+        try {
+          if (shouldLoad) {
+            TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
+            try {
+              loadable.load();
+            } finally {
+              TraceUtil.endSection();
+            }
+          }
+        } finally {
+          synchronized (this) {
+            executorThread = null;
+            // Clear the interrupted flag if set, to avoid it leaking into a subsequent task. This
+            // matters in particular if the thread is shared with other loaders.
+            Thread.interrupted();
           }
-        }
-        synchronized (this) {
-          executorThread = null;
-          // Clear the interrupted flag if set, to avoid it leaking into a subsequent task.
-          Thread.interrupted();
         }
         if (!released) {
           sendEmptyMessage(MSG_FINISH);
@@ -510,7 +540,7 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      downloadExecutor.execute(Assertions.checkNotNull(currentTask));
     }
 
     private void finish() {
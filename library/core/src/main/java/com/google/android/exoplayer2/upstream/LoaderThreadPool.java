@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed size pool of threads on which multiple {@link Loader Loaders} run their loads.
+ *
+ * <p>By default each {@link Loader} runs its loads on a dedicated thread. When many players are
+ * used at the same time, the loaders of their media sources can instead share the threads of a
+ * pool.
+ *
+ * <p>A loader never occupies more than one thread of the pool at a time, and loads that are
+ * started while all threads are busy are run in the order in which they were started. Loaders that
+ * run many short loads, such as those loading chunks of adaptive streams, therefore take turns
+ * using the threads, and one loader can't starve the others. Loads that block their thread for a
+ * long time, such as progressive loads that wait for the buffer to drain, should not use a pool
+ * with fewer threads than there are such loads running concurrently.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class LoaderThreadPool {
+
+  private final int threadCount;
+  private final ExecutorService executorService;
+
+  /**
+   * Creates a pool.
+   *
+   * @param threadCount The number of threads in the pool.
+   */
+  public LoaderThreadPool(int threadCount) {
+    Assertions.checkArgument(threadCount > 0);
+    this.threadCount = threadCount;
+    AtomicInteger threadIndex = new AtomicInteger();
+    executorService =
+        Executors.newFixedThreadPool(
+            threadCount,
+            runnable ->
+                new Thread(
+                    runnable, "ExoPlayer:LoaderThreadPool:" + threadIndex.getAndIncrement()));
+  }
+
+  /** Returns the number of threads in the pool. */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  /**
+   * Releases the pool. Loads that are running are completed, but no new loads are started. Must
+   * only be called once all {@link Loader Loaders} using the pool have been released.
+   */
+  public void release() {
+    executorService.shutdown();
+  }
+
+  /**
+   * Returns an {@link Executor} for a single {@link Loader}, which runs tasks on the threads of the
+   * pool one at a time and in the order in which they were submitted.
+   */
+  /* package */ Executor createSerialExecutor() {
+    return new SerialExecutor(executorService);
+  }
+
+  private static final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+
+    @GuardedBy("this")
+    private final ArrayDeque<Runnable> pendingTasks;
+
+    @GuardedBy("this")
+    @Nullable
+    private Runnable activeTask;
+
+    public SerialExecutor(Executor executor) {
+      this.executor = executor;
+      pendingTasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+      pendingTasks.add(
+          () -> {
+            try {
+              task.run();
+            } finally {
+              scheduleNext();
+            }
+          });
+      if (activeTask == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      activeTask = pendingTasks.poll();
+      if (activeTask != null) {
+        executor.execute(activeTask);
+      }
+    }
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory cache of parsed manifests that can be shared between media sources, including
+ * media sources belonging to different player instances.
+ *
+ * <p>Loads are made through {@link ParsingLoadable} instances that are created with a {@link
+ * ManifestCache}. Concurrent loads of the same manifest are coalesced into a single request, and
+ * the parsed result is served to subsequent loads until it expires. The time for which a manifest
+ * remains valid is determined by a {@link TtlProvider}, which typically derives it from the
+ * update period declared by the manifest itself.
+ *
+ * <p>Manifests are keyed by their request {@link Uri} and the class of the {@link
+ * ParsingLoadable.Parser} used to parse them. It's assumed that parsers of the same class produce
+ * equivalent results for the same data.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class ManifestCache {
+
+  /** Provides the time for which a parsed manifest may be served from the cache. */
+  public interface TtlProvider<T> {
+
+    /**
+     * Returns the time for which the given manifest may be served from the cache, in
+     * milliseconds, or {@link C#TIME_UNSET} to use the default time-to-live of the cache. A value
+     * of zero means that the manifest is never served from the cache, although concurrent loads
+     * of it are still coalesced.
+     *
+     * @param manifest The loaded manifest.
+     * @return The time-to-live of the manifest in milliseconds, or {@link C#TIME_UNSET}.
+     */
+    long getTtlMs(T manifest);
+  }
+
+  /** The default maximum number of manifests held by the cache. */
+  public static final int DEFAULT_MAX_ENTRY_COUNT = 32;
+  /**
+   * The default time-to-live for manifests whose {@link TtlProvider} returns {@link C#TIME_UNSET},
+   * in milliseconds.
+   */
+  public static final long DEFAULT_TTL_MS = 60_000;
+
+  /** A task that loads and parses a manifest. */
+  /* package */ interface LoadTask {
+
+    /** Loads and parses a manifest, returning the resulting {@link Entry}. */
+    Entry load() throws IOException;
+  }
+
+  /** A parsed manifest held by the cache. */
+  /* package */ static final class Entry {
+
+    /** The parsed manifest. */
+    public final Object manifest;
+    /** The {@link Uri} from which the manifest was read, after any redirection. */
+    public final Uri uri;
+    /** The response headers associated with the load. */
+    public final Map<String, List<String>> responseHeaders;
+    /** The time-to-live of the manifest in milliseconds, or {@link C#TIME_UNSET}. */
+    public final long ttlMs;
+
+    private long expiryTimeMs;
+
+    public Entry(
+        Object manifest, Uri uri, Map<String, List<String>> responseHeaders, long ttlMs) {
+      this.manifest = manifest;
+      this.uri = uri;
+      this.responseHeaders = responseHeaders;
+      this.ttlMs = ttlMs;
+    }
+  }
+
+  private final int maxEntryCount;
+  private final long defaultTtlMs;
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<Key, Entry> entries;
+
+  @GuardedBy("this")
+  private final HashMap<Key, PendingLoad> pendingLoads;
+
+  @GuardedBy("this")
+  private int loadCount;
+
+  @GuardedBy("this")
+  private int hitCount;
+
+  @GuardedBy("this")
+  private int waitingLoadCount;
+
+  /** Creates an instance with the default maximum entry count and time-to-live. */
+  public ManifestCache() {
+    this(DEFAULT_MAX_ENTRY_COUNT, DEFAULT_TTL_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxEntryCount The maximum number of manifests to hold. The least recently used
+   *     manifest is evicted when this number is exceeded.
+   * @param defaultTtlMs The time-to-live for manifests whose {@link TtlProvider} returns {@link
+   *     C#TIME_UNSET}, in milliseconds.
+   */
+  public ManifestCache(int maxEntryCount, long defaultTtlMs) {
+    this(maxEntryCount, defaultTtlMs, Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ ManifestCache(int maxEntryCount, long defaultTtlMs, Clock clock) {
+    Assertions.checkArgument(maxEntryCount > 0);
+    Assertions.checkArgument(defaultTtlMs >= 0);
+    this.maxEntryCount = maxEntryCount;
+    this.defaultTtlMs = defaultTtlMs;
+    this.clock = clock;
+    entries = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    pendingLoads = new HashMap<>();
+  }
+
+  /**
+   * Removes all manifests loaded from the given {@link Uri}. Loads that are in progress are not
+   * affected.
+   *
+   * @param uri The request {@link Uri} of the manifests to remove.
+   */
+  public synchronized void invalidate(Uri uri) {
+    Iterator<Key> iterator = entries.keySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().uri.equals(uri)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /** Removes all manifests from the cache. Loads that are in progress are not affected. */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /** Returns the number of manifests that were loaded from the network by this cache. */
+  public synchronized int getLoadCount() {
+    return loadCount;
+  }
+
+  /**
+   * Returns the number of loads that were served by the cache, either from a cached manifest or by
+   * joining a load that was already in progress.
+   */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of loads that are currently blocked waiting for a pending load. */
+  @VisibleForTesting
+  /* package */ synchronized int getWaitingLoadCount() {
+    return waitingLoadCount;
+  }
+
+  /**
+   * Returns the cached {@link Entry} for a manifest, loading it using {@code loadTask} if there's
+   * neither an unexpired entry nor a pending load of the same manifest. If a load of the same
+   * manifest is already in progress, blocks until it completes. If it fails, the manifest is loaded
+   * using {@code loadTask} instead.
+   *
+   * @param uri The request {@link Uri} of the manifest.
+   * @param parserClass The class of the parser used to parse the manifest.
+   * @param loadTask The task with which to load the manifest.
+   * @return The {@link Entry} for the manifest.
+   * @throws IOException If an error occurs loading the manifest, or if the calling thread is
+   *     interrupted while waiting for a pending load.
+   */
+  /* package */ Entry getOrLoad(Uri uri, Class<?> parserClass, LoadTask loadTask)
+      throws IOException {
+    Key key = new Key(uri, parserClass);
+    while (true) {
+      PendingLoad pendingLoad;
+      boolean isLoadingThread = false;
+      synchronized (this) {
+        @Nullable Entry entry = entries.get(key);
+        if (entry != null) {
+          if (entry.expiryTimeMs > clock.elapsedRealtime()) {
+            hitCount++;
+            return entry;
+          }
+          entries.remove(key);
+        }
+        @Nullable PendingLoad existingLoad = pendingLoads.get(key);
+        if (existingLoad == null) {
+          pendingLoad = new PendingLoad();
+          pendingLoads.put(key, pendingLoad);
+          isLoadingThread = true;
+        } else {
+          pendingLoad = existingLoad;
+          waitingLoadCount++;
+        }
+      }
+
+      if (isLoadingThread) {
+        return load(key, pendingLoad, loadTask);
+      }
+
+      try {
+        pendingLoad.conditionVariable.block();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } finally {
+        synchronized (this) {
+          waitingLoadCount--;
+        }
+      }
+      @Nullable Entry loadedEntry = pendingLoad.entry;
+      if (loadedEntry != null) {
+        synchronized (this) {
+          hitCount++;
+        }
+        return loadedEntry;
+      }
+      // The pending load failed. Try again, which will typically make this thread load the
+      // manifest itself.
+    }
+  }
+
+  private Entry load(Key key, PendingLoad pendingLoad, LoadTask loadTask) throws IOException {
+    Entry entry;
+    try {
+      entry = loadTask.load();
+    } catch (IOException | RuntimeException e) {
+      onLoadFinished(key, pendingLoad, /* entry= */ null);
+      throw e;
+    }
+    onLoadFinished(key, pendingLoad, entry);
+    return entry;
+  }
+
+  private void onLoadFinished(Key key, PendingLoad pendingLoad, @Nullable Entry entry) {
+    synchronized (this) {
+      pendingLoads.remove(key);
+      if (entry != null) {
+        loadCount++;
+        long ttlMs = entry.ttlMs == C.TIME_UNSET ? defaultTtlMs : entry.ttlMs;
+        if (ttlMs > 0) {
+          entry.expiryTimeMs = clock.elapsedRealtime() + ttlMs;
+          entries.put(key, entry);
+          evictIfNeeded();
+        }
+      }
+    }
+    // Wake up any threads waiting for the load. If it failed they will retry.
+    pendingLoad.entry = entry;
+    pendingLoad.conditionVariable.open();
+  }
+
+  @GuardedBy("this")
+  private void evictIfNeeded() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (entries.size() > maxEntryCount && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  private static final class Key {
+
+    public final Uri uri;
+    public final Class<?> parserClass;
+
+    public Key(Uri uri, Class<?> parserClass) {
+      this.uri = uri;
+      this.parserClass = parserClass;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return uri.equals(other.uri) && parserClass.equals(other.parserClass);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * uri.hashCode() + parserClass.hashCode();
+    }
+  }
+
+  private static final class PendingLoad {
+
+    public final ConditionVariable conditionVariable;
+    @Nullable public volatile Entry entry;
+
+    public PendingLoad() {
+      conditionVariable = new ConditionVariable();
+    }
+  }
+}
+
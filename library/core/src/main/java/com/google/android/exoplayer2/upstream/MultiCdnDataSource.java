@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.HttpDataSource.CleartextNotPermittedException;
+import com.google.android.exoplayer2.upstream.HttpDataSource.HttpDataSourceException;
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidContentTypeException;
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.ListenerSet;
+import com.google.common.base.Predicate;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link DataSource} that steers requests to the best of a number of CDNs serving the same
+ * content, as determined by a {@link CdnSelector}.
+ *
+ * <p>Requests whose {@link Uri} belongs to one of the CDNs of the selector are made to the CDN that
+ * the selector currently prefers. If opening the request fails because of a connection error, a
+ * timeout or a 5xx response code, the other CDNs are tried in turn. Other errors, such as 4xx
+ * response codes, would occur on any CDN and are thrown without trying another one. Requests that
+ * don't belong to any of the CDNs are forwarded unchanged.
+ *
+ * <p>If a race {@link Executor} is set, latency-critical requests can be raced across the two
+ * best CDNs. Both requests are opened in parallel, and the one that delivers its first bytes first
+ * is used. The slower request is closed as soon as it has delivered its first bytes or failed.
+ * {@link TransferListener TransferListeners} are only notified of the transfer of the winning
+ * request.
+ */
+public final class MultiCdnDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link MultiCdnDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final CdnSelector cdnSelector;
+
+    @Nullable private Executor raceExecutor;
+    private Predicate<DataSpec> racePredicate;
+
+    /**
+     * @param upstreamFactory The {@link DataSource.Factory} for the sources to which requests are
+     *     made.
+     * @param cdnSelector The {@link CdnSelector} that selects the CDN for each request. The same
+     *     selector should be shared by all sources that load the same content.
+     */
+    public Factory(DataSource.Factory upstreamFactory, CdnSelector cdnSelector) {
+      this.upstreamFactory = upstreamFactory;
+      this.cdnSelector = cdnSelector;
+      racePredicate = MultiCdnDataSource::isLiveEdgeRequest;
+    }
+
+    /**
+     * Sets the {@link Executor} on which requests are opened when racing a request across two
+     * CDNs. The default value is {@code null}, meaning that requests are never raced.
+     *
+     * <p>The executor must be able to run at least two tasks in parallel.
+     *
+     * @param raceExecutor The {@link Executor}, or {@code null} to disable racing.
+     * @return This factory, for convenience.
+     */
+    public Factory setRaceExecutor(@Nullable Executor raceExecutor) {
+      this.raceExecutor = raceExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Predicate} that determines whether a request is latency-critical, and is
+     * therefore raced across two CDNs if a {@link #setRaceExecutor race executor} is set. The
+     * default predicate accepts requests with {@link
+     * DataSpec#FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED} set, which are requests for segments at the
+     * live edge.
+     *
+     * @param racePredicate The {@link Predicate}.
+     * @return This factory, for convenience.
+     */
+    public Factory setRacePredicate(Predicate<DataSpec> racePredicate) {
+      this.racePredicate = racePredicate;
+      return this;
+    }
+
+    @Override
+    public MultiCdnDataSource createDataSource() {
+      return new MultiCdnDataSource(
+          upstreamFactory, cdnSelector, raceExecutor, racePredicate, Clock.DEFAULT);
+    }
+  }
+
+  /** The maximum number of bytes read by each request of a race before a winner is chosen. */
+  private static final int RACE_READ_LENGTH = 4096;
+
+  private final DataSource.Factory upstreamFactory;
+  private final CdnSelector cdnSelector;
+  @Nullable private final Executor raceExecutor;
+  private final Predicate<DataSpec> racePredicate;
+  private final Clock clock;
+  private final List<TransferListener> transferListeners;
+
+  @Nullable private DataSource upstreamDataSource;
+  @Nullable private DataSource currentDataSource;
+  private int currentCdnIndex;
+  private long openStartTimeMs;
+  private long bytesRead;
+  private boolean transferFailed;
+  @Nullable private byte[] raceBuffer;
+  private int raceBufferPosition;
+  private int raceBufferLimit;
+
+  @VisibleForTesting
+  /* package */ MultiCdnDataSource(
+      DataSource.Factory upstreamFactory,
+      CdnSelector cdnSelector,
+      @Nullable Executor raceExecutor,
+      Predicate<DataSpec> racePredicate,
+      Clock clock) {
+    this.upstreamFactory = upstreamFactory;
+    this.cdnSelector = cdnSelector;
+    this.raceExecutor = raceExecutor;
+    this.racePredicate = racePredicate;
+    this.clock = clock;
+    transferListeners = new ArrayList<>();
+    currentCdnIndex = C.INDEX_UNSET;
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    transferListeners.add(transferListener);
+    if (upstreamDataSource != null) {
+      upstreamDataSource.addTransferListener(transferListener);
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    int requestCdnIndex = cdnSelector.getCdnIndex(dataSpec.uri);
+    if (requestCdnIndex == C.INDEX_UNSET) {
+      // The request isn't served by any of the CDNs.
+      currentDataSource = getUpstreamDataSource();
+      return currentDataSource.open(dataSpec);
+    }
+
+    int[] cdnOrder = cdnSelector.getCdnOrder();
+    if (raceExecutor != null && cdnOrder.length > 1 && racePredicate.apply(dataSpec)) {
+      return openRace(dataSpec, requestCdnIndex, cdnOrder[0], cdnOrder[1], raceExecutor);
+    }
+
+    @Nullable IOException lastError = null;
+    for (int cdnIndex : cdnOrder) {
+      DataSource dataSource = getUpstreamDataSource();
+      long startTimeMs = clock.elapsedRealtime();
+      cdnSelector.onRequestStarted(cdnIndex);
+      try {
+        long length = dataSource.open(getCdnDataSpec(dataSpec, requestCdnIndex, cdnIndex));
+        onOpened(dataSource, cdnIndex, startTimeMs);
+        return length;
+      } catch (IOException e) {
+        closeQuietly(dataSource);
+        if (!isCdnError(e)) {
+          // The request would fail on the other CDNs as well.
+          throw e;
+        }
+        // Try the next CDN.
+        cdnSelector.onError(cdnIndex);
+        lastError = e;
+      }
+    }
+    throw checkNotNull(lastError);
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    int bytesRead;
+    if (raceBuffer != null && raceBufferPosition < raceBufferLimit) {
+      bytesRead = min(readLength, raceBufferLimit - raceBufferPosition);
+      System.arraycopy(raceBuffer, raceBufferPosition, buffer, offset, bytesRead);
+      raceBufferPosition += bytesRead;
+    } else {
+      try {
+        bytesRead = checkNotNull(currentDataSource).read(buffer, offset, readLength);
+      } catch (IOException e) {
+        if (currentCdnIndex != C.INDEX_UNSET && isCdnError(e)) {
+          transferFailed = true;
+          cdnSelector.onError(currentCdnIndex);
+        }
+        throw e;
+      }
+    }
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      this.bytesRead += bytesRead;
+    }
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return currentDataSource == null ? null : currentDataSource.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return currentDataSource == null
+        ? Collections.emptyMap()
+        : currentDataSource.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (currentDataSource == null) {
+      return;
+    }
+    if (currentCdnIndex != C.INDEX_UNSET && !transferFailed) {
+      cdnSelector.onTransferCompleted(
+          currentCdnIndex, bytesRead, max(1, clock.elapsedRealtime() - openStartTimeMs));
+    }
+    try {
+      currentDataSource.close();
+    } finally {
+      currentDataSource = null;
+      currentCdnIndex = C.INDEX_UNSET;
+      raceBuffer = null;
+    }
+  }
+
+  private long openRace(
+      DataSpec dataSpec,
+      int requestCdnIndex,
+      int firstCdnIndex,
+      int secondCdnIndex,
+      Executor raceExecutor)
+      throws IOException {
+    Race race = new Race();
+    long startTimeMs = clock.elapsedRealtime();
+    RaceAttempt firstAttempt =
+        new RaceAttempt(
+            race,
+            upstreamFactory.createDataSource(),
+            getCdnDataSpec(dataSpec, requestCdnIndex, firstCdnIndex),
+            firstCdnIndex,
+            new RaceTransferListener(transferListeners));
+    RaceAttempt secondAttempt =
+        new RaceAttempt(
+            race,
+            upstreamFactory.createDataSource(),
+            getCdnDataSpec(dataSpec, requestCdnIndex, secondCdnIndex),
+            secondCdnIndex,
+            new RaceTransferListener(transferListeners));
+    cdnSelector.onRequestStarted(firstCdnIndex);
+    cdnSelector.onRequestStarted(secondCdnIndex);
+    raceExecutor.execute(firstAttempt);
+    raceExecutor.execute(secondAttempt);
+
+    @Nullable RaceAttempt winner;
+    try {
+      winner = race.awaitWinner();
+    } catch (InterruptedException e) {
+      race.abandon();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (winner == null) {
+      throw checkNotNull(race.getError());
+    }
+
+    int loserCdnIndex = winner == firstAttempt ? secondCdnIndex : firstCdnIndex;
+    cdnSelector.onRaceCompleted(winner.cdnIndex, loserCdnIndex);
+    onOpened(winner.dataSource, winner.cdnIndex, startTimeMs);
+    raceBuffer = winner.buffer;
+    raceBufferPosition = 0;
+    raceBufferLimit = winner.bufferLength;
+    return winner.length;
+  }
+
+  private void onOpened(DataSource dataSource, int cdnIndex, long startTimeMs) {
+    currentDataSource = dataSource;
+    currentCdnIndex = cdnIndex;
+    openStartTimeMs = startTimeMs;
+    bytesRead = 0;
+    transferFailed = false;
+  }
+
+  private DataSpec getCdnDataSpec(DataSpec dataSpec, int requestCdnIndex, int cdnIndex) {
+    return dataSpec.withUri(cdnSelector.getCdnUri(dataSpec.uri, requestCdnIndex, cdnIndex));
+  }
+
+  private DataSource getUpstreamDataSource() {
+    if (upstreamDataSource == null) {
+      upstreamDataSource = createUpstreamDataSource();
+    }
+    return upstreamDataSource;
+  }
+
+  private DataSource createUpstreamDataSource() {
+    DataSource dataSource = upstreamFactory.createDataSource();
+    for (int i = 0; i < transferListeners.size(); i++) {
+      dataSource.addTransferListener(transferListeners.get(i));
+    }
+    return dataSource;
+  }
+
+  /**
+   * Returns whether an error is caused by a CDN or the connection to it, meaning that the request
+   * may succeed on another CDN. These are 5xx response codes, and errors opening or reading a
+   * request for which no response was received.
+   */
+  private static boolean isCdnError(IOException e) {
+    if (e instanceof InvalidResponseCodeException) {
+      return ((InvalidResponseCodeException) e).responseCode >= 500;
+    }
+    if (!(e instanceof HttpDataSourceException)
+        || e instanceof InvalidContentTypeException
+        || e instanceof CleartextNotPermittedException
+        || e.getCause() instanceof InterruptedIOException) {
+      return false;
+    }
+    int type = ((HttpDataSourceException) e).type;
+    return type == HttpDataSourceException.TYPE_OPEN || type == HttpDataSourceException.TYPE_READ;
+  }
+
+  private static boolean isLiveEdgeRequest(@Nullable DataSpec dataSpec) {
+    return dataSpec != null
+        && dataSpec.isFlagSet(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED);
+  }
+
+  private static void closeQuietly(DataSource dataSource) {
+    try {
+      dataSource.close();
+    } catch (IOException e) {
+      // Ignore.
+    }
+  }
+
+  /** Coordinates the requests of a race. */
+  private static final class Race {
+
+    @GuardedBy("this")
+    @Nullable
+    private RaceAttempt winner;
+
+    @GuardedBy("this")
+    @Nullable
+    private IOException error;
+
+    @GuardedBy("this")
+    private int failedAttemptCount;
+
+    @GuardedBy("this")
+    private boolean abandoned;
+
+    /**
+     * Blocks until one of the two requests of the race succeeded, or until both failed.
+     *
+     * @return The winning {@link RaceAttempt}, or {@code null} if both requests failed.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    @Nullable
+    public synchronized RaceAttempt awaitWinner() throws InterruptedException {
+      while (winner == null && failedAttemptCount < 2) {
+        wait();
+      }
+      return winner;
+    }
+
+    /** Returns the first error that occurred, or {@code null} if neither request failed. */
+    @Nullable
+    public synchronized IOException getError() {
+      return error;
+    }
+
+    /** Abandons the race, closing the winning request if there is one. */
+    public void abandon() {
+      @Nullable RaceAttempt winner;
+      synchronized (this) {
+        abandoned = true;
+        winner = this.winner;
+      }
+      if (winner != null) {
+        closeQuietly(winner.dataSource);
+      }
+    }
+
+    /**
+     * Called when a request delivered its first bytes. If the request won the race, its transfer
+     * events are forwarded before the winner is handed over.
+     *
+     * @return Whether the request won the race. If not, the caller must close the request.
+     */
+    public synchronized boolean onAttemptSucceeded(RaceAttempt attempt) {
+      if (winner != null || abandoned) {
+        return false;
+      }
+      winner = attempt;
+      attempt.transferListener.forwardEvents();
+      notifyAll();
+      return true;
+    }
+
+    /** Called when a request failed. */
+    public synchronized void onAttemptFailed(IOException error) {
+      if (this.error == null) {
+        this.error = error;
+      }
+      failedAttemptCount++;
+      notifyAll();
+    }
+  }
+
+  /** One of the two requests of a race. */
+  private final class RaceAttempt implements Runnable {
+
+    public final Race race;
+    public final DataSource dataSource;
+    public final DataSpec dataSpec;
+    public final int cdnIndex;
+    public final byte[] buffer;
+    public final RaceTransferListener transferListener;
+
+    public long length;
+    public int bufferLength;
+
+    public RaceAttempt(
+        Race race,
+        DataSource dataSource,
+        DataSpec dataSpec,
+        int cdnIndex,
+        RaceTransferListener transferListener) {
+      this.race = race;
+      this.dataSource = dataSource;
+      this.dataSpec = dataSpec;
+      this.cdnIndex = cdnIndex;
+      this.transferListener = transferListener;
+      buffer = new byte[RACE_READ_LENGTH];
+      dataSource.addTransferListener(transferListener);
+    }
+
+    @Override
+    public void run() {
+      try {
+        length = dataSource.open(dataSpec);
+        int bytesRead = dataSource.read(buffer, /* offset= */ 0, RACE_READ_LENGTH);
+        bufferLength = bytesRead == C.RESULT_END_OF_INPUT ? 0 : bytesRead;
+      } catch (IOException | RuntimeException e) {
+        IOException error = e instanceof IOException ? (IOException) e : new IOException(e);
+        if (isCdnError(error)) {
+          cdnSelector.onError(cdnIndex);
+        }
+        transferListener.discardEvents();
+        closeQuietly(dataSource);
+        race.onAttemptFailed(error);
+        return;
+      }
+      if (!race.onAttemptSucceeded(this)) {
+        // The other request was faster.
+        transferListener.discardEvents();
+        closeQuietly(dataSource);
+      }
+    }
+  }
+
+  /**
+   * Holds back the transfer events of a race request until the race is decided, so that {@link
+   * TransferListener TransferListeners} only see the transfer of the winning request.
+   */
+  private static final class RaceTransferListener implements TransferListener {
+
+    private final List<TransferListener> transferListeners;
+
+    @GuardedBy("this")
+    private final List<ListenerSet.Event<TransferListener>> pendingEvents;
+
+    @GuardedBy("this")
+    private boolean forwarding;
+
+    @GuardedBy("this")
+    private boolean discarding;
+
+    public RaceTransferListener(List<TransferListener> transferListeners) {
+      this.transferListeners = new ArrayList<>(transferListeners);
+      pendingEvents = new ArrayList<>();
+    }
+
+    /** Forwards the pending events and all following events to the transfer listeners. */
+    public synchronized void forwardEvents() {
+      forwarding = true;
+      for (int i = 0; i < pendingEvents.size(); i++) {
+        dispatch(pendingEvents.get(i));
+      }
+      pendingEvents.clear();
+    }
+
+    /** Discards the pending events and all following events. */
+    public synchronized void discardEvents() {
+      discarding = true;
+      pendingEvents.clear();
+    }
+
+    @Override
+    public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      onEvent(listener -> listener.onTransferInitializing(source, dataSpec, isNetwork));
+    }
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      onEvent(listener -> listener.onTransferStart(source, dataSpec, isNetwork));
+    }
+
+    @Override
+    public void onBytesTransferred(
+        DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+      onEvent(
+          listener -> listener.onBytesTransferred(source, dataSpec, isNetwork, bytesTransferred));
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      onEvent(listener -> listener.onTransferEnd(source, dataSpec, isNetwork));
+    }
+
+    private synchronized void onEvent(ListenerSet.Event<TransferListener> event) {
+      if (discarding) {
+        return;
+      }
+      if (forwarding) {
+        dispatch(event);
+      } else {
+        pendingEvents.add(event);
+      }
+    }
+
+    private void dispatch(ListenerSet.Event<TransferListener> event) {
+      for (int i = 0; i < transferListeners.size(); i++) {
+        event.invoke(transferListeners.get(i));
+      }
+    }
+  }
+}
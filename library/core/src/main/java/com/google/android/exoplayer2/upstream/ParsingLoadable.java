@@ -100,8 +100,11 @@ public final class ParsingLoadable<T> implements Loadable {
 
   private final StatsDataSource dataSource;
   private final Parser<? extends T> parser;
+  @Nullable private final ManifestCache manifestCache;
+  @Nullable private final ManifestCache.TtlProvider<? super T> ttlProvider;
 
   private volatile @Nullable T result;
+  @Nullable private volatile ManifestCache.Entry manifestCacheEntry;
 
   /**
    * @param dataSource A {@link DataSource} to use when loading the data.
@@ -125,10 +128,65 @@ public final class ParsingLoadable<T> implements Loadable {
    */
   public ParsingLoadable(DataSource dataSource, DataSpec dataSpec, int type,
       Parser<? extends T> parser) {
+    this(dataSource, dataSpec, type, parser, /* manifestCache= */ null, /* ttlProvider= */ null);
+  }
+
+  /**
+   * Creates an instance that loads through a {@link ManifestCache}.
+   *
+   * @param dataSource A {@link DataSource} to use when loading the data.
+   * @param uri The {@link Uri} from which the object should be loaded.
+   * @param type See {@link #type}.
+   * @param parser Parses the object from the response.
+   * @param manifestCache The {@link ManifestCache} from which the object should be obtained, or
+   *     {@code null} if the object should always be loaded from the {@link DataSource}.
+   * @param ttlProvider The {@link ManifestCache.TtlProvider} that determines for how long a loaded
+   *     object is served from the {@code manifestCache}. Must be non-null if {@code manifestCache}
+   *     is non-null.
+   */
+  public ParsingLoadable(
+      DataSource dataSource,
+      Uri uri,
+      int type,
+      Parser<? extends T> parser,
+      @Nullable ManifestCache manifestCache,
+      @Nullable ManifestCache.TtlProvider<? super T> ttlProvider) {
+    this(
+        dataSource,
+        new DataSpec.Builder().setUri(uri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build(),
+        type,
+        parser,
+        manifestCache,
+        ttlProvider);
+  }
+
+  /**
+   * Creates an instance that loads through a {@link ManifestCache}.
+   *
+   * @param dataSource A {@link DataSource} to use when loading the data.
+   * @param dataSpec The {@link DataSpec} from which the object should be loaded.
+   * @param type See {@link #type}.
+   * @param parser Parses the object from the response.
+   * @param manifestCache The {@link ManifestCache} from which the object should be obtained, or
+   *     {@code null} if the object should always be loaded from the {@link DataSource}.
+   * @param ttlProvider The {@link ManifestCache.TtlProvider} that determines for how long a loaded
+   *     object is served from the {@code manifestCache}. Must be non-null if {@code manifestCache}
+   *     is non-null.
+   */
+  public ParsingLoadable(
+      DataSource dataSource,
+      DataSpec dataSpec,
+      int type,
+      Parser<? extends T> parser,
+      @Nullable ManifestCache manifestCache,
+      @Nullable ManifestCache.TtlProvider<? super T> ttlProvider) {
+    Assertions.checkArgument(manifestCache == null || ttlProvider != null);
     this.dataSource = new StatsDataSource(dataSource);
     this.dataSpec = dataSpec;
     this.type = type;
     this.parser = parser;
+    this.manifestCache = manifestCache;
+    this.ttlProvider = ttlProvider;
     loadTaskId = LoadEventInfo.getNewId();
   }
 
@@ -152,7 +210,8 @@ public final class ParsingLoadable<T> implements Loadable {
    * redirected uri. Must only be called after the load completed, failed, or was canceled.
    */
   public Uri getUri() {
-    return dataSource.getLastOpenedUri();
+    @Nullable ManifestCache.Entry manifestCacheEntry = this.manifestCacheEntry;
+    return manifestCacheEntry != null ? manifestCacheEntry.uri : dataSource.getLastOpenedUri();
   }
 
   /**
@@ -160,7 +219,10 @@ public final class ParsingLoadable<T> implements Loadable {
    * completed, failed, or was canceled.
    */
   public Map<String, List<String>> getResponseHeaders() {
-    return dataSource.getLastResponseHeaders();
+    @Nullable ManifestCache.Entry manifestCacheEntry = this.manifestCacheEntry;
+    return manifestCacheEntry != null
+        ? manifestCacheEntry.responseHeaders
+        : dataSource.getLastResponseHeaders();
   }
 
   @Override
@@ -172,11 +234,33 @@ public final class ParsingLoadable<T> implements Loadable {
   public final void load() throws IOException {
     // We always load from the beginning, so reset bytesRead to 0.
     dataSource.resetBytesRead();
+    if (manifestCache == null) {
+      result = loadFromDataSource();
+      return;
+    }
+    ManifestCache.Entry entry =
+        manifestCache.getOrLoad(dataSpec.uri, parser.getClass(), this::loadManifestCacheEntry);
+    manifestCacheEntry = entry;
+    @SuppressWarnings("unchecked") // Entries are keyed by parser class.
+    T manifest = (T) entry.manifest;
+    result = manifest;
+  }
+
+  private ManifestCache.Entry loadManifestCacheEntry() throws IOException {
+    T manifest = loadFromDataSource();
+    return new ManifestCache.Entry(
+        manifest,
+        dataSource.getLastOpenedUri(),
+        dataSource.getLastResponseHeaders(),
+        Assertions.checkNotNull(ttlProvider).getTtlMs(manifest));
+  }
+
+  private T loadFromDataSource() throws IOException {
     DataSourceInputStream inputStream = new DataSourceInputStream(dataSource, dataSpec);
     try {
       inputStream.open();
       Uri dataSourceUri = Assertions.checkNotNull(dataSource.getUri());
-      result = parser.parse(dataSourceUri, inputStream);
+      return parser.parse(dataSourceUri, inputStream);
     } finally {
       Util.closeQuietly(inputStream);
     }
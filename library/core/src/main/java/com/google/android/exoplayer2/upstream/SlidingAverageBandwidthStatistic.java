@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A {@link BandwidthStatistic} computing the average bitrate over a sliding window of the most
+ * recent samples, which is the total number of bytes of the samples divided by their total
+ * duration.
+ */
+public final class SlidingAverageBandwidthStatistic implements BandwidthStatistic {
+
+  /** The default maximum number of samples in the sliding window. */
+  public static final int DEFAULT_MAX_SAMPLE_COUNT = 10;
+
+  private final long[] sampleBytes;
+  private final long[] sampleElapsedMs;
+
+  private int sampleCount;
+  private int nextSampleIndex;
+  private long totalBytes;
+  private long totalElapsedMs;
+
+  /** Creates a statistic with a window of {@link #DEFAULT_MAX_SAMPLE_COUNT} samples. */
+  public SlidingAverageBandwidthStatistic() {
+    this(DEFAULT_MAX_SAMPLE_COUNT);
+  }
+
+  /**
+   * Creates a statistic.
+   *
+   * @param maxSampleCount The maximum number of samples in the sliding window.
+   */
+  public SlidingAverageBandwidthStatistic(int maxSampleCount) {
+    Assertions.checkArgument(maxSampleCount > 0);
+    sampleBytes = new long[maxSampleCount];
+    sampleElapsedMs = new long[maxSampleCount];
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    if (sampleCount == sampleBytes.length) {
+      totalBytes -= sampleBytes[nextSampleIndex];
+      totalElapsedMs -= sampleElapsedMs[nextSampleIndex];
+    } else {
+      sampleCount++;
+    }
+    sampleBytes[nextSampleIndex] = bytes;
+    sampleElapsedMs[nextSampleIndex] = elapsedMs;
+    totalBytes += bytes;
+    totalElapsedMs += elapsedMs;
+    nextSampleIndex = (nextSampleIndex + 1) % sampleBytes.length;
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    return sampleCount == 0 ? ESTIMATE_NOT_AVAILABLE : totalBytes * 8000 / totalElapsedMs;
+  }
+
+  @Override
+  public void reset() {
+    sampleCount = 0;
+    nextSampleIndex = 0;
+    totalBytes = 0;
+    totalElapsedMs = 0;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.SlidingPercentile;
+
+/**
+ * A {@link BandwidthStatistic} computing a percentile of the sample bitrates over a {@link
+ * SlidingPercentile} window, in which each sample is weighted by the square root of its number of
+ * bytes. This is the default statistic of {@link DefaultBandwidthMeter}.
+ */
+public final class SlidingPercentileBandwidthStatistic implements BandwidthStatistic {
+
+  /** The default percentile, which is the median. */
+  public static final float DEFAULT_PERCENTILE = 0.5f;
+
+  private final SlidingPercentile slidingPercentile;
+  private final float percentile;
+
+  private boolean hasSamples;
+
+  /**
+   * Creates a statistic computing the median.
+   *
+   * @param maxWeight The maximum weight of the sliding window.
+   */
+  public SlidingPercentileBandwidthStatistic(int maxWeight) {
+    this(maxWeight, DEFAULT_PERCENTILE);
+  }
+
+  /**
+   * Creates a statistic.
+   *
+   * @param maxWeight The maximum weight of the sliding window.
+   * @param percentile The percentile to compute, between 0 and 1.
+   */
+  public SlidingPercentileBandwidthStatistic(int maxWeight, float percentile) {
+    Assertions.checkArgument(percentile >= 0 && percentile <= 1);
+    slidingPercentile = new SlidingPercentile(maxWeight);
+    this.percentile = percentile;
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    float bitsPerSecond = (bytes * 8000f) / elapsedMs;
+    slidingPercentile.addSample((int) Math.sqrt(bytes), bitsPerSecond);
+    hasSamples = true;
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    return hasSamples ? (long) slidingPercentile.getPercentile(percentile) : ESTIMATE_NOT_AVAILABLE;
+  }
+
+  @Override
+  public void reset() {
+    slidingPercentile.reset();
+    hasSamples = false;
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Downloads data into a {@link Cache} in the background, so that it can later be read from disk
+ * rather than from the network.
+ *
+ * <p>This is used to look further ahead than the in-memory buffer allows when playing on-demand
+ * content. Chunk sources enqueue requests for segments that lie within the {@link
+ * #getPrefetchWindowUs() prefetch window} beyond the current load position, and these are written
+ * to the cache one at a time using a {@link CacheWriter}. For subsequent loads to be served from
+ * disk, media must be loaded through a {@link CacheDataSource} that uses the same {@link Cache}.
+ *
+ * <p>To avoid competing with loads required for playback, the prefetcher pauses between requests
+ * so that it's only transferring data for a {@link #getMaxBandwidthFraction() fraction} of the
+ * time.
+ *
+ * <p>Enqueuing a request doesn't access the cache, so it's cheap enough to do on the playback
+ * thread. Whether a request's data is already cached is checked on the prefetcher's own thread
+ * when the request is processed, because {@link Cache} lookups may block while another thread
+ * holds the cache's lock.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class CachePrefetcher {
+
+  /** The default duration of media beyond the load position that's prefetched. */
+  public static final long DEFAULT_PREFETCH_WINDOW_US = 120 * C.MICROS_PER_SECOND;
+  /** The default fraction of the time during which the prefetcher transfers data. */
+  public static final float DEFAULT_MAX_BANDWIDTH_FRACTION = 0.5f;
+  /** The default maximum number of requests waiting to be prefetched. */
+  public static final int DEFAULT_MAX_PENDING_REQUEST_COUNT = 64;
+
+  private static final String TAG = "CachePrefetcher";
+
+  private final CacheDataSource.Factory cacheDataSourceFactory;
+  private final long prefetchWindowUs;
+  private final float maxBandwidthFraction;
+  private final int maxPendingRequestCount;
+  private final ExecutorService executorService;
+  private final ConditionVariable releasedCondition;
+
+  @GuardedBy("this")
+  private final ArrayDeque<DataSpec> pendingRequests;
+
+  @GuardedBy("this")
+  private final HashSet<String> pendingRequestKeys;
+
+  @GuardedBy("this")
+  @Nullable
+  private CacheWriter activeCacheWriter;
+
+  @GuardedBy("this")
+  private boolean prefetching;
+
+  @GuardedBy("this")
+  private boolean released;
+
+  @GuardedBy("this")
+  private int prefetchedRequestCount;
+
+  @GuardedBy("this")
+  private long prefetchedBytes;
+
+  /**
+   * Creates an instance with the default prefetch window, bandwidth fraction and maximum number of
+   * pending requests.
+   *
+   * @param cacheDataSourceFactory The {@link CacheDataSource.Factory} for the sources with which
+   *     data is written into the cache.
+   */
+  public CachePrefetcher(CacheDataSource.Factory cacheDataSourceFactory) {
+    this(
+        cacheDataSourceFactory,
+        DEFAULT_PREFETCH_WINDOW_US,
+        DEFAULT_MAX_BANDWIDTH_FRACTION,
+        DEFAULT_MAX_PENDING_REQUEST_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param cacheDataSourceFactory The {@link CacheDataSource.Factory} for the sources with which
+   *     data is written into the cache.
+   * @param prefetchWindowUs The duration of media beyond the load position that's prefetched, in
+   *     microseconds.
+   * @param maxBandwidthFraction The fraction of the time during which the prefetcher transfers
+   *     data, in the range (0, 1].
+   * @param maxPendingRequestCount The maximum number of requests waiting to be prefetched. Further
+   *     requests are ignored until earlier ones have been prefetched.
+   */
+  public CachePrefetcher(
+      CacheDataSource.Factory cacheDataSourceFactory,
+      long prefetchWindowUs,
+      float maxBandwidthFraction,
+      int maxPendingRequestCount) {
+    this(
+        cacheDataSourceFactory,
+        prefetchWindowUs,
+        maxBandwidthFraction,
+        maxPendingRequestCount,
+        Util.newSingleThreadExecutor("ExoPlayer:CachePrefetcher"));
+  }
+
+  @VisibleForTesting
+  /* package */ CachePrefetcher(
+      CacheDataSource.Factory cacheDataSourceFactory,
+      long prefetchWindowUs,
+      float maxBandwidthFraction,
+      int maxPendingRequestCount,
+      ExecutorService executorService) {
+    Assertions.checkArgument(maxBandwidthFraction > 0 && maxBandwidthFraction <= 1);
+    Assertions.checkArgument(maxPendingRequestCount > 0);
+    this.cacheDataSourceFactory = cacheDataSourceFactory;
+    this.prefetchWindowUs = prefetchWindowUs;
+    this.maxBandwidthFraction = maxBandwidthFraction;
+    this.maxPendingRequestCount = maxPendingRequestCount;
+    this.executorService = executorService;
+    releasedCondition = new ConditionVariable();
+    pendingRequests = new ArrayDeque<>();
+    pendingRequestKeys = new HashSet<>();
+  }
+
+  /** Returns the duration of media beyond the load position that's prefetched, in microseconds. */
+  public long getPrefetchWindowUs() {
+    return prefetchWindowUs;
+  }
+
+  /** Returns the fraction of the time during which the prefetcher transfers data. */
+  public float getMaxBandwidthFraction() {
+    return maxBandwidthFraction;
+  }
+
+  /**
+   * Enqueues a request to be written into the cache. The request is ignored if it's already
+   * pending, or if the maximum number of pending requests has been reached. A request whose data is
+   * fully cached is skipped when it's processed.
+   *
+   * @param dataSpec Defines the data to be prefetched.
+   * @return Whether the request was enqueued.
+   */
+  public boolean prefetch(DataSpec dataSpec) {
+    String key = getRequestKey(dataSpec);
+    synchronized (this) {
+      if (released
+          || pendingRequests.size() >= maxPendingRequestCount
+          || pendingRequestKeys.contains(key)
+          || cacheDataSourceFactory.getCache() == null) {
+        return false;
+      }
+      pendingRequests.add(dataSpec);
+      pendingRequestKeys.add(key);
+      if (!prefetching) {
+        prefetching = true;
+        executorService.execute(this::prefetchPendingRequests);
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether the maximum number of pending requests has been reached. */
+  public synchronized boolean isFull() {
+    return pendingRequests.size() >= maxPendingRequestCount;
+  }
+
+  /** Removes all pending requests. A request that's being prefetched is completed. */
+  public synchronized void clear() {
+    pendingRequests.clear();
+    pendingRequestKeys.clear();
+  }
+
+  /** Returns the number of requests that were written into the cache. */
+  public synchronized int getPrefetchedRequestCount() {
+    return prefetchedRequestCount;
+  }
+
+  /** Returns the number of bytes that were written into the cache. */
+  public synchronized long getPrefetchedBytes() {
+    return prefetchedBytes;
+  }
+
+  /**
+   * Releases the prefetcher. Pending requests are removed and the request that's being prefetched
+   * is canceled. Must be called when the prefetcher is no longer required.
+   */
+  public void release() {
+    synchronized (this) {
+      released = true;
+      clear();
+      if (activeCacheWriter != null) {
+        activeCacheWriter.cancel();
+      }
+    }
+    releasedCondition.open();
+    executorService.shutdown();
+  }
+
+  private void prefetchPendingRequests() {
+    CacheDataSource dataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+    Cache cache = Assertions.checkNotNull(dataSource.getCache());
+    while (true) {
+      DataSpec dataSpec;
+      synchronized (this) {
+        @Nullable DataSpec nextDataSpec = pendingRequests.peek();
+        if (nextDataSpec == null || released) {
+          prefetching = false;
+          return;
+        }
+        dataSpec = nextDataSpec;
+      }
+      // Look up the cache without holding this prefetcher's lock, so that the playback thread
+      // isn't blocked from enqueuing requests while the cache is busy.
+      if (isFullyCached(cache, dataSpec)) {
+        synchronized (this) {
+          if (removePendingRequest(dataSpec)) {
+            pendingRequestKeys.remove(getRequestKey(dataSpec));
+          }
+        }
+        continue;
+      }
+
+      CacheWriter cacheWriter;
+      synchronized (this) {
+        if (released || !removePendingRequest(dataSpec)) {
+          continue;
+        }
+        cacheWriter =
+            new CacheWriter(
+                dataSource,
+                dataSpec,
+                /* allowShortContent= */ true,
+                /* temporaryBuffer= */ null,
+                (requestLength, bytesCached, newBytesCached) -> onBytesCached(newBytesCached));
+        activeCacheWriter = cacheWriter;
+      }
+
+      long startTimeMs = SystemClock.elapsedRealtime();
+      boolean cached = false;
+      try {
+        cacheWriter.cache();
+        cached = true;
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to prefetch " + dataSpec.uri, e);
+      }
+      long elapsedMs = SystemClock.elapsedRealtime() - startTimeMs;
+
+      synchronized (this) {
+        activeCacheWriter = null;
+        pendingRequestKeys.remove(getRequestKey(dataSpec));
+        if (cached) {
+          prefetchedRequestCount++;
+        }
+      }
+
+      // Pause so that data is only being transferred for maxBandwidthFraction of the time.
+      long pauseMs = (long) (elapsedMs * (1 - maxBandwidthFraction) / maxBandwidthFraction);
+      if (pauseMs > 0) {
+        try {
+          releasedCondition.block(pauseMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          synchronized (this) {
+            prefetching = false;
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes {@code dataSpec} from the head of the pending requests if it's still there, which isn't
+   * the case if the prefetcher was cleared while the cache was being looked up.
+   */
+  @GuardedBy("this")
+  private boolean removePendingRequest(DataSpec dataSpec) {
+    if (pendingRequests.peek() != dataSpec) {
+      return false;
+    }
+    pendingRequests.remove();
+    return true;
+  }
+
+  private synchronized void onBytesCached(long newBytesCached) {
+    prefetchedBytes += newBytesCached;
+  }
+
+  private boolean isFullyCached(Cache cache, DataSpec dataSpec) {
+    String cacheKey = buildCacheKey(dataSpec);
+    long length = dataSpec.length;
+    if (length == C.LENGTH_UNSET) {
+      long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+      if (contentLength == C.LENGTH_UNSET) {
+        return false;
+      }
+      length = contentLength - dataSpec.position;
+    }
+    return cache.isCached(cacheKey, dataSpec.position, length);
+  }
+
+  private String buildCacheKey(DataSpec dataSpec) {
+    return cacheDataSourceFactory.getCacheKeyFactory().buildCacheKey(dataSpec);
+  }
+
+  private String getRequestKey(DataSpec dataSpec) {
+    return buildCacheKey(dataSpec) + "@" + dataSpec.position + "+" + dataSpec.length;
+  }
+}
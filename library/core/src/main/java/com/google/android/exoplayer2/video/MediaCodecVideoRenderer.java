@@ -18,6 +18,8 @@ package com.google.android.exoplayer2.video;
 import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.DISCARD_REASON_MAX_INPUT_SIZE_EXCEEDED;
 import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.DISCARD_REASON_VIDEO_MAX_RESOLUTION_EXCEEDED;
 import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.REUSE_RESULT_NO;
+import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.REUSE_RESULT_YES_WITHOUT_RECONFIGURATION;
+import static com.google.android.exoplayer2.decoder.DecoderReuseEvaluation.REUSE_RESULT_YES_WITH_FLUSH;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
@@ -54,6 +56,7 @@ import com.google.android.exoplayer2.drm.DrmInitData;
 import com.google.android.exoplayer2.mediacodec.MediaCodecAdapter;
 import com.google.android.exoplayer2.mediacodec.MediaCodecDecoderException;
 import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecPool;
 import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer;
 import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
@@ -644,6 +647,65 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         discardReasons);
   }
 
+  @Override
+  protected boolean canReturnCodecToPool() {
+    // Pooled codecs output to a placeholder surface, so that the surface can be used by other
+    // codecs, which requires switching the output surface.
+    return shouldUseDummySurface(Assertions.checkNotNull(getCodecInfo()));
+  }
+
+  @Override
+  @TargetApi(23) // Codecs are only returned to the pool if Util.SDK_INT >= 23
+  protected Surface detachCodecOutputSurface(MediaCodecAdapter codec) {
+    DummySurface placeholderSurface =
+        DummySurface.newInstanceV17(context, Assertions.checkNotNull(getCodecInfo()).secure);
+    try {
+      setOutputSurfaceV23(codec, placeholderSurface);
+    } catch (RuntimeException e) {
+      placeholderSurface.release();
+      throw e;
+    }
+    return placeholderSurface;
+  }
+
+  @Override
+  protected Object getPooledCodecRendererState() {
+    return codecMaxValues;
+  }
+
+  @Override
+  protected boolean canAdoptPooledCodec(MediaCodecPool.PooledCodec pooledCodec, Format format) {
+    MediaCodecInfo codecInfo = pooledCodec.codecInfo;
+    if (Util.SDK_INT < 23
+        || pooledCodec.placeholderSurface == null
+        || (surface == null && !shouldUseDummySurface(codecInfo))
+        || tunneling) {
+      return false;
+    }
+    CodecMaxValues pooledCodecMaxValues =
+        (CodecMaxValues) Assertions.checkNotNull(pooledCodec.rendererState);
+    @DecoderReuseEvaluation.DecoderReuseResult
+    int result = codecInfo.canReuseCodec(pooledCodec.format, format).result;
+    return (result == REUSE_RESULT_YES_WITH_FLUSH
+            || result == REUSE_RESULT_YES_WITHOUT_RECONFIGURATION)
+        && format.width <= pooledCodecMaxValues.width
+        && format.height <= pooledCodecMaxValues.height
+        && getMaxInputSize(codecInfo, format) <= pooledCodecMaxValues.inputSize;
+  }
+
+  @Override
+  @TargetApi(23) // Pooled codecs are only adopted if Util.SDK_INT >= 23
+  protected void onPooledCodecAdopted(MediaCodecPool.PooledCodec pooledCodec) {
+    codecMaxValues = (CodecMaxValues) Assertions.checkNotNull(pooledCodec.rendererState);
+    if (surface == null) {
+      if (dummySurface == null) {
+        dummySurface = DummySurface.newInstanceV17(context, pooledCodec.codecInfo.secure);
+      }
+      surface = dummySurface;
+    }
+    setOutputSurfaceV23(pooledCodec.codec, surface);
+  }
+
   @CallSuper
   @Override
   protected void resetCodecStateForFlush() {
@@ -16,12 +16,26 @@
 package com.google.android.exoplayer2;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.DefaultLoadControl.Builder;
+import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.testutil.AbrSimulator;
+import com.google.android.exoplayer2.testutil.FakeAdaptiveDataSet;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
 import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -310,15 +324,316 @@ public class DefaultLoadControlTest {
         .isTrue();
   }
 
+  @Test
+  public void
+      shouldContinueLoading_withDynamicBufferDurationsOnStableNetwork_untilScaledMaxBuffer() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, /* throughputVariation= */ 0f),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    buildWithVideoTrackSelection(/* bitrate= */ 1_000_000);
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, MAX_BUFFER_US / 2 - 1, SPEED))
+        .isTrue();
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, MAX_BUFFER_US / 2, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void shouldContinueLoading_withDynamicBufferDurationsOnUnstableNetwork_untilMaxBuffer() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, /* throughputVariation= */ 1f),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    buildWithVideoTrackSelection(/* bitrate= */ 1_000_000);
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, MAX_BUFFER_US - 1, SPEED))
+        .isTrue();
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, MAX_BUFFER_US, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void shouldContinueLoading_withDynamicBufferDurationsAndUnknownVariation_untilMaxBuffer() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, C.RATE_UNSET),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    buildWithVideoTrackSelection(/* bitrate= */ 1_000_000);
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, MAX_BUFFER_US - 1, SPEED))
+        .isTrue();
+  }
+
+  @Test
+  public void shouldContinueLoading_withDynamicBufferDurationsAndHighSelectedBitrate_scalesLess() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, /* throughputVariation= */ 0.25f),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    buildWithVideoTrackSelection(/* bitrate= */ 1_000_000);
+    // Half of the bandwidth is used, so the weighted variation is a quarter of the variation at
+    // which the full buffer durations are used.
+    long scaledMaxBufferUs = (long) (MAX_BUFFER_US * 0.625f);
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, scaledMaxBufferUs - 1, SPEED))
+        .isTrue();
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, scaledMaxBufferUs, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void
+      shouldContinueLoading_withDynamicBufferDurationsAndTextTrack_untilScaledMaxBuffer() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, /* throughputVariation= */ 0f),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    builder.setAllocator(allocator).setTargetBufferBytes(TARGET_BUFFER_BYTES);
+    loadControl = builder.build();
+    // The text format has no bitrate, which mustn't prevent scaling the buffer durations.
+    loadControl.onTracksSelected(
+        new Renderer[] {
+          new FakeRenderer(C.TRACK_TYPE_VIDEO), new FakeRenderer(C.TRACK_TYPE_TEXT)
+        },
+        TrackGroupArray.EMPTY,
+        new ExoTrackSelection[] {
+          createVideoTrackSelection(/* bitrate= */ 1_000_000), createTextTrackSelection()
+        });
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, MAX_BUFFER_US / 2 - 1, SPEED))
+        .isTrue();
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, MAX_BUFFER_US / 2, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void
+      shouldContinueLoading_withDynamicBufferDurationsAndOnlyTextTrack_untilMaxBuffer() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, /* throughputVariation= */ 0f),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    builder.setAllocator(allocator).setTargetBufferBytes(TARGET_BUFFER_BYTES);
+    loadControl = builder.build();
+    loadControl.onTracksSelected(
+        new Renderer[] {new FakeRenderer(C.TRACK_TYPE_TEXT)},
+        TrackGroupArray.EMPTY,
+        new ExoTrackSelection[] {createTextTrackSelection()});
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, MAX_BUFFER_US - 1, SPEED))
+        .isTrue();
+  }
+
+  @Test
+  public void
+      shouldContinueLoading_withDynamicBufferDurationsOnJitteryNetwork_untilScaledUpMaxBuffer() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, /* throughputVariation= */ 2f),
+        /* minDynamicBufferDurationFraction= */ 0.5f,
+        /* maxDynamicBufferDurationFraction= */ 2f);
+    buildWithVideoTrackSelection(/* bitrate= */ 1_000_000);
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, 2 * MAX_BUFFER_US - 1, SPEED))
+        .isTrue();
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, 2 * MAX_BUFFER_US, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void
+      shouldContinueLoading_withDynamicBufferDurationsAndBitrateAboveEstimate_untilScaledUpMaxBuffer() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 1_000_000, /* throughputVariation= */ 0f),
+        /* minDynamicBufferDurationFraction= */ 0.5f,
+        /* maxDynamicBufferDurationFraction= */ 1.5f);
+    buildWithVideoTrackSelection(/* bitrate= */ 2_000_000);
+    long scaledMaxBufferUs = MAX_BUFFER_US * 3 / 2;
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, scaledMaxBufferUs - 1, SPEED))
+        .isTrue();
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, scaledMaxBufferUs, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void
+      shouldContinueLoading_withDynamicBufferDurationsAndMaxFractionOne_doesNotScaleUp() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 1_000_000, /* throughputVariation= */ 2f),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    buildWithVideoTrackSelection(/* bitrate= */ 2_000_000);
+
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, MAX_BUFFER_US, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void shouldContinueLoading_withDynamicBufferDurations_stopsAtBitrateBasedTargetBytes() {
+    builder.setDynamicBufferDurations(
+        createBandwidthMeter(/* bitrateEstimate= */ 2_000_000, /* throughputVariation= */ 1f),
+        /* minDynamicBufferDurationFraction= */ 0.5f);
+    loadControl = builder.setAllocator(allocator).build();
+    loadControl.onTracksSelected(
+        new Renderer[] {new FakeRenderer(C.TRACK_TYPE_VIDEO)},
+        TrackGroupArray.EMPTY,
+        new ExoTrackSelection[] {createVideoTrackSelection(/* bitrate= */ 4_000_000)});
+    // 50 seconds at 4 Mbps, with a margin of 25%.
+    int bitrateBasedTargetBufferBytes = 31_250_000;
+
+    while (allocator.getTotalBytesAllocated() < bitrateBasedTargetBufferBytes) {
+      assertThat(
+              loadControl.shouldContinueLoading(
+                  /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ 1_000_000, SPEED))
+          .isTrue();
+      allocator.allocate();
+    }
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ 1_000_000, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void setDynamicBufferDurations_onStableNetwork_reducesPeakMemoryWithoutRebuffering() {
+    AbrSimulator simulator = createAbrSimulator();
+    AbrSimulator.BandwidthTrace trace =
+        AbrSimulator.BandwidthTrace.fromSamples(/* sampleIntervalMs= */ 1_000, 8_000_000);
+
+    AbrSimulator.Result defaultResult =
+        simulateWithLoadControl(simulator, trace, /* dynamicBufferDurations= */ false);
+    AbrSimulator.Result dynamicResult =
+        simulateWithLoadControl(simulator, trace, /* dynamicBufferDurations= */ true);
+
+    assertThat(dynamicResult.rebufferCount).isEqualTo(0);
+    assertThat(dynamicResult.peakAllocatedBytes).isLessThan(defaultResult.peakAllocatedBytes / 2);
+  }
+
+  @Test
+  public void setDynamicBufferDurations_onJitteryNetwork_doesNotRebufferMore() {
+    AbrSimulator simulator = createAbrSimulator();
+    // A random walk of the bandwidth, changing every second.
+    Random random = new Random(/* seed= */ 1);
+    long[] bitrates = new long[300];
+    long bitrate = 3_000_000;
+    for (int i = 0; i < bitrates.length; i++) {
+      bitrate = (long) (bitrate * Math.exp(random.nextGaussian() * 0.3));
+      bitrate = Math.max(200_000, Math.min(10_000_000, bitrate));
+      bitrates[i] = bitrate;
+    }
+    AbrSimulator.BandwidthTrace trace =
+        AbrSimulator.BandwidthTrace.fromSamples(/* sampleIntervalMs= */ 1_000, bitrates);
+
+    AbrSimulator.Result defaultResult =
+        simulateWithLoadControl(simulator, trace, /* dynamicBufferDurations= */ false);
+    AbrSimulator.Result dynamicResult =
+        simulateWithLoadControl(simulator, trace, /* dynamicBufferDurations= */ true);
+
+    assertThat(dynamicResult.getRebufferRatio()).isAtMost(defaultResult.getRebufferRatio());
+    assertThat(dynamicResult.peakAllocatedBytes).isLessThan(defaultResult.peakAllocatedBytes);
+  }
+
   private void build() {
     builder.setAllocator(allocator).setTargetBufferBytes(TARGET_BUFFER_BYTES);
     loadControl = builder.build();
     loadControl.onTracksSelected(new Renderer[0], null, null);
   }
 
+  private void buildWithVideoTrackSelection(int bitrate) {
+    builder.setAllocator(allocator).setTargetBufferBytes(TARGET_BUFFER_BYTES);
+    loadControl = builder.build();
+    loadControl.onTracksSelected(
+        new Renderer[] {new FakeRenderer(C.TRACK_TYPE_VIDEO)},
+        TrackGroupArray.EMPTY,
+        new ExoTrackSelection[] {createVideoTrackSelection(bitrate)});
+  }
+
   private void makeSureTargetBufferBytesReached() {
     while (allocator.getTotalBytesAllocated() < TARGET_BUFFER_BYTES) {
       allocator.allocate();
     }
   }
+
+  private static BandwidthMeter createBandwidthMeter(
+      long bitrateEstimate, float throughputVariation) {
+    BandwidthMeter bandwidthMeter = mock(BandwidthMeter.class);
+    when(bandwidthMeter.getBitrateEstimate()).thenReturn(bitrateEstimate);
+    when(bandwidthMeter.getThroughputCoefficientOfVariation()).thenReturn(throughputVariation);
+    return bandwidthMeter;
+  }
+
+  private static ExoTrackSelection createVideoTrackSelection(int bitrate) {
+    return new FixedTrackSelection(new TrackGroup(videoFormat(bitrate)), /* track= */ 0);
+  }
+
+  private static ExoTrackSelection createTextTrackSelection() {
+    Format textFormat = new Format.Builder().setSampleMimeType(MimeTypes.TEXT_VTT).build();
+    return new FixedTrackSelection(new TrackGroup(textFormat), /* track= */ 0);
+  }
+
+  private static AbrSimulator createAbrSimulator() {
+    TrackGroup trackGroup =
+        new TrackGroup(
+            videoFormat(/* bitrate= */ 300_000),
+            videoFormat(/* bitrate= */ 750_000),
+            videoFormat(/* bitrate= */ 1_200_000),
+            videoFormat(/* bitrate= */ 2_400_000),
+            videoFormat(/* bitrate= */ 4_800_000));
+    return new AbrSimulator(
+        trackGroup,
+        /* mediaDurationUs= */ 600_000_000,
+        new FakeAdaptiveDataSet.Factory(
+            /* chunkDurationUs= */ 4_000_000,
+            /* bitratePercentStdDev= */ 10,
+            new Random(/* seed= */ 0)));
+  }
+
+  private static AbrSimulator.Result simulateWithLoadControl(
+      AbrSimulator simulator, AbrSimulator.BandwidthTrace trace, boolean dynamicBufferDurations) {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setInitialBitrateEstimate(AbrSimulator.DEFAULT_INITIAL_BITRATE_ESTIMATE)
+            .setResetOnNetworkTypeChange(false)
+            .setClock(clock)
+            .build();
+    DefaultLoadControl.Builder loadControlBuilder = new DefaultLoadControl.Builder();
+    if (dynamicBufferDurations) {
+      loadControlBuilder.setDynamicBufferDurations(
+          bandwidthMeter, DefaultLoadControl.DEFAULT_MIN_DYNAMIC_BUFFER_DURATION_FRACTION);
+    }
+    return simulator.simulate(
+        new AdaptiveTrackSelection.Factory(),
+        trace,
+        bandwidthMeter,
+        loadControlBuilder.build(),
+        clock);
+  }
+
+  private static Format videoFormat(int bitrate) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .build();
+  }
 }
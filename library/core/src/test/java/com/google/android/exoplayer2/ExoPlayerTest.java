@@ -8385,6 +8385,66 @@ public final class ExoPlayerTest {
     runUntilPlaybackState(player, Player.STATE_ENDED);
   }
 
+  @Test
+  public void dynamicScheduling_disabled_rendersEveryTenMilliseconds() throws Exception {
+    RenderCountingRenderer renderer =
+        new RenderCountingRenderer(/* durationToProgressUs= */ 100_000);
+    SimpleExoPlayer player = new TestExoPlayerBuilder(context).setRenderers(renderer).build();
+    player.setMediaSource(
+        new FakeMediaSource(new FakeTimeline(), ExoPlayerTestRunner.AUDIO_FORMAT));
+    player.prepare();
+    player.play();
+
+    runUntilPlaybackState(player, Player.STATE_ENDED);
+
+    long playedDurationSeconds = TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US / 1_000_000;
+    assertThat(renderer.startedRenderCount.get() / playedDurationSeconds).isAtLeast(90);
+  }
+
+  @Test
+  public void dynamicScheduling_enabled_rendersWhenRendererNeedsToProgress() throws Exception {
+    RenderCountingRenderer renderer =
+        new RenderCountingRenderer(/* durationToProgressUs= */ 100_000);
+    SimpleExoPlayer player =
+        new TestExoPlayerBuilder(context)
+            .setRenderers(renderer)
+            .experimentalSetDynamicSchedulingEnabled(true)
+            .build();
+    player.setMediaSource(
+        new FakeMediaSource(new FakeTimeline(), ExoPlayerTestRunner.AUDIO_FORMAT));
+    player.prepare();
+    player.play();
+
+    runUntilPlaybackState(player, Player.STATE_ENDED);
+
+    long playedDurationSeconds = TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US / 1_000_000;
+    assertThat(renderer.startedRenderCount.get() / playedDurationSeconds).isAtMost(15);
+  }
+
+  @Test
+  public void dynamicScheduling_enabledAtDoubleSpeed_scalesIntervalWithPlaybackSpeed()
+      throws Exception {
+    RenderCountingRenderer renderer =
+        new RenderCountingRenderer(/* durationToProgressUs= */ 100_000);
+    SimpleExoPlayer player =
+        new TestExoPlayerBuilder(context)
+            .setRenderers(renderer)
+            .experimentalSetDynamicSchedulingEnabled(true)
+            .build();
+    player.setMediaSource(
+        new FakeMediaSource(new FakeTimeline(), ExoPlayerTestRunner.AUDIO_FORMAT));
+    player.setPlaybackParameters(new PlaybackParameters(/* speed= */ 2f));
+    player.prepare();
+    player.play();
+
+    runUntilPlaybackState(player, Player.STATE_ENDED);
+
+    // Media is rendered twice as fast, but the renderer still needs to be called every 100ms of
+    // media, so the number of calls per second of media doesn't change.
+    long playedDurationSeconds = TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US / 1_000_000;
+    assertThat(renderer.startedRenderCount.get() / playedDurationSeconds).isAtMost(15);
+  }
+
   @Test
   public void staticMetadata_callbackIsCalledCorrectlyAndMatchesGetter() throws Exception {
     Format videoFormat =
@@ -9039,6 +9099,36 @@ public final class ExoPlayerTest {
 
   // Internal classes.
 
+  /**
+   * {@link FakeRenderer} that counts the calls to {@link #render} while started and reports a fixed
+   * duration to progress.
+   */
+  private static final class RenderCountingRenderer extends FakeRenderer {
+
+    public final AtomicInteger startedRenderCount;
+
+    private final long durationToProgressUs;
+
+    public RenderCountingRenderer(long durationToProgressUs) {
+      super(C.TRACK_TYPE_AUDIO);
+      this.durationToProgressUs = durationToProgressUs;
+      startedRenderCount = new AtomicInteger();
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+      super.render(positionUs, elapsedRealtimeUs);
+      if (getState() == STATE_STARTED) {
+        startedRenderCount.incrementAndGet();
+      }
+    }
+
+    @Override
+    public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+      return durationToProgressUs;
+    }
+  }
+
   /** {@link FakeRenderer} that can sleep and be woken-up. */
   private static class FakeSleepRenderer extends FakeRenderer {
     private static final long WAKEUP_DEADLINE_MS = 60 * C.MICROS_PER_SECOND;
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.android.exoplayer2.robolectric.TestPlayerRunHelper.runUntilPlaybackState;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.ExoPlayerTestRunner;
+import com.google.android.exoplayer2.testutil.FakeMediaSource;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.TestExoPlayerBuilder;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PlaybackThreadPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class PlaybackThreadPoolTest {
+
+  private static final int PLAYER_COUNT = 9;
+
+  private Context context;
+
+  @Before
+  public void setUp() {
+    context = ApplicationProvider.getApplicationContext();
+  }
+
+  @Test
+  public void obtainLooper_belowMaxThreadCount_startsNewThreadForEachPlayer() {
+    PlaybackThreadPool pool = new PlaybackThreadPool(/* maxThreadCount= */ 2);
+
+    Looper looper1 = pool.obtainLooper();
+    Looper looper2 = pool.obtainLooper();
+
+    assertThat(looper1).isNotSameInstanceAs(looper2);
+    assertThat(pool.getThreadCount()).isEqualTo(2);
+    pool.releaseLooper(looper1);
+    pool.releaseLooper(looper2);
+  }
+
+  @Test
+  public void obtainLooper_atMaxThreadCount_balancesPlayersAcrossThreads() {
+    PlaybackThreadPool pool = new PlaybackThreadPool(/* maxThreadCount= */ 2);
+    Looper[] loopers = new Looper[4];
+    for (int i = 0; i < loopers.length; i++) {
+      loopers[i] = pool.obtainLooper();
+    }
+
+    int playersOnFirstThread = 0;
+    for (Looper looper : loopers) {
+      assertThat(looper).isAnyOf(loopers[0], loopers[1]);
+      if (looper == loopers[0]) {
+        playersOnFirstThread++;
+      }
+    }
+    assertThat(playersOnFirstThread).isEqualTo(2);
+    assertThat(pool.getThreadCount()).isEqualTo(2);
+    for (Looper looper : loopers) {
+      pool.releaseLooper(looper);
+    }
+  }
+
+  @Test
+  public void releaseLooper_lastPlayerOfThread_stopsThread() throws Exception {
+    PlaybackThreadPool pool = new PlaybackThreadPool(/* maxThreadCount= */ 1);
+    Looper looper1 = pool.obtainLooper();
+    Looper looper2 = pool.obtainLooper();
+
+    pool.releaseLooper(looper1);
+    boolean threadAliveAfterFirstRelease = looper1.getThread().isAlive();
+    pool.releaseLooper(looper2);
+    looper2.getThread().join();
+
+    assertThat(looper2).isSameInstanceAs(looper1);
+    assertThat(threadAliveAfterFirstRelease).isTrue();
+    assertThat(pool.getThreadCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void playback_withManyPlayersSharingPool_limitsThreadsAndDeliversAllFrames()
+      throws Exception {
+    FakeRenderer referenceRenderer = new FakeRenderer(C.TRACK_TYPE_VIDEO);
+    SimpleExoPlayer referencePlayer =
+        new TestExoPlayerBuilder(context).setRenderers(referenceRenderer).build();
+    startPlayback(referencePlayer);
+    runUntilPlaybackState(referencePlayer, Player.STATE_ENDED);
+    referencePlayer.release();
+    PlaybackThreadPool pool = new PlaybackThreadPool(/* maxThreadCount= */ 2);
+    SimpleExoPlayer[] players = new SimpleExoPlayer[PLAYER_COUNT];
+    FakeRenderer[] renderers = new FakeRenderer[PLAYER_COUNT];
+    Set<Looper> playbackLoopers = new HashSet<>();
+
+    for (int i = 0; i < PLAYER_COUNT; i++) {
+      renderers[i] = new FakeRenderer(C.TRACK_TYPE_VIDEO);
+      players[i] =
+          new TestExoPlayerBuilder(context)
+              .setRenderers(renderers[i])
+              .experimentalSetPlaybackThreadPool(pool)
+              .build();
+      playbackLoopers.add(players[i].getPlaybackLooper());
+    }
+    int threadCountWhilePlaying = pool.getThreadCount();
+    for (SimpleExoPlayer player : players) {
+      startPlayback(player);
+    }
+    for (SimpleExoPlayer player : players) {
+      runUntilPlaybackState(player, Player.STATE_ENDED);
+    }
+    for (SimpleExoPlayer player : players) {
+      player.release();
+    }
+
+    assertThat(threadCountWhilePlaying).isEqualTo(2);
+    assertThat(playbackLoopers).hasSize(2);
+    assertThat(referenceRenderer.sampleBufferReadCount).isGreaterThan(0);
+    for (FakeRenderer renderer : renderers) {
+      assertThat(renderer.sampleBufferReadCount)
+          .isEqualTo(referenceRenderer.sampleBufferReadCount);
+    }
+    assertThat(pool.getThreadCount()).isEqualTo(0);
+  }
+
+  private static void startPlayback(SimpleExoPlayer player) {
+    player.setMediaSource(
+        new FakeMediaSource(new FakeTimeline(), ExoPlayerTestRunner.VIDEO_FORMAT));
+    player.prepare();
+    player.play();
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PlaylistIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class PlaylistIndexTest {
+
+  private static final Timeline[] TIMELINES =
+      new Timeline[] {
+        Timeline.EMPTY,
+        new FakeTimeline(/* windowCount= */ 1),
+        new FakeTimeline(/* windowCount= */ 3),
+        new FakeTimeline(new TimelineWindowDefinition(/* periodCount= */ 2, /* id= */ 0)),
+        new FakeTimeline(
+            new TimelineWindowDefinition(/* periodCount= */ 3, /* id= */ 0),
+            new TimelineWindowDefinition(/* periodCount= */ 1, /* id= */ 1))
+      };
+
+  @Test
+  public void create_withHolders_mapsIndicesAndUids() {
+    List<Holder> holders = createHolders(/* count= */ 50, new Random(/* seed= */ 0));
+
+    PlaylistIndex playlistIndex = PlaylistIndex.create(holders);
+
+    assertMatches(playlistIndex, holders);
+  }
+
+  @Test
+  public void create_withoutHolders_returnsEmptyIndex() {
+    PlaylistIndex playlistIndex = PlaylistIndex.create(Collections.emptyList());
+
+    assertThat(playlistIndex.size()).isEqualTo(0);
+    assertThat(playlistIndex.getWindowCount()).isEqualTo(0);
+    assertThat(playlistIndex.getPeriodCount()).isEqualTo(0);
+    assertThat(playlistIndex.getChildIndexByUid(new Object())).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void insert_atFrontMiddleAndEnd_mapsIndicesAndUids() {
+    Random random = new Random(/* seed= */ 0);
+    List<Holder> holders = new ArrayList<>();
+    PlaylistIndex playlistIndex = PlaylistIndex.EMPTY;
+
+    for (int i = 0; i < 200; i++) {
+      List<Holder> insertedHolders = createHolders(/* count= */ 1 + i % 3, random);
+      int index = i % 3 == 0 ? 0 : i % 3 == 1 ? holders.size() : holders.size() / 2;
+      holders.addAll(index, insertedHolders);
+      playlistIndex = playlistIndex.insert(index, insertedHolders);
+    }
+
+    assertMatches(playlistIndex, holders);
+  }
+
+  @Test
+  public void insert_repeatedlyAtSamePosition_mapsIndicesAndUids() {
+    // Repeated insertions between the same two children exhaust the label space between them.
+    Random random = new Random(/* seed= */ 0);
+    List<Holder> holders = createHolders(/* count= */ 2, random);
+    PlaylistIndex playlistIndex = PlaylistIndex.create(holders);
+
+    for (int i = 0; i < 200; i++) {
+      List<Holder> insertedHolders = createHolders(/* count= */ 1, random);
+      holders.addAll(/* index= */ 1, insertedHolders);
+      playlistIndex = playlistIndex.insert(/* index= */ 1, insertedHolders);
+    }
+
+    assertMatches(playlistIndex, holders);
+  }
+
+  @Test
+  public void remove_range_mapsIndicesAndUids() {
+    Random random = new Random(/* seed= */ 0);
+    List<Holder> holders = createHolders(/* count= */ 100, random);
+    PlaylistIndex playlistIndex = PlaylistIndex.create(holders);
+    List<Holder> removedHolders = new ArrayList<>(holders.subList(10, 30));
+
+    holders.subList(10, 30).clear();
+    playlistIndex = playlistIndex.remove(/* fromIndex= */ 10, /* toIndex= */ 30);
+
+    assertMatches(playlistIndex, holders);
+    for (Holder holder : removedHolders) {
+      assertThat(playlistIndex.getChildIndexByUid(holder.uid)).isEqualTo(C.INDEX_UNSET);
+    }
+  }
+
+  @Test
+  public void move_range_mapsIndicesAndUids() {
+    List<Holder> holders = createHolders(/* count= */ 100, new Random(/* seed= */ 0));
+    PlaylistIndex playlistIndex = PlaylistIndex.create(holders);
+
+    moveItems(holders, /* fromIndex= */ 10, /* toIndex= */ 20, /* newFromIndex= */ 60);
+    playlistIndex =
+        playlistIndex.move(/* fromIndex= */ 10, /* toIndex= */ 20, /* newFromIndex= */ 60);
+    moveItems(holders, /* fromIndex= */ 80, /* toIndex= */ 100, /* newFromIndex= */ 0);
+    playlistIndex =
+        playlistIndex.move(/* fromIndex= */ 80, /* toIndex= */ 100, /* newFromIndex= */ 0);
+
+    assertMatches(playlistIndex, holders);
+  }
+
+  @Test
+  public void updateTimeline_changesWindowCount_mapsIndicesAndUids() {
+    List<Holder> holders = createHolders(/* count= */ 20, new Random(/* seed= */ 0));
+    PlaylistIndex playlistIndex = PlaylistIndex.create(holders);
+
+    holders.set(5, new Holder(holders.get(5).uid, TIMELINES[4]));
+    playlistIndex = playlistIndex.updateTimeline(holders.get(5).uid, TIMELINES[4]);
+
+    assertMatches(playlistIndex, holders);
+  }
+
+  @Test
+  public void edit_keepsOriginalIndexUnchanged() {
+    List<Holder> holders = createHolders(/* count= */ 20, new Random(/* seed= */ 0));
+    PlaylistIndex playlistIndex = PlaylistIndex.create(holders);
+
+    playlistIndex.insert(/* index= */ 3, createHolders(/* count= */ 5, new Random(/* seed= */ 1)));
+    playlistIndex.remove(/* fromIndex= */ 0, /* toIndex= */ 10);
+    playlistIndex.move(/* fromIndex= */ 0, /* toIndex= */ 5, /* newFromIndex= */ 10);
+    playlistIndex.updateTimeline(holders.get(0).uid, TIMELINES[4]);
+
+    assertMatches(playlistIndex, holders);
+  }
+
+  @Test
+  public void randomEdits_matchReferenceList() {
+    Random random = new Random(/* seed= */ 0);
+    List<Holder> holders = new ArrayList<>();
+    PlaylistIndex playlistIndex = PlaylistIndex.EMPTY;
+
+    for (int i = 0; i < 2000; i++) {
+      int size = holders.size();
+      int operation = random.nextInt(4);
+      if (operation == 0 || size == 0) {
+        int index = random.nextInt(size + 1);
+        List<Holder> insertedHolders = createHolders(1 + random.nextInt(8), random);
+        holders.addAll(index, insertedHolders);
+        playlistIndex = playlistIndex.insert(index, insertedHolders);
+      } else if (operation == 1) {
+        int fromIndex = random.nextInt(size);
+        int toIndex = fromIndex + random.nextInt(Math.min(size - fromIndex, 4) + 1);
+        holders.subList(fromIndex, toIndex).clear();
+        playlistIndex = playlistIndex.remove(fromIndex, toIndex);
+      } else if (operation == 2) {
+        int fromIndex = random.nextInt(size);
+        int toIndex = fromIndex + random.nextInt(size - fromIndex + 1);
+        int newFromIndex = random.nextInt(size - (toIndex - fromIndex) + 1);
+        moveItems(holders, fromIndex, toIndex, newFromIndex);
+        playlistIndex = playlistIndex.move(fromIndex, toIndex, newFromIndex);
+      } else {
+        int index = random.nextInt(size);
+        Timeline timeline = TIMELINES[random.nextInt(TIMELINES.length)];
+        holders.set(index, new Holder(holders.get(index).uid, timeline));
+        playlistIndex = playlistIndex.updateTimeline(holders.get(index).uid, timeline);
+      }
+      if (i % 100 == 0) {
+        assertMatches(playlistIndex, holders);
+      }
+    }
+
+    assertMatches(playlistIndex, holders);
+  }
+
+  @Test
+  public void insertAndRemove_inLargePlaylist_allocateFarFewerNodesThanRebuilding() {
+    int size = 100_000;
+    int editCount = 100;
+    Random random = new Random(/* seed= */ 0);
+    PlaylistIndex playlistIndex = PlaylistIndex.create(createHolders(size, random));
+
+    long unsharedNodeCount = 0;
+    for (int i = 0; i < editCount; i++) {
+      PlaylistIndex editedIndex =
+          playlistIndex.insert(random.nextInt(size), createHolders(/* count= */ 1, random));
+      int fromIndex = random.nextInt(size);
+      editedIndex = editedIndex.remove(fromIndex, /* toIndex= */ fromIndex + 1);
+      unsharedNodeCount += editedIndex.getUnsharedNodeCount(playlistIndex);
+      playlistIndex = editedIndex;
+    }
+
+    assertThat(playlistIndex.size()).isEqualTo(size);
+    // Rebuilding allocates a node per child in each of the two trees. Edits copy the paths to the
+    // edited nodes, and occasionally rebuild small unbalanced subtrees.
+    assertThat(unsharedNodeCount / editCount).isLessThan(1_000);
+  }
+
+  private static void assertMatches(PlaylistIndex playlistIndex, List<Holder> holders) {
+    assertThat(playlistIndex.size()).isEqualTo(holders.size());
+    assertThat(playlistIndex.getTimelines()).hasSize(holders.size());
+    int windowIndex = 0;
+    int periodIndex = 0;
+    for (int i = 0; i < holders.size(); i++) {
+      Holder holder = holders.get(i);
+      assertThat(playlistIndex.getUid(i)).isSameInstanceAs(holder.uid);
+      assertThat(playlistIndex.getTimeline(i)).isSameInstanceAs(holder.timeline);
+      assertThat(playlistIndex.getTimelines().get(i)).isSameInstanceAs(holder.timeline);
+      assertThat(playlistIndex.getChildIndexByUid(holder.uid)).isEqualTo(i);
+      assertThat(playlistIndex.getFirstWindowIndex(i)).isEqualTo(windowIndex);
+      assertThat(playlistIndex.getFirstPeriodIndex(i)).isEqualTo(periodIndex);
+      for (int j = 0; j < holder.timeline.getWindowCount(); j++) {
+        assertThat(playlistIndex.getChildIndexByWindowIndex(windowIndex + j)).isEqualTo(i);
+      }
+      for (int j = 0; j < holder.timeline.getPeriodCount(); j++) {
+        assertThat(playlistIndex.getChildIndexByPeriodIndex(periodIndex + j)).isEqualTo(i);
+      }
+      windowIndex += holder.timeline.getWindowCount();
+      periodIndex += holder.timeline.getPeriodCount();
+    }
+    assertThat(playlistIndex.getWindowCount()).isEqualTo(windowIndex);
+    assertThat(playlistIndex.getPeriodCount()).isEqualTo(periodIndex);
+  }
+
+  private static List<Holder> createHolders(int count, Random random) {
+    List<Holder> holders = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      holders.add(new Holder(new Object(), TIMELINES[random.nextInt(TIMELINES.length)]));
+    }
+    return holders;
+  }
+
+  private static void moveItems(
+      List<Holder> holders, int fromIndex, int toIndex, int newFromIndex) {
+    List<Holder> movedHolders = new ArrayList<>(holders.subList(fromIndex, toIndex));
+    holders.subList(fromIndex, toIndex).clear();
+    holders.addAll(newFromIndex, movedHolders);
+  }
+
+  private static final class Holder implements MediaSourceInfoHolder {
+
+    private final Object uid;
+    private final Timeline timeline;
+
+    public Holder(Object uid, Timeline timeline) {
+      this.uid = uid;
+      this.timeline = timeline;
+    }
+
+    @Override
+    public Object getUid() {
+      return uid;
+    }
+
+    @Override
+    public Timeline getTimeline() {
+      return timeline;
+    }
+  }
+}
@@ -49,6 +49,7 @@ import static com.google.android.exoplayer2.analytics.AnalyticsListener.EVENT_VI
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.END_OF_STREAM_ITEM;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.oneByteSample;
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyFloat;
@@ -59,6 +60,7 @@ import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import android.os.Looper;
 import android.util.SparseArray;
@@ -95,6 +97,7 @@ import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.source.ads.AdPlaybackState;
 import com.google.android.exoplayer2.testutil.ActionSchedule;
 import com.google.android.exoplayer2.testutil.ActionSchedule.PlayerRunnable;
+import com.google.android.exoplayer2.testutil.AllocationCounter;
 import com.google.android.exoplayer2.testutil.ExoPlayerTestRunner;
 import com.google.android.exoplayer2.testutil.FakeAudioRenderer;
 import com.google.android.exoplayer2.testutil.FakeExoMediaDrm;
@@ -1915,6 +1918,89 @@ public final class AnalyticsCollectorTest {
     inOrder.verify(listener3).onSurfaceSizeChanged(any(), eq(0), eq(0));
   }
 
+  @Test
+  public void addListener_withEventFlags_onlyReceivesSubscribedEvents() {
+    AnalyticsCollector analyticsCollector = new AnalyticsCollector(Clock.DEFAULT);
+    SimpleExoPlayer player =
+        new SimpleExoPlayer.Builder(ApplicationProvider.getApplicationContext()).build();
+    analyticsCollector.setPlayer(player, Looper.myLooper());
+    AnalyticsListener listener = mock(AnalyticsListener.class);
+    analyticsCollector.addListener(listener, EVENT_PLAYBACK_STATE_CHANGED);
+
+    analyticsCollector.onVideoFrameProcessingOffset(
+        /* totalProcessingOffsetUs= */ 1000, /* frameCount= */ 10);
+    analyticsCollector.onAudioPositionAdvancing(/* playoutStartSystemTimeMs= */ 0);
+    analyticsCollector.onPlaybackStateChanged(Player.STATE_BUFFERING);
+    ShadowLooper.runMainLooperToNextTask();
+
+    verify(listener).onPlaybackStateChanged(any(), eq(Player.STATE_BUFFERING));
+    ArgumentCaptor<AnalyticsListener.Events> eventsCaptor =
+        ArgumentCaptor.forClass(AnalyticsListener.Events.class);
+    verify(listener).onEvents(any(), eventsCaptor.capture());
+    assertThat(eventsCaptor.getValue().size()).isEqualTo(1);
+    assertThat(eventsCaptor.getValue().contains(EVENT_PLAYBACK_STATE_CHANGED)).isTrue();
+    verifyNoMoreInteractions(listener);
+
+    player.release();
+  }
+
+  @Test
+  public void simulatedPlayback_withSubscribedListener_doesNotAllocateForFrequentEvents() {
+    assumeTrue(AllocationCounter.isSupported());
+    AnalyticsCollector analyticsCollector = new AnalyticsCollector(Clock.DEFAULT);
+    SimpleExoPlayer player =
+        new SimpleExoPlayer.Builder(ApplicationProvider.getApplicationContext()).build();
+    analyticsCollector.setPlayer(player, Looper.myLooper());
+    // Use plain listeners, as mocks allocate when recording invocations.
+    AnalyticsListener unfilteredListener = new AnalyticsListener() {};
+    AnalyticsListener subscribedListener = new AnalyticsListener() {};
+
+    analyticsCollector.addListener(unfilteredListener);
+    double unfilteredBytesPerEvent = simulatePlaybackAndCountBytesPerEvent(analyticsCollector);
+    analyticsCollector.removeListener(unfilteredListener);
+    analyticsCollector.addListener(
+        subscribedListener, EVENT_PLAYBACK_STATE_CHANGED, EVENT_PLAYER_ERROR);
+    double subscribedBytesPerEvent = simulatePlaybackAndCountBytesPerEvent(analyticsCollector);
+
+    assertThat(subscribedBytesPerEvent).isLessThan(1);
+    assertThat(unfilteredBytesPerEvent).isGreaterThan(subscribedBytesPerEvent);
+
+    player.release();
+  }
+
+  /**
+   * Reports the frequent events of a minute of 30 fps video playback with 2 second media chunks to
+   * the collector, and returns the average number of bytes allocated per event.
+   */
+  private static double simulatePlaybackAndCountBytesPerEvent(
+      AnalyticsCollector analyticsCollector) {
+    // Warm up, so that one-off allocations aren't counted.
+    simulatePlayback(analyticsCollector, /* durationSeconds= */ 1);
+    long allocatedBytes = AllocationCounter.getAllocatedBytes();
+    int eventCount = simulatePlayback(analyticsCollector, /* durationSeconds= */ 60);
+    return (double) (AllocationCounter.getAllocatedBytes() - allocatedBytes) / eventCount;
+  }
+
+  private static int simulatePlayback(AnalyticsCollector analyticsCollector, int durationSeconds) {
+    int eventCount = 0;
+    for (int second = 0; second < durationSeconds; second++) {
+      for (int frame = 0; frame < 30; frame++) {
+        analyticsCollector.onVideoFrameProcessingOffset(
+            /* totalProcessingOffsetUs= */ 1000, /* frameCount= */ 1);
+        eventCount++;
+      }
+      analyticsCollector.onAudioPositionAdvancing(/* playoutStartSystemTimeMs= */ second * 1000);
+      analyticsCollector.onDroppedFrames(/* count= */ 1, /* elapsedMs= */ 1000);
+      eventCount += 2;
+      if (second % 2 == 0) {
+        analyticsCollector.onBandwidthSample(
+            /* elapsedMs= */ 2000, /* bytes= */ 500_000, /* bitrate= */ 2_000_000);
+        eventCount++;
+      }
+    }
+    return eventCount;
+  }
+
   private static TestAnalyticsListener runAnalyticsTest(MediaSource mediaSource) throws Exception {
     return runAnalyticsTest(mediaSource, /* actionSchedule= */ null);
   }
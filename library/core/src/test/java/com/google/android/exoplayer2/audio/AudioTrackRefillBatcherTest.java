@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link AudioTrackRefillBatcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class AudioTrackRefillBatcherTest {
+
+  private static final long BUFFER_DURATION_US = 2_000_000;
+
+  @Test
+  public void shouldWrite_beforeBufferFull_returnsTrue() {
+    AudioTrackRefillBatcher batcher = new AudioTrackRefillBatcher(/* refillThreshold= */ 0.5f);
+
+    assertThat(batcher.shouldWrite(/* bufferedDurationUs= */ 1_900_000, BUFFER_DURATION_US))
+        .isTrue();
+  }
+
+  @Test
+  public void shouldWrite_afterBufferFull_returnsFalseUntilThresholdReached() {
+    AudioTrackRefillBatcher batcher = new AudioTrackRefillBatcher(/* refillThreshold= */ 0.5f);
+
+    batcher.onBufferFull();
+
+    assertThat(batcher.shouldWrite(/* bufferedDurationUs= */ 1_900_000, BUFFER_DURATION_US))
+        .isFalse();
+    assertThat(batcher.shouldWrite(/* bufferedDurationUs= */ 1_000_001, BUFFER_DURATION_US))
+        .isFalse();
+    assertThat(batcher.shouldWrite(/* bufferedDurationUs= */ 1_000_000, BUFFER_DURATION_US))
+        .isTrue();
+    // Writing continues until the buffer is full again.
+    assertThat(batcher.shouldWrite(/* bufferedDurationUs= */ 1_900_000, BUFFER_DURATION_US))
+        .isTrue();
+  }
+
+  @Test
+  public void shouldWrite_afterReset_returnsTrue() {
+    AudioTrackRefillBatcher batcher = new AudioTrackRefillBatcher(/* refillThreshold= */ 0.5f);
+    batcher.onBufferFull();
+
+    batcher.reset();
+
+    assertThat(batcher.shouldWrite(/* bufferedDurationUs= */ 1_900_000, BUFFER_DURATION_US))
+        .isTrue();
+  }
+}
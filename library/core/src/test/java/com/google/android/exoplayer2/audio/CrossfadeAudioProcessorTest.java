@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CrossfadeAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class CrossfadeAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 1000;
+  private static final AudioFormat AUDIO_FORMAT =
+      new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+  private static final long DURATION_US = 100_000;
+  private static final int CROSSFADE_FRAME_COUNT = 100;
+  private static final int FRAMES_PER_BUFFER = 64;
+
+  private CrossfadeAudioProcessor processor;
+  private ShortBuffer output;
+
+  @Before
+  public void setUp() {
+    processor = new CrossfadeAudioProcessor();
+    output = ShortBuffer.allocate(10_000);
+  }
+
+  @Test
+  public void configure_withZeroDuration_isNotActive() throws Exception {
+    processor.configure(AUDIO_FORMAT);
+
+    assertThat(processor.isActive()).isFalse();
+  }
+
+  @Test
+  public void process_singleStream_outputsInputUnchanged() throws Exception {
+    processor.setDurationUs(DURATION_US);
+    processor.configure(AUDIO_FORMAT);
+    processor.flush();
+
+    queueRamp(/* frameCount= */ 500);
+    drain();
+
+    output.flip();
+    assertThat(output.remaining()).isEqualTo(500 * 2);
+    for (int frame = 0; frame < 500; frame++) {
+      assertThat(output.get()).isEqualTo((short) frame);
+      assertThat(output.get()).isEqualTo((short) -frame);
+    }
+  }
+
+  @Test
+  public void process_withTransition_overlapsStreamsWithEqualPowerFade() throws Exception {
+    processor.setDurationUs(DURATION_US);
+    processor.configure(AUDIO_FORMAT);
+    processor.flush();
+    queueConstant(/* frameCount= */ 500, /* value= */ 10_000);
+
+    transitionToNextStream(AUDIO_FORMAT);
+    queueConstant(/* frameCount= */ 500, /* value= */ 20_000);
+    drain();
+
+    output.flip();
+    assertThat(output.remaining()).isEqualTo((1000 - CROSSFADE_FRAME_COUNT) * 2);
+    for (int frame = 0; frame < 400; frame++) {
+      assertThat(output.get(frame * 2)).isEqualTo((short) 10_000);
+    }
+    for (int frame = 0; frame < CROSSFADE_FRAME_COUNT; frame++) {
+      double angle = (frame + 0.5) / CROSSFADE_FRAME_COUNT * Math.PI / 2;
+      double expected = 10_000 * Math.cos(angle) + 20_000 * Math.sin(angle);
+      assertThat((double) output.get((400 + frame) * 2)).isWithin(1).of(expected);
+    }
+    for (int frame = 400 + CROSSFADE_FRAME_COUNT; frame < 900; frame++) {
+      assertThat(output.get(frame * 2)).isEqualTo((short) 20_000);
+    }
+  }
+
+  @Test
+  public void process_withRepeatedEndOfStreamDuringTransition_overlapsStreamsOnce()
+      throws Exception {
+    processor.setDurationUs(DURATION_US);
+    processor.configure(AUDIO_FORMAT);
+    processor.flush();
+    queueConstant(/* frameCount= */ 500, /* value= */ 10_000);
+
+    transitionToNextStream(AUDIO_FORMAT);
+    // DefaultAudioSink may drain the processors again before queueing the next stream.
+    processor.setCrossfadeOnEndOfStream(true);
+    drain();
+    processor.flush();
+    processor.setCrossfadeOnEndOfStream(false);
+    queueConstant(/* frameCount= */ 500, /* value= */ 20_000);
+    drain();
+
+    output.flip();
+    assertThat(output.remaining()).isEqualTo((1000 - CROSSFADE_FRAME_COUNT) * 2);
+  }
+
+  @Test
+  public void process_withTransitionToDifferentFormat_outputsHeldBackFrames() throws Exception {
+    processor.setDurationUs(DURATION_US);
+    processor.configure(AUDIO_FORMAT);
+    processor.flush();
+    queueConstant(/* frameCount= */ 500, /* value= */ 10_000);
+
+    AudioFormat monoFormat =
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 1, C.ENCODING_PCM_16BIT);
+    transitionToNextStream(monoFormat);
+    queueConstant(/* frameCount= */ 500, /* value= */ 20_000);
+    drain();
+
+    output.flip();
+    assertThat(output.remaining()).isEqualTo(500 * 2 + 500);
+    assertThat(output.get(500 * 2 - 1)).isEqualTo((short) 10_000);
+    assertThat(output.get(500 * 2)).isEqualTo((short) 20_000);
+  }
+
+  @Test
+  public void process_withStreamShorterThanCrossfade_outputsRemainingFadeOutAtEnd()
+      throws Exception {
+    processor.setDurationUs(DURATION_US);
+    processor.configure(AUDIO_FORMAT);
+    processor.flush();
+    queueConstant(/* frameCount= */ 500, /* value= */ 10_000);
+
+    transitionToNextStream(AUDIO_FORMAT);
+    queueConstant(/* frameCount= */ 40, /* value= */ 0);
+    drain();
+
+    output.flip();
+    // The output ends with the rest of the fade out, after the 40 overlapped frames.
+    assertThat(output.remaining()).isEqualTo(500 * 2);
+    double lastAngle = (CROSSFADE_FRAME_COUNT - 0.5) / CROSSFADE_FRAME_COUNT * Math.PI / 2;
+    assertThat((double) output.get(499 * 2)).isWithin(1).of(10_000 * Math.cos(lastAngle));
+  }
+
+  @Test
+  public void flush_withoutTransition_discardsFadeOut() throws Exception {
+    processor.setDurationUs(DURATION_US);
+    processor.configure(AUDIO_FORMAT);
+    processor.flush();
+    queueConstant(/* frameCount= */ 500, /* value= */ 10_000);
+    transitionToNextStream(AUDIO_FORMAT);
+
+    // Simulate a seek, after which the next stream isn't mixed with the previous one.
+    processor.flush();
+    output.clear();
+    queueConstant(/* frameCount= */ 500, /* value= */ 20_000);
+    drain();
+
+    output.flip();
+    assertThat(output.remaining()).isEqualTo(500 * 2);
+    assertThat(output.get(0)).isEqualTo((short) 20_000);
+  }
+
+  /** Simulates a transition to a stream with the given format, as done by the audio sink. */
+  private void transitionToNextStream(AudioFormat nextFormat) throws Exception {
+    processor.configure(nextFormat);
+    processor.setCrossfadeOnEndOfStream(true);
+    drain();
+    processor.flush();
+    processor.setCrossfadeOnEndOfStream(false);
+  }
+
+  private void queueRamp(int frameCount) {
+    ByteBuffer buffer = createBuffer(frameCount, AUDIO_FORMAT.channelCount);
+    for (int frame = 0; frame < frameCount; frame++) {
+      buffer.putShort((short) frame);
+      buffer.putShort((short) -frame);
+    }
+    buffer.flip();
+    queueInput(buffer);
+  }
+
+  private void queueConstant(int frameCount, int value) {
+    ByteBuffer buffer = createBuffer(frameCount, processor.inputAudioFormat.channelCount);
+    while (buffer.hasRemaining()) {
+      buffer.putShort((short) value);
+    }
+    buffer.flip();
+    queueInput(buffer);
+  }
+
+  private void queueInput(ByteBuffer buffer) {
+    while (buffer.hasRemaining()) {
+      ByteBuffer slice = buffer.slice().order(ByteOrder.nativeOrder());
+      int bytesPerFrame = processor.inputAudioFormat.bytesPerFrame;
+      slice.limit(Math.min(slice.remaining(), FRAMES_PER_BUFFER * bytesPerFrame));
+      int length = slice.remaining();
+      processor.queueInput(slice);
+      buffer.position(buffer.position() + length);
+      readOutput();
+    }
+  }
+
+  private void drain() {
+    processor.queueEndOfStream();
+    while (!processor.isEnded()) {
+      readOutput();
+    }
+  }
+
+  private void readOutput() {
+    ByteBuffer buffer = processor.getOutput();
+    while (buffer.hasRemaining()) {
+      output.put(buffer.getShort());
+    }
+  }
+
+  private static ByteBuffer createBuffer(int frameCount, int channelCount) {
+    return ByteBuffer.allocateDirect(frameCount * channelCount * 2).order(ByteOrder.nativeOrder());
+  }
+}
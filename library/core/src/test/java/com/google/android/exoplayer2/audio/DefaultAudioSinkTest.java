@@ -19,22 +19,46 @@ import static com.google.android.exoplayer2.audio.AudioSink.CURRENT_POSITION_NOT
 import static com.google.android.exoplayer2.audio.AudioSink.SINK_FORMAT_SUPPORTED_DIRECTLY;
 import static com.google.android.exoplayer2.audio.AudioSink.SINK_FORMAT_SUPPORTED_WITH_TRANSCODING;
 import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static org.robolectric.annotation.Config.OLDEST_SDK;
 import static org.robolectric.annotation.Config.TARGET_SDK;
 
+import android.content.Context;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
+import com.google.android.exoplayer2.robolectric.TestPlayerRunHelper;
+import com.google.android.exoplayer2.source.SilenceMediaSource;
+import com.google.android.exoplayer2.testutil.AutoAdvancingFakeClock;
+import com.google.android.exoplayer2.testutil.TestExoPlayerBuilder;
 import com.google.android.exoplayer2.util.MimeTypes;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.time.Duration;
 import java.util.Arrays;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadows.ShadowAudioTrack;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowSystemClock;
+import org.robolectric.util.ReflectionHelpers;
 
 /** Unit tests for {@link DefaultAudioSink}. */
 @RunWith(AndroidJUnit4.class)
@@ -202,6 +226,35 @@ public final class DefaultAudioSinkTest {
         .isEqualTo(8 * C.MICROS_PER_SECOND);
   }
 
+  @Test
+  public void getCurrentPosition_afterCrossfadedStreamTransitions_matchesMediaTime()
+      throws Exception {
+    defaultAudioSink.experimentalSetCrossfadeDurationUs(100_000);
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO);
+    defaultAudioSink.handleBuffer(
+        createDefaultSilenceBuffer(), /* presentationTimeUs= */ 0, /* encodedAccessUnitCount= */ 1);
+    defaultAudioSink.handleStreamTransition();
+    defaultAudioSink.handleBuffer(
+        createDefaultSilenceBuffer(),
+        /* presentationTimeUs= */ C.MICROS_PER_SECOND,
+        /* encodedAccessUnitCount= */ 1);
+    defaultAudioSink.handleStreamTransition();
+    defaultAudioSink.handleBuffer(
+        createDefaultSilenceBuffer(),
+        /* presentationTimeUs= */ 2 * C.MICROS_PER_SECOND,
+        /* encodedAccessUnitCount= */ 1);
+
+    defaultAudioSink.playToEndOfStream();
+    // Let the audio track play out all written frames.
+    ShadowSystemClock.advanceBy(Duration.ofSeconds(10));
+
+    assertThat(defaultAudioSink.isEnded()).isTrue();
+
+    // Each crossfade overlaps 100 ms, so only 2.8 s of audio were written for 3 s of media.
+    assertThat(defaultAudioSink.getCurrentPositionUs(/* sourceEnded= */ true))
+        .isEqualTo(3 * C.MICROS_PER_SECOND);
+  }
+
   @Test
   public void floatPcmNeedsTranscodingIfFloatOutputDisabled() {
     defaultAudioSink =
@@ -255,6 +308,39 @@ public final class DefaultAudioSinkTest {
         .isEqualTo(SINK_FORMAT_SUPPORTED_DIRECTLY);
   }
 
+  @Config(minSdk = 21, maxSdk = TARGET_SDK)
+  @Test
+  public void handleBuffer_withFloatOutputAndPlaybackSpeed_appliesSpeedToFloatPcm()
+      throws Exception {
+    SonicAudioProcessor sonicAudioProcessor = new SonicAudioProcessor();
+    defaultAudioSink =
+        new DefaultAudioSink(
+            AudioCapabilities.DEFAULT_AUDIO_CAPABILITIES,
+            new DefaultAudioSink.DefaultAudioProcessorChain(
+                new AudioProcessor[0], new SilenceSkippingAudioProcessor(), sonicAudioProcessor),
+            /* enableFloatOutput= */ true,
+            /* enableAudioTrackPlaybackParams= */ false,
+            /* enableOffload= */ false);
+    Format floatFormat =
+        STEREO_44_1_FORMAT
+            .buildUpon()
+            .setSampleMimeType(MimeTypes.AUDIO_RAW)
+            .setPcmEncoding(C.ENCODING_PCM_FLOAT)
+            .build();
+    defaultAudioSink.setPlaybackParameters(new PlaybackParameters(/* speed= */ 2f));
+    defaultAudioSink.configure(
+        floatFormat, /* specifiedBufferSize= */ 0, /* outputChannels= */ null);
+    defaultAudioSink.handleBuffer(
+        ByteBuffer.allocateDirect(SAMPLE_RATE_44_1 * CHANNEL_COUNT_STEREO * 4)
+            .order(ByteOrder.nativeOrder()),
+        /* presentationTimeUs= */ 0,
+        /* encodedAccessUnitCount= */ 1);
+
+    assertThat(sonicAudioProcessor.isActive()).isTrue();
+    assertThat(defaultAudioSink.getPlaybackParameters())
+        .isEqualTo(new PlaybackParameters(/* speed= */ 2f));
+  }
+
   @Test
   public void supportsFloatPcm() {
     Format floatFormat =
@@ -334,6 +420,49 @@ public final class DefaultAudioSinkTest {
     assertThat(defaultAudioSink.getPlaybackParameters().speed).isEqualTo(1);
   }
 
+  @Config(sdk = 29, shadows = RealTimeShadowAudioTrack.class)
+  @Test
+  public void playback_inPowerSavingMode_wakesUpLessOften() throws Exception {
+    PlaybackResult defaultResult = playSilence(/* powerSavingModeEnabled= */ false);
+    PlaybackResult powerSavingResult = playSilence(/* powerSavingModeEnabled= */ true);
+
+    assertThat(defaultResult.underrunCount).isEqualTo(0);
+    assertThat(powerSavingResult.underrunCount).isEqualTo(0);
+    assertThat(powerSavingResult.refillCount).isAtMost(defaultResult.refillCount / 4);
+    assertThat(powerSavingResult.wakeupCount).isAtMost(defaultResult.wakeupCount / 4);
+  }
+
+  /**
+   * Plays 20 seconds of silence with a player that uses dynamic scheduling, and whose audio track
+   * is shadowed by {@link RealTimeShadowAudioTrack}, and returns how often the audio renderer was
+   * woken up during playback.
+   */
+  private static PlaybackResult playSilence(boolean powerSavingModeEnabled) throws Exception {
+    RealTimeShadowAudioTrack.resetState();
+    Context context = ApplicationProvider.getApplicationContext();
+    DefaultAudioSink audioSink =
+        new DefaultAudioSink(AudioCapabilities.DEFAULT_AUDIO_CAPABILITIES, new AudioProcessor[0]);
+    audioSink.experimentalSetPowerSavingModeEnabled(powerSavingModeEnabled);
+    PlaybackResult result = new PlaybackResult();
+    WakeupCountingAudioRenderer renderer =
+        new WakeupCountingAudioRenderer(context, audioSink, result);
+    SimpleExoPlayer player =
+        new TestExoPlayerBuilder(context)
+            .setClock(new AutoAdvancingFakeClock())
+            .setRenderers(renderer)
+            .experimentalSetDynamicSchedulingEnabled(true)
+            .build();
+
+    player.setMediaSource(new SilenceMediaSource(/* durationUs= */ 20 * C.MICROS_PER_SECOND));
+    player.prepare();
+    player.play();
+    TestPlayerRunHelper.runUntilPlaybackState(player, Player.STATE_ENDED);
+    player.release();
+    ShadowLooper.idleMainLooper();
+
+    return result;
+  }
+
   private void configureDefaultAudioSink(int channelCount) throws AudioSink.ConfigurationException {
     configureDefaultAudioSink(channelCount, /* trimStartFrames= */ 0, /* trimEndFrames= */ 0);
   }
@@ -359,6 +488,104 @@ public final class DefaultAudioSinkTest {
         .order(ByteOrder.nativeOrder());
   }
 
+  private static final class PlaybackResult {
+
+    public int wakeupCount;
+    public int refillCount;
+    public int underrunCount;
+  }
+
+  /**
+   * {@link MediaCodecAudioRenderer} that counts how often it's woken up while started, how many of
+   * those wakeups write to the audio track shadowed by {@link RealTimeShadowAudioTrack}, and how
+   * many audio underruns are reported.
+   */
+  private static final class WakeupCountingAudioRenderer extends MediaCodecAudioRenderer {
+
+    private final PlaybackResult result;
+
+    public WakeupCountingAudioRenderer(
+        Context context, AudioSink audioSink, PlaybackResult result) {
+      super(
+          context,
+          MediaCodecSelector.DEFAULT,
+          new Handler(Looper.getMainLooper()),
+          new AudioRendererEventListener() {
+            @Override
+            public void onAudioUnderrun(
+                int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs) {
+              result.underrunCount++;
+            }
+          },
+          audioSink);
+      this.result = result;
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+      if (getState() != STATE_STARTED) {
+        super.render(positionUs, elapsedRealtimeUs);
+        return;
+      }
+      result.wakeupCount++;
+      long writtenBytesBeforeWakeup = RealTimeShadowAudioTrack.writtenBytes;
+      super.render(positionUs, elapsedRealtimeUs);
+      if (RealTimeShadowAudioTrack.writtenBytes > writtenBytesBeforeWakeup) {
+        result.refillCount++;
+      }
+    }
+  }
+
+  /**
+   * Shadow for {@link AudioTrack} that plays 44.1 kHz stereo 16-bit audio in real time, as measured
+   * by {@link SystemClock#elapsedRealtime()}, from the first write onwards. Writes only accept as
+   * much audio as fits into the buffer of the track.
+   */
+  @Implements(AudioTrack.class)
+  public static final class RealTimeShadowAudioTrack extends ShadowAudioTrack {
+
+    private static final int BYTES_PER_FRAME = CHANNEL_COUNT_STEREO * BYTES_PER_FRAME_16_BIT;
+
+    private static volatile long writtenBytes;
+    private static volatile long firstWriteTimeMs;
+
+    @RealObject private AudioTrack audioTrack;
+
+    /** Resets the state of the simulated track. */
+    public static void resetState() {
+      writtenBytes = 0;
+      firstWriteTimeMs = C.TIME_UNSET;
+    }
+
+    @Implementation
+    protected int write(ByteBuffer audioData, int sizeInBytes, int writeMode) {
+      if (firstWriteTimeMs == C.TIME_UNSET) {
+        firstWriteTimeMs = SystemClock.elapsedRealtime();
+      }
+      int bufferSizeBytes = ReflectionHelpers.getField(audioTrack, "mNativeBufferSizeInBytes");
+      long freeBytes = bufferSizeBytes - (writtenBytes - getPlayedBytes());
+      int bytesToWrite = (int) min(sizeInBytes, max(0, freeBytes));
+      bytesToWrite -= bytesToWrite % BYTES_PER_FRAME;
+      audioData.position(audioData.position() + bytesToWrite);
+      writtenBytes += bytesToWrite;
+      return bytesToWrite;
+    }
+
+    @Implementation
+    protected int getPlaybackHeadPosition() {
+      return (int) (getPlayedBytes() / BYTES_PER_FRAME);
+    }
+
+    private static long getPlayedBytes() {
+      if (firstWriteTimeMs == C.TIME_UNSET) {
+        return 0;
+      }
+      long playedFrames =
+          (SystemClock.elapsedRealtime() - firstWriteTimeMs) * SAMPLE_RATE_44_1 / 1000;
+      return min(writtenBytes, playedFrames * BYTES_PER_FRAME);
+    }
+  }
+
   private static final class ArrayAudioBufferSink implements TeeAudioProcessor.AudioBufferSink {
 
     private byte[] output;
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FusedPcmAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class FusedPcmAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 48000;
+  private static final int FRAMES_PER_BUFFER = 1024;
+  private static final int BUFFER_COUNT = 16;
+  private static final int TRIM_START_FRAMES = 1500;
+  private static final int TRIM_END_FRAMES = 700;
+
+  @Test
+  public void configure_with16BitInputAndNoChanges_isNotActive() throws Exception {
+    FusedPcmAudioProcessor processor = new FusedPcmAudioProcessor();
+    processor.setChannelMap(new int[] {0, 1});
+
+    processor.configure(
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT));
+
+    assertThat(processor.isActive()).isFalse();
+  }
+
+  @Test
+  public void configure_withChannelMapAndHighResolutionInput_outputs16BitMappedChannels()
+      throws Exception {
+    FusedPcmAudioProcessor processor = new FusedPcmAudioProcessor();
+    processor.setChannelMap(new int[] {1, 0});
+
+    AudioFormat outputFormat =
+        processor.configure(
+            new AudioFormat(SAMPLE_RATE, /* channelCount= */ 6, C.ENCODING_PCM_24BIT));
+
+    assertThat(processor.isActive()).isTrue();
+    assertThat(outputFormat.encoding).isEqualTo(C.ENCODING_PCM_16BIT);
+    assertThat(outputFormat.channelCount).isEqualTo(2);
+  }
+
+  @Test
+  public void process_matchesSeparateProcessors() throws Exception {
+    int[] encodings =
+        new int[] {
+          C.ENCODING_PCM_8BIT,
+          C.ENCODING_PCM_16BIT,
+          C.ENCODING_PCM_16BIT_BIG_ENDIAN,
+          C.ENCODING_PCM_24BIT,
+          C.ENCODING_PCM_32BIT,
+          C.ENCODING_PCM_FLOAT
+        };
+    for (@C.PcmEncoding int encoding : encodings) {
+      AudioFormat inputFormat = new AudioFormat(SAMPLE_RATE, /* channelCount= */ 6, encoding);
+      ByteBuffer[] input = createRandomInput(inputFormat);
+      int[] channelMap = new int[] {2, 0, 0, 5};
+
+      Pipeline fused = createFusedPipeline(inputFormat, channelMap);
+      Pipeline separate = createSeparatePipeline(inputFormat, channelMap);
+      byte[] fusedOutput = fused.processToEndOfStream(input);
+      byte[] separateOutput = separate.processToEndOfStream(input);
+
+      assertThat(fusedOutput).isEqualTo(separateOutput);
+      assertThat(fusedOutput.length)
+          .isEqualTo(
+              (BUFFER_COUNT * FRAMES_PER_BUFFER - TRIM_START_FRAMES - TRIM_END_FRAMES)
+                  * channelMap.length
+                  * 2);
+      assertThat(fused.fusedProcessor.getTrimmedFrameCount())
+          .isEqualTo(TRIM_START_FRAMES + TRIM_END_FRAMES);
+    }
+  }
+
+  @Test
+  public void process_withTrimmingOnly_matchesSeparateProcessors() throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+    ByteBuffer[] input = createRandomInput(inputFormat);
+
+    byte[] fusedOutput =
+        createFusedPipeline(inputFormat, /* channelMap= */ null).processToEndOfStream(input);
+    byte[] separateOutput =
+        createSeparatePipeline(inputFormat, /* channelMap= */ null).processToEndOfStream(input);
+
+    assertThat(fusedOutput).isEqualTo(separateOutput);
+  }
+
+  @Test
+  public void process_highResolutionToStereo_isNotSlowerThanSeparateProcessors()
+      throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 6, C.ENCODING_PCM_24BIT);
+    ByteBuffer[] input = createRandomInput(inputFormat);
+    int[] channelMap = new int[] {0, 1};
+
+    // Compare the fastest of several runs, which excludes JIT warm-up and limits the effect of
+    // other work on the machine. Timing isn't precise enough to assert the size of the speedup, so
+    // only check that fusing the processors doesn't make processing slower.
+    long minSeparateNs = Long.MAX_VALUE;
+    long minFusedNs = Long.MAX_VALUE;
+    for (int i = 0; i < 20; i++) {
+      Pipeline separate = createSeparatePipeline(inputFormat, channelMap);
+      long startTimeNs = System.nanoTime();
+      separate.processToEndOfStream(input);
+      minSeparateNs = min(minSeparateNs, System.nanoTime() - startTimeNs);
+      Pipeline fused = createFusedPipeline(inputFormat, channelMap);
+      startTimeNs = System.nanoTime();
+      fused.processToEndOfStream(input);
+      minFusedNs = min(minFusedNs, System.nanoTime() - startTimeNs);
+    }
+
+    assertThat(minFusedNs).isAtMost(minSeparateNs);
+  }
+
+  private static ByteBuffer[] createRandomInput(AudioFormat audioFormat) {
+    Random random = new Random(/* seed= */ 0);
+    ByteBuffer[] buffers = new ByteBuffer[BUFFER_COUNT];
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      ByteBuffer buffer =
+          ByteBuffer.allocateDirect(FRAMES_PER_BUFFER * audioFormat.bytesPerFrame)
+              .order(ByteOrder.nativeOrder());
+      if (audioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+        // Include values outside the nominal range to check clamping.
+        while (buffer.hasRemaining()) {
+          buffer.putFloat(random.nextFloat() * 2.2f - 1.1f);
+        }
+      } else {
+        while (buffer.hasRemaining()) {
+          buffer.put((byte) random.nextInt());
+        }
+      }
+      buffer.flip();
+      buffers[i] = buffer;
+    }
+    return buffers;
+  }
+
+  private static Pipeline createFusedPipeline(AudioFormat inputFormat, @Nullable int[] channelMap)
+      throws Exception {
+    FusedPcmAudioProcessor fusedProcessor = new FusedPcmAudioProcessor();
+    fusedProcessor.setChannelMap(channelMap);
+    fusedProcessor.setTrimFrameCount(TRIM_START_FRAMES, TRIM_END_FRAMES);
+    List<AudioProcessor> processors = new ArrayList<>();
+    processors.add(fusedProcessor);
+    return new Pipeline(inputFormat, processors, fusedProcessor);
+  }
+
+  private static Pipeline createSeparatePipeline(
+      AudioFormat inputFormat, @Nullable int[] channelMap) throws Exception {
+    ChannelMappingAudioProcessor channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
+    channelMappingAudioProcessor.setChannelMap(channelMap);
+    TrimmingAudioProcessor trimmingAudioProcessor = new TrimmingAudioProcessor();
+    trimmingAudioProcessor.setTrimFrameCount(TRIM_START_FRAMES, TRIM_END_FRAMES);
+    List<AudioProcessor> processors = new ArrayList<>();
+    processors.add(new ResamplingAudioProcessor());
+    processors.add(channelMappingAudioProcessor);
+    processors.add(trimmingAudioProcessor);
+    return new Pipeline(inputFormat, processors, /* fusedProcessor= */ null);
+  }
+
+  /** A chain of active audio processors, driven in the same way as by {@link DefaultAudioSink}. */
+  private static final class Pipeline {
+
+    private final List<AudioProcessor> activeProcessors;
+    private final AudioFormat inputFormat;
+    @Nullable public final FusedPcmAudioProcessor fusedProcessor;
+
+    public Pipeline(
+        AudioFormat inputFormat,
+        List<AudioProcessor> processors,
+        @Nullable FusedPcmAudioProcessor fusedProcessor)
+        throws Exception {
+      this.inputFormat = inputFormat;
+      this.fusedProcessor = fusedProcessor;
+      activeProcessors = new ArrayList<>();
+      AudioFormat format = inputFormat;
+      for (AudioProcessor processor : processors) {
+        AudioFormat nextFormat = processor.configure(format);
+        if (processor.isActive()) {
+          format = nextFormat;
+          activeProcessors.add(processor);
+        }
+        processor.flush();
+      }
+    }
+
+    /**
+     * Queues all {@code input} buffers, then simulates a gapless transition to a new stream with
+     * the same format, which trims the end of the stream, and returns all output.
+     */
+    public byte[] processToEndOfStream(ByteBuffer[] input) throws Exception {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      for (ByteBuffer buffer : input) {
+        processFromIndex(buffer.duplicate().order(ByteOrder.nativeOrder()), 0, output);
+      }
+      // Reconfigure before draining, as DefaultAudioSink does for gapless transitions.
+      AudioFormat format = inputFormat;
+      for (AudioProcessor processor : activeProcessors) {
+        format = processor.configure(format);
+      }
+      for (int i = 0; i < activeProcessors.size(); i++) {
+        AudioProcessor processor = activeProcessors.get(i);
+        processor.queueEndOfStream();
+        while (!processor.isEnded()) {
+          processFromIndex(processor.getOutput(), i + 1, output);
+        }
+      }
+      return output.toByteArray();
+    }
+
+    private void processFromIndex(ByteBuffer buffer, int index, ByteArrayOutputStream output) {
+      if (index == activeProcessors.size()) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        output.write(bytes, /* off= */ 0, bytes.length);
+        return;
+      }
+      AudioProcessor processor = activeProcessors.get(index);
+      processor.queueInput(buffer);
+      processFromIndex(processor.getOutput(), index + 1, output);
+    }
+  }
+}
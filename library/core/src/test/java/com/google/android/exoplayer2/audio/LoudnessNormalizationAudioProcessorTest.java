@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import com.google.android.exoplayer2.metadata.Metadata;
+import com.google.android.exoplayer2.metadata.flac.VorbisComment;
+import com.google.android.exoplayer2.metadata.id3.CommentFrame;
+import com.google.android.exoplayer2.metadata.id3.InternalFrame;
+import com.google.android.exoplayer2.metadata.id3.TextInformationFrame;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link LoudnessNormalizationAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoudnessNormalizationAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 48000;
+  private static final int FRAMES_PER_BUFFER = 1024;
+  private static final float TONE_FREQUENCY_HZ = 1000;
+  private static final float TARGET_LOUDNESS_LUFS = -18;
+  private static final AudioFormat AUDIO_FORMAT_16_BIT =
+      new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+  private static final AudioFormat AUDIO_FORMAT_FLOAT =
+      new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_FLOAT);
+
+  @Test
+  public void getMetadataGainDb_withId3ReplayGain_returnsGain() {
+    Metadata metadata =
+        new Metadata(
+            new TextInformationFrame(
+                /* id= */ "TXXX", /* description= */ "REPLAYGAIN_TRACK_GAIN", "-6.50 dB"));
+
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(metadata, TARGET_LOUDNESS_LUFS))
+        .isEqualTo(-6.5f);
+  }
+
+  @Test
+  public void getMetadataGainDb_withVorbisReplayGainAndDifferentTarget_returnsAdjustedGain() {
+    Metadata metadata = new Metadata(new VorbisComment("replaygain_track_gain", "+2.00 dB"));
+
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(
+                metadata, /* targetLoudnessLufs= */ -14))
+        .isEqualTo(6f);
+  }
+
+  @Test
+  public void getMetadataGainDb_withMp4ReplayGain_returnsGain() {
+    Metadata metadata =
+        new Metadata(
+            new InternalFrame(
+                /* domain= */ "com.apple.iTunes",
+                /* description= */ "replaygain_track_gain",
+                /* text= */ "-3.25 dB"));
+
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(metadata, TARGET_LOUDNESS_LUFS))
+        .isEqualTo(-3.25f);
+  }
+
+  @Test
+  public void getMetadataGainDb_withR128Gain_returnsGainRelativeToTarget() {
+    // -2 dB in Q7.8, relative to -23 LUFS.
+    Metadata metadata = new Metadata(new VorbisComment("R128_TRACK_GAIN", "-512"));
+
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(metadata, TARGET_LOUDNESS_LUFS))
+        .isEqualTo(3f);
+  }
+
+  @Test
+  public void getMetadataGainDb_withSoundCheck_returnsGain() {
+    // A normalization factor of 10000 corresponds to -10 dB.
+    Metadata metadata =
+        new Metadata(
+            new CommentFrame(
+                /* language= */ "eng",
+                /* description= */ "iTunNORM",
+                /* text= */ " 00002710 00001388 00000000 00000000 00000000 00000000"));
+
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(metadata, TARGET_LOUDNESS_LUFS))
+        .isWithin(0.001f)
+        .of(-10f);
+  }
+
+  @Test
+  public void getMetadataGainDb_withReplayGainAndR128Gain_prefersReplayGain() {
+    Metadata metadata =
+        new Metadata(
+            new VorbisComment("R128_TRACK_GAIN", "-512"),
+            new VorbisComment("REPLAYGAIN_TRACK_GAIN", "-1.00 dB"));
+
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(metadata, TARGET_LOUDNESS_LUFS))
+        .isEqualTo(-1f);
+  }
+
+  @Test
+  public void getMetadataGainDb_withoutLoudnessMetadata_returnsNaN() {
+    Metadata metadata = new Metadata(new VorbisComment("TITLE", "Song"));
+
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(metadata, TARGET_LOUDNESS_LUFS))
+        .isNaN();
+    assertThat(
+            LoudnessNormalizationAudioProcessor.getMetadataGainDb(
+                /* metadata= */ null, TARGET_LOUDNESS_LUFS))
+        .isNaN();
+  }
+
+  @Test
+  public void configure_whenNotEnabled_isNotActive() throws Exception {
+    LoudnessNormalizationAudioProcessor processor = new LoudnessNormalizationAudioProcessor();
+
+    processor.configure(AUDIO_FORMAT_16_BIT);
+
+    assertThat(processor.isActive()).isFalse();
+  }
+
+  @Test
+  public void reset_keepsNormalizationEnabled() throws Exception {
+    LoudnessNormalizationAudioProcessor processor = new LoudnessNormalizationAudioProcessor();
+    processor.setEnabled(true);
+    processor.setMetadata(
+        new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "-6.0206 dB")));
+    process(processor, AUDIO_FORMAT_FLOAT, /* amplitude= */ 0.5f, /* frameCount= */ SAMPLE_RATE);
+
+    processor.reset();
+    float[] output =
+        process(
+            processor, AUDIO_FORMAT_FLOAT, /* amplitude= */ 0.5f, /* frameCount= */ SAMPLE_RATE);
+
+    assertThat(processor.isActive()).isTrue();
+    assertThat(getPeak(output, /* startFrame= */ 0, /* channelCount= */ 2))
+        .isWithin(0.001f)
+        .of(0.25f);
+  }
+
+  @Test
+  public void process_withMetadataGain_appliesGainAndPreservesFrameCount() throws Exception {
+    LoudnessNormalizationAudioProcessor processor = new LoudnessNormalizationAudioProcessor();
+    processor.setEnabled(true);
+    processor.setMetadata(
+        new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "-6.0206 dB")));
+    int frameCount = SAMPLE_RATE;
+
+    float[] output =
+        process(processor, AUDIO_FORMAT_FLOAT, /* amplitude= */ 0.5f, frameCount);
+
+    assertThat(output.length).isEqualTo(frameCount * 2);
+    assertThat(getPeak(output, /* startFrame= */ 0, /* channelCount= */ 2))
+        .isWithin(0.001f)
+        .of(0.25f);
+    // The output is the input scaled by the gain, with no delay.
+    assertThat(output[2 * 12])
+        .isWithin(0.0001f)
+        .of(0.25f * (float) Math.sin(2 * Math.PI * TONE_FREQUENCY_HZ * 12 / SAMPLE_RATE));
+  }
+
+  @Test
+  public void process_withLargeMetadataGain_limitsGainToMaximum() throws Exception {
+    LoudnessNormalizationAudioProcessor processor = new LoudnessNormalizationAudioProcessor();
+    processor.setEnabled(true);
+    processor.setMetadata(new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "+30 dB")));
+
+    process(processor, AUDIO_FORMAT_FLOAT, /* amplitude= */ 0.001f, SAMPLE_RATE);
+
+    assertThat(processor.getGainDb())
+        .isWithin(0.01f)
+        .of(LoudnessNormalizationAudioProcessor.DEFAULT_MAX_GAIN_DB);
+  }
+
+  @Test
+  public void process_withoutMetadataGain_convergesToTargetLoudness() throws Exception {
+    LoudnessNormalizationAudioProcessor processor = new LoudnessNormalizationAudioProcessor();
+    processor.setEnabled(true);
+    // A full scale 1 kHz sine tone is at -3.01 LUFS in one channel, so at 0 LUFS in stereo. With an
+    // amplitude of 0.05, its loudness is about -26 LUFS, so the expected gain is about 8 dB.
+    float amplitude = 0.05f;
+    double expectedGainDb = TARGET_LOUDNESS_LUFS - 20 * Math.log10(amplitude);
+
+    process(processor, AUDIO_FORMAT_16_BIT, amplitude, /* frameCount= */ 10 * SAMPLE_RATE);
+
+    assertThat((double) processor.getGainDb()).isWithin(0.5).of(expectedGainDb);
+  }
+
+  @Test
+  public void process_withGainCausingClipping_neverExceedsCeiling() throws Exception {
+    LoudnessNormalizationAudioProcessor processor = new LoudnessNormalizationAudioProcessor();
+    processor.setEnabled(true);
+    processor.setMetadata(new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "+10 dB")));
+    int frameCount = SAMPLE_RATE;
+
+    float[] output = process(processor, AUDIO_FORMAT_FLOAT, /* amplitude= */ 0.8f, frameCount);
+
+    assertThat(output.length).isEqualTo(frameCount * 2);
+    assertThat(getPeak(output, /* startFrame= */ 0, /* channelCount= */ 2)).isAtMost(0.977f);
+    // After the limiter settles, the output is close to the ceiling.
+    assertThat(getPeak(output, /* startFrame= */ SAMPLE_RATE / 2, /* channelCount= */ 2))
+        .isGreaterThan(0.9f);
+  }
+
+  @Test
+  public void process_with16BitInputAndGainCausingClipping_outputsExpectedFrameCount()
+      throws Exception {
+    LoudnessNormalizationAudioProcessor processor = new LoudnessNormalizationAudioProcessor();
+    processor.setEnabled(true);
+    processor.setMetadata(new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "+10 dB")));
+    int frameCount = 12345;
+
+    float[] output = process(processor, AUDIO_FORMAT_16_BIT, /* amplitude= */ 0.9f, frameCount);
+
+    assertThat(output.length).isEqualTo(frameCount * 2);
+    assertThat(getPeak(output, /* startFrame= */ 0, /* channelCount= */ 2)).isAtMost(0.977f);
+  }
+
+  /**
+   * Processes {@code frameCount} frames of a stereo sine tone with the given {@code amplitude}, and
+   * returns the output as float samples.
+   */
+  private static float[] process(
+      LoudnessNormalizationAudioProcessor processor,
+      AudioFormat inputFormat,
+      float amplitude,
+      int frameCount)
+      throws Exception {
+    processor.configure(inputFormat);
+    processor.flush();
+    boolean isFloat = inputFormat.encoding == C.ENCODING_PCM_FLOAT;
+    float[] output = new float[0];
+    int outputSampleCount = 0;
+    int inputFrameIndex = 0;
+    while (!processor.isEnded()) {
+      if (inputFrameIndex < frameCount) {
+        int bufferFrameCount = Math.min(FRAMES_PER_BUFFER, frameCount - inputFrameIndex);
+        ByteBuffer input =
+            ByteBuffer.allocateDirect(bufferFrameCount * inputFormat.bytesPerFrame)
+                .order(ByteOrder.nativeOrder());
+        for (int i = 0; i < bufferFrameCount; i++) {
+          float value =
+              amplitude
+                  * (float)
+                      Math.sin(
+                          2 * Math.PI * TONE_FREQUENCY_HZ * (inputFrameIndex + i) / SAMPLE_RATE);
+          for (int channel = 0; channel < inputFormat.channelCount; channel++) {
+            if (isFloat) {
+              input.putFloat(value);
+            } else {
+              input.putShort((short) Math.round(value * 32767));
+            }
+          }
+        }
+        input.flip();
+        processor.queueInput(input);
+        inputFrameIndex += bufferFrameCount;
+        if (inputFrameIndex == frameCount) {
+          processor.queueEndOfStream();
+        }
+      }
+      ByteBuffer outputBuffer = processor.getOutput();
+      int sampleCount = outputBuffer.remaining() / (isFloat ? 4 : 2);
+      if (outputSampleCount + sampleCount > output.length) {
+        output =
+            Arrays.copyOf(output, Math.max(2 * output.length, outputSampleCount + sampleCount));
+      }
+      for (int i = 0; i < sampleCount; i++) {
+        output[outputSampleCount++] =
+            isFloat ? outputBuffer.getFloat() : outputBuffer.getShort() / 32768f;
+      }
+    }
+    return Arrays.copyOf(output, outputSampleCount);
+  }
+
+  private static float getPeak(float[] samples, int startFrame, int channelCount) {
+    float peak = 0;
+    for (int i = startFrame * channelCount; i < samples.length; i++) {
+      peak = Math.max(peak, Math.abs(samples[i]));
+    }
+    return peak;
+  }
+}
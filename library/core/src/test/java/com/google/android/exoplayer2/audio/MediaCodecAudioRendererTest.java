@@ -18,11 +18,13 @@ package com.google.android.exoplayer2.audio;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.END_OF_STREAM_ITEM;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.format;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.oneByteSample;
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.robolectric.Shadows.shadowOf;
@@ -41,6 +43,7 @@ import com.google.android.exoplayer2.RendererConfiguration;
 import com.google.android.exoplayer2.drm.DrmSessionEventListener;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecPool;
 import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
 import com.google.android.exoplayer2.testutil.FakeSampleStream;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
@@ -169,6 +172,45 @@ public class MediaCodecAudioRendererTest {
             /* outputChannels= */ null);
   }
 
+  @Test
+  public void render_withCodecPool_adoptsPooledCodecAndConfiguresAudioSink() throws Exception {
+    MediaCodecPool codecPool = new MediaCodecPool();
+    mediaCodecAudioRenderer.experimentalSetCodecPool(codecPool);
+    renderSamples(mediaCodecAudioRenderer);
+    mediaCodecAudioRenderer.stop();
+    mediaCodecAudioRenderer.disable();
+    mediaCodecAudioRenderer.reset();
+    AudioSink otherAudioSink = mock(AudioSink.class);
+    when(otherAudioSink.handleBuffer(any(), anyLong(), anyInt())).thenReturn(true);
+    MediaCodecAudioRenderer otherRenderer =
+        new MediaCodecAudioRenderer(
+            ApplicationProvider.getApplicationContext(),
+            mediaCodecSelector,
+            /* enableDecoderFallback= */ false,
+            new Handler(Looper.getMainLooper()),
+            audioRendererEventListener,
+            otherAudioSink);
+    otherRenderer.experimentalSetCodecPool(codecPool);
+
+    int pooledCodecCountAfterReset = codecPool.getPooledCodecCount();
+    renderSamples(otherRenderer);
+
+    assertThat(pooledCodecCountAfterReset).isEqualTo(1);
+    assertThat(codecPool.getHitCount()).isEqualTo(1);
+    assertThat(codecPool.getPooledCodecCount()).isEqualTo(0);
+    // The audio sink is configured even though the flushed codec doesn't report its output format.
+    verify(otherAudioSink, atLeastOnce())
+        .configure(
+            getAudioSinkFormat(AUDIO_AAC),
+            /* specifiedBufferSize= */ 0,
+            /* outputChannels= */ null);
+    verify(otherAudioSink, atLeastOnce()).handleBuffer(any(), anyLong(), anyInt());
+    otherRenderer.stop();
+    otherRenderer.disable();
+    otherRenderer.reset();
+    codecPool.clear();
+  }
+
   @Test
   public void render_configuresAudioSink_afterGaplessFormatChange() throws Exception {
     Format changedFormat =
@@ -311,6 +353,34 @@ public class MediaCodecAudioRendererTest {
     verify(audioRendererEventListener).onAudioSinkError(error);
   }
 
+  private static void renderSamples(MediaCodecAudioRenderer renderer) throws Exception {
+    FakeSampleStream fakeSampleStream =
+        new FakeSampleStream(
+            new DefaultAllocator(/* trimOnReset= */ true, /* individualAllocationSize= */ 1024),
+            /* mediaSourceEventDispatcher= */ null,
+            DrmSessionManager.DRM_UNSUPPORTED,
+            new DrmSessionEventListener.EventDispatcher(),
+            /* initialFormat= */ AUDIO_AAC,
+            ImmutableList.of(
+                oneByteSample(/* timeUs= */ 0, C.BUFFER_FLAG_KEY_FRAME),
+                oneByteSample(/* timeUs= */ 50, C.BUFFER_FLAG_KEY_FRAME),
+                oneByteSample(/* timeUs= */ 100, C.BUFFER_FLAG_KEY_FRAME)));
+    fakeSampleStream.writeData(/* startPositionUs= */ 0);
+    renderer.enable(
+        RendererConfiguration.DEFAULT,
+        new Format[] {AUDIO_AAC},
+        fakeSampleStream,
+        /* positionUs= */ 0,
+        /* joining= */ false,
+        /* mayRenderStartOfStream= */ false,
+        /* startPositionUs= */ 0,
+        /* offsetUs */ 0);
+    renderer.start();
+    for (int positionUs = 0; positionUs <= 250; positionUs += 50) {
+      renderer.render(positionUs, SystemClock.elapsedRealtime() * 1000);
+    }
+  }
+
   private static Format getAudioSinkFormat(Format inputFormat) {
     return new Format.Builder()
         .setSampleMimeType(MimeTypes.AUDIO_RAW)
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SampleRateConversionAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class SampleRateConversionAudioProcessorTest {
+
+  private static final float TONE_FREQUENCY_HZ = 1000;
+  private static final float TONE_AMPLITUDE = 0.5f;
+  private static final int FRAMES_PER_BUFFER = 1024;
+  /** The number of output frames at each end of the output that are excluded from SNR checks. */
+  private static final int EDGE_FRAME_COUNT = 200;
+
+  @Test
+  public void configure_withSameSampleRate_isNotActive() throws Exception {
+    SampleRateConversionAudioProcessor processor = new SampleRateConversionAudioProcessor();
+    processor.setOutputSampleRateHz(48000);
+
+    processor.configure(
+        new AudioFormat(/* sampleRate= */ 48000, /* channelCount= */ 2, C.ENCODING_PCM_16BIT));
+
+    assertThat(processor.isActive()).isFalse();
+  }
+
+  @Test
+  public void configure_withUnsupportedEncoding_throws() {
+    SampleRateConversionAudioProcessor processor = new SampleRateConversionAudioProcessor();
+    processor.setOutputSampleRateHz(48000);
+
+    assertThrows(
+        UnhandledAudioFormatException.class,
+        () ->
+            processor.configure(
+                new AudioFormat(
+                    /* sampleRate= */ 44100, /* channelCount= */ 2, C.ENCODING_PCM_24BIT)));
+  }
+
+  @Test
+  public void process_upsampling_outputsExpectedFrameCount() throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+
+    float[] output =
+        process(
+            new SampleRateConversionAudioProcessor(),
+            inputFormat,
+            /* outputSampleRateHz= */ 48000,
+            /* durationSeconds= */ 1);
+
+    assertThat(output.length).isEqualTo(48000 * 2);
+  }
+
+  @Test
+  public void process_highQualityUpsamplingFloat_hasHighSnr() throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 2, C.ENCODING_PCM_FLOAT);
+
+    float[] output =
+        process(
+            new SampleRateConversionAudioProcessor(),
+            inputFormat,
+            /* outputSampleRateHz= */ 48000,
+            /* durationSeconds= */ 1);
+
+    assertThat(getSnrDb(output, /* sampleRate= */ 48000, /* channelCount= */ 2))
+        .isGreaterThan(70);
+  }
+
+  @Test
+  public void process_highQualityDownsamplingFloat_hasHighSnr() throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(/* sampleRate= */ 48000, /* channelCount= */ 2, C.ENCODING_PCM_FLOAT);
+
+    float[] output =
+        process(
+            new SampleRateConversionAudioProcessor(),
+            inputFormat,
+            /* outputSampleRateHz= */ 44100,
+            /* durationSeconds= */ 1);
+
+    assertThat(getSnrDb(output, /* sampleRate= */ 44100, /* channelCount= */ 2))
+        .isGreaterThan(70);
+  }
+
+  @Test
+  public void process_highQualityUpsampling16Bit_hasSnrCloseTo16BitDynamicRange()
+      throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+
+    float[] output =
+        process(
+            new SampleRateConversionAudioProcessor(),
+            inputFormat,
+            /* outputSampleRateHz= */ 48000,
+            /* durationSeconds= */ 1);
+
+    assertThat(getSnrDb(output, /* sampleRate= */ 48000, /* channelCount= */ 2))
+        .isGreaterThan(70);
+  }
+
+  @Test
+  public void process_lowCpuUpsampling_hasAcceptableSnr() throws Exception {
+    AudioFormat inputFormat =
+        new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+
+    float[] output =
+        process(
+            new SampleRateConversionAudioProcessor(
+                SampleRateConversionAudioProcessor.QUALITY_LOW_CPU),
+            inputFormat,
+            /* outputSampleRateHz= */ 48000,
+            /* durationSeconds= */ 1);
+
+    assertThat(getSnrDb(output, /* sampleRate= */ 48000, /* channelCount= */ 2))
+        .isGreaterThan(40);
+  }
+
+  @Test
+  public void process_highQualityAndLowCpu_isFasterThanRealtime() throws Exception {
+    // The limit is generous so that the test is stable on slow machines: the fastest of several
+    // runs must convert five seconds of audio in less than five seconds. The first run also warms
+    // up the JIT.
+    int durationSeconds = 5;
+    int[] qualities =
+        new int[] {
+          SampleRateConversionAudioProcessor.QUALITY_HIGH,
+          SampleRateConversionAudioProcessor.QUALITY_LOW_CPU
+        };
+    AudioFormat inputFormat =
+        new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+    for (@SampleRateConversionAudioProcessor.Quality int quality : qualities) {
+      long minElapsedTimeNs = Long.MAX_VALUE;
+      for (int i = 0; i < 3; i++) {
+        long startTimeNs = System.nanoTime();
+        process(
+            new SampleRateConversionAudioProcessor(quality),
+            inputFormat,
+            /* outputSampleRateHz= */ 48000,
+            durationSeconds);
+        minElapsedTimeNs = min(minElapsedTimeNs, System.nanoTime() - startTimeNs);
+      }
+
+      assertThat(minElapsedTimeNs).isLessThan(durationSeconds * C.NANOS_PER_SECOND);
+    }
+  }
+
+  /**
+   * Converts a sine tone with the given input format and duration to {@code outputSampleRateHz},
+   * and returns the output as float samples in the range [-1, 1].
+   */
+  private static float[] process(
+      SampleRateConversionAudioProcessor processor,
+      AudioFormat inputFormat,
+      int outputSampleRateHz,
+      int durationSeconds)
+      throws Exception {
+    processor.setOutputSampleRateHz(outputSampleRateHz);
+    AudioFormat outputFormat = processor.configure(inputFormat);
+    processor.flush();
+    boolean isFloat = inputFormat.encoding == C.ENCODING_PCM_FLOAT;
+    int inputFrameCount = durationSeconds * inputFormat.sampleRate;
+    float[] output = new float[0];
+    int outputSampleCount = 0;
+    int inputFrameIndex = 0;
+    while (!processor.isEnded()) {
+      if (inputFrameIndex < inputFrameCount) {
+        int frameCount = Math.min(FRAMES_PER_BUFFER, inputFrameCount - inputFrameIndex);
+        ByteBuffer input =
+            ByteBuffer.allocateDirect(frameCount * inputFormat.bytesPerFrame)
+                .order(ByteOrder.nativeOrder());
+        for (int i = 0; i < frameCount; i++) {
+          float value =
+              TONE_AMPLITUDE
+                  * (float)
+                      Math.sin(
+                          2
+                              * Math.PI
+                              * TONE_FREQUENCY_HZ
+                              * (inputFrameIndex + i)
+                              / inputFormat.sampleRate);
+          for (int channel = 0; channel < inputFormat.channelCount; channel++) {
+            if (isFloat) {
+              input.putFloat(value);
+            } else {
+              input.putShort((short) Math.round(value * 32768));
+            }
+          }
+        }
+        input.flip();
+        processor.queueInput(input);
+        inputFrameIndex += frameCount;
+        if (inputFrameIndex == inputFrameCount) {
+          processor.queueEndOfStream();
+        }
+      }
+      ByteBuffer outputBuffer = processor.getOutput();
+      int sampleCount = outputBuffer.remaining() / (isFloat ? 4 : 2);
+      if (outputSampleCount + sampleCount > output.length) {
+        output =
+            Arrays.copyOf(output, Math.max(2 * output.length, outputSampleCount + sampleCount));
+      }
+      for (int i = 0; i < sampleCount; i++) {
+        output[outputSampleCount++] =
+            isFloat ? outputBuffer.getFloat() : outputBuffer.getShort() / 32768f;
+      }
+    }
+    assertThat(outputFormat.sampleRate).isEqualTo(outputSampleRateHz);
+    return Arrays.copyOf(output, outputSampleCount);
+  }
+
+  /**
+   * Returns the signal to noise ratio of {@code output} compared to the ideal sine tone at the
+   * output sample rate, in decibels.
+   */
+  private static double getSnrDb(float[] output, int sampleRate, int channelCount) {
+    double signalPower = 0;
+    double noisePower = 0;
+    int frameCount = output.length / channelCount;
+    for (int frame = EDGE_FRAME_COUNT; frame < frameCount - EDGE_FRAME_COUNT; frame++) {
+      double expected =
+          TONE_AMPLITUDE * Math.sin(2 * Math.PI * TONE_FREQUENCY_HZ * frame / sampleRate);
+      for (int channel = 0; channel < channelCount; channel++) {
+        double error = output[frame * channelCount + channel] - expected;
+        signalPower += expected * expected;
+        noisePower += error * error;
+      }
+    }
+    return 10 * Math.log10(signalPower / noisePower);
+  }
+}
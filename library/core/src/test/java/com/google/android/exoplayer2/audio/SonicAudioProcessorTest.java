@@ -22,6 +22,9 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
 import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,6 +42,11 @@ public final class SonicAudioProcessorTest {
   private static final AudioFormat AUDIO_FORMAT_48000_HZ =
       new AudioFormat(
           /* sampleRate= */ 48000, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_16BIT);
+  private static final AudioFormat AUDIO_FORMAT_48000_HZ_FLOAT =
+      new AudioFormat(
+          /* sampleRate= */ 48000, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_FLOAT);
+  private static final int INPUT_DURATION_SECONDS = 2;
+  private static final float TONE_FREQUENCY_HZ = 220;
 
   private SonicAudioProcessor sonicAudioProcessor;
 
@@ -123,4 +131,156 @@ public final class SonicAudioProcessorTest {
     }
   }
 
+  @Test
+  public void doesNotSupportFloatInputByDefault() throws Exception {
+    try {
+      sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ_FLOAT);
+      fail();
+    } catch (UnhandledAudioFormatException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void configure_withFloatPcmEnabled_outputsFloat() throws Exception {
+    sonicAudioProcessor.setFloatPcmEnabled(true);
+    sonicAudioProcessor.setSpeed(1.5f);
+
+    AudioFormat outputAudioFormat = sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ_FLOAT);
+
+    assertThat(sonicAudioProcessor.isActive()).isTrue();
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
+    assertThat(outputAudioFormat.sampleRate).isEqualTo(48000);
+  }
+
+  @Test
+  public void processFloat_withSpeedChange_scalesDurationLike16BitProcessing() throws Exception {
+    sonicAudioProcessor.setFloatPcmEnabled(true);
+    sonicAudioProcessor.setSpeed(2f);
+    sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ_FLOAT);
+    sonicAudioProcessor.flush();
+    float[] floatOutput =
+        processToFloatArray(createTone(AUDIO_FORMAT_48000_HZ_FLOAT), /* floatOutput= */ true);
+    sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ);
+    sonicAudioProcessor.flush();
+    float[] shortOutput =
+        processToFloatArray(createTone(AUDIO_FORMAT_48000_HZ), /* floatOutput= */ false);
+
+    float inputSampleCount = INPUT_DURATION_SECONDS * 48000 * 2;
+    assertThat((float) floatOutput.length)
+        .isWithin(inputSampleCount * 0.01f)
+        .of(inputSampleCount / 2);
+    assertThat((float) floatOutput.length)
+        .isWithin(inputSampleCount * 0.01f)
+        .of(shortOutput.length);
+    assertThat(getPeak(floatOutput)).isWithin(0.05f).of(getPeak(shortOutput));
+  }
+
+  @Test
+  public void processFloat_withSampleRateChange_outputsResampledFloat() throws Exception {
+    sonicAudioProcessor.setFloatPcmEnabled(true);
+    sonicAudioProcessor.setOutputSampleRateHz(44100);
+    sonicAudioProcessor.configure(AUDIO_FORMAT_48000_HZ_FLOAT);
+    sonicAudioProcessor.flush();
+
+    float[] output =
+        processToFloatArray(createTone(AUDIO_FORMAT_48000_HZ_FLOAT), /* floatOutput= */ true);
+
+    float expectedSampleCount = INPUT_DURATION_SECONDS * 44100 * 2;
+    assertThat((float) output.length)
+        .isWithin(expectedSampleCount * 0.01f)
+        .of(expectedSampleCount);
+    assertThat(getPeak(output)).isWithin(0.05f).of(0.5f);
+  }
+
+  @Test
+  public void processFloat_atSupportedSpeeds_scalesDurationAndKeepsLevel() throws Exception {
+    float[] speeds = new float[] {0.5f, 0.75f, 1.5f, 2f, 3f};
+    int[] channelCounts = new int[] {2, 6};
+    for (int channelCount : channelCounts) {
+      AudioFormat audioFormat =
+          new AudioFormat(/* sampleRate= */ 48000, channelCount, C.ENCODING_PCM_FLOAT);
+      for (float speed : speeds) {
+        sonicAudioProcessor.reset();
+        sonicAudioProcessor.setFloatPcmEnabled(true);
+        sonicAudioProcessor.setSpeed(speed);
+        sonicAudioProcessor.configure(audioFormat);
+        sonicAudioProcessor.flush();
+
+        float[] output = processToFloatArray(createTone(audioFormat), /* floatOutput= */ true);
+
+        float inputSampleCount = INPUT_DURATION_SECONDS * 48000 * channelCount;
+        assertThat((float) output.length)
+            .isWithin(inputSampleCount * 0.01f)
+            .of(inputSampleCount / speed);
+        assertThat(getPeak(output)).isWithin(0.1f).of(0.5f);
+      }
+    }
+  }
+
+  /** Returns a direct buffer holding a sine tone at half of full scale in the given format. */
+  private static ByteBuffer createTone(AudioFormat audioFormat) {
+    int frameCount = INPUT_DURATION_SECONDS * audioFormat.sampleRate;
+    ByteBuffer buffer =
+        ByteBuffer.allocateDirect(frameCount * audioFormat.bytesPerFrame)
+            .order(ByteOrder.nativeOrder());
+    for (int i = 0; i < frameCount; i++) {
+      float value =
+          0.5f * (float) Math.sin(2 * Math.PI * TONE_FREQUENCY_HZ * i / audioFormat.sampleRate);
+      for (int j = 0; j < audioFormat.channelCount; j++) {
+        if (audioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+          buffer.putFloat(value);
+        } else {
+          buffer.putShort((short) (value * Short.MAX_VALUE));
+        }
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static float getPeak(float[] samples) {
+    float peak = 0;
+    for (float sample : samples) {
+      peak = Math.max(peak, Math.abs(sample));
+    }
+    return peak;
+  }
+
+  /**
+   * Queues {@code input} and the end of stream to the processor, and returns all of its output
+   * normalized to float samples in the range [-1, 1].
+   */
+  private float[] processToFloatArray(ByteBuffer input, boolean floatOutput) {
+    float[] output = new float[0];
+    int outputSampleCount = 0;
+    int queueSize = 4096;
+    while (true) {
+      if (input.hasRemaining()) {
+        ByteBuffer chunk = input.slice().order(ByteOrder.nativeOrder());
+        chunk.limit(Math.min(queueSize, chunk.remaining()));
+        sonicAudioProcessor.queueInput(chunk);
+        input.position(input.position() + chunk.position());
+        if (!input.hasRemaining()) {
+          sonicAudioProcessor.queueEndOfStream();
+        }
+      }
+      ByteBuffer outputBuffer = sonicAudioProcessor.getOutput();
+      int sampleCount = outputBuffer.remaining() / (floatOutput ? 4 : 2);
+      if (outputSampleCount + sampleCount > output.length) {
+        output =
+            Arrays.copyOf(
+                output, Math.max(2 * output.length, outputSampleCount + sampleCount));
+      }
+      for (int i = 0; i < sampleCount; i++) {
+        output[outputSampleCount++] =
+            floatOutput
+                ? outputBuffer.getFloat()
+                : outputBuffer.getShort() / (float) Short.MAX_VALUE;
+      }
+      if (sonicAudioProcessor.isEnded()) {
+        return Arrays.copyOf(output, outputSampleCount);
+      }
+    }
+  }
 }
@@ -38,6 +38,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
+import org.robolectric.shadows.ShadowLooper;
 
 /** Unit tests for {@link AsynchronousMediaCodecBufferEnqueuer}. */
 @RunWith(AndroidJUnit4.class)
@@ -98,6 +99,39 @@ public class AsynchronousMediaCodecBufferEnqueuerTest {
     assertThat(outputData).isEqualTo(inputData);
   }
 
+  @Test
+  public void queueInputBuffer_multipleInputBuffers_queuesAllInputBuffersInOneTask() {
+    enqueuer.start();
+    ShadowLooper shadowLooper = shadowOf(handlerThread.getLooper());
+    shadowLooper.pause();
+    for (int i = 0; i < 4; i++) {
+      int inputBufferIndex = codec.dequeueInputBuffer(0);
+      assertThat(inputBufferIndex).isAtLeast(0);
+      codec.getInputBuffer(inputBufferIndex).put((byte) i);
+      enqueuer.queueInputBuffer(
+          inputBufferIndex,
+          /* offset= */ 0,
+          /* size= */ 1,
+          /* presentationTimeUs= */ i * 20_000L,
+          /* flags= */ 0);
+    }
+
+    shadowLooper.runOneTask();
+
+    assertThat(shadowLooper.isIdle()).isTrue();
+    MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    assertThat(codec.dequeueOutputBuffer(bufferInfo, 0))
+        .isEqualTo(MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
+    for (int i = 0; i < 4; i++) {
+      int outputBufferIndex = codec.dequeueOutputBuffer(bufferInfo, 0);
+      assertThat(outputBufferIndex).isAtLeast(0);
+      assertThat(bufferInfo.presentationTimeUs).isEqualTo(i * 20_000L);
+      assertThat(codec.getOutputBuffer(outputBufferIndex).get(0)).isEqualTo((byte) i);
+      codec.releaseOutputBuffer(outputBufferIndex, /* render= */ false);
+    }
+    shadowLooper.unPause();
+  }
+
   @Test
   public void queueInputBuffer_withPendingCryptoExceptionSet_throwsCryptoException() {
     enqueuer.setPendingRuntimeException(
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DecoderInfoStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class DecoderInfoStoreTest {
+
+  private static final String FINGERPRINT = "fingerprint1";
+  private static final CodecKey AAC_KEY =
+      new CodecKey(MimeTypes.AUDIO_AAC, /* secure= */ false, /* tunneling= */ false);
+  private static final CodecKey SECURE_AVC_KEY =
+      new CodecKey(MimeTypes.VIDEO_H264, /* secure= */ true, /* tunneling= */ false);
+
+  private File tempFolder;
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    file = new File(tempFolder, "decoders");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void get_withoutFile_returnsNull() {
+    DecoderInfoStore decoderInfoStore = createDecoderInfoStore(FINGERPRINT);
+
+    assertThat(decoderInfoStore.get(AAC_KEY)).isNull();
+  }
+
+  @Test
+  public void get_withSameFingerprint_returnsStoredDecoders() {
+    DecoderInfoStore decoderInfoStore = createDecoderInfoStore(FINGERPRINT);
+    decoderInfoStore.put(
+        AAC_KEY,
+        ImmutableList.of(
+            new DecoderInfoStore.Entry(
+                "c2.android.aac.decoder", MimeTypes.AUDIO_AAC, /* secure= */ false)));
+    decoderInfoStore.put(
+        SECURE_AVC_KEY,
+        ImmutableList.of(
+            new DecoderInfoStore.Entry(
+                "OMX.vendor.avc.decoder.secure", "video/avc", /* secure= */ true)));
+    decoderInfoStore.put(
+        new CodecKey(MimeTypes.AUDIO_OPUS, /* secure= */ false, /* tunneling= */ true),
+        ImmutableList.of());
+
+    DecoderInfoStore restoredDecoderInfoStore = createDecoderInfoStore(FINGERPRINT);
+    List<DecoderInfoStore.Entry> aacDecoders = restoredDecoderInfoStore.get(AAC_KEY);
+    List<DecoderInfoStore.Entry> secureAvcDecoders = restoredDecoderInfoStore.get(SECURE_AVC_KEY);
+    List<DecoderInfoStore.Entry> tunnelingOpusDecoders =
+        restoredDecoderInfoStore.get(
+            new CodecKey(MimeTypes.AUDIO_OPUS, /* secure= */ false, /* tunneling= */ true));
+
+    assertThat(aacDecoders).hasSize(1);
+    assertThat(aacDecoders.get(0).name).isEqualTo("c2.android.aac.decoder");
+    assertThat(aacDecoders.get(0).codecMimeType).isEqualTo(MimeTypes.AUDIO_AAC);
+    assertThat(aacDecoders.get(0).secure).isFalse();
+    assertThat(secureAvcDecoders).hasSize(1);
+    assertThat(secureAvcDecoders.get(0).name).isEqualTo("OMX.vendor.avc.decoder.secure");
+    assertThat(secureAvcDecoders.get(0).secure).isTrue();
+    assertThat(tunnelingOpusDecoders).isEmpty();
+    assertThat(
+            restoredDecoderInfoStore.get(
+                new CodecKey(MimeTypes.AUDIO_OPUS, /* secure= */ false, /* tunneling= */ false)))
+        .isNull();
+  }
+
+  @Test
+  public void put_writesFileOnWriteExecutor() {
+    List<Runnable> pendingWrites = new ArrayList<>();
+    DecoderInfoStore decoderInfoStore =
+        new DecoderInfoStore(file, FINGERPRINT, /* writeExecutor= */ pendingWrites::add);
+
+    decoderInfoStore.put(
+        AAC_KEY,
+        ImmutableList.of(
+            new DecoderInfoStore.Entry(
+                "c2.android.aac.decoder", MimeTypes.AUDIO_AAC, /* secure= */ false)));
+    decoderInfoStore.put(SECURE_AVC_KEY, ImmutableList.of());
+
+    // Both keys are written by a single write.
+    assertThat(pendingWrites).hasSize(1);
+    assertThat(file.exists()).isFalse();
+    pendingWrites.get(0).run();
+    DecoderInfoStore restoredDecoderInfoStore = createDecoderInfoStore(FINGERPRINT);
+    assertThat(restoredDecoderInfoStore.get(AAC_KEY)).hasSize(1);
+    assertThat(restoredDecoderInfoStore.get(SECURE_AVC_KEY)).isEmpty();
+  }
+
+  @Test
+  public void get_withDifferentFingerprint_returnsNull() {
+    DecoderInfoStore decoderInfoStore = createDecoderInfoStore(FINGERPRINT);
+    decoderInfoStore.put(
+        AAC_KEY,
+        ImmutableList.of(
+            new DecoderInfoStore.Entry(
+                "c2.android.aac.decoder", MimeTypes.AUDIO_AAC, /* secure= */ false)));
+
+    DecoderInfoStore restoredDecoderInfoStore = createDecoderInfoStore("fingerprint2");
+
+    assertThat(restoredDecoderInfoStore.get(AAC_KEY)).isNull();
+  }
+
+  @Test
+  public void put_withDifferentFingerprint_overwritesStoredDecoders() {
+    createDecoderInfoStore(FINGERPRINT)
+        .put(
+            AAC_KEY,
+            ImmutableList.of(
+                new DecoderInfoStore.Entry(
+                    "c2.android.aac.decoder", MimeTypes.AUDIO_AAC, /* secure= */ false)));
+    createDecoderInfoStore("fingerprint2").put(SECURE_AVC_KEY, ImmutableList.of());
+
+    DecoderInfoStore restoredDecoderInfoStore = createDecoderInfoStore("fingerprint2");
+
+    assertThat(restoredDecoderInfoStore.get(AAC_KEY)).isNull();
+    assertThat(restoredDecoderInfoStore.get(SECURE_AVC_KEY)).isEmpty();
+  }
+
+  private DecoderInfoStore createDecoderInfoStore(String fingerprint) {
+    return new DecoderInfoStore(file, fingerprint, /* writeExecutor= */ Runnable::run);
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.media.MediaFormat;
+import android.view.Surface;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.MimeTypes;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MediaCodecPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class MediaCodecPoolTest {
+
+  private static final MediaCodecInfo AAC_CODEC_INFO =
+      buildCodecInfo("c2.android.aac.decoder", MimeTypes.AUDIO_AAC);
+  private static final MediaCodecInfo AVC_CODEC_INFO =
+      buildCodecInfo("c2.android.avc.decoder", MimeTypes.VIDEO_H264);
+  private static final Format AAC_FORMAT =
+      new Format.Builder().setSampleMimeType(MimeTypes.AUDIO_AAC).build();
+  private static final Format AVC_FORMAT =
+      new Format.Builder().setSampleMimeType(MimeTypes.VIDEO_H264).build();
+
+  @Test
+  public void acquire_withMatchingPooledCodec_returnsCodecAndCountsHit() {
+    MediaCodecPool codecPool = new MediaCodecPool();
+    MediaCodecPool.PooledCodec pooledCodec =
+        buildPooledCodec(AAC_CODEC_INFO, AAC_FORMAT, /* initializationDurationMs= */ 30);
+    codecPool.add(pooledCodec);
+
+    @Nullable
+    MediaCodecPool.PooledCodec acquiredCodec =
+        codecPool.acquire(
+            AAC_CODEC_INFO.name, AAC_CODEC_INFO.mimeType, /* canAdopt= */ candidate -> true);
+
+    assertThat(acquiredCodec).isSameInstanceAs(pooledCodec);
+    assertThat(codecPool.getPooledCodecCount()).isEqualTo(0);
+    assertThat(codecPool.getHitCount()).isEqualTo(1);
+    assertThat(codecPool.getMissCount()).isEqualTo(0);
+    assertThat(codecPool.getTimeSavedMs()).isEqualTo(30);
+    verify(pooledCodec.codec, never()).release();
+  }
+
+  @Test
+  public void acquire_withDifferentCodecName_returnsNullAndCountsMiss() {
+    MediaCodecPool codecPool = new MediaCodecPool();
+    codecPool.add(buildPooledCodec(AAC_CODEC_INFO, AAC_FORMAT, /* initializationDurationMs= */ 30));
+
+    @Nullable
+    MediaCodecPool.PooledCodec acquiredCodec =
+        codecPool.acquire(
+            AVC_CODEC_INFO.name, AVC_CODEC_INFO.mimeType, /* canAdopt= */ candidate -> true);
+
+    assertThat(acquiredCodec).isNull();
+    assertThat(codecPool.getPooledCodecCount()).isEqualTo(1);
+    assertThat(codecPool.getHitCount()).isEqualTo(0);
+    assertThat(codecPool.getMissCount()).isEqualTo(1);
+    assertThat(codecPool.getTimeSavedMs()).isEqualTo(0);
+  }
+
+  @Test
+  public void acquire_withRejectedPooledCodec_returnsNull() {
+    MediaCodecPool codecPool = new MediaCodecPool();
+    codecPool.add(buildPooledCodec(AAC_CODEC_INFO, AAC_FORMAT, /* initializationDurationMs= */ 30));
+
+    @Nullable
+    MediaCodecPool.PooledCodec acquiredCodec =
+        codecPool.acquire(
+            AAC_CODEC_INFO.name, AAC_CODEC_INFO.mimeType, /* canAdopt= */ candidate -> false);
+
+    assertThat(acquiredCodec).isNull();
+    assertThat(codecPool.getPooledCodecCount()).isEqualTo(1);
+    assertThat(codecPool.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void acquire_withMultipleMatchingPooledCodecs_returnsMostRecentlyAddedCodec() {
+    MediaCodecPool codecPool = new MediaCodecPool();
+    codecPool.add(buildPooledCodec(AAC_CODEC_INFO, AAC_FORMAT, /* initializationDurationMs= */ 10));
+    MediaCodecPool.PooledCodec mostRecentCodec =
+        buildPooledCodec(AAC_CODEC_INFO, AAC_FORMAT, /* initializationDurationMs= */ 20);
+    codecPool.add(mostRecentCodec);
+
+    @Nullable
+    MediaCodecPool.PooledCodec acquiredCodec =
+        codecPool.acquire(
+            AAC_CODEC_INFO.name, AAC_CODEC_INFO.mimeType, /* canAdopt= */ candidate -> true);
+
+    assertThat(acquiredCodec).isSameInstanceAs(mostRecentCodec);
+    assertThat(codecPool.getPooledCodecCount()).isEqualTo(1);
+    assertThat(codecPool.getTimeSavedMs()).isEqualTo(20);
+  }
+
+  @Test
+  public void add_withFullPool_releasesLeastRecentlyAddedCodec() {
+    MediaCodecPool codecPool = new MediaCodecPool(/* maxPooledCodecCount= */ 1);
+    Surface placeholderSurface = mock(Surface.class);
+    MediaCodecPool.PooledCodec evictedCodec =
+        new MediaCodecPool.PooledCodec(
+            mock(MediaCodecAdapter.class),
+            AVC_CODEC_INFO,
+            AVC_FORMAT,
+            new MediaFormat(),
+            MediaCodecRenderer.CODEC_OPERATING_RATE_UNSET,
+            placeholderSurface,
+            /* initializationDurationMs= */ 10,
+            /* rendererState= */ null);
+    MediaCodecPool.PooledCodec retainedCodec =
+        buildPooledCodec(AAC_CODEC_INFO, AAC_FORMAT, /* initializationDurationMs= */ 10);
+
+    codecPool.add(evictedCodec);
+    codecPool.add(retainedCodec);
+
+    assertThat(codecPool.getPooledCodecCount()).isEqualTo(1);
+    verify(evictedCodec.codec).release();
+    verify(placeholderSurface).release();
+    verify(retainedCodec.codec, never()).release();
+  }
+
+  @Test
+  public void clear_releasesAllPooledCodecs() {
+    MediaCodecPool codecPool = new MediaCodecPool();
+    MediaCodecPool.PooledCodec aacCodec =
+        buildPooledCodec(AAC_CODEC_INFO, AAC_FORMAT, /* initializationDurationMs= */ 10);
+    MediaCodecPool.PooledCodec avcCodec =
+        buildPooledCodec(AVC_CODEC_INFO, AVC_FORMAT, /* initializationDurationMs= */ 10);
+    codecPool.add(aacCodec);
+    codecPool.add(avcCodec);
+
+    codecPool.clear();
+
+    assertThat(codecPool.getPooledCodecCount()).isEqualTo(0);
+    verify(aacCodec.codec).release();
+    verify(avcCodec.codec).release();
+  }
+
+  private static MediaCodecPool.PooledCodec buildPooledCodec(
+      MediaCodecInfo codecInfo, Format format, long initializationDurationMs) {
+    return new MediaCodecPool.PooledCodec(
+        mock(MediaCodecAdapter.class),
+        codecInfo,
+        format,
+        new MediaFormat(),
+        MediaCodecRenderer.CODEC_OPERATING_RATE_UNSET,
+        /* placeholderSurface= */ null,
+        initializationDurationMs,
+        /* rendererState= */ null);
+  }
+
+  private static MediaCodecInfo buildCodecInfo(String name, String mimeType) {
+    return MediaCodecInfo.newInstance(
+        name,
+        mimeType,
+        /* codecMimeType= */ mimeType,
+        /* capabilities= */ null,
+        /* hardwareAccelerated= */ false,
+        /* softwareOnly= */ true,
+        /* vendor= */ false,
+        /* forceDisableAdaptive= */ false,
+        /* forceSecure= */ false);
+  }
+}
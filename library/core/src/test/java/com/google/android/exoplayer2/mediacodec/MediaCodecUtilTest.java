@@ -18,20 +18,205 @@ package com.google.android.exoplayer2.mediacodec;
 import static com.google.common.truth.Truth.assertThat;
 
 import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
 import android.util.Pair;
 import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
 import com.google.android.exoplayer2.video.ColorInfo;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.MediaCodecInfoBuilder;
+import org.robolectric.shadows.ShadowMediaCodecList;
 
 /** Unit tests for {@link MediaCodecUtil}. */
 @RunWith(AndroidJUnit4.class)
 public final class MediaCodecUtilTest {
 
+  private static final String MP3_DECODER_NAME = "exotest.audio.mpeg";
+  private static final String AAC_DECODER_NAME = "exotest.audio.aac";
+  private static final String OPUS_DECODER_NAME = "exotest.audio.opus";
+  private static final String FINGERPRINT = "fingerprint";
+
+  private File tempFolder;
+  private File decoderInfoCacheFile;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    decoderInfoCacheFile = new File(tempFolder, "decoders");
+  }
+
+  @After
+  public void tearDown() {
+    MediaCodecUtil.setDecoderInfoStore(null);
+    MediaCodecUtil.clearDecoderInfoCache();
+    ShadowMediaCodecList.reset();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  @Config(sdk = 29)
+  public void getDecoderInfos_withDecoderInfoStore_restoresStoredDecoders() throws Exception {
+    addDecoder(MP3_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_MPEG);
+    addDecoder(AAC_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_AAC);
+    setDecoderInfoStore();
+    MediaCodecUtil.getDecoderInfos(
+        MimeTypes.AUDIO_MPEG, /* secure= */ false, /* tunneling= */ false);
+
+    // Simulate a new process.
+    MediaCodecUtil.clearDecoderInfoCache();
+    setDecoderInfoStore();
+    List<com.google.android.exoplayer2.mediacodec.MediaCodecInfo> decoderInfos =
+        MediaCodecUtil.getDecoderInfos(
+            MimeTypes.AUDIO_MPEG, /* secure= */ false, /* tunneling= */ false);
+
+    assertThat(decoderInfos).hasSize(1);
+    assertThat(decoderInfos.get(0).name).isEqualTo(MP3_DECODER_NAME);
+    assertThat(decoderInfos.get(0).mimeType).isEqualTo(MimeTypes.AUDIO_MPEG);
+    assertThat(decoderInfos.get(0).capabilities).isNotNull();
+  }
+
+  @Test
+  @Config(sdk = 29)
+  public void getDecoderInfos_withDecoderInfoStore_doesNotQueryCodecsAgain() throws Exception {
+    setDecoderInfoStore();
+    assertThat(
+            MediaCodecUtil.getDecoderInfos(
+                MimeTypes.AUDIO_AAC, /* secure= */ false, /* tunneling= */ false))
+        .isEmpty();
+
+    // The decoders of a real device don't change without a change of the build fingerprint. Add a
+    // decoder to check that the stored result is used instead of querying the codecs again.
+    addDecoder(AAC_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_AAC);
+    MediaCodecUtil.clearDecoderInfoCache();
+    setDecoderInfoStore();
+    List<com.google.android.exoplayer2.mediacodec.MediaCodecInfo> storedDecoderInfos =
+        MediaCodecUtil.getDecoderInfos(
+            MimeTypes.AUDIO_AAC, /* secure= */ false, /* tunneling= */ false);
+    MediaCodecUtil.clearDecoderInfoCache();
+    MediaCodecUtil.setDecoderInfoStore(null);
+    List<com.google.android.exoplayer2.mediacodec.MediaCodecInfo> queriedDecoderInfos =
+        MediaCodecUtil.getDecoderInfos(
+            MimeTypes.AUDIO_AAC, /* secure= */ false, /* tunneling= */ false);
+
+    assertThat(storedDecoderInfos).isEmpty();
+    assertThat(queriedDecoderInfos).hasSize(1);
+    assertThat(queriedDecoderInfos.get(0).name).isEqualTo(AAC_DECODER_NAME);
+  }
+
+  @Test
+  @Config(sdk = 29)
+  public void getDecoderInfos_withStoredDecoderRemoved_queriesCodecsAgain() throws Exception {
+    addDecoder(MP3_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_MPEG);
+    setDecoderInfoStore();
+    MediaCodecUtil.getDecoderInfos(
+        MimeTypes.AUDIO_MPEG, /* secure= */ false, /* tunneling= */ false);
+
+    ShadowMediaCodecList.reset();
+    MediaCodecUtil.clearDecoderInfoCache();
+    setDecoderInfoStore();
+    List<com.google.android.exoplayer2.mediacodec.MediaCodecInfo> decoderInfos =
+        MediaCodecUtil.getDecoderInfos(
+            MimeTypes.AUDIO_MPEG, /* secure= */ false, /* tunneling= */ false);
+
+    assertThat(decoderInfos).isEmpty();
+  }
+
+  @Test
+  @Config(sdk = 29)
+  public void warmDecoderInfoCache_withDecoderInfoStore_storesDecodersOfAllMimeTypes()
+      throws Exception {
+    addDecoder(MP3_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_MPEG);
+    addDecoder(AAC_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_AAC);
+    setDecoderInfoStore();
+    ExecutorService executorService = Executors.newFixedThreadPool(/* nThreads= */ 2);
+
+    MediaCodecUtil.warmDecoderInfoCache(
+        executorService,
+        ImmutableList.of(MimeTypes.AUDIO_MPEG, MimeTypes.AUDIO_AAC, MimeTypes.AUDIO_FLAC),
+        /* secure= */ false,
+        /* tunneling= */ false);
+    executorService.shutdown();
+    assertThat(executorService.awaitTermination(/* timeout= */ 10, TimeUnit.SECONDS)).isTrue();
+
+    DecoderInfoStore decoderInfoStore = createDecoderInfoStore();
+    assertThat(decoderInfoStore.get(newCodecKey(MimeTypes.AUDIO_MPEG)).get(0).name)
+        .isEqualTo(MP3_DECODER_NAME);
+    assertThat(decoderInfoStore.get(newCodecKey(MimeTypes.AUDIO_AAC)).get(0).name)
+        .isEqualTo(AAC_DECODER_NAME);
+    assertThat(decoderInfoStore.get(newCodecKey(MimeTypes.AUDIO_FLAC))).isEmpty();
+  }
+
+  @Test
+  @Config(sdk = 29)
+  public void warmDecoderInfoCache_withExecutor_cachesDecodersOfAllMimeTypes() throws Exception {
+    addDecoder(MP3_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_MPEG);
+    addDecoder(AAC_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_AAC);
+    addDecoder(OPUS_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_OPUS);
+    ExecutorService executorService = Executors.newFixedThreadPool(/* nThreads= */ 3);
+
+    MediaCodecUtil.warmDecoderInfoCache(
+        executorService,
+        ImmutableList.of(
+            MimeTypes.AUDIO_MPEG, MimeTypes.AUDIO_AAC, MimeTypes.AUDIO_OPUS, MimeTypes.AUDIO_FLAC),
+        /* secure= */ false,
+        /* tunneling= */ false);
+    executorService.shutdown();
+    assertThat(executorService.awaitTermination(/* timeout= */ 10, TimeUnit.SECONDS)).isTrue();
+    // Remove the decoders to check that the cached decoders are returned.
+    ShadowMediaCodecList.reset();
+
+    assertThat(getDecoderNames(MimeTypes.AUDIO_MPEG)).containsExactly(MP3_DECODER_NAME);
+    assertThat(getDecoderNames(MimeTypes.AUDIO_AAC)).containsExactly(AAC_DECODER_NAME);
+    assertThat(getDecoderNames(MimeTypes.AUDIO_OPUS)).containsExactly(OPUS_DECODER_NAME);
+    assertThat(getDecoderNames(MimeTypes.AUDIO_FLAC)).isEmpty();
+  }
+
+  @Test
+  @Config(sdk = 29)
+  public void getDecoderInfos_fromMultipleThreads_returnsSameCachedDecoders() throws Exception {
+    addDecoder(AAC_DECODER_NAME, MediaFormat.MIMETYPE_AUDIO_AAC);
+    ExecutorService executorService = Executors.newFixedThreadPool(/* nThreads= */ 4);
+    List<Future<List<com.google.android.exoplayer2.mediacodec.MediaCodecInfo>>> results =
+        new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      results.add(
+          executorService.submit(
+              () ->
+                  MediaCodecUtil.getDecoderInfos(
+                      MimeTypes.AUDIO_AAC, /* secure= */ false, /* tunneling= */ false)));
+    }
+    List<com.google.android.exoplayer2.mediacodec.MediaCodecInfo> decoderInfos =
+        MediaCodecUtil.getDecoderInfos(
+            MimeTypes.AUDIO_AAC, /* secure= */ false, /* tunneling= */ false);
+    executorService.shutdown();
+
+    assertThat(decoderInfos).hasSize(1);
+    assertThat(decoderInfos.get(0).name).isEqualTo(AAC_DECODER_NAME);
+    for (int i = 0; i < results.size(); i++) {
+      assertThat(results.get(i).get(/* timeout= */ 10, TimeUnit.SECONDS))
+          .isSameInstanceAs(decoderInfos);
+    }
+  }
+
   @Test
   public void getCodecProfileAndLevel_handlesVp9Profile1CodecString() {
     assertCodecProfileAndLevelForCodecsString(
@@ -149,6 +334,43 @@ public final class MediaCodecUtilTest {
     assertThat(MediaCodecUtil.getCodecProfileAndLevel(format)).isNull();
   }
 
+  private static void addDecoder(String name, String mimeType) {
+    MediaFormat mediaFormat = new MediaFormat();
+    mediaFormat.setString(MediaFormat.KEY_MIME, mimeType);
+    ShadowMediaCodecList.addCodec(
+        MediaCodecInfoBuilder.newBuilder()
+            .setName(name)
+            .setCapabilities(
+                MediaCodecInfoBuilder.CodecCapabilitiesBuilder.newBuilder()
+                    .setMediaFormat(mediaFormat)
+                    .build())
+            .build());
+  }
+
+  private void setDecoderInfoStore() {
+    MediaCodecUtil.setDecoderInfoStore(createDecoderInfoStore());
+  }
+
+  /** Returns a store for the decoder info cache file that writes on the calling thread. */
+  private DecoderInfoStore createDecoderInfoStore() {
+    return new DecoderInfoStore(
+        decoderInfoCacheFile, FINGERPRINT, /* writeExecutor= */ Runnable::run);
+  }
+
+  private static MediaCodecUtil.CodecKey newCodecKey(String mimeType) {
+    return new MediaCodecUtil.CodecKey(mimeType, /* secure= */ false, /* tunneling= */ false);
+  }
+
+  private static List<String> getDecoderNames(String mimeType) throws Exception {
+    List<com.google.android.exoplayer2.mediacodec.MediaCodecInfo> decoderInfos =
+        MediaCodecUtil.getDecoderInfos(mimeType, /* secure= */ false, /* tunneling= */ false);
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < decoderInfos.size(); i++) {
+      names.add(decoderInfos.get(i).name);
+    }
+    return names;
+  }
+
   private static void assertCodecProfileAndLevelForCodecsString(
       String sampleMimeType, String codecs, int profile, int level) {
     Format format =
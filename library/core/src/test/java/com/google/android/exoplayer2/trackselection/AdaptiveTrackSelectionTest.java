@@ -26,17 +26,22 @@ import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.AbrSimulator;
+import com.google.android.exoplayer2.testutil.FakeAdaptiveDataSet;
 import com.google.android.exoplayer2.testutil.FakeClock;
 import com.google.android.exoplayer2.testutil.FakeMediaChunk;
+import com.google.android.exoplayer2.testutil.FakeMediaChunkIterator;
 import com.google.android.exoplayer2.testutil.FakeTimeline;
 import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection.AdaptationCheckpoint;
 import com.google.android.exoplayer2.trackselection.ExoTrackSelection.Definition;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -578,6 +583,131 @@ public final class AdaptiveTrackSelectionTest {
         .inOrder();
   }
 
+  @Test
+  public void updateSelectedTrack_withSmallUpcomingChunks_switchesUpToHigherQuality() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        adaptiveTrackSelectionWithChunkSizeLookaheadMs(
+            trackGroup, /* chunkSizeLookaheadMs= */ 4_000);
+    MediaChunkIterator[] mediaChunkIterators = new MediaChunkIterator[3];
+    mediaChunkIterators[adaptiveTrackSelection.indexOf(format1)] =
+        chunkIterator(/* bitrate= */ 400);
+    mediaChunkIterators[adaptiveTrackSelection.indexOf(format2)] =
+        chunkIterator(/* bitrate= */ 600);
+    mediaChunkIterators[adaptiveTrackSelection.indexOf(format3)] =
+        chunkIterator(/* bitrate= */ 900);
+
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 15_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+
+    // The upcoming chunks of format3 need less than the available bandwidth.
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withLargeUpcomingChunks_switchesDownToLowerQuality() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        adaptiveTrackSelectionWithChunkSizeLookaheadMs(
+            trackGroup, /* chunkSizeLookaheadMs= */ 4_000);
+    MediaChunkIterator[] mediaChunkIterators = new MediaChunkIterator[3];
+    mediaChunkIterators[adaptiveTrackSelection.indexOf(format1)] =
+        chunkIterator(/* bitrate= */ 700);
+    mediaChunkIterators[adaptiveTrackSelection.indexOf(format2)] =
+        chunkIterator(/* bitrate= */ 1500);
+    mediaChunkIterators[adaptiveTrackSelection.indexOf(format3)] =
+        chunkIterator(/* bitrate= */ 3000);
+
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 15_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+
+    // The upcoming chunks of format2 need more than the available bandwidth.
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format1);
+    assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withUnknownChunkSizes_usesFormatBitrate() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1000L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        adaptiveTrackSelectionWithChunkSizeLookaheadMs(
+            trackGroup, /* chunkSizeLookaheadMs= */ 4_000);
+    MediaChunkIterator unknownLengthChunkIterator =
+        new FakeMediaChunkIterator(
+            /* chunkTimeBoundariesSec= */ new long[] {0, 2, 4},
+            /* chunkLengths= */ new long[] {100, C.LENGTH_UNSET});
+
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 15_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        new MediaChunkIterator[] {
+          unknownLengthChunkIterator, MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY
+        });
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void simulatePlayback_withChunkSizeLookahead_selectsHigherQualityWithoutRebuffering() {
+    AbrSimulator simulator = createVariableBitrateAbrSimulator();
+    AbrSimulator.BandwidthTrace trace =
+        AbrSimulator.BandwidthTrace.fromSamples(/* sampleIntervalMs= */ 1000, 4_000_000);
+
+    AbrSimulator.Result formatBitrateResult =
+        simulator.simulate(
+            createFactoryWithChunkSizeLookaheadMs(/* chunkSizeLookaheadMs= */ 0), trace);
+    AbrSimulator.Result chunkSizeResult =
+        simulator.simulate(
+            createFactoryWithChunkSizeLookaheadMs(/* chunkSizeLookaheadMs= */ 4_000), trace);
+
+    assertThat(chunkSizeResult.rebufferCount).isEqualTo(0);
+    assertThat(chunkSizeResult.averageBitrate).isGreaterThan(formatBitrateResult.averageBitrate);
+  }
+
+  @Test
+  public void simulatePlayback_withChunkSizeLookaheadAndBurstyNetwork_rebuffersLess() {
+    AbrSimulator simulator = createVariableBitrateAbrSimulator();
+    // Short bursts of high bandwidth followed by long periods of low bandwidth and short outages.
+    AbrSimulator.BandwidthTrace trace =
+        new AbrSimulator.BandwidthTrace(
+            /* durationsMs= */ new long[] {4_000, 12_000, 2_000},
+            /* bitrates= */ new long[] {8_000_000, 400_000, 0});
+
+    AbrSimulator.Result formatBitrateResult =
+        simulator.simulate(
+            createFactoryWithChunkSizeLookaheadMs(/* chunkSizeLookaheadMs= */ 0), trace);
+    AbrSimulator.Result chunkSizeResult =
+        simulator.simulate(
+            createFactoryWithChunkSizeLookaheadMs(/* chunkSizeLookaheadMs= */ 4_000), trace);
+
+    assertThat(chunkSizeResult.getRebufferRatio())
+        .isLessThan(formatBitrateResult.getRebufferRatio() / 2);
+  }
+
   private AdaptiveTrackSelection adaptiveTrackSelection(TrackGroup trackGroup) {
     return adaptiveTrackSelectionWithMinDurationForQualityIncreaseMs(
         trackGroup, AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS);
@@ -647,6 +777,23 @@ public final class AdaptiveTrackSelectionTest {
             fakeClock));
   }
 
+  private AdaptiveTrackSelection adaptiveTrackSelectionWithChunkSizeLookaheadMs(
+      TrackGroup trackGroup, long chunkSizeLookaheadMs) {
+    return prepareTrackSelection(
+        new AdaptiveTrackSelection(
+            trackGroup,
+            selectedAllTracksInGroup(trackGroup),
+            mockBandwidthMeter,
+            AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+            AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+            AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+            /* bandwidthFraction= */ 1.0f,
+            AdaptiveTrackSelection.DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE,
+            /* adaptationCheckpoints= */ ImmutableList.of(),
+            chunkSizeLookaheadMs,
+            fakeClock));
+  }
+
   private AdaptiveTrackSelection prepareTrackSelection(
       AdaptiveTrackSelection adaptiveTrackSelection) {
     adaptiveTrackSelection.enable();
@@ -667,6 +814,43 @@ public final class AdaptiveTrackSelectionTest {
     return listIndices;
   }
 
+  /** Returns an iterator over two chunks of 2 seconds each with the given bitrate. */
+  private static MediaChunkIterator chunkIterator(int bitrate) {
+    long chunkLength = bitrate * 2L / C.BITS_PER_BYTE;
+    return new FakeMediaChunkIterator(
+        /* chunkTimeBoundariesSec= */ new long[] {0, 2, 4},
+        /* chunkLengths= */ new long[] {chunkLength, chunkLength});
+  }
+
+  private static AbrSimulator createVariableBitrateAbrSimulator() {
+    TrackGroup trackGroup =
+        new TrackGroup(
+            videoFormat(/* bitrate= */ 300_000, /* width= */ 320, /* height= */ 180),
+            videoFormat(/* bitrate= */ 750_000, /* width= */ 640, /* height= */ 360),
+            videoFormat(/* bitrate= */ 1_200_000, /* width= */ 960, /* height= */ 540),
+            videoFormat(/* bitrate= */ 2_400_000, /* width= */ 1280, /* height= */ 720),
+            videoFormat(/* bitrate= */ 4_800_000, /* width= */ 1920, /* height= */ 1080));
+    return new AbrSimulator(
+        trackGroup,
+        /* mediaDurationUs= */ 600_000_000,
+        new FakeAdaptiveDataSet.Factory(
+            /* chunkDurationUs= */ 4_000_000,
+            /* bitratePercentStdDev= */ 30,
+            new Random(/* seed= */ 0)));
+  }
+
+  private static AdaptiveTrackSelection.Factory createFactoryWithChunkSizeLookaheadMs(
+      int chunkSizeLookaheadMs) {
+    return new AdaptiveTrackSelection.Factory(
+        AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+        AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+        AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+        AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION,
+        AdaptiveTrackSelection.DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE,
+        chunkSizeLookaheadMs,
+        Clock.DEFAULT);
+  }
+
   private static Format videoFormat(int bitrate, int width, int height) {
     return new Format.Builder()
         .setSampleMimeType(MimeTypes.VIDEO_H264)
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.AbrSimulator;
+import com.google.android.exoplayer2.testutil.FakeAdaptiveDataSet;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeMediaChunk;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+/** Unit test for {@link BufferBasedTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+public final class BufferBasedTrackSelectionTest {
+
+  private static final MediaChunkIterator[] THREE_EMPTY_MEDIA_CHUNK_ITERATORS =
+      new MediaChunkIterator[] {
+        MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY
+      };
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  private FakeClock fakeClock;
+
+  private Format format1;
+  private Format format2;
+  private Format format3;
+  private TrackGroup trackGroup;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    fakeClock = new FakeClock(0);
+    format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    trackGroup = new TrackGroup(format1, format2, format3);
+  }
+
+  @Test
+  public void selectInitialIndexUsesBandwidthEstimate() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1000L);
+
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_atStartup_usesBandwidthEstimate() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1000L, 2000L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_afterStartup_retainsSelectionUntilBufferedDurationChanges() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L, 2000L, 500L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+
+    // The drop of the bandwidth estimate doesn't cause a switch as long as the buffer is stable.
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_switchesUpAsBufferedDurationGrows() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L, 500L, 2000L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 10_000_000);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 20_000_000);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 30_000_000);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_switchesDownAsBufferedDurationShrinks() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L, 500L, 2000L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 30_000_000);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 5_000_000);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_doesNotSwitchUpAboveBandwidthEstimate() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 30_000_000);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+  }
+
+  @Test
+  public void updateSelectedTrack_withQueue_switchesUpWithMargin() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L, 500L, 2000L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+    List<MediaChunk> queue =
+        ImmutableList.of(
+            new FakeMediaChunk(
+                format1,
+                /* startTimeUs= */ 0,
+                /* endTimeUs= */ 4_000_000,
+                C.SELECTION_REASON_INITIAL));
+
+    // Without a queue this buffered duration selects format2, but the margin of two chunks
+    // prevents the switch.
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 20_000_000, queue);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 23_000_000, queue);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_afterRebuffer_usesBandwidthEstimate() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L, 500L, 2000L, 1000L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 30_000_000);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+
+    trackSelection.onRebuffer();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  @Test
+  public void updateSelectedTrack_excludesBlacklistedTracks() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L, 500L, 2000L);
+    BufferBasedTrackSelection trackSelection = prepareTrackSelection();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 1_000_000);
+    trackSelection.blacklist(trackSelection.indexOf(format3), /* exclusionDurationMs= */ 1000);
+
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 30_000_000);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  @Test
+  public void simulatePlayback_withBurstyNetwork_rebuffersLessThanAdaptiveTrackSelection() {
+    TrackGroup trackGroup =
+        new TrackGroup(
+            videoFormat(/* bitrate= */ 300_000, /* width= */ 320, /* height= */ 180),
+            videoFormat(/* bitrate= */ 750_000, /* width= */ 640, /* height= */ 360),
+            videoFormat(/* bitrate= */ 1_200_000, /* width= */ 960, /* height= */ 540),
+            videoFormat(/* bitrate= */ 2_400_000, /* width= */ 1280, /* height= */ 720),
+            videoFormat(/* bitrate= */ 4_800_000, /* width= */ 1920, /* height= */ 1080));
+    AbrSimulator simulator =
+        new AbrSimulator(
+            trackGroup,
+            /* mediaDurationUs= */ 600_000_000,
+            new FakeAdaptiveDataSet.Factory(
+                /* chunkDurationUs= */ 4_000_000,
+                /* bitratePercentStdDev= */ 10,
+                new Random(/* seed= */ 0)));
+    // Short bursts of high bandwidth followed by long periods of low bandwidth and short outages.
+    AbrSimulator.BandwidthTrace trace =
+        new AbrSimulator.BandwidthTrace(
+            /* durationsMs= */ new long[] {4_000, 12_000, 2_000},
+            /* bitrates= */ new long[] {8_000_000, 400_000, 0});
+
+    AbrSimulator.Result adaptiveResult =
+        simulator.simulate(new AdaptiveTrackSelection.Factory(), trace);
+    AbrSimulator.Result bufferBasedResult =
+        simulator.simulate(new BufferBasedTrackSelection.Factory(), trace);
+
+    assertThat(adaptiveResult.rebufferCount).isGreaterThan(0);
+    assertThat(bufferBasedResult.getRebufferRatio()).isLessThan(adaptiveResult.getRebufferRatio());
+    assertThat(bufferBasedResult.switchCount).isLessThan(adaptiveResult.switchCount);
+  }
+
+  private BufferBasedTrackSelection prepareTrackSelection() {
+    BufferBasedTrackSelection trackSelection =
+        new BufferBasedTrackSelection(
+            trackGroup,
+            /* tracks= */ new int[] {0, 1, 2},
+            mockBandwidthMeter,
+            BufferBasedTrackSelection.DEFAULT_MIN_BUFFER_MS,
+            BufferBasedTrackSelection.DEFAULT_BUFFER_TARGET_MS,
+            /* bandwidthFraction= */ 1.0f,
+            fakeClock);
+    trackSelection.enable();
+    updateSelectedTrack(trackSelection, /* bufferedDurationUs= */ 0);
+    return trackSelection;
+  }
+
+  private static void updateSelectedTrack(
+      BufferBasedTrackSelection trackSelection, long bufferedDurationUs) {
+    updateSelectedTrack(trackSelection, bufferedDurationUs, Collections.emptyList());
+  }
+
+  private static void updateSelectedTrack(
+      BufferBasedTrackSelection trackSelection,
+      long bufferedDurationUs,
+      List<? extends MediaChunk> queue) {
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        bufferedDurationUs,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        queue,
+        /* mediaChunkIterators= */ THREE_EMPTY_MEDIA_CHUNK_ITERATORS);
+  }
+
+  private static Format videoFormat(int bitrate, int width, int height) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .setWidth(width)
+        .setHeight(height)
+        .build();
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+/** Unit test for {@link CacheAwareTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+public final class CacheAwareTrackSelectionTest {
+
+  private static final Format FORMAT_1 =
+      videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+  private static final Format FORMAT_2 =
+      videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+  private static final Format FORMAT_3 =
+      videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  @Mock private Cache mockCache;
+  private CacheAwareTrackSelection trackSelection;
+  private MediaChunkIterator[] mediaChunkIterators;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    trackSelection =
+        new CacheAwareTrackSelection(
+            new TrackGroup(FORMAT_1, FORMAT_2, FORMAT_3),
+            /* tracks= */ new int[] {0, 1, 2},
+            mockBandwidthMeter,
+            mockCache,
+            CacheKeyFactory.DEFAULT,
+            CacheAwareTrackSelection.DEFAULT_MIN_CACHED_TRACK_BITRATE_FRACTION,
+            AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+            AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+            /* bandwidthFraction= */ 1.0f,
+            AdaptiveTrackSelection.DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE,
+            /* adaptationCheckpoints= */ ImmutableList.of(),
+            new FakeClock(/* initialTimeMs= */ 0));
+    trackSelection.enable();
+    mediaChunkIterators = new MediaChunkIterator[3];
+    for (Format format : ImmutableList.of(FORMAT_1, FORMAT_2, FORMAT_3)) {
+      mediaChunkIterators[trackSelection.indexOf(format)] = chunkIterator(format);
+    }
+  }
+
+  @Test
+  public void updateSelectedTrack_withNothingCached_selectsBasedOnBandwidth() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+
+    updateSelectedTrack();
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withCachedLowerQualityTrackWithinTolerance_selectsCachedTrack() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    setNextChunkCached(FORMAT_2);
+
+    updateSelectedTrack();
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withCachedTrackBelowTolerance_selectsBasedOnBandwidth() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    setNextChunkCached(FORMAT_1);
+
+    updateSelectedTrack();
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_3);
+  }
+
+  @Test
+  public void updateSelectedTrack_withCachedHigherQualityTrack_selectsCachedTrack() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(500L);
+    setNextChunkCached(FORMAT_1);
+    setNextChunkCached(FORMAT_3);
+
+    updateSelectedTrack();
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_3);
+  }
+
+  @Test
+  public void updateSelectedTrack_withExcludedCachedTrack_selectsBasedOnBandwidth() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    setNextChunkCached(FORMAT_2);
+    trackSelection.blacklist(trackSelection.indexOf(FORMAT_2), /* exclusionDurationMs= */ 1000);
+
+    updateSelectedTrack();
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_3);
+  }
+
+  private void updateSelectedTrack() {
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+  }
+
+  private void setNextChunkCached(Format format) {
+    when(mockCache.isCached(eq(getUri(format).toString()), anyLong(), anyLong())).thenReturn(true);
+  }
+
+  private static MediaChunkIterator chunkIterator(Format format) {
+    MediaChunkIterator iterator = mock(MediaChunkIterator.class);
+    when(iterator.next()).thenReturn(true);
+    when(iterator.getDataSpec())
+        .thenReturn(new DataSpec(getUri(format), /* position= */ 0, /* length= */ 100));
+    return iterator;
+  }
+
+  private static Uri getUri(Format format) {
+    return Uri.parse("https://test.test/" + format.bitrate + "/segment1.m4s");
+  }
+
+  private static Format videoFormat(int bitrate, int width, int height) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .setWidth(width)
+        .setHeight(height)
+        .build();
+  }
+}
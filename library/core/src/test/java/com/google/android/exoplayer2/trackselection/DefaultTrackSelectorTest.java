@@ -1630,6 +1630,83 @@ public final class DefaultTrackSelectorTest {
     assertFixedSelection(result.selections[0], trackGroups, formatAac);
   }
 
+  /**
+   * Benchmarks repeated selections for a synthetic manifest with 500 tracks, as seen for live
+   * streams with many languages and qualities. Asserts that format support is only queried once
+   * per format and renderer.
+   */
+  @Test
+  public void selectTracks_withManyTracks_queriesFormatSupportOncePerFormatAndRenderer()
+      throws ExoPlaybackException {
+    String[] languages = {"en", "en-us", "fr", "fr-ca", "de", "es", "it", "ja", "zh-hans", "pt"};
+    // One adaptive video group with 100 tracks.
+    Format[] videoFormats = new Format[100];
+    for (int i = 0; i < videoFormats.length; i++) {
+      videoFormats[i] =
+          VIDEO_FORMAT
+              .buildUpon()
+              .setId("video" + i)
+              .setWidth(192 + 16 * i)
+              .setHeight((192 + 16 * i) * 9 / 16)
+              .setAverageBitrate(100_000 * (i + 1))
+              .build();
+    }
+    TrackGroup[] trackGroups = new TrackGroup[1 + languages.length + 200];
+    trackGroups[0] = new TrackGroup(videoFormats);
+    // One audio group with 20 tracks per language.
+    for (int i = 0; i < languages.length; i++) {
+      Format[] audioFormats = new Format[20];
+      for (int j = 0; j < audioFormats.length; j++) {
+        audioFormats[j] =
+            AUDIO_FORMAT
+                .buildUpon()
+                .setId("audio" + i + "_" + j)
+                .setLanguage(languages[i])
+                .setAverageBitrate(32_000 * (j + 1))
+                .build();
+      }
+      trackGroups[1 + i] = new TrackGroup(audioFormats);
+    }
+    // 200 single track text groups.
+    for (int i = 0; i < 200; i++) {
+      trackGroups[1 + languages.length + i] =
+          new TrackGroup(
+              TEXT_FORMAT
+                  .buildUpon()
+                  .setId("text" + i)
+                  .setLanguage(languages[i % languages.length])
+                  .build());
+    }
+    TrackGroupArray trackGroupArray = new TrackGroupArray(trackGroups);
+    FakeRendererCapabilities videoCapabilities = new FakeRendererCapabilities(C.TRACK_TYPE_VIDEO);
+    FakeRendererCapabilities audioCapabilities = new FakeRendererCapabilities(C.TRACK_TYPE_AUDIO);
+    FakeRendererCapabilities textCapabilities = new FakeRendererCapabilities(C.TRACK_TYPE_TEXT);
+    RendererCapabilities[] rendererCapabilities =
+        new RendererCapabilities[] {videoCapabilities, audioCapabilities, textCapabilities};
+    trackSelector.setParameters(trackSelector.buildUponParameters().clearViewportSizeConstraints());
+
+    int selectionCount = 200;
+    for (int i = 0; i < selectionCount; i++) {
+      String language = languages[i % languages.length];
+      trackSelector.setParameters(
+          trackSelector
+              .buildUponParameters()
+              .setPreferredAudioLanguage(language)
+              .setPreferredTextLanguage(language));
+      TrackSelectorResult result =
+          trackSelector.selectTracks(rendererCapabilities, trackGroupArray, periodId, TIMELINE);
+
+      assertThat(result.selections[0].getTrackGroup()).isEqualTo(trackGroups[0]);
+      assertThat(result.selections[0].length()).isEqualTo(videoFormats.length);
+      assertThat(result.selections[1].getFormat(0).language).isEqualTo(language);
+      assertThat(result.selections[2].getFormat(0).language).isEqualTo(language);
+    }
+
+    assertThat(videoCapabilities.supportsFormatCallCount).isEqualTo(500);
+    assertThat(audioCapabilities.supportsFormatCallCount).isEqualTo(500);
+    assertThat(textCapabilities.supportsFormatCallCount).isEqualTo(500);
+  }
+
   private static void assertSelections(TrackSelectorResult result, TrackSelection[] expected) {
     assertThat(result.length).isEqualTo(expected.length);
     for (int i = 0; i < expected.length; i++) {
@@ -1770,6 +1847,8 @@ public final class DefaultTrackSelectorTest {
     private final int trackType;
     @Capabilities private final int supportValue;
 
+    public int supportsFormatCallCount;
+
     /**
      * Returns {@link FakeRendererCapabilities} that advertises adaptive support for all tracks of
      * the given type.
@@ -1810,6 +1889,7 @@ public final class DefaultTrackSelectorTest {
     @Override
     @Capabilities
     public int supportsFormat(Format format) {
+      supportsFormatCallCount++;
       return MimeTypes.getTrackType(format.sampleMimeType) == trackType
           ? supportValue
           : RendererCapabilities.create(C.FORMAT_UNSUPPORTED_TYPE);
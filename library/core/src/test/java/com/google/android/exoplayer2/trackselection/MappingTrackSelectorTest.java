@@ -125,6 +125,50 @@ public final class MappingTrackSelectorTest {
     trackSelector.assertMappedTrackGroups(2, METADATA_TRACK_GROUP);
   }
 
+  @Test
+  public void selectTracks_repeatedWithSameFormats_queriesFormatSupportOnce()
+      throws ExoPlaybackException {
+    FakeMappingTrackSelector trackSelector = new FakeMappingTrackSelector();
+    FakeRendererCapabilities videoCapabilities = new FakeRendererCapabilities(C.TRACK_TYPE_VIDEO);
+    FakeRendererCapabilities audioCapabilities = new FakeRendererCapabilities(C.TRACK_TYPE_AUDIO);
+    RendererCapabilities[] rendererCapabilities =
+        new RendererCapabilities[] {videoCapabilities, audioCapabilities};
+    TrackGroupArray trackGroups = new TrackGroupArray(VIDEO_TRACK_GROUP, AUDIO_TRACK_GROUP);
+
+    trackSelector.selectTracks(rendererCapabilities, trackGroups, periodId, TIMELINE);
+    trackSelector.selectTracks(rendererCapabilities, trackGroups, periodId, TIMELINE);
+
+    trackSelector.assertMappedTrackGroups(/* rendererIndex= */ 0, VIDEO_TRACK_GROUP);
+    trackSelector.assertMappedTrackGroups(/* rendererIndex= */ 1, AUDIO_TRACK_GROUP);
+    assertThat(videoCapabilities.supportsFormatCallCount).isEqualTo(2);
+    assertThat(audioCapabilities.supportsFormatCallCount).isEqualTo(2);
+  }
+
+  @Test
+  public void selectTracks_withDifferentRendererCapabilities_queriesFormatSupportAgain()
+      throws ExoPlaybackException {
+    FakeMappingTrackSelector trackSelector = new FakeMappingTrackSelector();
+    FakeRendererCapabilities videoCapabilities = new FakeRendererCapabilities(C.TRACK_TYPE_VIDEO);
+    FakeRendererCapabilities audioCapabilities = new FakeRendererCapabilities(C.TRACK_TYPE_AUDIO);
+    TrackGroupArray trackGroups = new TrackGroupArray(VIDEO_TRACK_GROUP, AUDIO_TRACK_GROUP);
+
+    trackSelector.selectTracks(
+        new RendererCapabilities[] {videoCapabilities, audioCapabilities},
+        trackGroups,
+        periodId,
+        TIMELINE);
+    trackSelector.selectTracks(
+        new RendererCapabilities[] {audioCapabilities, videoCapabilities},
+        trackGroups,
+        periodId,
+        TIMELINE);
+
+    trackSelector.assertMappedTrackGroups(/* rendererIndex= */ 0, AUDIO_TRACK_GROUP);
+    trackSelector.assertMappedTrackGroups(/* rendererIndex= */ 1, VIDEO_TRACK_GROUP);
+    assertThat(videoCapabilities.supportsFormatCallCount).isEqualTo(4);
+    assertThat(audioCapabilities.supportsFormatCallCount).isEqualTo(4);
+  }
+
   private static TrackGroup buildTrackGroup(String sampleMimeType) {
     return new TrackGroup(new Format.Builder().setSampleMimeType(sampleMimeType).build());
   }
@@ -160,12 +204,15 @@ public final class MappingTrackSelectorTest {
   }
 
   /**
-   * A {@link RendererCapabilities} that advertises adaptive support for all tracks of a given type.
+   * A {@link RendererCapabilities} that advertises adaptive support for all tracks of a given type,
+   * and counts the number of times format support is queried.
    */
   private static final class FakeRendererCapabilities implements RendererCapabilities {
 
     private final int trackType;
 
+    public int supportsFormatCallCount;
+
     public FakeRendererCapabilities(int trackType) {
       this.trackType = trackType;
     }
@@ -183,6 +230,7 @@ public final class MappingTrackSelectorTest {
     @Override
     @Capabilities
     public int supportsFormat(Format format) throws ExoPlaybackException {
+      supportsFormatCallCount++;
       return MimeTypes.getTrackType(format.sampleMimeType) == trackType
           ? RendererCapabilities.create(
               C.FORMAT_HANDLED, ADAPTIVE_SEAMLESS, TUNNELING_NOT_SUPPORTED)
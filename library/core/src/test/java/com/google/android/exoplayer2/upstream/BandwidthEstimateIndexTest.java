@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.database.DatabaseIOException;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests {@link BandwidthEstimateIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class BandwidthEstimateIndexTest {
+
+  @Test
+  public void initiallyEmpty() throws DatabaseIOException {
+    BandwidthEstimateIndex index =
+        new BandwidthEstimateIndex(TestUtil.getInMemoryDatabaseProvider());
+
+    assertThat(index.getAll(/* minUpdateTimestampMs= */ 0)).isEmpty();
+  }
+
+  @Test
+  public void set_storesEstimateForAllKeys() throws DatabaseIOException {
+    BandwidthEstimateIndex index =
+        new BandwidthEstimateIndex(TestUtil.getInMemoryDatabaseProvider());
+
+    index.set(
+        ImmutableList.of("US/2/abc", "US/2"),
+        /* bitrateEstimate= */ 5_000_000,
+        /* updateTimestampMs= */ 1_000);
+
+    assertThat(index.getAll(/* minUpdateTimestampMs= */ 0))
+        .containsExactly("US/2/abc", 5_000_000L, "US/2", 5_000_000L);
+  }
+
+  @Test
+  public void set_replacesPreviousEstimate() throws DatabaseIOException {
+    BandwidthEstimateIndex index =
+        new BandwidthEstimateIndex(TestUtil.getInMemoryDatabaseProvider());
+
+    index.set(
+        ImmutableList.of("US/2"), /* bitrateEstimate= */ 5_000_000, /* updateTimestampMs= */ 1_000);
+    index.set(
+        ImmutableList.of("US/2"), /* bitrateEstimate= */ 3_000_000, /* updateTimestampMs= */ 2_000);
+
+    assertThat(index.getAll(/* minUpdateTimestampMs= */ 0)).containsExactly("US/2", 3_000_000L);
+  }
+
+  @Test
+  public void getAll_excludesEstimatesUpdatedBeforeMinTimestamp() throws DatabaseIOException {
+    BandwidthEstimateIndex index =
+        new BandwidthEstimateIndex(TestUtil.getInMemoryDatabaseProvider());
+    index.set(
+        ImmutableList.of("US/2"), /* bitrateEstimate= */ 5_000_000, /* updateTimestampMs= */ 1_000);
+    index.set(
+        ImmutableList.of("US/5"), /* bitrateEstimate= */ 3_000_000, /* updateTimestampMs= */ 2_000);
+
+    assertThat(index.getAll(/* minUpdateTimestampMs= */ 2_000)).containsExactly("US/5", 3_000_000L);
+  }
+
+  @Test
+  public void estimatesArePersistedInDatabase() throws DatabaseIOException {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    new BandwidthEstimateIndex(databaseProvider)
+        .set(
+            ImmutableList.of("US/2"),
+            /* bitrateEstimate= */ 5_000_000,
+            /* updateTimestampMs= */ 1_000);
+
+    BandwidthEstimateIndex index = new BandwidthEstimateIndex(databaseProvider);
+
+    assertThat(index.getAll(/* minUpdateTimestampMs= */ 0))
+        .isEqualTo(ImmutableMap.of("US/2", 5_000_000L));
+  }
+}
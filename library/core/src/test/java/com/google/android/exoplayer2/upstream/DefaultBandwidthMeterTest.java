@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.upstream;
 
 import static android.net.NetworkInfo.State.CONNECTED;
 import static android.net.NetworkInfo.State.DISCONNECTED;
+import static com.google.android.exoplayer2.upstream.DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT;
 import static com.google.common.truth.Truth.assertThat;
 
 import android.content.Context;
@@ -28,8 +29,16 @@ import android.telephony.TelephonyManager;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.testutil.AbrSimulator;
+import com.google.android.exoplayer2.testutil.FakeAdaptiveDataSet;
 import com.google.android.exoplayer2.testutil.FakeClock;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.util.MimeTypes;
 import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
@@ -559,6 +568,256 @@ public final class DefaultBandwidthMeterTest {
     assertThat(initialEstimateWithoutBuilder).isLessThan(50_000_000L);
   }
 
+  @Test
+  public void setBandwidthStatistic_usesStatisticForEstimate() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthStatistic(new SlidingAverageBandwidthStatistic())
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 250_000, 1_000);
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 750_000, 1_000);
+
+    // The median would be the bitrate of the larger transfer.
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void getTimeToFirstByteEstimateUs_returnsMedianTimeFromInitializingToFirstByte() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+    assertThat(bandwidthMeter.getTimeToFirstByteEstimateUs()).isEqualTo(C.TIME_UNSET);
+
+    for (int timeToFirstByteMs : new int[] {100, 300, 200}) {
+      bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+      clock.advanceTime(timeToFirstByteMs / 2);
+      bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      clock.advanceTime(timeToFirstByteMs / 2);
+      bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, 1000);
+      clock.advanceTime(1000);
+      bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, 1000);
+      bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+    }
+
+    assertThat(bandwidthMeter.getTimeToFirstByteEstimateUs()).isEqualTo(200_000);
+  }
+
+  @Test
+  public void setExcludeTimeToFirstByte_excludesTimeBeforeFirstByteFromSamples() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setExcludeTimeToFirstByte(true)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(1000);
+    bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, 1000);
+    clock.advanceTime(1000);
+    bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, 999_000);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    // All bytes are counted, over the time elapsed since the first byte.
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(8_000_000);
+    assertThat(bandwidthMeter.getTimeToFirstByteEstimateUs()).isEqualTo(1_000_000);
+  }
+
+  @Test
+  public void setExcludeTimeToFirstByte_withSingleReadTransfer_addsSampleWithAllBytes() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setExcludeTimeToFirstByte(true)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(500);
+    bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, 1_000_000);
+    clock.advanceTime(1000);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(8_000_000);
+    assertThat(bandwidthMeter.getTimeToFirstByteEstimateUs()).isEqualTo(500_000);
+  }
+
+  @Test
+  public void getThroughputCoefficientOfVariation_returnsRelativeStandardDeviationOfSamples() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 125_000, 1_000);
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 375_000, 1_000);
+    float throughputVariationAfterTwoSamples =
+        bandwidthMeter.getThroughputCoefficientOfVariation();
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 250_000, 1_000);
+
+    assertThat(throughputVariationAfterTwoSamples).isEqualTo(C.RATE_UNSET);
+    // The samples are at 1, 3 and 2 Mbps.
+    assertThat(bandwidthMeter.getThroughputCoefficientOfVariation())
+        .isWithin(0.001f)
+        .of((float) Math.sqrt(2.0 / 3) / 2);
+  }
+
+  @Test
+  public void setDatabaseProvider_restoresPersistedEstimateOnSameNetworkType() {
+    setActiveNetworkInfo(networkInfo4g);
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setDatabaseProvider(databaseProvider, Runnable::run)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 1_000_000, 2_000);
+
+    DefaultBandwidthMeter restoredBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setDatabaseProvider(databaseProvider, Runnable::run)
+            .setClock(clock)
+            .build();
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(4_000_000);
+    assertThat(restoredBandwidthMeter.getBitrateEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void setDatabaseProvider_doesNotRestorePersistedEstimateOnOtherNetworkType() {
+    setActiveNetworkInfo(networkInfo4g);
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setDatabaseProvider(databaseProvider, Runnable::run)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 1_000_000, 2_000);
+    setActiveNetworkInfo(networkInfoWifi);
+    long initialEstimateWifi =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .build()
+            .getBitrateEstimate();
+
+    DefaultBandwidthMeter restoredBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setDatabaseProvider(databaseProvider, Runnable::run)
+            .setClock(clock)
+            .build();
+
+    assertThat(restoredBandwidthMeter.getBitrateEstimate()).isEqualTo(initialEstimateWifi);
+  }
+
+  @Test
+  public void setDatabaseProvider_persistsEstimateOfPreviousNetworkOnNetworkTypeChange() {
+    setActiveNetworkInfo(networkInfo4g);
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setDatabaseProvider(databaseProvider, Runnable::run)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 1_000_000, 2_000);
+    // Not persisted immediately, as the previous estimate was persisted less than 10s ago.
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 2_000_000, 2_000);
+    simulateTransfer(bandwidthMeter, clock, dataSource, dataSpec, /* bytes= */ 2_000_000, 2_000);
+    long lastEstimate4g = bandwidthMeter.getBitrateEstimate();
+
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_WIFI);
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_4G);
+
+    assertThat(lastEstimate4g).isEqualTo(8_000_000);
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(lastEstimate4g);
+  }
+
+  @Test
+  public void bandwidthStatistics_withBurstyTrace_averagesRebufferLessThanMedian() {
+    AbrSimulator simulator = createAbrSimulator(/* chunkDurationUs= */ 4_000_000);
+    // Short bursts of high bandwidth followed by long periods of low bandwidth and short outages.
+    AbrSimulator.BandwidthTrace trace =
+        new AbrSimulator.BandwidthTrace(
+            /* durationsMs= */ new long[] {4_000, 12_000, 2_000},
+            /* bitrates= */ new long[] {8_000_000, 400_000, 0});
+
+    AbrSimulator.Result medianResult =
+        simulateWithBandwidthMeter(
+            simulator,
+            trace,
+            new SlidingPercentileBandwidthStatistic(DEFAULT_SLIDING_WINDOW_MAX_WEIGHT),
+            /* excludeTimeToFirstByte= */ false);
+    AbrSimulator.Result slidingAverageResult =
+        simulateWithBandwidthMeter(
+            simulator,
+            trace,
+            new SlidingAverageBandwidthStatistic(),
+            /* excludeTimeToFirstByte= */ false);
+    AbrSimulator.Result exponentialAverageResult =
+        simulateWithBandwidthMeter(
+            simulator,
+            trace,
+            new ExponentialWeightedAverageBandwidthStatistic(),
+            /* excludeTimeToFirstByte= */ false);
+
+    assertThat(medianResult.rebufferCount).isGreaterThan(0);
+    assertThat(slidingAverageResult.getRebufferRatio())
+        .isLessThan(medianResult.getRebufferRatio());
+    assertThat(exponentialAverageResult.getRebufferRatio())
+        .isLessThan(medianResult.getRebufferRatio());
+  }
+
+  @Test
+  public void setExcludeTimeToFirstByte_withShortChunksAndDelayedResponses_selectsHigherBitrates() {
+    AbrSimulator simulator = createAbrSimulator(/* chunkDurationUs= */ 1_000_000);
+    AbrSimulator.BandwidthTrace trace =
+        new AbrSimulator.BandwidthTrace(
+            /* durationsMs= */ new long[] {1_000},
+            /* bitrates= */ new long[] {3_000_000},
+            /* timeToFirstByteMs= */ 300);
+
+    AbrSimulator.Result includedResult =
+        simulateWithBandwidthMeter(
+            simulator,
+            trace,
+            new SlidingPercentileBandwidthStatistic(DEFAULT_SLIDING_WINDOW_MAX_WEIGHT),
+            /* excludeTimeToFirstByte= */ false);
+    AbrSimulator.Result excludedResult =
+        simulateWithBandwidthMeter(
+            simulator,
+            trace,
+            new SlidingPercentileBandwidthStatistic(DEFAULT_SLIDING_WINDOW_MAX_WEIGHT),
+            /* excludeTimeToFirstByte= */ true);
+
+    assertThat(excludedResult.averageBitrate).isGreaterThan(2 * includedResult.averageBitrate);
+    assertThat(excludedResult.rebufferCount).isEqualTo(0);
+  }
+
   private void setActiveNetworkInfo(NetworkInfo networkInfo) {
     Shadows.shadowOf(connectivityManager).setActiveNetworkInfo(networkInfo);
   }
@@ -567,6 +826,59 @@ public final class DefaultBandwidthMeterTest {
     Shadows.shadowOf(telephonyManager).setNetworkCountryIso(countryIso);
   }
 
+  private static void simulateTransfer(
+      DefaultBandwidthMeter bandwidthMeter,
+      FakeClock clock,
+      DataSource dataSource,
+      DataSpec dataSpec,
+      int bytes,
+      long elapsedMs) {
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(elapsedMs);
+    bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, bytes);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+  }
+
+  private static AbrSimulator createAbrSimulator(long chunkDurationUs) {
+    TrackGroup trackGroup =
+        new TrackGroup(
+            videoFormat(/* bitrate= */ 300_000),
+            videoFormat(/* bitrate= */ 750_000),
+            videoFormat(/* bitrate= */ 1_200_000),
+            videoFormat(/* bitrate= */ 2_400_000),
+            videoFormat(/* bitrate= */ 4_800_000));
+    return new AbrSimulator(
+        trackGroup,
+        /* mediaDurationUs= */ 600_000_000,
+        new FakeAdaptiveDataSet.Factory(
+            chunkDurationUs, /* bitratePercentStdDev= */ 10, new Random(/* seed= */ 0)));
+  }
+
+  private static AbrSimulator.Result simulateWithBandwidthMeter(
+      AbrSimulator simulator,
+      AbrSimulator.BandwidthTrace trace,
+      BandwidthStatistic bandwidthStatistic,
+      boolean excludeTimeToFirstByte) {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setInitialBitrateEstimate(AbrSimulator.DEFAULT_INITIAL_BITRATE_ESTIMATE)
+            .setBandwidthStatistic(bandwidthStatistic)
+            .setExcludeTimeToFirstByte(excludeTimeToFirstByte)
+            .setResetOnNetworkTypeChange(false)
+            .setClock(clock)
+            .build();
+    return simulator.simulate(new AdaptiveTrackSelection.Factory(), trace, bandwidthMeter, clock);
+  }
+
+  private static Format videoFormat(int bitrate) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .build();
+  }
+
   private static long[] simulateTransfers(DefaultBandwidthMeter bandwidthMeter, FakeClock clock) {
     long[] bitrateEstimates = new long[SIMULATED_TRANSFER_COUNT];
     Random random = new Random(/* seed= */ 0);
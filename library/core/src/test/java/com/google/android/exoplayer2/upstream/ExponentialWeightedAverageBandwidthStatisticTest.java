@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ExponentialWeightedAverageBandwidthStatistic}. */
+@RunWith(AndroidJUnit4.class)
+public final class ExponentialWeightedAverageBandwidthStatisticTest {
+
+  @Test
+  public void getBandwidthEstimate_withoutSamples_returnsEstimateNotAvailable() {
+    ExponentialWeightedAverageBandwidthStatistic statistic =
+        new ExponentialWeightedAverageBandwidthStatistic();
+
+    assertThat(statistic.getBandwidthEstimate())
+        .isEqualTo(BandwidthStatistic.ESTIMATE_NOT_AVAILABLE);
+  }
+
+  @Test
+  public void getBandwidthEstimate_withSingleSample_returnsSampleBitrate() {
+    ExponentialWeightedAverageBandwidthStatistic statistic =
+        new ExponentialWeightedAverageBandwidthStatistic();
+
+    statistic.addSample(/* bytes= */ 125_000, /* elapsedMs= */ 100);
+
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(10_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_afterDecrease_followsFastAverage() {
+    ExponentialWeightedAverageBandwidthStatistic statistic =
+        new ExponentialWeightedAverageBandwidthStatistic(
+            /* fastHalfLifeMs= */ 1_000, /* slowHalfLifeMs= */ 10_000);
+    statistic.addSample(/* bytes= */ 10_000_000, /* elapsedMs= */ 10_000);
+
+    statistic.addSample(/* bytes= */ 125_000, /* elapsedMs= */ 1_000);
+
+    // The fast average weights the samples at 8 Mbps and 1 Mbps almost equally.
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(4_498_290);
+  }
+
+  @Test
+  public void getBandwidthEstimate_afterIncrease_followsSlowAverage() {
+    ExponentialWeightedAverageBandwidthStatistic statistic =
+        new ExponentialWeightedAverageBandwidthStatistic(
+            /* fastHalfLifeMs= */ 1_000, /* slowHalfLifeMs= */ 10_000);
+    statistic.addSample(/* bytes= */ 125_000, /* elapsedMs= */ 10_000);
+
+    statistic.addSample(/* bytes= */ 10_125_000, /* elapsedMs= */ 10_000);
+
+    // The slow average weights the sample at 0.1 Mbps half as much as the one at 8.1 Mbps.
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(5_433_333);
+  }
+
+  @Test
+  public void reset_discardsSamples() {
+    ExponentialWeightedAverageBandwidthStatistic statistic =
+        new ExponentialWeightedAverageBandwidthStatistic();
+    statistic.addSample(/* bytes= */ 125_000, /* elapsedMs= */ 100);
+
+    statistic.reset();
+
+    assertThat(statistic.getBandwidthEstimate())
+        .isEqualTo(BandwidthStatistic.ESTIMATE_NOT_AVAILABLE);
+    statistic.addSample(/* bytes= */ 12_500, /* elapsedMs= */ 100);
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(1_000_000);
+  }
+}
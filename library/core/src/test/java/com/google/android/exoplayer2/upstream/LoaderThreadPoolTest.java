@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.robolectric.RobolectricUtil.runMainLooperUntil;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link LoaderThreadPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoaderThreadPoolTest {
+
+  private LoaderThreadPool loaderThreadPool;
+  private List<String> loadOrder;
+  private List<String> loadThreadNames;
+
+  @Before
+  public void setUp() {
+    loaderThreadPool = new LoaderThreadPool(/* threadCount= */ 1);
+    loadOrder = Collections.synchronizedList(new ArrayList<>());
+    loadThreadNames = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  @After
+  public void tearDown() {
+    loaderThreadPool.release();
+  }
+
+  @Test
+  public void startLoading_withMultipleLoaders_runsLoadsOnSharedThread() throws Exception {
+    Loader loader1 = new Loader(loaderThreadPool);
+    Loader loader2 = new Loader(loaderThreadPool);
+
+    loader1.startLoading(
+        new RecordingLoadable("1"), new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+    loader2.startLoading(
+        new RecordingLoadable("2"), new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> !loader1.isLoading() && !loader2.isLoading());
+    loader1.release();
+    loader2.release();
+
+    assertThat(loadOrder).containsExactly("1", "2").inOrder();
+    assertThat(loadThreadNames).hasSize(2);
+    assertThat(loadThreadNames.get(0)).startsWith("ExoPlayer:LoaderThreadPool");
+    assertThat(loadThreadNames.get(1)).isEqualTo(loadThreadNames.get(0));
+  }
+
+  @Test
+  public void startLoading_whilePoolIsBusy_runsLoadsInStartOrder() throws Exception {
+    Loader loader1 = new Loader(loaderThreadPool);
+    Loader loader2 = new Loader(loaderThreadPool);
+    ConditionVariable firstLoadStarted = new ConditionVariable();
+    ConditionVariable allowFirstLoadToFinish = new ConditionVariable();
+    RecordingLoadable blockingLoadable =
+        new RecordingLoadable("1a") {
+          @Override
+          public void load() throws IOException {
+            firstLoadStarted.open();
+            allowFirstLoadToFinish.blockUninterruptible();
+            super.load();
+          }
+        };
+    NoOpCallback startNextLoadCallback =
+        new NoOpCallback() {
+          @Override
+          public void onLoadCompleted(
+              RecordingLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+            if (loadable == blockingLoadable) {
+              loader1.startLoading(
+                  new RecordingLoadable("1b"), new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+            }
+          }
+        };
+
+    loader1.startLoading(blockingLoadable, startNextLoadCallback, /* defaultMinRetryCount= */ 0);
+    firstLoadStarted.block();
+    loader2.startLoading(
+        new RecordingLoadable("2"), new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+    allowFirstLoadToFinish.open();
+    runMainLooperUntil(() -> loadOrder.size() == 3);
+    loader1.release();
+    loader2.release();
+
+    // The second load of the first loader must wait for the load of the second loader, which was
+    // started before it.
+    assertThat(loadOrder).containsExactly("1a", "2", "1b").inOrder();
+  }
+
+  @Test
+  public void release_withReleaseCallback_callsCallbackAfterCanceledLoadFinishes()
+      throws Exception {
+    Loader loader = new Loader(loaderThreadPool);
+    ConditionVariable loadStarted = new ConditionVariable();
+    RecordingLoadable blockingLoadable =
+        new RecordingLoadable("1") {
+          private final ConditionVariable canceled = new ConditionVariable();
+
+          @Override
+          public void cancelLoad() {
+            canceled.open();
+          }
+
+          @Override
+          public void load() throws IOException {
+            loadStarted.open();
+            canceled.blockUninterruptible();
+            super.load();
+          }
+        };
+    ConditionVariable released = new ConditionVariable();
+
+    loader.startLoading(blockingLoadable, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+    loadStarted.block();
+    loader.release(
+        () -> {
+          loadOrder.add("released");
+          released.open();
+        });
+    released.block();
+
+    assertThat(loadOrder).containsExactly("1", "released").inOrder();
+  }
+
+  private class RecordingLoadable implements Loader.Loadable {
+
+    private final String name;
+
+    public RecordingLoadable(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void cancelLoad() {
+      // Do nothing.
+    }
+
+    @Override
+    public void load() throws IOException {
+      loadThreadNames.add(Thread.currentThread().getName());
+      loadOrder.add(name);
+    }
+  }
+
+  private static class NoOpCallback implements Loader.Callback<RecordingLoadable> {
+
+    @Override
+    public void onLoadCompleted(
+        RecordingLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {}
+
+    @Override
+    public void onLoadCanceled(
+        RecordingLoadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        boolean released) {}
+
+    @Override
+    public LoadErrorAction onLoadError(
+        RecordingLoadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      return Loader.DONT_RETRY;
+    }
+  }
+}
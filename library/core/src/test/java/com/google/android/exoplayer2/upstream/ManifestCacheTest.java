@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ManifestCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class ManifestCacheTest {
+
+  private static final Uri MANIFEST_URI = Uri.parse("https://test.test/manifest.mpd");
+  private static final long TTL_MS = 1000;
+
+  private FakeClock clock;
+  private FakeDataSource dataSource;
+  private ManifestCache manifestCache;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    dataSource =
+        new FakeDataSource(
+            new FakeDataSet().setData(MANIFEST_URI, Util.getUtf8Bytes("manifest")));
+    manifestCache =
+        new ManifestCache(/* maxEntryCount= */ 2, /* defaultTtlMs= */ TTL_MS * 10, clock);
+  }
+
+  @Test
+  public void load_withinTtl_servesCachedManifest() throws Exception {
+    ParsingLoadable<String> firstLoadable = createLoadable(new StringParser(), TTL_MS);
+    ParsingLoadable<String> secondLoadable = createLoadable(new StringParser(), TTL_MS);
+
+    firstLoadable.load();
+    clock.advanceTime(TTL_MS - 1);
+    secondLoadable.load();
+
+    assertThat(secondLoadable.getResult()).isSameInstanceAs(firstLoadable.getResult());
+    assertThat(secondLoadable.getUri()).isEqualTo(MANIFEST_URI);
+    assertThat(secondLoadable.bytesLoaded()).isEqualTo(0);
+    assertThat(dataSource.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(manifestCache.getLoadCount()).isEqualTo(1);
+    assertThat(manifestCache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_afterTtl_reloadsManifest() throws Exception {
+    ParsingLoadable<String> firstLoadable = createLoadable(new StringParser(), TTL_MS);
+    ParsingLoadable<String> secondLoadable = createLoadable(new StringParser(), TTL_MS);
+
+    firstLoadable.load();
+    clock.advanceTime(TTL_MS);
+    secondLoadable.load();
+
+    assertThat(secondLoadable.getResult()).isEqualTo("manifest");
+    assertThat(secondLoadable.getResult()).isNotSameInstanceAs(firstLoadable.getResult());
+    assertThat(dataSource.getAndClearOpenedDataSpecs()).hasLength(2);
+    assertThat(manifestCache.getLoadCount()).isEqualTo(2);
+    assertThat(manifestCache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void load_withUnsetTtl_usesDefaultTtl() throws Exception {
+    createLoadable(new StringParser(), C.TIME_UNSET).load();
+    clock.advanceTime(TTL_MS * 10 - 1);
+    createLoadable(new StringParser(), C.TIME_UNSET).load();
+
+    assertThat(manifestCache.getLoadCount()).isEqualTo(1);
+    assertThat(manifestCache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_withZeroTtl_doesNotCacheManifest() throws Exception {
+    createLoadable(new StringParser(), /* ttlMs= */ 0).load();
+    createLoadable(new StringParser(), /* ttlMs= */ 0).load();
+
+    assertThat(manifestCache.getLoadCount()).isEqualTo(2);
+    assertThat(manifestCache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void load_withDifferentParserClass_doesNotShareManifest() throws Exception {
+    createLoadable(new StringParser(), TTL_MS).load();
+    ParsingLoadable<String> loadable = createLoadable(new PrefixingStringParser(), TTL_MS);
+    loadable.load();
+
+    assertThat(loadable.getResult()).isEqualTo("prefix:manifest");
+    assertThat(manifestCache.getLoadCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void load_afterInvalidate_reloadsManifest() throws Exception {
+    createLoadable(new StringParser(), TTL_MS).load();
+    manifestCache.invalidate(MANIFEST_URI);
+    createLoadable(new StringParser(), TTL_MS).load();
+
+    assertThat(manifestCache.getLoadCount()).isEqualTo(2);
+    assertThat(manifestCache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void load_withFailedLoad_doesNotCacheFailure() throws Exception {
+    dataSource
+        .getDataSet()
+        .newData(MANIFEST_URI)
+        .appendReadError(new IOException())
+        .appendReadData(Util.getUtf8Bytes("manifest"));
+
+    assertThrows(IOException.class, () -> createLoadable(new StringParser(), TTL_MS).load());
+    ParsingLoadable<String> loadable = createLoadable(new StringParser(), TTL_MS);
+    loadable.load();
+
+    assertThat(loadable.getResult()).isEqualTo("manifest");
+    assertThat(manifestCache.getLoadCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_concurrentLoads_areCoalesced() throws Exception {
+    ConditionVariable parseStarted = new ConditionVariable();
+    ConditionVariable allowParse = new ConditionVariable();
+    StringParser blockingParser =
+        new StringParser() {
+          @Override
+          public String parse(Uri uri, InputStream inputStream) throws IOException {
+            parseStarted.open();
+            allowParse.blockUninterruptible();
+            return super.parse(uri, inputStream);
+          }
+        };
+    ParsingLoadable<String> firstLoadable = createLoadable(blockingParser, TTL_MS);
+    ParsingLoadable<String> secondLoadable = createLoadable(blockingParser, TTL_MS);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+
+    Thread firstThread = new Thread(() -> loadCatchingErrors(firstLoadable, error));
+    firstThread.start();
+    parseStarted.block();
+    Thread secondThread = new Thread(() -> loadCatchingErrors(secondLoadable, error));
+    secondThread.start();
+    // Only let the first load finish once the second one is waiting for it.
+    while (manifestCache.getWaitingLoadCount() == 0) {
+      Thread.sleep(/* millis= */ 1);
+    }
+    allowParse.open();
+    firstThread.join();
+    secondThread.join();
+
+    assertThat(error.get()).isNull();
+    assertThat(secondLoadable.getResult()).isSameInstanceAs(firstLoadable.getResult());
+    assertThat(dataSource.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(manifestCache.getLoadCount()).isEqualTo(1);
+    assertThat(manifestCache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_exceedingMaxEntryCount_evictsLeastRecentlyUsed() throws Exception {
+    Uri otherUri1 = Uri.parse("https://test.test/other1.mpd");
+    Uri otherUri2 = Uri.parse("https://test.test/other2.mpd");
+    dataSource.getDataSet().setData(otherUri1, Util.getUtf8Bytes("other1"));
+    dataSource.getDataSet().setData(otherUri2, Util.getUtf8Bytes("other2"));
+
+    createLoadable(new StringParser(), TTL_MS).load();
+    createLoadable(otherUri1).load();
+    createLoadable(otherUri2).load();
+    createLoadable(new StringParser(), TTL_MS).load();
+
+    assertThat(manifestCache.getLoadCount()).isEqualTo(4);
+  }
+
+  private ParsingLoadable<String> createLoadable(StringParser parser, long ttlMs) {
+    return new ParsingLoadable<>(
+        dataSource, MANIFEST_URI, C.DATA_TYPE_MANIFEST, parser, manifestCache, manifest -> ttlMs);
+  }
+
+  private ParsingLoadable<String> createLoadable(Uri uri) {
+    return new ParsingLoadable<>(
+        dataSource,
+        uri,
+        C.DATA_TYPE_MANIFEST,
+        new StringParser(),
+        manifestCache,
+        manifest -> TTL_MS);
+  }
+
+  private static void loadCatchingErrors(
+      ParsingLoadable<String> loadable, AtomicReference<Throwable> error) {
+    try {
+      loadable.load();
+    } catch (Throwable e) {
+      error.set(e);
+    }
+  }
+
+  private static class StringParser implements ParsingLoadable.Parser<String> {
+
+    @Override
+    public String parse(Uri uri, InputStream inputStream) throws IOException {
+      return Util.fromUtf8Bytes(Util.toByteArray(inputStream));
+    }
+  }
+
+  private static final class PrefixingStringParser extends StringParser {
+
+    @Override
+    public String parse(Uri uri, InputStream inputStream) throws IOException {
+      return "prefix:" + super.parse(uri, inputStream);
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.HttpDataSource.HttpDataSourceException;
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+/** Unit tests for {@link MultiCdnDataSource} and {@link CdnSelector}. */
+@RunWith(AndroidJUnit4.class)
+public final class MultiCdnDataSourceTest {
+
+  private static final Uri CDN_A = Uri.parse("https://a.test/content/");
+  private static final Uri CDN_B = Uri.parse("https://b.test/content/");
+  private static final Uri SEGMENT_URI_A = Uri.parse("https://a.test/content/segment.m4s");
+  private static final Uri SEGMENT_URI_B = Uri.parse("https://b.test/content/segment.m4s");
+  private static final long EXCLUSION_DURATION_MS = 10_000;
+
+  private FakeClock clock;
+  private FakeDataSet fakeDataSet;
+  private Map<Uri, IOException> openErrors;
+  private CdnSelector cdnSelector;
+  private ExecutorService raceExecutor;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    fakeDataSet = new FakeDataSet();
+    openErrors = new HashMap<>();
+    cdnSelector = new CdnSelector(ImmutableList.of(CDN_A, CDN_B), EXCLUSION_DURATION_MS, clock);
+    raceExecutor = Executors.newFixedThreadPool(/* nThreads= */ 2);
+  }
+
+  @After
+  public void tearDown() {
+    raceExecutor.shutdown();
+  }
+
+  @Test
+  public void open_withPreferredCdnAvailable_readsFromPreferredCdn() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    fakeDataSet.setData(SEGMENT_URI_A, data).setData(SEGMENT_URI_B, data);
+    MultiCdnDataSource dataSource = createDataSource(/* raceExecutor= */ null);
+
+    byte[] readData = readFully(dataSource, new DataSpec(SEGMENT_URI_B));
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(cdnSelector.getCdnStats(0).requestCount).isEqualTo(1);
+    assertThat(cdnSelector.getCdnStats(0).bitrateEstimate)
+        .isNotEqualTo(CdnSelector.BITRATE_ESTIMATE_UNSET);
+    assertThat(cdnSelector.getCdnStats(1).requestCount).isEqualTo(0);
+  }
+
+  @Test
+  public void open_withFailingCdn_failsOverToOtherCdnAndExcludesFailingCdn() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    fakeDataSet.setData(SEGMENT_URI_B, data);
+    openErrors.put(SEGMENT_URI_A, createInvalidResponseCodeException(SEGMENT_URI_A, 503));
+    MultiCdnDataSource dataSource = createDataSource(/* raceExecutor= */ null);
+
+    byte[] readData = readFully(dataSource, new DataSpec(SEGMENT_URI_A));
+    int[] cdnOrderAfterError = cdnSelector.getCdnOrder();
+    clock.advanceTime(EXCLUSION_DURATION_MS);
+    int[] cdnOrderAfterExclusion = cdnSelector.getCdnOrder();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(cdnSelector.getCdnStats(0).errorCount).isEqualTo(1);
+    assertThat(cdnSelector.getCdnStats(0).errorRate).isGreaterThan(0f);
+    assertThat(cdnSelector.getCdnStats(1).errorCount).isEqualTo(0);
+    assertThat(cdnOrderAfterError).asList().containsExactly(1, 0).inOrder();
+    // CDN A has never delivered data, so it's tried first again once it's no longer excluded.
+    assertThat(cdnOrderAfterExclusion).asList().containsExactly(0, 1).inOrder();
+  }
+
+  @Test
+  public void open_withAllCdnsFailing_throwsError() {
+    openErrors.put(SEGMENT_URI_A, createInvalidResponseCodeException(SEGMENT_URI_A, 503));
+    openErrors.put(SEGMENT_URI_B, createInvalidResponseCodeException(SEGMENT_URI_B, 500));
+    MultiCdnDataSource dataSource = createDataSource(/* raceExecutor= */ null);
+
+    assertThrows(IOException.class, () -> dataSource.open(new DataSpec(SEGMENT_URI_A)));
+    assertThat(cdnSelector.getCdnStats(0).errorCount).isEqualTo(1);
+    assertThat(cdnSelector.getCdnStats(1).errorCount).isEqualTo(1);
+  }
+
+  @Test
+  public void open_withConnectionTimeout_failsOverToOtherCdn() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    fakeDataSet.setData(SEGMENT_URI_B, data);
+    openErrors.put(
+        SEGMENT_URI_A,
+        new HttpDataSourceException(
+            new SocketTimeoutException(),
+            new DataSpec(SEGMENT_URI_A),
+            HttpDataSourceException.TYPE_OPEN));
+    MultiCdnDataSource dataSource = createDataSource(/* raceExecutor= */ null);
+
+    byte[] readData = readFully(dataSource, new DataSpec(SEGMENT_URI_A));
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(cdnSelector.getCdnStats(0).errorCount).isEqualTo(1);
+  }
+
+  @Test
+  public void open_withClientError_throwsErrorWithoutFailingOver() {
+    fakeDataSet.setData(SEGMENT_URI_B, TestUtil.buildTestData(100));
+    openErrors.put(SEGMENT_URI_A, createInvalidResponseCodeException(SEGMENT_URI_A, 404));
+    MultiCdnDataSource dataSource = createDataSource(/* raceExecutor= */ null);
+
+    InvalidResponseCodeException error =
+        assertThrows(
+            InvalidResponseCodeException.class,
+            () -> dataSource.open(new DataSpec(SEGMENT_URI_A)));
+
+    assertThat(error.responseCode).isEqualTo(404);
+    assertThat(cdnSelector.getCdnStats(0).errorCount).isEqualTo(0);
+    assertThat(cdnSelector.getCdnStats(1).requestCount).isEqualTo(0);
+    assertThat(cdnSelector.getCdnOrder()).asList().containsExactly(0, 1).inOrder();
+  }
+
+  @Test
+  public void open_withUriNotBelongingToCdn_forwardsRequestUnchanged() throws Exception {
+    Uri otherUri = Uri.parse("https://other.test/segment.m4s");
+    byte[] data = TestUtil.buildTestData(100);
+    fakeDataSet.setData(otherUri, data);
+    MultiCdnDataSource dataSource = createDataSource(/* raceExecutor= */ null);
+
+    byte[] readData = readFully(dataSource, new DataSpec(otherUri));
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(cdnSelector.getCdnStats(0).requestCount).isEqualTo(0);
+    assertThat(cdnSelector.getCdnStats(1).requestCount).isEqualTo(0);
+  }
+
+  @Test
+  public void getCdnIndex_comparesSchemeAuthorityAndWholePathSegments() {
+    assertThat(cdnSelector.getCdnIndex(SEGMENT_URI_B)).isEqualTo(1);
+    assertThat(cdnSelector.getCdnIndex(Uri.parse("HTTPS://A.test/content/segment.m4s")))
+        .isEqualTo(0);
+    assertThat(cdnSelector.getCdnIndex(Uri.parse("https://a.test.other/content/segment.m4s")))
+        .isEqualTo(C.INDEX_UNSET);
+    assertThat(cdnSelector.getCdnIndex(Uri.parse("https://a.test:8080/content/segment.m4s")))
+        .isEqualTo(C.INDEX_UNSET);
+    assertThat(cdnSelector.getCdnIndex(Uri.parse("http://a.test/content/segment.m4s")))
+        .isEqualTo(C.INDEX_UNSET);
+    assertThat(cdnSelector.getCdnIndex(Uri.parse("https://a.test/content2/segment.m4s")))
+        .isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void getCdnUri_replacesBaseAndKeepsRelativePathAndQuery() {
+    CdnSelector cdnSelector =
+        new CdnSelector(
+            ImmutableList.of(Uri.parse("https://a.test/content"), Uri.parse("http://b.test:8080/")),
+            EXCLUSION_DURATION_MS,
+            clock);
+
+    Uri cdnUri =
+        cdnSelector.getCdnUri(
+            Uri.parse("https://a.test/content/video/segment.m4s?token=1"),
+            /* fromCdnIndex= */ 0,
+            /* toCdnIndex= */ 1);
+
+    assertThat(cdnUri.toString()).isEqualTo("http://b.test:8080/video/segment.m4s?token=1");
+  }
+
+  @Test
+  public void open_latencyCriticalRequest_racesCdnsAndUsesWinner() throws Exception {
+    byte[] data = TestUtil.buildTestData(10_000);
+    fakeDataSet.setData(SEGMENT_URI_B, data);
+    MultiCdnDataSource dataSource = createDataSource(raceExecutor);
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(SEGMENT_URI_A)
+            .setFlags(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
+            .build();
+
+    byte[] readData = readFully(dataSource, dataSpec);
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(cdnSelector.getCdnStats(0).raceCount).isEqualTo(1);
+    assertThat(cdnSelector.getCdnStats(0).raceWinCount).isEqualTo(0);
+    assertThat(cdnSelector.getCdnStats(1).raceCount).isEqualTo(1);
+    assertThat(cdnSelector.getCdnStats(1).raceWinCount).isEqualTo(1);
+  }
+
+  @Test
+  public void open_latencyCriticalRequest_notifiesTransferListenersOfWinnerOnly()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(10_000);
+    fakeDataSet.setData(SEGMENT_URI_A, data).setData(SEGMENT_URI_B, data);
+    MultiCdnDataSource dataSource = createDataSource(raceExecutor);
+    TransferListener transferListener = mock(TransferListener.class);
+    dataSource.addTransferListener(transferListener);
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(SEGMENT_URI_A)
+            .setFlags(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
+            .build();
+
+    readFully(dataSource, dataSpec);
+
+    verify(transferListener, times(1)).onTransferInitializing(any(), any(), anyBoolean());
+    verify(transferListener, times(1)).onTransferStart(any(), any(), anyBoolean());
+    verify(transferListener, times(1)).onTransferEnd(any(), any(), anyBoolean());
+    ArgumentCaptor<Integer> bytesTransferred = ArgumentCaptor.forClass(Integer.class);
+    verify(transferListener, atLeastOnce())
+        .onBytesTransferred(any(), any(), anyBoolean(), bytesTransferred.capture());
+    int totalBytesTransferred = 0;
+    for (int bytes : bytesTransferred.getAllValues()) {
+      totalBytesTransferred += bytes;
+    }
+    assertThat(totalBytesTransferred).isEqualTo(data.length);
+  }
+
+  @Test
+  public void open_notLatencyCriticalRequest_doesNotRaceCdns() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    fakeDataSet.setData(SEGMENT_URI_A, data).setData(SEGMENT_URI_B, data);
+    MultiCdnDataSource dataSource = createDataSource(raceExecutor);
+
+    readFully(dataSource, new DataSpec(SEGMENT_URI_A));
+
+    assertThat(cdnSelector.getCdnStats(0).raceCount).isEqualTo(0);
+    assertThat(cdnSelector.getCdnStats(1).requestCount).isEqualTo(0);
+  }
+
+  private MultiCdnDataSource createDataSource(@Nullable ExecutorService raceExecutor) {
+    DataSource.Factory upstreamFactory =
+        new ResolvingDataSource.Factory(
+            new FakeDataSource.Factory().setFakeDataSet(fakeDataSet),
+            dataSpec -> {
+              @Nullable IOException openError = openErrors.get(dataSpec.uri);
+              if (openError != null) {
+                throw openError;
+              }
+              return dataSpec;
+            });
+    return new MultiCdnDataSource.Factory(upstreamFactory, cdnSelector)
+        .setRaceExecutor(raceExecutor)
+        .createDataSource();
+  }
+
+  private static InvalidResponseCodeException createInvalidResponseCodeException(
+      Uri uri, int responseCode) {
+    return new InvalidResponseCodeException(
+        responseCode,
+        /* responseMessage= */ null,
+        ImmutableMap.of(),
+        new DataSpec(uri),
+        Util.EMPTY_BYTE_ARRAY);
+  }
+
+  private static byte[] readFully(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    try {
+      dataSource.open(dataSpec);
+      return Util.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link SlidingAverageBandwidthStatistic}. */
+@RunWith(AndroidJUnit4.class)
+public final class SlidingAverageBandwidthStatisticTest {
+
+  @Test
+  public void getBandwidthEstimate_withoutSamples_returnsEstimateNotAvailable() {
+    SlidingAverageBandwidthStatistic statistic = new SlidingAverageBandwidthStatistic();
+
+    assertThat(statistic.getBandwidthEstimate())
+        .isEqualTo(BandwidthStatistic.ESTIMATE_NOT_AVAILABLE);
+  }
+
+  @Test
+  public void getBandwidthEstimate_returnsTotalBytesOverTotalDuration() {
+    SlidingAverageBandwidthStatistic statistic = new SlidingAverageBandwidthStatistic();
+
+    statistic.addSample(/* bytes= */ 1_000, /* elapsedMs= */ 1_000);
+    statistic.addSample(/* bytes= */ 5_000, /* elapsedMs= */ 2_000);
+
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(16_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_withFullWindow_discardsOldestSamples() {
+    SlidingAverageBandwidthStatistic statistic =
+        new SlidingAverageBandwidthStatistic(/* maxSampleCount= */ 2);
+
+    statistic.addSample(/* bytes= */ 100_000, /* elapsedMs= */ 1_000);
+    statistic.addSample(/* bytes= */ 1_000, /* elapsedMs= */ 1_000);
+    statistic.addSample(/* bytes= */ 3_000, /* elapsedMs= */ 1_000);
+
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(16_000);
+  }
+
+  @Test
+  public void reset_discardsSamples() {
+    SlidingAverageBandwidthStatistic statistic = new SlidingAverageBandwidthStatistic();
+    statistic.addSample(/* bytes= */ 1_000, /* elapsedMs= */ 1_000);
+
+    statistic.reset();
+
+    assertThat(statistic.getBandwidthEstimate())
+        .isEqualTo(BandwidthStatistic.ESTIMATE_NOT_AVAILABLE);
+    statistic.addSample(/* bytes= */ 2_000, /* elapsedMs= */ 1_000);
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(16_000);
+  }
+}
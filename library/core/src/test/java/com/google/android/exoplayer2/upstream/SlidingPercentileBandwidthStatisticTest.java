@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link SlidingPercentileBandwidthStatistic}. */
+@RunWith(AndroidJUnit4.class)
+public final class SlidingPercentileBandwidthStatisticTest {
+
+  @Test
+  public void getBandwidthEstimate_withoutSamples_returnsEstimateNotAvailable() {
+    SlidingPercentileBandwidthStatistic statistic =
+        new SlidingPercentileBandwidthStatistic(/* maxWeight= */ 100);
+
+    assertThat(statistic.getBandwidthEstimate())
+        .isEqualTo(BandwidthStatistic.ESTIMATE_NOT_AVAILABLE);
+  }
+
+  @Test
+  public void getBandwidthEstimate_returnsMedianOfSampleBitrates() {
+    SlidingPercentileBandwidthStatistic statistic =
+        new SlidingPercentileBandwidthStatistic(/* maxWeight= */ 100);
+
+    statistic.addSample(/* bytes= */ 100, /* elapsedMs= */ 1_000);
+    statistic.addSample(/* bytes= */ 100, /* elapsedMs= */ 100);
+    statistic.addSample(/* bytes= */ 100, /* elapsedMs= */ 10);
+
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(8_000);
+  }
+
+  @Test
+  public void reset_discardsSamples() {
+    SlidingPercentileBandwidthStatistic statistic =
+        new SlidingPercentileBandwidthStatistic(/* maxWeight= */ 100);
+    statistic.addSample(/* bytes= */ 100, /* elapsedMs= */ 1_000);
+
+    statistic.reset();
+
+    assertThat(statistic.getBandwidthEstimate())
+        .isEqualTo(BandwidthStatistic.ESTIMATE_NOT_AVAILABLE);
+    statistic.addSample(/* bytes= */ 100, /* elapsedMs= */ 10);
+    assertThat(statistic.getBandwidthEstimate()).isEqualTo(80_000);
+  }
+}
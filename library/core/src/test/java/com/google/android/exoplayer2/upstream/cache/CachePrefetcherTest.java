@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CachePrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class CachePrefetcherTest {
+
+  private static final Uri SEGMENT_URI_1 = Uri.parse("https://test.test/segment1.m4s");
+  private static final Uri SEGMENT_URI_2 = Uri.parse("https://test.test/segment2.m4s");
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private FakeDataSource.Factory upstreamDataSourceFactory;
+  private CachePrefetcher cachePrefetcher;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    upstreamDataSourceFactory =
+        new FakeDataSource.Factory()
+            .setFakeDataSet(
+                new FakeDataSet()
+                    .setData(SEGMENT_URI_1, TestUtil.buildTestData(100))
+                    .setData(SEGMENT_URI_2, TestUtil.buildTestData(200)));
+    cachePrefetcher =
+        new CachePrefetcher(
+            new CacheDataSource.Factory()
+                .setCache(cache)
+                .setUpstreamDataSourceFactory(upstreamDataSourceFactory),
+            /* prefetchWindowUs= */ 10 * C.MICROS_PER_SECOND,
+            /* maxBandwidthFraction= */ 1,
+            /* maxPendingRequestCount= */ 2,
+            // Prefetch on the calling thread, so that requests are written when prefetch returns.
+            MoreExecutors.newDirectExecutorService());
+  }
+
+  @After
+  public void tearDown() {
+    cachePrefetcher.release();
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void prefetch_writesDataIntoCache() throws Exception {
+    assertThat(cachePrefetcher.prefetch(new DataSpec(SEGMENT_URI_1))).isTrue();
+    assertThat(cachePrefetcher.prefetch(new DataSpec(SEGMENT_URI_2))).isTrue();
+
+    assertThat(cachePrefetcher.getPrefetchedRequestCount()).isEqualTo(2);
+
+    assertThat(cache.isCached(SEGMENT_URI_1.toString(), /* position= */ 0, /* length= */ 100))
+        .isTrue();
+    assertThat(cache.isCached(SEGMENT_URI_2.toString(), /* position= */ 0, /* length= */ 200))
+        .isTrue();
+    assertThat(cachePrefetcher.getPrefetchedBytes()).isEqualTo(300);
+  }
+
+  @Test
+  public void prefetch_withCachedData_isSkipped() throws Exception {
+    cachePrefetcher.prefetch(new DataSpec(SEGMENT_URI_1));
+
+    assertThat(cachePrefetcher.prefetch(new DataSpec(SEGMENT_URI_1))).isTrue();
+    assertThat(
+            cachePrefetcher.prefetch(
+                new DataSpec.Builder().setUri(SEGMENT_URI_1).setPosition(10).setLength(50).build()))
+        .isTrue();
+    assertThat(cachePrefetcher.getPrefetchedRequestCount()).isEqualTo(1);
+    assertThat(cachePrefetcher.getPrefetchedBytes()).isEqualTo(100);
+    assertThat(cachePrefetcher.isFull()).isFalse();
+  }
+
+  @Test
+  public void prefetch_afterRelease_isIgnored() {
+    cachePrefetcher.release();
+
+    assertThat(cachePrefetcher.prefetch(new DataSpec(SEGMENT_URI_1))).isFalse();
+  }
+}
@@ -18,12 +18,14 @@ package com.google.android.exoplayer2.source.dash;
 import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.chunk.Chunk;
 import com.google.android.exoplayer2.source.chunk.ChunkSource;
 import com.google.android.exoplayer2.source.dash.PlayerEmsgHandler.PlayerTrackEmsgHandler;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
 import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import java.util.Collections;
 import java.util.List;
 
 /** A {@link ChunkSource} for DASH streams. */
@@ -75,4 +77,16 @@ public interface DashChunkSource extends ChunkSource {
    * @param trackSelection The new track selection instance. Must be equivalent to the previous one.
    */
   void updateTrackSelection(ExoTrackSelection trackSelection);
+
+  /**
+   * Returns chunks that load data of the next period ahead of time, such as its initialization
+   * segment. Called by the media period once it has loaded all of its media. The returned chunks
+   * are loaded one after the other and failed loads aren't retried. The default implementation
+   * returns an empty list.
+   *
+   * @return The chunks to load, which may be empty.
+   */
+  default List<Chunk> getNextPeriodPrefetchChunks() {
+    return Collections.emptyList();
+  }
 }
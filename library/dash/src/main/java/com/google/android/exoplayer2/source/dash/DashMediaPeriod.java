@@ -37,6 +37,7 @@ import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.source.SequenceableLoader;
 import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.source.chunk.Chunk;
 import com.google.android.exoplayer2.source.chunk.ChunkSampleStream;
 import com.google.android.exoplayer2.source.chunk.ChunkSampleStream.EmbeddedSampleStream;
 import com.google.android.exoplayer2.source.dash.PlayerEmsgHandler.PlayerEmsgCallback;
@@ -51,6 +52,7 @@ import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
@@ -90,7 +92,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private final TrackGroupArray trackGroups;
   private final TrackGroupInfo[] trackGroupInfos;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
   private final PlayerEmsgHandler playerEmsgHandler;
+  private final NextPeriodPrefetcher nextPeriodPrefetcher;
   private final IdentityHashMap<ChunkSampleStream<DashChunkSource>, PlayerTrackEmsgHandler>
       trackEmsgHandlerBySampleStream;
   private final MediaSourceEventListener.EventDispatcher mediaSourceEventDispatcher;
@@ -103,6 +107,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private DashManifest manifest;
   private int periodIndex;
   private List<EventStream> eventStreams;
+  private boolean nextPeriodPrefetchStarted;
 
   public DashMediaPeriod(
       int id,
@@ -118,7 +123,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       LoaderErrorThrower manifestLoaderErrorThrower,
       Allocator allocator,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
-      PlayerEmsgCallback playerEmsgCallback) {
+      PlayerEmsgCallback playerEmsgCallback,
+      @Nullable LoaderThreadPool loaderThreadPool) {
     this.id = id;
     this.manifest = manifest;
     this.periodIndex = periodIndex;
@@ -132,7 +138,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.allocator = allocator;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderThreadPool = loaderThreadPool;
     playerEmsgHandler = new PlayerEmsgHandler(manifest, playerEmsgCallback, allocator);
+    nextPeriodPrefetcher = new NextPeriodPrefetcher(loaderThreadPool);
     sampleStreams = newSampleStreamArray(0);
     eventSampleStreams = new EventSampleStream[0];
     trackEmsgHandlerBySampleStream = new IdentityHashMap<>();
@@ -178,6 +186,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   public void release() {
     playerEmsgHandler.release();
+    nextPeriodPrefetcher.release();
     for (ChunkSampleStream<DashChunkSource> sampleStream : sampleStreams) {
       sampleStream.release(this);
     }
@@ -286,6 +295,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     compositeSequenceableLoader =
         compositeSequenceableLoaderFactory.createCompositeSequenceableLoader(sampleStreams);
+    nextPeriodPrefetchStarted = false;
     return positionUs;
   }
 
@@ -303,7 +313,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   @Override
   public boolean continueLoading(long positionUs) {
-    return compositeSequenceableLoader.continueLoading(positionUs);
+    boolean madeProgress = compositeSequenceableLoader.continueLoading(positionUs);
+    maybePrefetchNextPeriod();
+    return madeProgress;
   }
 
   @Override
@@ -328,6 +340,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   @Override
   public long seekToUs(long positionUs) {
+    // The chunk sources may load again, so stop prefetching with their data sources.
+    nextPeriodPrefetcher.cancel();
+    nextPeriodPrefetchStarted = false;
     for (ChunkSampleStream<DashChunkSource> sampleStream : sampleStreams) {
       sampleStream.seekToUs(positionUs);
     }
@@ -356,6 +371,28 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   // Internal methods.
 
+  /**
+   * Starts loading data of the next period ahead of time, once all media of this period has been
+   * loaded. The {@link com.google.android.exoplayer2.source.chunk.ChunkPrefetchCache} skips data
+   * that the next period has already requested, and loads of the next period wait for data that's
+   * being prefetched, so no data is loaded twice.
+   */
+  private void maybePrefetchNextPeriod() {
+    if (nextPeriodPrefetchStarted
+        || sampleStreams.length == 0
+        || compositeSequenceableLoader.getNextLoadPositionUs() != C.TIME_END_OF_SOURCE) {
+      return;
+    }
+    nextPeriodPrefetchStarted = true;
+    List<Chunk> chunks = new ArrayList<>();
+    for (ChunkSampleStream<DashChunkSource> sampleStream : sampleStreams) {
+      chunks.addAll(sampleStream.getChunkSource().getNextPeriodPrefetchChunks());
+    }
+    if (!chunks.isEmpty()) {
+      nextPeriodPrefetcher.prefetch(chunks);
+    }
+  }
+
   private int[] getStreamIndexToTrackGroupIndex(ExoTrackSelection[] selections) {
     int[] streamIndexToTrackGroupIndex = new int[selections.length];
     for (int i = 0; i < selections.length; i++) {
@@ -787,7 +824,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             drmSessionManager,
             drmEventDispatcher,
             loadErrorHandlingPolicy,
-            mediaSourceEventDispatcher);
+            mediaSourceEventDispatcher,
+            loaderThreadPool);
     synchronized (this) {
       // The map is also accessed on the loading thread so synchronize access.
       trackEmsgHandlerBySampleStream.put(stream, trackPlayerEmsgHandler);
@@ -66,6 +66,8 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorI
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
+import com.google.android.exoplayer2.upstream.ManifestCache;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
@@ -109,6 +111,8 @@ public final class DashMediaSource extends BaseMediaSource {
     private long targetLiveOffsetOverrideMs;
     private long fallbackTargetLiveOffsetMs;
     @Nullable private ParsingLoadable.Parser<? extends DashManifest> manifestParser;
+    @Nullable private ManifestCache manifestCache;
+    @Nullable private LoaderThreadPool loaderThreadPool;
     private List<StreamKey> streamKeys;
     @Nullable private Object tag;
 
@@ -263,6 +267,35 @@ public final class DashMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets the {@link ManifestCache} through which manifests are loaded. The same cache can be set
+     * on the factories of multiple players, so that they share loads of the same manifest. The
+     * default value is {@code null}, meaning that manifests are always loaded by the media source.
+     *
+     * <p>Dynamic manifests are served from the cache for at most their minimum update period.
+     * Manifests that are filtered using {@link StreamKey stream keys} are never shared.
+     *
+     * @param manifestCache The {@link ManifestCache}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setManifestCache(@Nullable ManifestCache manifestCache) {
+      this.manifestCache = manifestCache;
+      return this;
+    }
+
+    /**
+     * Sets the {@link LoaderThreadPool} on which the created media sources load manifests and
+     * chunks. The same pool can be set on the factories of multiple players, so that they share its
+     * threads. The default value is {@code null}, meaning that each loader uses a dedicated thread.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      this.loaderThreadPool = loaderThreadPool;
+      return this;
+    }
+
     /**
      * Sets the factory to create composite {@link SequenceableLoader}s for when this media source
      * loads data from multiple streams (video, audio etc...). The default is an instance of {@link
@@ -340,11 +373,13 @@ public final class DashMediaSource extends BaseMediaSource {
           manifest,
           /* manifestDataSourceFactory= */ null,
           /* manifestParser= */ null,
+          /* manifestCache= */ null,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          fallbackTargetLiveOffsetMs);
+          fallbackTargetLiveOffsetMs,
+          loaderThreadPool);
     }
 
     /** @deprecated Use {@link #createMediaSource(MediaItem)} instead. */
@@ -406,11 +441,13 @@ public final class DashMediaSource extends BaseMediaSource {
           /* manifest= */ null,
           manifestDataSourceFactory,
           manifestParser,
+          streamKeys.isEmpty() ? manifestCache : null,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          fallbackTargetLiveOffsetMs);
+          fallbackTargetLiveOffsetMs,
+          loaderThreadPool);
     }
 
     @Override
@@ -452,6 +489,8 @@ public final class DashMediaSource extends BaseMediaSource {
   private final long fallbackTargetLiveOffsetMs;
   private final EventDispatcher manifestEventDispatcher;
   private final ParsingLoadable.Parser<? extends DashManifest> manifestParser;
+  @Nullable private final ManifestCache manifestCache;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
   private final ManifestCallback manifestCallback;
   private final Object manifestUriLock;
   private final SparseArray<DashMediaPeriod> periodsById;
@@ -486,11 +525,13 @@ public final class DashMediaSource extends BaseMediaSource {
       @Nullable DashManifest manifest,
       @Nullable DataSource.Factory manifestDataSourceFactory,
       @Nullable ParsingLoadable.Parser<? extends DashManifest> manifestParser,
+      @Nullable ManifestCache manifestCache,
       DashChunkSource.Factory chunkSourceFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
-      long fallbackTargetLiveOffsetMs) {
+      long fallbackTargetLiveOffsetMs,
+      @Nullable LoaderThreadPool loaderThreadPool) {
     this.mediaItem = mediaItem;
     this.liveConfiguration = mediaItem.liveConfiguration;
     this.manifestUri = checkNotNull(mediaItem.playbackProperties).uri;
@@ -498,11 +539,13 @@ public final class DashMediaSource extends BaseMediaSource {
     this.manifest = manifest;
     this.manifestDataSourceFactory = manifestDataSourceFactory;
     this.manifestParser = manifestParser;
+    this.manifestCache = manifestCache;
     this.chunkSourceFactory = chunkSourceFactory;
     this.drmSessionManager = drmSessionManager;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.fallbackTargetLiveOffsetMs = fallbackTargetLiveOffsetMs;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderThreadPool = loaderThreadPool;
     sideloadedManifest = manifest != null;
     manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
     manifestUriLock = new Object();
@@ -562,7 +605,7 @@ public final class DashMediaSource extends BaseMediaSource {
       processManifest(false);
     } else {
       dataSource = manifestDataSourceFactory.createDataSource();
-      loader = new Loader("Loader:DashMediaSource");
+      loader = Loader.create("Loader:DashMediaSource", loaderThreadPool);
       handler = Util.createHandlerForCurrentLooper();
       startLoadingManifest();
     }
@@ -595,7 +638,8 @@ public final class DashMediaSource extends BaseMediaSource {
             manifestLoadErrorThrower,
             allocator,
             compositeSequenceableLoaderFactory,
-            playerEmsgCallback);
+            playerEmsgCallback,
+            loaderThreadPool);
     periodsById.put(mediaPeriod.id, mediaPeriod);
     return mediaPeriod;
   }
@@ -696,6 +740,10 @@ public final class DashMediaSource extends BaseMediaSource {
       }
 
       if (isManifestStale) {
+        if (manifestCache != null) {
+          // Make sure the next attempt loads a fresh manifest.
+          manifestCache.invalidate(loadable.dataSpec.uri);
+        }
         if (staleManifestReloadAttempt++
             < loadErrorHandlingPolicy.getMinimumLoadableRetryCount(loadable.type)) {
           scheduleManifestRefresh(getManifestLoadRetryDelayMillis());
@@ -1072,7 +1120,13 @@ public final class DashMediaSource extends BaseMediaSource {
     }
     manifestLoadPending = false;
     startLoading(
-        new ParsingLoadable<>(dataSource, manifestUri, C.DATA_TYPE_MANIFEST, manifestParser),
+        new ParsingLoadable<>(
+            dataSource,
+            manifestUri,
+            C.DATA_TYPE_MANIFEST,
+            manifestParser,
+            manifestCache,
+            DashMediaSource::getManifestCacheTtlMs),
         manifestCallback,
         loadErrorHandlingPolicy.getMinimumLoadableRetryCount(C.DATA_TYPE_MANIFEST));
   }
@@ -1089,6 +1143,15 @@ public final class DashMediaSource extends BaseMediaSource {
         loadable.type);
   }
 
+  private static long getManifestCacheTtlMs(DashManifest manifest) {
+    if (!manifest.dynamic) {
+      return C.TIME_UNSET;
+    }
+    // Dynamic manifests without a minimum update period are only refreshed in response to events,
+    // so should never be served from the cache.
+    return manifest.minUpdatePeriodMs != C.TIME_UNSET ? manifest.minUpdatePeriodMs : 0;
+  }
+
   private static long getIntervalUntilNextManifestRefreshMs(
       DashManifest manifest, long nowUnixTimeMs) {
     int periodIndex = manifest.getPeriodCount() - 1;
@@ -37,6 +37,7 @@ import com.google.android.exoplayer2.source.chunk.BundledChunkExtractor;
 import com.google.android.exoplayer2.source.chunk.Chunk;
 import com.google.android.exoplayer2.source.chunk.ChunkExtractor;
 import com.google.android.exoplayer2.source.chunk.ChunkHolder;
+import com.google.android.exoplayer2.source.chunk.ChunkPrefetchCache;
 import com.google.android.exoplayer2.source.chunk.ContainerMediaChunk;
 import com.google.android.exoplayer2.source.chunk.InitializationChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunk;
@@ -53,6 +54,8 @@ import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CachePrefetcher;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
@@ -69,6 +72,10 @@ public class DefaultDashChunkSource implements DashChunkSource {
     private final DataSource.Factory dataSourceFactory;
     private final int maxSegmentsPerLoad;
 
+    @Nullable private ChunkPrefetchCache chunkPrefetchCache;
+    private int maxSubsegmentsPerLoad;
+    @Nullable private CachePrefetcher cachePrefetcher;
+
     public Factory(DataSource.Factory dataSourceFactory) {
       this(dataSourceFactory, /* maxSegmentsPerLoad= */ 1);
     }
@@ -76,6 +83,69 @@ public class DefaultDashChunkSource implements DashChunkSource {
     public Factory(DataSource.Factory dataSourceFactory, int maxSegmentsPerLoad) {
       this.dataSourceFactory = dataSourceFactory;
       this.maxSegmentsPerLoad = maxSegmentsPerLoad;
+      maxSubsegmentsPerLoad = 1;
+    }
+
+    /**
+     * Sets a {@link ChunkPrefetchCache} into which the initialization segment and first media
+     * segment of the next period are loaded, so that loading the next period doesn't have to wait
+     * for them. The media source loads them once the current period has been fully loaded, using
+     * {@link #getNextPeriodPrefetchChunks()}. Only used for static manifests. The default value is
+     * {@code null}, meaning that nothing is prefetched.
+     *
+     * <p>The same cache must be used by all chunk sources of a media source, which is the case if
+     * they're created by this factory.
+     *
+     * <p>The prefetched data isn't accounted for by the {@link
+     * com.google.android.exoplayer2.LoadControl}, so up to the maximum size of the cache is used
+     * in addition to the target buffer size.
+     *
+     * @param chunkPrefetchCache The {@link ChunkPrefetchCache}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setChunkPrefetchCache(@Nullable ChunkPrefetchCache chunkPrefetchCache) {
+      this.chunkPrefetchCache = chunkPrefetchCache;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of subsegments to combine into a single request, for representations
+     * whose segments are byte ranges of a single resource described by a segment index (sidx)
+     * box. The default value is {@code 1}, meaning that such representations are subject to the
+     * same limit as other representations.
+     *
+     * <p>When set to a value greater than {@code 1}, subsegments are only combined as far as the
+     * currently buffered duration allows, so that a combined request is unlikely to take longer
+     * to load than it takes to play out the buffer. Initialization and index data of such
+     * representations are also requested together if they're separated by a small gap only.
+     *
+     * @param maxSubsegmentsPerLoad The maximum number of subsegments to combine into a single
+     *     request.
+     * @return This factory, for convenience.
+     */
+    public Factory setMaxSubsegmentsPerLoad(int maxSubsegmentsPerLoad) {
+      Assertions.checkArgument(maxSubsegmentsPerLoad > 0);
+      this.maxSubsegmentsPerLoad = maxSubsegmentsPerLoad;
+      return this;
+    }
+
+    /**
+     * Sets a {@link CachePrefetcher} into which media segments beyond the segment being loaded are
+     * downloaded in the background, up to the prefetcher's {@link
+     * CachePrefetcher#getPrefetchWindowUs() prefetch window}. Only used for static manifests. The
+     * default value is {@code null}, meaning that nothing is prefetched into a cache.
+     *
+     * <p>The {@link DataSource.Factory} passed to this factory should create {@link
+     * com.google.android.exoplayer2.upstream.cache.CacheDataSource CacheDataSources} that read
+     * from the same cache as the prefetcher writes to, so that prefetched segments are loaded from
+     * disk.
+     *
+     * @param cachePrefetcher The {@link CachePrefetcher}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setCachePrefetcher(@Nullable CachePrefetcher cachePrefetcher) {
+      this.cachePrefetcher = cachePrefetcher;
+      return this;
     }
 
     @Override
@@ -107,11 +177,20 @@ public class DefaultDashChunkSource implements DashChunkSource {
           maxSegmentsPerLoad,
           enableEventMessageTrack,
           closedCaptionFormats,
-          playerEmsgHandler);
+          playerEmsgHandler,
+          chunkPrefetchCache,
+          maxSubsegmentsPerLoad,
+          cachePrefetcher);
     }
 
   }
 
+  /**
+   * The maximum number of bytes between initialization and index data for them to be requested
+   * together, if subsegment coalescing is enabled.
+   */
+  private static final int MAX_INITIALIZATION_INDEX_GAP_BYTES = 16 * 1024;
+
   private final LoaderErrorThrower manifestLoaderErrorThrower;
   private final int[] adaptationSetIndices;
   private final int trackType;
@@ -119,6 +198,9 @@ public class DefaultDashChunkSource implements DashChunkSource {
   private final long elapsedRealtimeOffsetMs;
   private final int maxSegmentsPerLoad;
   @Nullable private final PlayerTrackEmsgHandler playerTrackEmsgHandler;
+  @Nullable private final ChunkPrefetchCache chunkPrefetchCache;
+  private final int maxSubsegmentsPerLoad;
+  @Nullable private final CachePrefetcher cachePrefetcher;
 
   protected final RepresentationHolder[] representationHolders;
 
@@ -127,6 +209,11 @@ public class DefaultDashChunkSource implements DashChunkSource {
   private int periodIndex;
   @Nullable private IOException fatalError;
   private boolean missingLastSegment;
+  private boolean periodTransitionChecked;
+  private long periodTransitionStartTimeMs;
+  private long periodTransitionBufferedDurationMs;
+  @Nullable private Representation cachePrefetchRepresentation;
+  private long nextCachePrefetchSegmentNum;
 
   /**
    * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
@@ -160,6 +247,67 @@ public class DefaultDashChunkSource implements DashChunkSource {
       boolean enableEventMessageTrack,
       List<Format> closedCaptionFormats,
       @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler) {
+    this(
+        manifestLoaderErrorThrower,
+        manifest,
+        periodIndex,
+        adaptationSetIndices,
+        trackSelection,
+        trackType,
+        dataSource,
+        elapsedRealtimeOffsetMs,
+        maxSegmentsPerLoad,
+        enableEventMessageTrack,
+        closedCaptionFormats,
+        playerTrackEmsgHandler,
+        /* chunkPrefetchCache= */ null,
+        /* maxSubsegmentsPerLoad= */ 1,
+        /* cachePrefetcher= */ null);
+  }
+
+  /**
+   * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
+   * @param manifest The initial manifest.
+   * @param periodIndex The index of the period in the manifest.
+   * @param adaptationSetIndices The indices of the adaptation sets in the period.
+   * @param trackSelection The track selection.
+   * @param trackType The type of the tracks in the selection.
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param elapsedRealtimeOffsetMs If known, an estimate of the instantaneous difference between
+   *     server-side unix time and {@link SystemClock#elapsedRealtime()} in milliseconds, specified
+   *     as the server's unix time minus the local elapsed time. Or {@link C#TIME_UNSET} if unknown.
+   * @param maxSegmentsPerLoad The maximum number of segments to combine into a single request. Note
+   *     that segments will only be combined if their {@link Uri}s are the same and if their data
+   *     ranges are adjacent.
+   * @param enableEventMessageTrack Whether to output an event message track.
+   * @param closedCaptionFormats The {@link Format Formats} of closed caption tracks to be output.
+   * @param playerTrackEmsgHandler The {@link PlayerTrackEmsgHandler} instance to handle emsg
+   *     messages targeting the player. Maybe null if this is not necessary.
+   * @param chunkPrefetchCache The {@link ChunkPrefetchCache} into which data of the next period is
+   *     prefetched and from which prefetched data of this period is read, or null if prefetching
+   *     is disabled.
+   * @param maxSubsegmentsPerLoad The maximum number of subsegments to combine into a single request
+   *     for representations whose segment index is loaded from the media, if the buffered duration
+   *     allows. If not greater than {@code maxSegmentsPerLoad}, {@code maxSegmentsPerLoad} applies.
+   * @param cachePrefetcher The {@link CachePrefetcher} into which segments beyond the segment being
+   *     loaded are downloaded, or null if segments aren't prefetched into a cache.
+   */
+  public DefaultDashChunkSource(
+      LoaderErrorThrower manifestLoaderErrorThrower,
+      DashManifest manifest,
+      int periodIndex,
+      int[] adaptationSetIndices,
+      ExoTrackSelection trackSelection,
+      int trackType,
+      DataSource dataSource,
+      long elapsedRealtimeOffsetMs,
+      int maxSegmentsPerLoad,
+      boolean enableEventMessageTrack,
+      List<Format> closedCaptionFormats,
+      @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler,
+      @Nullable ChunkPrefetchCache chunkPrefetchCache,
+      int maxSubsegmentsPerLoad,
+      @Nullable CachePrefetcher cachePrefetcher) {
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.manifest = manifest;
     this.adaptationSetIndices = adaptationSetIndices;
@@ -170,6 +318,9 @@ public class DefaultDashChunkSource implements DashChunkSource {
     this.elapsedRealtimeOffsetMs = elapsedRealtimeOffsetMs;
     this.maxSegmentsPerLoad = maxSegmentsPerLoad;
     this.playerTrackEmsgHandler = playerTrackEmsgHandler;
+    this.chunkPrefetchCache = chunkPrefetchCache;
+    this.maxSubsegmentsPerLoad = maxSubsegmentsPerLoad;
+    this.cachePrefetcher = cachePrefetcher;
 
     long periodDurationUs = manifest.getPeriodDurationUs(periodIndex);
 
@@ -268,6 +419,18 @@ public class DefaultDashChunkSource implements DashChunkSource {
       return;
     }
 
+    if (!periodTransitionChecked) {
+      periodTransitionChecked = true;
+      if (chunkPrefetchCache != null && playbackPositionUs < 0) {
+        // Playback is still in an earlier period, so the first media chunk of this period will be
+        // needed once the remaining buffer of the earlier period has been played.
+        periodTransitionStartTimeMs = SystemClock.elapsedRealtime();
+        periodTransitionBufferedDurationMs = C.usToMs(-playbackPositionUs);
+      } else {
+        periodTransitionStartTimeMs = C.TIME_UNSET;
+      }
+    }
+
     long bufferedDurationUs = loadPositionUs - playbackPositionUs;
     long presentationPositionUs =
         C.msToUs(manifest.availabilityStartTimeMs)
@@ -373,7 +536,12 @@ public class DefaultDashChunkSource implements DashChunkSource {
       return;
     }
 
-    int maxSegmentCount = (int) min(maxSegmentsPerLoad, lastAvailableSegmentNum - segmentNum + 1);
+    int maxSegmentCount =
+        (int)
+            min(
+                getMaxSegmentsPerLoad(
+                    representationHolder, segmentNum, lastAvailableSegmentNum, bufferedDurationUs),
+                lastAvailableSegmentNum - segmentNum + 1);
     if (periodDurationUs != C.TIME_UNSET) {
       while (maxSegmentCount > 1
           && representationHolder.getSegmentStartTimeUs(segmentNum + maxSegmentCount - 1)
@@ -397,10 +565,21 @@ public class DefaultDashChunkSource implements DashChunkSource {
             maxSegmentCount,
             seekTimeUs,
             nowPeriodTimeUs);
+    maybePrefetchToCache(
+        representationHolder,
+        /* firstSegmentNum= */ segmentNum + maxSegmentCount,
+        lastAvailableSegmentNum,
+        loadPositionUs);
   }
 
   @Override
   public void onChunkLoadCompleted(Chunk chunk) {
+    if (chunk instanceof MediaChunk && periodTransitionStartTimeMs != C.TIME_UNSET) {
+      long loadDurationMs = SystemClock.elapsedRealtime() - periodTransitionStartTimeMs;
+      Assertions.checkNotNull(chunkPrefetchCache)
+          .onPeriodTransition(max(0, loadDurationMs - periodTransitionBufferedDurationMs));
+      periodTransitionStartTimeMs = C.TIME_UNSET;
+    }
     if (chunk instanceof InitializationChunk) {
       InitializationChunk initializationChunk = (InitializationChunk) chunk;
       int trackIndex = trackSelection.indexOf(initializationChunk.trackFormat);
@@ -451,6 +630,46 @@ public class DefaultDashChunkSource implements DashChunkSource {
         && trackSelection.blacklist(trackSelection.indexOf(chunk.trackFormat), exclusionDurationMs);
   }
 
+  @Override
+  public List<Chunk> getNextPeriodPrefetchChunks() {
+    List<Chunk> chunks = new ArrayList<>();
+    if (chunkPrefetchCache == null || fatalError != null) {
+      return chunks;
+    }
+    @Nullable
+    Representation nextRepresentation =
+        getNextPeriodRepresentation(
+            representationHolders[trackSelection.getSelectedIndex()].representation);
+    if (nextRepresentation == null) {
+      return chunks;
+    }
+    @Nullable DashSegmentIndex index = nextRepresentation.getIndex();
+    @Nullable RangedUri initializationUri = nextRepresentation.getInitializationUri();
+    @Nullable RangedUri indexUri = index == null ? nextRepresentation.getIndexUri() : null;
+    if (initializationUri != null || indexUri != null) {
+      DataSpec dataSpec =
+          buildInitializationDataSpec(
+              nextRepresentation,
+              initializationUri,
+              indexUri,
+              getMaxInitializationIndexGapBytes());
+      maybeAddPrefetchChunk(
+          chunkPrefetchCache,
+          chunks,
+          dataSpec,
+          C.DATA_TYPE_MEDIA_INITIALIZATION,
+          nextRepresentation);
+    }
+    if (index != null
+        && index.getSegmentCount(manifest.getPeriodDurationUs(periodIndex + 1)) != 0) {
+      RangedUri segmentUri = index.getSegmentUrl(index.getFirstSegmentNum());
+      DataSpec dataSpec = DashUtil.buildDataSpec(nextRepresentation, segmentUri, /* flags= */ 0);
+      maybeAddPrefetchChunk(
+          chunkPrefetchCache, chunks, dataSpec, C.DATA_TYPE_MEDIA, nextRepresentation);
+    }
+    return chunks;
+  }
+
   @Override
   public void release() {
     for (RepresentationHolder representationHolder : representationHolders) {
@@ -477,6 +696,152 @@ public class DefaultDashChunkSource implements DashChunkSource {
             lastAvailableSegmentNum);
   }
 
+  /**
+   * Returns the representation in the next period that's most likely to be selected when playback
+   * transitions from the given representation in this period, or null if there's no next period.
+   */
+  @Nullable
+  private Representation getNextPeriodRepresentation(Representation representation) {
+    if (manifest.dynamic || periodIndex + 1 >= manifest.getPeriodCount()) {
+      return null;
+    }
+    @Nullable Representation sameBitrateRepresentation = null;
+    for (AdaptationSet adaptationSet : manifest.getPeriod(periodIndex + 1).adaptationSets) {
+      if (adaptationSet.type != trackType) {
+        continue;
+      }
+      for (Representation nextRepresentation : adaptationSet.representations) {
+        if (Util.areEqual(nextRepresentation.format.id, representation.format.id)) {
+          return nextRepresentation;
+        } else if (sameBitrateRepresentation == null
+            && nextRepresentation.format.bitrate == representation.format.bitrate) {
+          sameBitrateRepresentation = nextRepresentation;
+        }
+      }
+    }
+    return sameBitrateRepresentation;
+  }
+
+  /**
+   * Adds a chunk that loads the data defined by {@code dataSpec} into the prefetch cache to {@code
+   * chunks}, unless the data is already held by the cache.
+   */
+  private void maybeAddPrefetchChunk(
+      ChunkPrefetchCache chunkPrefetchCache,
+      List<Chunk> chunks,
+      DataSpec dataSpec,
+      int type,
+      Representation nextRepresentation) {
+    if (!chunkPrefetchCache.contains(dataSpec)) {
+      chunks.add(
+          chunkPrefetchCache.createPrefetchChunk(
+              dataSource, dataSpec, type, nextRepresentation.format));
+    }
+  }
+
+  /**
+   * Returns a {@link DataSource} from which the data defined by {@code dataSpec} can be read,
+   * using prefetched data if available or waiting for it if it's being prefetched.
+   */
+  private DataSource getDataSourceForLoad(DataSource dataSource, DataSpec dataSpec) {
+    return chunkPrefetchCache != null
+        ? chunkPrefetchCache.getDataSourceForLoad(dataSource, dataSpec)
+        : dataSource;
+  }
+
+  /**
+   * Enqueues segments of the selected representation that follow the segments being loaded and lie
+   * within the prefetch window of the {@link CachePrefetcher}, if there is one.
+   */
+  private void maybePrefetchToCache(
+      RepresentationHolder representationHolder,
+      long firstSegmentNum,
+      long lastAvailableSegmentNum,
+      long loadPositionUs) {
+    if (cachePrefetcher == null || manifest.dynamic) {
+      return;
+    }
+    long windowEndTimeUs = loadPositionUs + cachePrefetcher.getPrefetchWindowUs();
+    Representation representation = representationHolder.representation;
+    if (representation != cachePrefetchRepresentation
+        || nextCachePrefetchSegmentNum < firstSegmentNum
+        || (nextCachePrefetchSegmentNum <= lastAvailableSegmentNum
+            && representationHolder.getSegmentStartTimeUs(nextCachePrefetchSegmentNum)
+                > windowEndTimeUs)) {
+      // The selected representation changed, or there was a seek.
+      cachePrefetchRepresentation = representation;
+      nextCachePrefetchSegmentNum = firstSegmentNum;
+    }
+    long periodDurationUs = representationHolder.periodDurationUs;
+    while (nextCachePrefetchSegmentNum <= lastAvailableSegmentNum) {
+      long segmentStartTimeUs =
+          representationHolder.getSegmentStartTimeUs(nextCachePrefetchSegmentNum);
+      if (segmentStartTimeUs >= windowEndTimeUs
+          || (periodDurationUs != C.TIME_UNSET && segmentStartTimeUs >= periodDurationUs)) {
+        break;
+      }
+      RangedUri segmentUri = representationHolder.getSegmentUrl(nextCachePrefetchSegmentNum);
+      DataSpec dataSpec = DashUtil.buildDataSpec(representation, segmentUri, /* flags= */ 0);
+      if (!cachePrefetcher.prefetch(dataSpec) && cachePrefetcher.isFull()) {
+        // Try again when more requests can be enqueued.
+        break;
+      }
+      nextCachePrefetchSegmentNum++;
+    }
+  }
+
+  /**
+   * Returns the maximum number of segments to combine into a request starting at {@code
+   * segmentNum}.
+   */
+  private int getMaxSegmentsPerLoad(
+      RepresentationHolder representationHolder,
+      long segmentNum,
+      long lastAvailableSegmentNum,
+      long bufferedDurationUs) {
+    if (maxSubsegmentsPerLoad <= maxSegmentsPerLoad
+        || representationHolder.representation.getIndex() != null) {
+      return maxSegmentsPerLoad;
+    }
+    // The segment index was loaded from the media, so the segments are adjacent byte ranges of the
+    // same resource and can always be combined. Only add subsegments whose duration is covered by
+    // the buffer, so that the buffer doesn't run out while the request is loading if loading is
+    // slower than real time.
+    long firstSegmentEndTimeUs = representationHolder.getSegmentEndTimeUs(segmentNum);
+    int segmentCount = 1;
+    while (segmentCount < maxSubsegmentsPerLoad
+        && segmentNum + segmentCount <= lastAvailableSegmentNum
+        && representationHolder.getSegmentEndTimeUs(segmentNum + segmentCount)
+                - firstSegmentEndTimeUs
+            <= bufferedDurationUs) {
+      segmentCount++;
+    }
+    return max(segmentCount, maxSegmentsPerLoad);
+  }
+
+  private int getMaxInitializationIndexGapBytes() {
+    return maxSubsegmentsPerLoad > 1 ? MAX_INITIALIZATION_INDEX_GAP_BYTES : 0;
+  }
+
+  private static DataSpec buildInitializationDataSpec(
+      Representation representation,
+      @Nullable RangedUri initializationUri,
+      @Nullable RangedUri indexUri,
+      int maxGapBytes) {
+    RangedUri requestUri;
+    if (initializationUri != null) {
+      // It's common for initialization and index data to be stored adjacently, or separated by a
+      // small gap only. Attempt to merge the two requests together to request both at once.
+      requestUri = initializationUri.attemptMerge(indexUri, representation.baseUrl, maxGapBytes);
+      if (requestUri == null) {
+        requestUri = initializationUri;
+      }
+    } else {
+      requestUri = Assertions.checkNotNull(indexUri);
+    }
+    return DashUtil.buildDataSpec(representation, requestUri, /* flags= */ 0);
+  }
+
   private ArrayList<Representation> getRepresentations() {
     List<AdaptationSet> manifestAdaptationSets = manifest.getPeriod(periodIndex).adaptationSets;
     ArrayList<Representation> representations = new ArrayList<>();
@@ -512,21 +877,14 @@ public class DefaultDashChunkSource implements DashChunkSource {
       Object trackSelectionData,
       RangedUri initializationUri,
       RangedUri indexUri) {
-    Representation representation = representationHolder.representation;
-    RangedUri requestUri;
-    if (initializationUri != null) {
-      // It's common for initialization and index data to be stored adjacently. Attempt to merge
-      // the two requests together to request both at once.
-      requestUri = initializationUri.attemptMerge(indexUri, representation.baseUrl);
-      if (requestUri == null) {
-        requestUri = initializationUri;
-      }
-    } else {
-      requestUri = indexUri;
-    }
-    DataSpec dataSpec = DashUtil.buildDataSpec(representation, requestUri, /* flags= */ 0);
+    DataSpec dataSpec =
+        buildInitializationDataSpec(
+            representationHolder.representation,
+            initializationUri,
+            indexUri,
+            getMaxInitializationIndexGapBytes());
     return new InitializationChunk(
-        dataSource,
+        getDataSourceForLoad(dataSource, dataSpec),
         dataSpec,
         trackFormat,
         trackSelectionReason,
@@ -557,8 +915,17 @@ public class DefaultDashChunkSource implements DashChunkSource {
               ? 0
               : DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED;
       DataSpec dataSpec = DashUtil.buildDataSpec(representation, segmentUri, flags);
-      return new SingleSampleMediaChunk(dataSource, dataSpec, trackFormat, trackSelectionReason,
-          trackSelectionData, startTimeUs, endTimeUs, firstSegmentNum, trackType, trackFormat);
+      return new SingleSampleMediaChunk(
+          getDataSourceForLoad(dataSource, dataSpec),
+          dataSpec,
+          trackFormat,
+          trackSelectionReason,
+          trackSelectionData,
+          startTimeUs,
+          endTimeUs,
+          firstSegmentNum,
+          trackType,
+          trackFormat);
     } else {
       int segmentCount = 1;
       for (int i = 1; i < maxSegmentCount; i++) {
@@ -585,7 +952,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
       DataSpec dataSpec = DashUtil.buildDataSpec(representation, segmentUri, flags);
       long sampleOffsetUs = -representation.presentationTimeOffsetUs;
       return new ContainerMediaChunk(
-          dataSource,
+          getDataSourceForLoad(dataSource, dataSpec),
           dataSpec,
           trackFormat,
           trackSelectionReason,
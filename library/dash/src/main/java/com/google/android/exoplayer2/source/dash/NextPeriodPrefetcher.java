@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.chunk.Chunk;
+import com.google.android.exoplayer2.upstream.Loader;
+import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Loads the chunks returned by {@link DashChunkSource#getNextPeriodPrefetchChunks()} one after the
+ * other. Prefetching is best effort, so failed loads aren't retried.
+ */
+/* package */ final class NextPeriodPrefetcher implements Loader.Callback<Chunk> {
+
+  @Nullable private final LoaderThreadPool loaderThreadPool;
+  private final ArrayDeque<Chunk> pendingChunks;
+
+  @Nullable private Loader loader;
+
+  /**
+   * Creates an instance.
+   *
+   * @param loaderThreadPool The {@link LoaderThreadPool} on which chunks are loaded, or null to
+   *     load them on a dedicated thread.
+   */
+  public NextPeriodPrefetcher(@Nullable LoaderThreadPool loaderThreadPool) {
+    this.loaderThreadPool = loaderThreadPool;
+    pendingChunks = new ArrayDeque<>();
+  }
+
+  /**
+   * Loads the given chunks after the chunks that are already pending.
+   *
+   * @param chunks The chunks to load.
+   */
+  public void prefetch(List<Chunk> chunks) {
+    pendingChunks.addAll(chunks);
+    if (loader == null) {
+      loader = Loader.create("Loader:DashNextPeriodPrefetcher", loaderThreadPool);
+    }
+    maybeStartNextLoad();
+  }
+
+  /** Cancels the current load and discards the pending chunks. */
+  public void cancel() {
+    pendingChunks.clear();
+    if (loader != null) {
+      loader.cancelLoading();
+    }
+  }
+
+  /** Releases the prefetcher. */
+  public void release() {
+    pendingChunks.clear();
+    if (loader != null) {
+      loader.release();
+      loader = null;
+    }
+  }
+
+  // Loader.Callback implementation.
+
+  @Override
+  public void onLoadCompleted(Chunk chunk, long elapsedRealtimeMs, long loadDurationMs) {
+    maybeStartNextLoad();
+  }
+
+  @Override
+  public void onLoadCanceled(
+      Chunk chunk, long elapsedRealtimeMs, long loadDurationMs, boolean released) {
+    if (!released) {
+      maybeStartNextLoad();
+    }
+  }
+
+  @Override
+  public LoadErrorAction onLoadError(
+      Chunk chunk,
+      long elapsedRealtimeMs,
+      long loadDurationMs,
+      IOException error,
+      int errorCount) {
+    maybeStartNextLoad();
+    return Loader.DONT_RETRY;
+  }
+
+  // Internal methods.
+
+  private void maybeStartNextLoad() {
+    if (loader != null && !loader.isLoading() && !pendingChunks.isEmpty()) {
+      loader.startLoading(pendingChunks.removeFirst(), this, /* defaultMinRetryCount= */ 0);
+    }
+  }
+}
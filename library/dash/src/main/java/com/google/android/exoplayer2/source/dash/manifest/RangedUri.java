@@ -102,6 +102,44 @@ public final class RangedUri {
     }
   }
 
+  /**
+   * Attempts to merge this {@link RangedUri} with another that may be separated from it by a gap
+   * of up to {@code maxGapBytes} bytes. If the merge is successful, the merged range includes the
+   * bytes in the gap.
+   *
+   * <p>A merge is successful if both instances define the same {@link Uri} after resolution with
+   * the base uri, if both ranges are bounded, and if one starts no more than {@code maxGapBytes}
+   * after the other ends, with no overlap.
+   *
+   * <p>If {@code other} is null then the merge is considered unsuccessful, and null is returned.
+   *
+   * @param other The {@link RangedUri} to merge.
+   * @param baseUri The base Uri.
+   * @param maxGapBytes The maximum number of bytes between the two ranges.
+   * @return The merged {@link RangedUri} if the merge was successful. Null otherwise.
+   */
+  @Nullable
+  public RangedUri attemptMerge(@Nullable RangedUri other, String baseUri, long maxGapBytes) {
+    @Nullable RangedUri mergedUri = attemptMerge(other, baseUri);
+    if (mergedUri != null
+        || other == null
+        || length == C.LENGTH_UNSET
+        || other.length == C.LENGTH_UNSET) {
+      return mergedUri;
+    }
+    final String resolvedUri = resolveUriString(baseUri);
+    if (!resolvedUri.equals(other.resolveUriString(baseUri))) {
+      return null;
+    }
+    RangedUri first = start <= other.start ? this : other;
+    RangedUri second = first == this ? other : this;
+    long gapBytes = second.start - (first.start + first.length);
+    if (gapBytes < 0 || gapBytes > maxGapBytes) {
+      return null;
+    }
+    return new RangedUri(resolvedUri, first.start, second.start + second.length - first.start);
+  }
+
   @Override
   public int hashCode() {
     if (hashCode == 0) {
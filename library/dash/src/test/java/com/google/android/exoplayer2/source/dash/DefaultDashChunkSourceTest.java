@@ -24,17 +24,41 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.Chunk;
 import com.google.android.exoplayer2.source.chunk.ChunkHolder;
+import com.google.android.exoplayer2.source.chunk.ChunkPrefetchCache;
+import com.google.android.exoplayer2.source.chunk.InitializationChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.SingleSampleMediaChunk;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CachePrefetcher;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.robolectric.shadows.ShadowSystemClock;
 
 /** Unit test for {@link DefaultDashChunkSource}. */
 @RunWith(AndroidJUnit4.class)
@@ -43,6 +67,16 @@ public class DefaultDashChunkSourceTest {
   private static final String SAMPLE_MPD_LIVE_WITH_OFFSET_INSIDE_WINDOW =
       "media/mpd/sample_mpd_live_with_offset_inside_window";
   private static final String SAMPLE_MPD_VOD = "media/mpd/sample_mpd_vod";
+  private static final String SAMPLE_MPD_VOD_MULTI_PERIOD = "media/mpd/sample_mpd_vod_multi_period";
+  private static final String SAMPLE_FRAGMENTED_SEEKABLE_MP4 =
+      "media/mp4/sample_fragmented_seekable.mp4";
+  /** The size of the ftyp, free and moov boxes of {@link #SAMPLE_FRAGMENTED_SEEKABLE_MP4}. */
+  private static final int SIDX_INITIALIZATION_SIZE_BYTES = 1281;
+  private static final int SIDX_SUBSEGMENT_COUNT = 6;
+  private static final int SIDX_SUBSEGMENT_SIZE_BYTES = 1000;
+  private static final int SIDX_FIRST_SUBSEGMENT_POSITION =
+      SIDX_INITIALIZATION_SIZE_BYTES + 32 + 12 * SIDX_SUBSEGMENT_COUNT;
+  private static final long TIMEOUT_MS = 10_000;
 
   @Test
   public void getNextChunk_forLowLatencyManifest_setsCorrectMayNotLoadAtFullNetworkSpeedFlag()
@@ -127,4 +161,380 @@ public class DefaultDashChunkSourceTest {
     assertThat(output.chunk.dataSpec.flags & DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
         .isEqualTo(0);
   }
+
+  @Test
+  public void getNextPeriodPrefetchChunks_withPrefetchCache_returnsNextPeriodChunks()
+      throws Exception {
+    DashManifest manifest = parseManifest(SAMPLE_MPD_VOD_MULTI_PERIOD);
+    FakeDataSource dataSource =
+        new FakeDataSource(new FakeDataSet().newDefaultData().appendReadData(100).endData());
+    ChunkPrefetchCache chunkPrefetchCache = new ChunkPrefetchCache();
+    DefaultDashChunkSource firstPeriodChunkSource =
+        createChunkSource(manifest, /* periodIndex= */ 0, dataSource, chunkPrefetchCache);
+
+    List<Chunk> prefetchChunks = firstPeriodChunkSource.getNextPeriodPrefetchChunks();
+
+    assertThat(prefetchChunks).hasSize(2);
+    Chunk initializationPrefetchChunk = prefetchChunks.get(0);
+    assertThat(initializationPrefetchChunk.type).isEqualTo(C.DATA_TYPE_MEDIA_INITIALIZATION);
+    assertThat(initializationPrefetchChunk.dataSpec.uri.toString())
+        .isEqualTo("https://example.com/p2_init_1300000.mp4");
+    Chunk mediaPrefetchChunk = prefetchChunks.get(1);
+    assertThat(mediaPrefetchChunk.type).isEqualTo(C.DATA_TYPE_MEDIA);
+    assertThat(mediaPrefetchChunk.dataSpec.uri.toString())
+        .isEqualTo("https://example.com/p2_video_0_1300000.m4s");
+    initializationPrefetchChunk.load();
+    mediaPrefetchChunk.load();
+    assertThat(chunkPrefetchCache.getPrefetchCount()).isEqualTo(2);
+    assertThat(firstPeriodChunkSource.getNextPeriodPrefetchChunks()).isEmpty();
+  }
+
+  @Test
+  public void getNextPeriodPrefetchChunks_inLastPeriod_returnsEmptyList() throws Exception {
+    DashManifest manifest = parseManifest(SAMPLE_MPD_VOD_MULTI_PERIOD);
+    FakeDataSource dataSource = new FakeDataSource();
+    DefaultDashChunkSource lastPeriodChunkSource =
+        createChunkSource(
+            manifest,
+            /* periodIndex= */ manifest.getPeriodCount() - 1,
+            dataSource,
+            new ChunkPrefetchCache());
+
+    assertThat(lastPeriodChunkSource.getNextPeriodPrefetchChunks()).isEmpty();
+  }
+
+  @Test
+  public void getNextChunk_withPrefetchedInitializationData_readsFromPrefetchCache()
+      throws Exception {
+    DashManifest manifest = parseManifest(SAMPLE_MPD_VOD_MULTI_PERIOD);
+    FakeDataSource dataSource =
+        new FakeDataSource(new FakeDataSet().newDefaultData().appendReadData(100).endData());
+    ChunkPrefetchCache chunkPrefetchCache = new ChunkPrefetchCache();
+    DefaultDashChunkSource firstPeriodChunkSource =
+        createChunkSource(manifest, /* periodIndex= */ 0, dataSource, chunkPrefetchCache);
+    firstPeriodChunkSource.getNextPeriodPrefetchChunks().get(0).load();
+    ChunkHolder output = new ChunkHolder();
+
+    DefaultDashChunkSource secondPeriodChunkSource =
+        createChunkSource(manifest, /* periodIndex= */ 1, dataSource, chunkPrefetchCache);
+    secondPeriodChunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        output);
+
+    assertThat(output.chunk).isInstanceOf(InitializationChunk.class);
+    assertThat(output.chunk.dataSpec.uri.toString())
+        .isEqualTo("https://example.com/p2_init_1300000.mp4");
+    assertThat(chunkPrefetchCache.contains(output.chunk.dataSpec)).isFalse();
+    assertThat(chunkPrefetchCache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void onChunkLoadCompleted_firstMediaChunkAfterPeriodTransition_recordsStallDuration()
+      throws Exception {
+    DashManifest manifest = parseManifest(SAMPLE_MPD_VOD_MULTI_PERIOD);
+    ChunkPrefetchCache chunkPrefetchCache = new ChunkPrefetchCache();
+    DefaultDashChunkSource secondPeriodChunkSource =
+        createChunkSource(
+            manifest, /* periodIndex= */ 1, new FakeDataSource(), chunkPrefetchCache);
+
+    // Playback is 2 seconds before the start of the period when loading the period starts.
+    secondPeriodChunkSource.getNextChunk(
+        /* playbackPositionUs= */ -2 * C.MICROS_PER_SECOND,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        new ChunkHolder());
+    ShadowSystemClock.advanceBy(Duration.ofMillis(2500));
+    secondPeriodChunkSource.onChunkLoadCompleted(createMediaChunk());
+    ShadowSystemClock.advanceBy(Duration.ofMillis(2500));
+    secondPeriodChunkSource.onChunkLoadCompleted(createMediaChunk());
+
+    assertThat(chunkPrefetchCache.getPeriodTransitionCount()).isEqualTo(1);
+    assertThat(chunkPrefetchCache.getPeriodTransitionStallDurationMs()).isEqualTo(500);
+  }
+
+  @Test
+  public void onChunkLoadCompleted_firstMediaChunkLoadedWithinBuffer_recordsNoStall()
+      throws Exception {
+    DashManifest manifest = parseManifest(SAMPLE_MPD_VOD_MULTI_PERIOD);
+    ChunkPrefetchCache chunkPrefetchCache = new ChunkPrefetchCache();
+    DefaultDashChunkSource secondPeriodChunkSource =
+        createChunkSource(
+            manifest, /* periodIndex= */ 1, new FakeDataSource(), chunkPrefetchCache);
+
+    secondPeriodChunkSource.getNextChunk(
+        /* playbackPositionUs= */ -2 * C.MICROS_PER_SECOND,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        new ChunkHolder());
+    ShadowSystemClock.advanceBy(Duration.ofMillis(1500));
+    secondPeriodChunkSource.onChunkLoadCompleted(createMediaChunk());
+
+    assertThat(chunkPrefetchCache.getPeriodTransitionCount()).isEqualTo(1);
+    assertThat(chunkPrefetchCache.getPeriodTransitionStallDurationMs()).isEqualTo(0);
+  }
+
+  @Test
+  public void getNextChunk_withSidxSubsegments_mergesSubsegmentsCoveredByBuffer()
+      throws Exception {
+    DashChunkSource chunkSource = createSidxChunkSource(/* maxSubsegmentsPerLoad= */ 4);
+    ChunkHolder output = new ChunkHolder();
+
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 2_500_000,
+        /* queue= */ ImmutableList.of(),
+        output);
+
+    // The buffered duration of 2.5 seconds covers two subsegments after the first one.
+    MediaChunk mediaChunk = (MediaChunk) output.chunk;
+    assertThat(mediaChunk.dataSpec.uri.toString()).isEqualTo("https://example.com/video.mp4");
+    assertThat(mediaChunk.dataSpec.position)
+        .isEqualTo(SIDX_FIRST_SUBSEGMENT_POSITION + 2 * SIDX_SUBSEGMENT_SIZE_BYTES);
+    assertThat(mediaChunk.dataSpec.length).isEqualTo(3 * SIDX_SUBSEGMENT_SIZE_BYTES);
+    assertThat(mediaChunk.startTimeUs).isEqualTo(2 * C.MICROS_PER_SECOND);
+    assertThat(mediaChunk.endTimeUs).isEqualTo(5 * C.MICROS_PER_SECOND);
+    assertThat(mediaChunk.getNextChunkIndex()).isEqualTo(5);
+  }
+
+  @Test
+  public void getNextChunk_withSidxSubsegments_mergesAtMostMaxSubsegmentsPerLoad()
+      throws Exception {
+    DashChunkSource chunkSource = createSidxChunkSource(/* maxSubsegmentsPerLoad= */ 2);
+    ChunkHolder output = new ChunkHolder();
+
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 2_500_000,
+        /* queue= */ ImmutableList.of(),
+        output);
+
+    MediaChunk mediaChunk = (MediaChunk) output.chunk;
+    assertThat(mediaChunk.dataSpec.position)
+        .isEqualTo(SIDX_FIRST_SUBSEGMENT_POSITION + 2 * SIDX_SUBSEGMENT_SIZE_BYTES);
+    assertThat(mediaChunk.dataSpec.length).isEqualTo(2 * SIDX_SUBSEGMENT_SIZE_BYTES);
+    assertThat(mediaChunk.startTimeUs).isEqualTo(2 * C.MICROS_PER_SECOND);
+    assertThat(mediaChunk.endTimeUs).isEqualTo(4 * C.MICROS_PER_SECOND);
+    assertThat(mediaChunk.getNextChunkIndex()).isEqualTo(4);
+  }
+
+  @Test
+  public void getNextChunk_withCachePrefetcher_prefetchesFollowingSegmentsWithinWindow()
+      throws Exception {
+    DashManifest manifest = parseManifest(SAMPLE_MPD_VOD);
+    File tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    SimpleCache cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    FakeDataSet fakeDataSet = new FakeDataSet().newDefaultData().appendReadData(100).endData();
+    List<String> prefetchedUris = Collections.synchronizedList(new ArrayList<>());
+    ConditionVariable prefetchedCondition = new ConditionVariable();
+    TransferListener transferListener =
+        new TransferListener() {
+          @Override
+          public void onTransferInitializing(
+              DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+          @Override
+          public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            prefetchedUris.add(dataSpec.uri.toString());
+            if (prefetchedUris.size() == 2) {
+              prefetchedCondition.open();
+            }
+          }
+
+          @Override
+          public void onBytesTransferred(
+              DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {}
+
+          @Override
+          public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+        };
+    CachePrefetcher cachePrefetcher =
+        new CachePrefetcher(
+            new CacheDataSource.Factory()
+                .setCache(cache)
+                .setUpstreamDataSourceFactory(
+                    () -> {
+                      FakeDataSource upstreamDataSource = new FakeDataSource(fakeDataSet);
+                      upstreamDataSource.addTransferListener(transferListener);
+                      return upstreamDataSource;
+                    }),
+            /* prefetchWindowUs= */ 10 * C.MICROS_PER_SECOND,
+            /* maxBandwidthFraction= */ 1,
+            /* maxPendingRequestCount= */ 8);
+    DashChunkSource chunkSource =
+        new DefaultDashChunkSource.Factory(() -> new FakeDataSource(fakeDataSet))
+            .setCachePrefetcher(cachePrefetcher)
+            .createDashChunkSource(
+                new LoaderErrorThrower.Dummy(),
+                manifest,
+                /* periodIndex= */ 0,
+                /* adaptationSetIndices= */ new int[] {0},
+                new FixedTrackSelection(
+                    new TrackGroup(new Format.Builder().build()), /* track= */ 0),
+                C.TRACK_TYPE_VIDEO,
+                /* elapsedRealtimeOffsetMs= */ 0,
+                /* enableEventMessageTrack= */ false,
+                /* closedCaptionFormats= */ ImmutableList.of(),
+                /* playerEmsgHandler= */ null,
+                /* transferListener= */ null);
+    ChunkHolder output = new ChunkHolder();
+
+    try {
+      chunkSource.getNextChunk(
+          /* playbackPositionUs= */ 0,
+          /* loadPositionUs= */ 0,
+          /* queue= */ ImmutableList.of(),
+          output);
+      assertThat(prefetchedCondition.block(TIMEOUT_MS)).isTrue();
+    } finally {
+      cachePrefetcher.release();
+      cache.release();
+      Util.recursiveDelete(tempFolder);
+    }
+
+    // The first segment is loaded by the chunk, and the segment starting at the end of the window
+    // isn't prefetched.
+    assertThat(output.chunk.dataSpec.uri.toString())
+        .isEqualTo("https://example.com/video_0_1300000.m4s");
+    assertThat(prefetchedUris)
+        .containsExactly(
+            "https://example.com/video_4000_1300000.m4s",
+            "https://example.com/video_8000_1300000.m4s")
+        .inOrder();
+  }
+
+  /**
+   * Returns a chunk source for a single segment representation with {@link #SIDX_SUBSEGMENT_COUNT}
+   * one second subsegments, whose initialization and index data has already been loaded.
+   */
+  private static DashChunkSource createSidxChunkSource(int maxSubsegmentsPerLoad)
+      throws IOException {
+    byte[] initializationData =
+        Arrays.copyOf(
+            TestUtil.getByteArray(
+                ApplicationProvider.getApplicationContext(), SAMPLE_FRAGMENTED_SEEKABLE_MP4),
+            SIDX_INITIALIZATION_SIZE_BYTES);
+    byte[] sidxData = createSidx();
+    FakeDataSource dataSource =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData("https://example.com/video.mp4")
+                .appendReadData(initializationData)
+                .appendReadData(sidxData)
+                .appendReadData(SIDX_SUBSEGMENT_COUNT * SIDX_SUBSEGMENT_SIZE_BYTES)
+                .endData());
+    String mpd =
+        "<MPD type=\"static\" mediaPresentationDuration=\"PT6S\">"
+            + "<Period><AdaptationSet mimeType=\"video/mp4\" contentType=\"video\">"
+            + "<Representation id=\"0\" codecs=\"avc1.64001f\" bandwidth=\"1000000\">"
+            + "<BaseURL>https://example.com/video.mp4</BaseURL>"
+            + "<SegmentBase indexRange=\""
+            + SIDX_INITIALIZATION_SIZE_BYTES
+            + "-"
+            + (SIDX_FIRST_SUBSEGMENT_POSITION - 1)
+            + "\"><Initialization range=\"0-"
+            + (SIDX_INITIALIZATION_SIZE_BYTES - 1)
+            + "\"/></SegmentBase>"
+            + "</Representation></AdaptationSet></Period></MPD>";
+    DashManifest manifest =
+        new DashManifestParser()
+            .parse(
+                Uri.parse("https://example.com/test.mpd"),
+                new ByteArrayInputStream(Util.getUtf8Bytes(mpd)));
+    DashChunkSource chunkSource =
+        new DefaultDashChunkSource.Factory(() -> dataSource)
+            .setMaxSubsegmentsPerLoad(maxSubsegmentsPerLoad)
+            .createDashChunkSource(
+                new LoaderErrorThrower.Dummy(),
+                manifest,
+                /* periodIndex= */ 0,
+                /* adaptationSetIndices= */ new int[] {0},
+                new FixedTrackSelection(
+                    new TrackGroup(new Format.Builder().build()), /* track= */ 0),
+                C.TRACK_TYPE_VIDEO,
+                /* elapsedRealtimeOffsetMs= */ 0,
+                /* enableEventMessageTrack= */ false,
+                /* closedCaptionFormats= */ ImmutableList.of(),
+                /* playerEmsgHandler= */ null,
+                /* transferListener= */ null);
+    ChunkHolder output = new ChunkHolder();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        output);
+    Chunk initializationChunk = output.chunk;
+    initializationChunk.load();
+    chunkSource.onChunkLoadCompleted(initializationChunk);
+    return chunkSource;
+  }
+
+  /** Returns a version 0 sidx box that references one second subsegments of equal size. */
+  private static byte[] createSidx() {
+    ByteBuffer sidx =
+        ByteBuffer.allocate(SIDX_FIRST_SUBSEGMENT_POSITION - SIDX_INITIALIZATION_SIZE_BYTES);
+    sidx.putInt(sidx.capacity());
+    sidx.put(Util.getUtf8Bytes("sidx"));
+    sidx.putInt(0); // Version and flags.
+    sidx.putInt(1); // Reference ID.
+    sidx.putInt(1000); // Timescale.
+    sidx.putInt(0); // Earliest presentation time.
+    sidx.putInt(0); // First offset.
+    sidx.putShort((short) 0); // Reserved.
+    sidx.putShort((short) SIDX_SUBSEGMENT_COUNT);
+    for (int i = 0; i < SIDX_SUBSEGMENT_COUNT; i++) {
+      sidx.putInt(SIDX_SUBSEGMENT_SIZE_BYTES); // Reference type and referenced size.
+      sidx.putInt(1000); // Subsegment duration.
+      sidx.putInt(0x90000000); // Starts with SAP, SAP type and SAP delta time.
+    }
+    return sidx.array();
+  }
+
+  private static DashManifest parseManifest(String fileName) throws IOException {
+    return new DashManifestParser()
+        .parse(
+            Uri.parse("https://example.com/test.mpd"),
+            TestUtil.getInputStream(ApplicationProvider.getApplicationContext(), fileName));
+  }
+
+  private static MediaChunk createMediaChunk() {
+    Format format = new Format.Builder().build();
+    return new SingleSampleMediaChunk(
+        new FakeDataSource(),
+        new DataSpec(Uri.parse("https://example.com/media")),
+        format,
+        C.SELECTION_REASON_UNKNOWN,
+        /* trackSelectionData= */ null,
+        /* startTimeUs= */ 0,
+        /* endTimeUs= */ C.MICROS_PER_SECOND,
+        /* chunkIndex= */ 0,
+        C.TRACK_TYPE_VIDEO,
+        format);
+  }
+
+  private static DefaultDashChunkSource createChunkSource(
+      DashManifest manifest,
+      int periodIndex,
+      FakeDataSource dataSource,
+      ChunkPrefetchCache chunkPrefetchCache) {
+    return new DefaultDashChunkSource(
+        new LoaderErrorThrower.Dummy(),
+        manifest,
+        periodIndex,
+        /* adaptationSetIndices= */ new int[] {0},
+        new FixedTrackSelection(new TrackGroup(new Format.Builder().build()), /* track= */ 0),
+        C.TRACK_TYPE_VIDEO,
+        dataSource,
+        /* elapsedRealtimeOffsetMs= */ 0,
+        /* maxSegmentsPerLoad= */ 1,
+        /* enableEventMessageTrack= */ false,
+        /* closedCaptionFormats */ ImmutableList.of(),
+        /* playerTrackEmsgHandler= */ null,
+        chunkPrefetchCache,
+        /* maxSubsegmentsPerLoad= */ 1,
+        /* cachePrefetcher= */ null);
+  }
 }
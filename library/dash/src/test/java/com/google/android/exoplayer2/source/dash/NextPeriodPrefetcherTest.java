@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash;
+
+import static com.google.android.exoplayer2.robolectric.RobolectricUtil.runMainLooperUntil;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.chunk.ChunkPrefetchCache;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link NextPeriodPrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class NextPeriodPrefetcherTest {
+
+  @Test
+  public void prefetch_withFailingChunk_skipsItAndLoadsFollowingChunks() throws Exception {
+    FakeDataSource dataSource =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData("https://example.com/init.mp4")
+                .appendReadData(100)
+                .endData()
+                .newData("https://example.com/segment.m4s")
+                .appendReadData(200)
+                .endData());
+    ChunkPrefetchCache chunkPrefetchCache = new ChunkPrefetchCache();
+    DataSpec missingDataSpec = new DataSpec(Uri.parse("https://example.com/missing.mp4"));
+    DataSpec initializationDataSpec = new DataSpec(Uri.parse("https://example.com/init.mp4"));
+    DataSpec segmentDataSpec = new DataSpec(Uri.parse("https://example.com/segment.m4s"));
+    Format format = new Format.Builder().build();
+    NextPeriodPrefetcher nextPeriodPrefetcher =
+        new NextPeriodPrefetcher(/* loaderThreadPool= */ null);
+
+    nextPeriodPrefetcher.prefetch(
+        ImmutableList.of(
+            chunkPrefetchCache.createPrefetchChunk(
+                dataSource, missingDataSpec, C.DATA_TYPE_MEDIA_INITIALIZATION, format),
+            chunkPrefetchCache.createPrefetchChunk(
+                dataSource, initializationDataSpec, C.DATA_TYPE_MEDIA_INITIALIZATION, format)));
+    nextPeriodPrefetcher.prefetch(
+        ImmutableList.of(
+            chunkPrefetchCache.createPrefetchChunk(
+                dataSource, segmentDataSpec, C.DATA_TYPE_MEDIA, format)));
+    runMainLooperUntil(() -> chunkPrefetchCache.getPrefetchCount() == 2);
+    nextPeriodPrefetcher.release();
+
+    assertThat(chunkPrefetchCache.contains(missingDataSpec)).isFalse();
+    assertThat(chunkPrefetchCache.contains(initializationDataSpec)).isTrue();
+    assertThat(chunkPrefetchCache.contains(segmentDataSpec)).isTrue();
+  }
+
+  @Test
+  public void prefetch_withLoadOfSameDataDuringPrefetch_loadReadsPrefetchedData()
+      throws Exception {
+    ConditionVariable prefetchStarted = new ConditionVariable();
+    ConditionVariable prefetchCanFinish = new ConditionVariable();
+    FakeDataSource prefetchDataSource =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData("https://example.com/init.mp4")
+                .appendReadAction(
+                    () -> {
+                      prefetchStarted.open();
+                      prefetchCanFinish.blockUninterruptible();
+                    })
+                .appendReadData(100)
+                .endData());
+    ChunkPrefetchCache chunkPrefetchCache = new ChunkPrefetchCache();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://example.com/init.mp4"));
+    NextPeriodPrefetcher nextPeriodPrefetcher =
+        new NextPeriodPrefetcher(/* loaderThreadPool= */ null);
+    ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+
+    nextPeriodPrefetcher.prefetch(
+        ImmutableList.of(
+            chunkPrefetchCache.createPrefetchChunk(
+                prefetchDataSource,
+                dataSpec,
+                C.DATA_TYPE_MEDIA_INITIALIZATION,
+                new Format.Builder().build())));
+    prefetchStarted.block();
+    // The upstream source holds no data, so the load fails if it doesn't use the prefetched data.
+    DataSource dataSource =
+        chunkPrefetchCache.getDataSourceForLoad(new FakeDataSource(), dataSpec);
+    Future<byte[]> loadedData =
+        loadExecutor.submit(
+            () -> {
+              try {
+                dataSource.open(dataSpec);
+                return Util.readToEnd(dataSource);
+              } finally {
+                dataSource.close();
+              }
+            });
+    prefetchCanFinish.open();
+    byte[] data = loadedData.get(/* timeout= */ 10, TimeUnit.SECONDS);
+    nextPeriodPrefetcher.release();
+    loadExecutor.shutdown();
+
+    assertThat(data).hasLength(100);
+    assertThat(chunkPrefetchCache.getPrefetchCount()).isEqualTo(1);
+    assertThat(chunkPrefetchCache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void prefetch_afterLoadOfSameDataStarted_skipsData() throws Exception {
+    FakeDataSource dataSource =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData("https://example.com/init.mp4")
+                .appendReadData(100)
+                .endData()
+                .newData("https://example.com/segment.m4s")
+                .appendReadData(200)
+                .endData());
+    ChunkPrefetchCache chunkPrefetchCache = new ChunkPrefetchCache();
+    DataSpec initializationDataSpec = new DataSpec(Uri.parse("https://example.com/init.mp4"));
+    DataSpec segmentDataSpec = new DataSpec(Uri.parse("https://example.com/segment.m4s"));
+    Format format = new Format.Builder().build();
+    NextPeriodPrefetcher nextPeriodPrefetcher =
+        new NextPeriodPrefetcher(/* loaderThreadPool= */ null);
+
+    FakeDataSource upstreamDataSource = new FakeDataSource();
+    DataSource loadDataSource =
+        chunkPrefetchCache.getDataSourceForLoad(upstreamDataSource, initializationDataSpec);
+    nextPeriodPrefetcher.prefetch(
+        ImmutableList.of(
+            chunkPrefetchCache.createPrefetchChunk(
+                dataSource, initializationDataSpec, C.DATA_TYPE_MEDIA_INITIALIZATION, format),
+            chunkPrefetchCache.createPrefetchChunk(
+                dataSource, segmentDataSpec, C.DATA_TYPE_MEDIA, format)));
+    runMainLooperUntil(() -> chunkPrefetchCache.getPrefetchCount() == 1);
+    nextPeriodPrefetcher.release();
+
+    assertThat(loadDataSource).isSameInstanceAs(upstreamDataSource);
+    assertThat(chunkPrefetchCache.contains(initializationDataSpec)).isFalse();
+    assertThat(chunkPrefetchCache.contains(segmentDataSpec)).isTrue();
+  }
+}
@@ -77,6 +77,34 @@ public class RangedUriTest {
     assertMerge(rangeA, rangeB, expected, BASE_URI);
   }
 
+  @Test
+  public void mergeWithGap() {
+    RangedUri rangeA = new RangedUri(FULL_URI, 0, 10);
+    RangedUri rangeB = new RangedUri(FULL_URI, 15, 10);
+    RangedUri expected = new RangedUri(FULL_URI, 0, 25);
+    assertThat(rangeA.attemptMerge(rangeB, BASE_URI, /* maxGapBytes= */ 5)).isEqualTo(expected);
+    assertThat(rangeB.attemptMerge(rangeA, BASE_URI, /* maxGapBytes= */ 5)).isEqualTo(expected);
+  }
+
+  @Test
+  public void nonMergeWithGap() {
+    // The gap between A and B is too large, so should not merge
+    RangedUri rangeA = new RangedUri(FULL_URI, 0, 10);
+    RangedUri rangeB = new RangedUri(FULL_URI, 16, 10);
+    assertThat(rangeA.attemptMerge(rangeB, BASE_URI, /* maxGapBytes= */ 5)).isNull();
+    assertThat(rangeB.attemptMerge(rangeA, BASE_URI, /* maxGapBytes= */ 5)).isNull();
+
+    // A is unbounded, so should not merge
+    rangeA = new RangedUri(FULL_URI, 0, C.LENGTH_UNSET);
+    rangeB = new RangedUri(FULL_URI, 15, 10);
+    assertThat(rangeA.attemptMerge(rangeB, BASE_URI, /* maxGapBytes= */ 5)).isNull();
+
+    // A and B have different URIs, so should not merge
+    rangeA = new RangedUri(FULL_URI, 0, 10);
+    rangeB = new RangedUri(BASE_URI + "other.ext", 15, 10);
+    assertThat(rangeA.attemptMerge(rangeB, BASE_URI, /* maxGapBytes= */ 5)).isNull();
+  }
+
   private void assertMerge(RangedUri rangeA, RangedUri rangeB, RangedUri expected, String baseUrl) {
     RangedUri merged = rangeA.attemptMerge(rangeB, baseUrl);
     assertThat(merged).isEqualTo(expected);
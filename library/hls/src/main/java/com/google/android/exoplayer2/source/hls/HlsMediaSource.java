@@ -52,6 +52,7 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
@@ -106,6 +107,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean allowChunklessPreparation;
     @MetadataType private int metadataType;
     private boolean useSessionKeys;
+    @Nullable private LoaderThreadPool loaderThreadPool;
     private List<StreamKey> streamKeys;
     @Nullable private Object tag;
     private long elapsedRealTimeOffsetMs;
@@ -281,6 +283,19 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link LoaderThreadPool} on which the created media sources load segments. The same
+     * pool can be set on the factories of multiple players, so that they share its threads. The
+     * default value is {@code null}, meaning that each loader uses a dedicated thread.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      this.loaderThreadPool = loaderThreadPool;
+      return this;
+    }
+
     @Override
     public Factory setDrmSessionManagerProvider(
         @Nullable DrmSessionManagerProvider drmSessionManagerProvider) {
@@ -399,7 +414,8 @@ public final class HlsMediaSource extends BaseMediaSource
           elapsedRealTimeOffsetMs,
           allowChunklessPreparation,
           metadataType,
-          useSessionKeys);
+          useSessionKeys,
+          loaderThreadPool);
     }
 
     @Override
@@ -417,6 +433,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final boolean allowChunklessPreparation;
   private final @MetadataType int metadataType;
   private final boolean useSessionKeys;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
   private final HlsPlaylistTracker playlistTracker;
   private final long elapsedRealTimeOffsetMs;
   private final MediaItem mediaItem;
@@ -435,7 +452,8 @@ public final class HlsMediaSource extends BaseMediaSource
       long elapsedRealTimeOffsetMs,
       boolean allowChunklessPreparation,
       @MetadataType int metadataType,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      @Nullable LoaderThreadPool loaderThreadPool) {
     this.playbackProperties = checkNotNull(mediaItem.playbackProperties);
     this.mediaItem = mediaItem;
     this.liveConfiguration = mediaItem.liveConfiguration;
@@ -449,6 +467,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.loaderThreadPool = loaderThreadPool;
   }
 
   /**
@@ -498,7 +517,8 @@ public final class HlsMediaSource extends BaseMediaSource
         compositeSequenceableLoaderFactory,
         allowChunklessPreparation,
         metadataType,
-        useSessionKeys);
+        useSessionKeys,
+        loaderThreadPool);
   }
 
   @Override
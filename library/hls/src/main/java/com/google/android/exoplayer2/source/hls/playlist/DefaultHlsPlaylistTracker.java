@@ -39,6 +39,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.ManifestCache;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
@@ -61,12 +62,36 @@ public final class DefaultHlsPlaylistTracker
    */
   public static final double DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT = 3.5;
 
+  /**
+   * Returns a {@link Factory} for {@link DefaultHlsPlaylistTracker} instances that load playlists
+   * through the given {@link ManifestCache}. The same cache can be used by the trackers of multiple
+   * players, so that they share loads of the same playlist.
+   *
+   * <p>Master playlists and media playlists with an end tag use the default time-to-live of the
+   * cache. Other media playlists are served from the cache for at most half their target duration.
+   * Playlist requests that use delivery directives (for example, blocking reloads and delta
+   * updates) are never shared.
+   *
+   * @param manifestCache The {@link ManifestCache}.
+   * @return The {@link Factory}.
+   */
+  public static Factory createFactory(ManifestCache manifestCache) {
+    return (dataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory) ->
+        new DefaultHlsPlaylistTracker(
+            dataSourceFactory,
+            loadErrorHandlingPolicy,
+            playlistParserFactory,
+            DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT,
+            manifestCache);
+  }
+
   private final HlsDataSourceFactory dataSourceFactory;
   private final HlsPlaylistParserFactory playlistParserFactory;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final HashMap<Uri, MediaPlaylistBundle> playlistBundles;
   private final List<PlaylistEventListener> listeners;
   private final double playlistStuckTargetDurationCoefficient;
+  @Nullable private final ManifestCache manifestCache;
 
   @Nullable private EventDispatcher eventDispatcher;
   @Nullable private Loader initialPlaylistLoader;
@@ -112,10 +137,38 @@ public final class DefaultHlsPlaylistTracker
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       HlsPlaylistParserFactory playlistParserFactory,
       double playlistStuckTargetDurationCoefficient) {
+    this(
+        dataSourceFactory,
+        loadErrorHandlingPolicy,
+        playlistParserFactory,
+        playlistStuckTargetDurationCoefficient,
+        /* manifestCache= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory A factory for {@link DataSource} instances.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param playlistParserFactory An {@link HlsPlaylistParserFactory}.
+   * @param playlistStuckTargetDurationCoefficient A coefficient to apply to the target duration of
+   *     media playlists in order to determine that a non-changing playlist is stuck. Once a
+   *     playlist is deemed stuck, a {@link PlaylistStuckException} is thrown via {@link
+   *     #maybeThrowPlaylistRefreshError(Uri)}.
+   * @param manifestCache The {@link ManifestCache} through which playlists are loaded, or {@code
+   *     null} if playlists should always be loaded by the tracker.
+   */
+  public DefaultHlsPlaylistTracker(
+      HlsDataSourceFactory dataSourceFactory,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      HlsPlaylistParserFactory playlistParserFactory,
+      double playlistStuckTargetDurationCoefficient,
+      @Nullable ManifestCache manifestCache) {
     this.dataSourceFactory = dataSourceFactory;
     this.playlistParserFactory = playlistParserFactory;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.playlistStuckTargetDurationCoefficient = playlistStuckTargetDurationCoefficient;
+    this.manifestCache = manifestCache;
     listeners = new ArrayList<>();
     playlistBundles = new HashMap<>();
     initialStartTimeUs = C.TIME_UNSET;
@@ -136,7 +189,9 @@ public final class DefaultHlsPlaylistTracker
             dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
             initialPlaylistUri,
             C.DATA_TYPE_MANIFEST,
-            playlistParserFactory.createPlaylistParser());
+            playlistParserFactory.createPlaylistParser(),
+            manifestCache,
+            DefaultHlsPlaylistTracker::getManifestCacheTtlMs);
     Assertions.checkState(initialPlaylistLoader == null);
     initialPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MasterPlaylist");
     long elapsedRealtime =
@@ -477,6 +532,14 @@ public final class DefaultHlsPlaylistTracker
     return primaryUrlDiscontinuitySequence;
   }
 
+  private static long getManifestCacheTtlMs(HlsPlaylist playlist) {
+    if (!(playlist instanceof HlsMediaPlaylist)) {
+      return C.TIME_UNSET;
+    }
+    HlsMediaPlaylist mediaPlaylist = (HlsMediaPlaylist) playlist;
+    return mediaPlaylist.hasEndTag ? C.TIME_UNSET : C.usToMs(mediaPlaylist.targetDurationUs) / 2;
+  }
+
   private static Segment getFirstOldOverlappingSegment(
       HlsMediaPlaylist oldPlaylist, HlsMediaPlaylist loadedPlaylist) {
     int mediaSequenceOffset = (int) (loadedPlaylist.mediaSequence - oldPlaylist.mediaSequence);
@@ -676,12 +739,16 @@ public final class DefaultHlsPlaylistTracker
     private void loadPlaylistImmediately(Uri playlistRequestUri) {
       ParsingLoadable.Parser<HlsPlaylist> mediaPlaylistParser =
           playlistParserFactory.createPlaylistParser(masterPlaylist, playlistSnapshot);
+      // Requests with delivery directives are parsed relative to the previous snapshot of this
+      // playlist, so cannot be shared.
       ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable =
           new ParsingLoadable<>(
               mediaPlaylistDataSource,
               playlistRequestUri,
               C.DATA_TYPE_MANIFEST,
-              mediaPlaylistParser);
+              mediaPlaylistParser,
+              playlistRequestUri.equals(playlistUrl) ? manifestCache : null,
+              DefaultHlsPlaylistTracker::getManifestCacheTtlMs);
       long elapsedRealtime =
           mediaPlaylistLoader.startLoading(
               mediaPlaylistLoadable,
@@ -57,6 +57,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorI
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.ManifestCache;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
@@ -87,6 +88,7 @@ public final class SsMediaSource extends BaseMediaSource
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private long livePresentationDelayMs;
     @Nullable private ParsingLoadable.Parser<? extends SsManifest> manifestParser;
+    @Nullable private ManifestCache manifestCache;
     private List<StreamKey> streamKeys;
     @Nullable private Object tag;
 
@@ -173,6 +175,22 @@ public final class SsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link ManifestCache} through which manifests are loaded. The same cache can be set
+     * on the factories of multiple players, so that they share loads of the same manifest. The
+     * default value is {@code null}, meaning that manifests are always loaded by the media source.
+     *
+     * <p>Live manifests are served from the cache for at most the manifest refresh period.
+     * Manifests that are filtered using {@link StreamKey stream keys} are never shared.
+     *
+     * @param manifestCache The {@link ManifestCache}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setManifestCache(@Nullable ManifestCache manifestCache) {
+      this.manifestCache = manifestCache;
+      return this;
+    }
+
     /**
      * Sets the factory to create composite {@link SequenceableLoader}s for when this media source
      * loads data from multiple streams (video, audio etc.). The default is an instance of {@link
@@ -298,6 +316,7 @@ public final class SsMediaSource extends BaseMediaSource
           manifest,
           /* manifestDataSourceFactory= */ null,
           /* manifestParser= */ null,
+          /* manifestCache= */ null,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           drmSessionManagerProvider.get(mediaItem),
@@ -342,6 +361,7 @@ public final class SsMediaSource extends BaseMediaSource
           /* manifest= */ null,
           manifestDataSourceFactory,
           manifestParser,
+          streamKeys.isEmpty() ? manifestCache : null,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           drmSessionManagerProvider.get(mediaItem),
@@ -382,6 +402,7 @@ public final class SsMediaSource extends BaseMediaSource
   private final long livePresentationDelayMs;
   private final EventDispatcher manifestEventDispatcher;
   private final ParsingLoadable.Parser<? extends SsManifest> manifestParser;
+  @Nullable private final ManifestCache manifestCache;
   private final ArrayList<SsMediaPeriod> mediaPeriods;
 
   private DataSource manifestDataSource;
@@ -399,6 +420,7 @@ public final class SsMediaSource extends BaseMediaSource
       @Nullable SsManifest manifest,
       @Nullable DataSource.Factory manifestDataSourceFactory,
       @Nullable ParsingLoadable.Parser<? extends SsManifest> manifestParser,
+      @Nullable ManifestCache manifestCache,
       SsChunkSource.Factory chunkSourceFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       DrmSessionManager drmSessionManager,
@@ -414,6 +436,7 @@ public final class SsMediaSource extends BaseMediaSource
             : Util.fixSmoothStreamingIsmManifestUri(playbackProperties.uri);
     this.manifestDataSourceFactory = manifestDataSourceFactory;
     this.manifestParser = manifestParser;
+    this.manifestCache = manifestCache;
     this.chunkSourceFactory = chunkSourceFactory;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
     this.drmSessionManager = drmSessionManager;
@@ -666,8 +689,14 @@ public final class SsMediaSource extends BaseMediaSource
     if (manifestLoader.hasFatalError()) {
       return;
     }
-    ParsingLoadable<SsManifest> loadable = new ParsingLoadable<>(manifestDataSource,
-        manifestUri, C.DATA_TYPE_MANIFEST, manifestParser);
+    ParsingLoadable<SsManifest> loadable =
+        new ParsingLoadable<>(
+            manifestDataSource,
+            manifestUri,
+            C.DATA_TYPE_MANIFEST,
+            manifestParser,
+            manifestCache,
+            SsMediaSource::getManifestCacheTtlMs);
     long elapsedRealtimeMs =
         manifestLoader.startLoading(
             loadable, this, loadErrorHandlingPolicy.getMinimumLoadableRetryCount(loadable.type));
@@ -676,4 +705,8 @@ public final class SsMediaSource extends BaseMediaSource
         loadable.type);
   }
 
+  private static long getManifestCacheTtlMs(SsManifest manifest) {
+    return manifest.isLive ? MINIMUM_MANIFEST_REFRESH_PERIOD_MS : C.TIME_UNSET;
+  }
+
 }
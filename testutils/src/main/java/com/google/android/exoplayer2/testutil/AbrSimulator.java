@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.source.chunk.ChunkHolder;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection.Definition;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates adaptive streaming over a network whose bandwidth follows a {@link BandwidthTrace}, to
+ * compare {@link ExoTrackSelection} implementations deterministically.
+ *
+ * <p>Chunks are requested from a {@link FakeChunkSource} for a {@link FakeAdaptiveDataSet}, as done
+ * by {@link FakeAdaptiveMediaSource}, and loaded one at a time. The simulated time advances by the
+ * time it takes to download each chunk at the bandwidth of the trace, and playback progresses
+ * meanwhile. The {@link BandwidthMeter} is notified of each transfer. A {@link LoadControl}
+ * decides when loading pauses and when playback starts and resumes after rebuffering. The data of
+ * each loaded chunk is held in allocations of the load control's {@link Allocator} until the chunk
+ * is played.
+ */
+public final class AbrSimulator {
+
+  /**
+   * A recorded or synthetic network bandwidth trace. The trace is repeated if a simulation takes
+   * longer than its duration.
+   */
+  public static final class BandwidthTrace {
+
+    private final long[] durationsUs;
+    private final long[] bitrates;
+    private final long totalDurationUs;
+    private final long timeToFirstByteUs;
+
+    /**
+     * Creates a trace from bandwidth samples taken at a fixed interval.
+     *
+     * @param sampleIntervalMs The interval between samples, in milliseconds.
+     * @param bitrates The bandwidth during each interval, in bits per second.
+     * @return The trace.
+     */
+    public static BandwidthTrace fromSamples(long sampleIntervalMs, long... bitrates) {
+      long[] durationsMs = new long[bitrates.length];
+      for (int i = 0; i < bitrates.length; i++) {
+        durationsMs[i] = sampleIntervalMs;
+      }
+      return new BandwidthTrace(durationsMs, bitrates);
+    }
+
+    /**
+     * Creates a trace.
+     *
+     * @param durationsMs The durations of the segments of the trace, in milliseconds.
+     * @param bitrates The bandwidth during each segment of the trace, in bits per second. May be
+     *     zero to simulate network outages, but not for all segments.
+     */
+    public BandwidthTrace(long[] durationsMs, long[] bitrates) {
+      this(durationsMs, bitrates, /* timeToFirstByteMs= */ 0);
+    }
+
+    /**
+     * Creates a trace with a delay before the first byte of each response.
+     *
+     * @param durationsMs The durations of the segments of the trace, in milliseconds.
+     * @param bitrates The bandwidth during each segment of the trace, in bits per second. May be
+     *     zero to simulate network outages, but not for all segments.
+     * @param timeToFirstByteMs The time between the start of each transfer and its first byte, in
+     *     milliseconds, during which no data is transferred. This simulates request latency that
+     *     data sources report as part of the transfer, such as responses delayed by the server.
+     */
+    public BandwidthTrace(long[] durationsMs, long[] bitrates, long timeToFirstByteMs) {
+      Assertions.checkArgument(durationsMs.length == bitrates.length && bitrates.length > 0);
+      Assertions.checkArgument(timeToFirstByteMs >= 0);
+      timeToFirstByteUs = timeToFirstByteMs * 1000;
+      durationsUs = new long[durationsMs.length];
+      this.bitrates = bitrates.clone();
+      long totalDurationUs = 0;
+      boolean hasBandwidth = false;
+      for (int i = 0; i < durationsMs.length; i++) {
+        Assertions.checkArgument(durationsMs[i] > 0 && bitrates[i] >= 0);
+        durationsUs[i] = durationsMs[i] * 1000;
+        totalDurationUs += durationsUs[i];
+        hasBandwidth |= bitrates[i] > 0;
+      }
+      Assertions.checkArgument(hasBandwidth);
+      this.totalDurationUs = totalDurationUs;
+    }
+
+    /** Returns the index of the segment of the trace at the given time. */
+    private int getSegmentIndex(long timeUs) {
+      long segmentStartTimeUs = timeUs - timeUs % totalDurationUs;
+      for (int i = 0; i < durationsUs.length; i++) {
+        segmentStartTimeUs += durationsUs[i];
+        if (timeUs < segmentStartTimeUs) {
+          return i;
+        }
+      }
+      return durationsUs.length - 1;
+    }
+
+    /** Returns the time from the given time to the end of the trace segment it falls in. */
+    private long getTimeToSegmentEndUs(long timeUs) {
+      long offsetUs = timeUs % totalDurationUs;
+      long segmentEndTimeUs = 0;
+      for (long durationUs : durationsUs) {
+        segmentEndTimeUs += durationUs;
+        if (offsetUs < segmentEndTimeUs) {
+          return segmentEndTimeUs - offsetUs;
+        }
+      }
+      return totalDurationUs - offsetUs;
+    }
+  }
+
+  /** The result of a simulation. */
+  public static final class Result {
+
+    /** The duration of the played media, in milliseconds. */
+    public final long playbackDurationMs;
+    /** The time spent buffering before playback started, in milliseconds. */
+    public final long startupDelayMs;
+    /** The time spent rebuffering after playback started, in milliseconds. */
+    public final long rebufferDurationMs;
+    /** The number of times playback stalled after it started. */
+    public final int rebufferCount;
+    /** The average bitrate of the loaded media, weighted by duration, in bits per second. */
+    public final long averageBitrate;
+    /** The number of format changes between consecutively loaded chunks. */
+    public final int switchCount;
+    /** The highest number of bytes allocated for buffered media at any time. */
+    public final long peakAllocatedBytes;
+
+    private Result(
+        long playbackDurationMs,
+        long startupDelayMs,
+        long rebufferDurationMs,
+        int rebufferCount,
+        long averageBitrate,
+        int switchCount,
+        long peakAllocatedBytes) {
+      this.playbackDurationMs = playbackDurationMs;
+      this.startupDelayMs = startupDelayMs;
+      this.rebufferDurationMs = rebufferDurationMs;
+      this.rebufferCount = rebufferCount;
+      this.averageBitrate = averageBitrate;
+      this.switchCount = switchCount;
+      this.peakAllocatedBytes = peakAllocatedBytes;
+    }
+
+    /**
+     * Returns the fraction of the time after playback started that was spent rebuffering, between
+     * 0 and 1.
+     */
+    public float getRebufferRatio() {
+      return (float) rebufferDurationMs / (playbackDurationMs + rebufferDurationMs);
+    }
+
+    @Override
+    public String toString() {
+      return Util.formatInvariant(
+          "rebufferRatio=%.4f, rebuffers=%d, averageBitrate=%d, switches=%d, startupDelayMs=%d,"
+              + " peakAllocatedBytes=%d",
+          getRebufferRatio(),
+          rebufferCount,
+          averageBitrate,
+          switchCount,
+          startupDelayMs,
+          peakAllocatedBytes);
+    }
+  }
+
+  /** The bandwidth estimate of the bandwidth meter before any transfer. */
+  public static final long DEFAULT_INITIAL_BITRATE_ESTIMATE = 1_000_000;
+
+  /** The maximum number of bytes reported to the bandwidth meter at once. */
+  private static final int READ_LENGTH = 16 * 1024;
+  /** The time advanced at once while the load control doesn't continue loading. */
+  private static final long LOADING_PAUSE_STEP_US = 100_000;
+
+  private final TrackGroup trackGroup;
+  private final FakeAdaptiveDataSet dataSet;
+  private final long mediaDurationUs;
+  private final int maxBufferMs;
+  private final int bufferForPlaybackMs;
+  private final int bufferForPlaybackAfterRebufferMs;
+
+  /**
+   * Creates a simulator with the buffer thresholds of {@link DefaultLoadControl}.
+   *
+   * @param trackGroup The {@link TrackGroup} of the adaptive tracks.
+   * @param mediaDurationUs The duration of the media, in microseconds.
+   * @param dataSetFactory The {@link FakeAdaptiveDataSet.Factory} creating the chunks of the
+   *     tracks. The same chunks are used for all simulations.
+   */
+  public AbrSimulator(
+      TrackGroup trackGroup, long mediaDurationUs, FakeAdaptiveDataSet.Factory dataSetFactory) {
+    this(
+        trackGroup,
+        mediaDurationUs,
+        dataSetFactory,
+        DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS);
+  }
+
+  /**
+   * Creates a simulator.
+   *
+   * @param trackGroup The {@link TrackGroup} of the adaptive tracks.
+   * @param mediaDurationUs The duration of the media, in microseconds.
+   * @param dataSetFactory The {@link FakeAdaptiveDataSet.Factory} creating the chunks of the
+   *     tracks. The same chunks are used for all simulations.
+   * @param maxBufferMs The buffered duration at which loading pauses, in milliseconds.
+   * @param bufferForPlaybackMs The buffered duration required to start playback, in milliseconds.
+   * @param bufferForPlaybackAfterRebufferMs The buffered duration required to resume playback
+   *     after rebuffering, in milliseconds.
+   * @see #simulate(ExoTrackSelection.Factory, BandwidthTrace, BandwidthMeter, FakeClock)
+   */
+  public AbrSimulator(
+      TrackGroup trackGroup,
+      long mediaDurationUs,
+      FakeAdaptiveDataSet.Factory dataSetFactory,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs) {
+    this.trackGroup = trackGroup;
+    this.mediaDurationUs = mediaDurationUs;
+    this.maxBufferMs = maxBufferMs;
+    this.bufferForPlaybackMs = bufferForPlaybackMs;
+    this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+    dataSet = dataSetFactory.createDataSet(trackGroup, mediaDurationUs);
+  }
+
+  /**
+   * Simulates playback with a {@link DefaultBandwidthMeter}.
+   *
+   * @param trackSelectionFactory The {@link ExoTrackSelection.Factory} creating the selection of
+   *     all tracks in the group.
+   * @param trace The {@link BandwidthTrace} of the network.
+   * @return The {@link Result}.
+   */
+  public Result simulate(ExoTrackSelection.Factory trackSelectionFactory, BandwidthTrace trace) {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setInitialBitrateEstimate(DEFAULT_INITIAL_BITRATE_ESTIMATE)
+            .setResetOnNetworkTypeChange(false)
+            .setClock(clock)
+            .build();
+    return simulate(trackSelectionFactory, trace, bandwidthMeter, clock);
+  }
+
+  /**
+   * Simulates playback with a {@link DefaultLoadControl} using the buffer thresholds of the
+   * simulator.
+   *
+   * @param trackSelectionFactory The {@link ExoTrackSelection.Factory} creating the selection of
+   *     all tracks in the group.
+   * @param trace The {@link BandwidthTrace} of the network.
+   * @param bandwidthMeter The {@link BandwidthMeter}, which must use {@code clock} and must not
+   *     have been used for other simulations.
+   * @param clock The {@link FakeClock} advanced by the simulation. Must be at time zero.
+   * @return The {@link Result}.
+   */
+  public Result simulate(
+      ExoTrackSelection.Factory trackSelectionFactory,
+      BandwidthTrace trace,
+      BandwidthMeter bandwidthMeter,
+      FakeClock clock) {
+    LoadControl loadControl =
+        new DefaultLoadControl.Builder()
+            .setBufferDurationsMs(
+                /* minBufferMs= */ maxBufferMs,
+                maxBufferMs,
+                bufferForPlaybackMs,
+                bufferForPlaybackAfterRebufferMs)
+            .build();
+    return simulate(trackSelectionFactory, trace, bandwidthMeter, loadControl, clock);
+  }
+
+  /**
+   * Simulates playback.
+   *
+   * @param trackSelectionFactory The {@link ExoTrackSelection.Factory} creating the selection of
+   *     all tracks in the group.
+   * @param trace The {@link BandwidthTrace} of the network.
+   * @param bandwidthMeter The {@link BandwidthMeter}, which must use {@code clock} and must not
+   *     have been used for other simulations.
+   * @param loadControl The {@link LoadControl}, which must not have been used for other
+   *     simulations. The buffer thresholds of the simulator are ignored.
+   * @param clock The {@link FakeClock} advanced by the simulation. Must be at time zero.
+   * @return The {@link Result}.
+   */
+  public Result simulate(
+      ExoTrackSelection.Factory trackSelectionFactory,
+      BandwidthTrace trace,
+      BandwidthMeter bandwidthMeter,
+      LoadControl loadControl,
+      FakeClock clock) {
+    int[] tracks = new int[trackGroup.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    ExoTrackSelection trackSelection =
+        Assertions.checkNotNull(
+            trackSelectionFactory.createTrackSelections(
+                new Definition[] {new Definition(trackGroup, tracks)},
+                bandwidthMeter,
+                new MediaPeriodId(/* periodUid= */ new Object()),
+                new FakeTimeline())[0]);
+    return new Simulation(trackSelection, trace, bandwidthMeter, loadControl, clock).run();
+  }
+
+  private final class Simulation {
+
+    private final ExoTrackSelection trackSelection;
+    private final BandwidthTrace trace;
+    private final TransferListener transferListener;
+    private final LoadControl loadControl;
+    private final Allocator allocator;
+    private final FakeClock clock;
+    private final DataSource dataSource;
+    private final FakeChunkSource chunkSource;
+    private final List<MediaChunk> queue;
+    private final List<Allocation[]> queueAllocations;
+
+    private long timeUs;
+    private long playbackPositionUs;
+    private long loadPositionUs;
+    private boolean isPlaying;
+    private boolean hasStarted;
+    private long startupDelayUs;
+    private long rebufferDurationUs;
+    private int rebufferCount;
+    private long peakAllocatedBytes;
+
+    public Simulation(
+        ExoTrackSelection trackSelection,
+        BandwidthTrace trace,
+        BandwidthMeter bandwidthMeter,
+        LoadControl loadControl,
+        FakeClock clock) {
+      Assertions.checkArgument(clock.elapsedRealtime() == 0);
+      this.trackSelection = trackSelection;
+      this.trace = trace;
+      this.loadControl = loadControl;
+      this.clock = clock;
+      transferListener = Assertions.checkNotNull(bandwidthMeter.getTransferListener());
+      allocator = loadControl.getAllocator();
+      dataSource = new FakeDataSource(dataSet);
+      chunkSource = new FakeChunkSource(trackSelection, dataSource, dataSet);
+      queue = new ArrayList<>();
+      queueAllocations = new ArrayList<>();
+    }
+
+    public Result run() {
+      trackSelection.enable();
+      loadControl.onPrepared();
+      loadControl.onTracksSelected(
+          new Renderer[] {
+            new FakeRenderer(MimeTypes.getTrackType(trackGroup.getFormat(0).sampleMimeType))
+          },
+          new TrackGroupArray(trackGroup),
+          new ExoTrackSelection[] {trackSelection});
+      ChunkHolder chunkHolder = new ChunkHolder();
+      @Nullable Format previousFormat = null;
+      long bitrateDurationProduct = 0;
+      int switchCount = 0;
+      while (true) {
+        discardPlayedChunks();
+        while (!loadControl.shouldContinueLoading(
+            playbackPositionUs, loadPositionUs - playbackPositionUs, /* playbackSpeed= */ 1f)) {
+          maybeStartPlayback(/* isEndOfStream= */ false);
+          // The simulation would never progress without playback.
+          Assertions.checkState(isPlaying);
+          advanceTime(LOADING_PAUSE_STEP_US);
+          discardPlayedChunks();
+        }
+        chunkHolder.clear();
+        chunkSource.getNextChunk(playbackPositionUs, loadPositionUs, queue, chunkHolder);
+        if (chunkHolder.endOfStream) {
+          break;
+        }
+        MediaChunk chunk = (MediaChunk) Assertions.checkNotNull(chunkHolder.chunk);
+        load(chunk.dataSpec);
+        queue.add(chunk);
+        queueAllocations.add(allocate(chunk.dataSpec.length));
+        loadPositionUs = chunk.endTimeUs;
+        long chunkDurationUs = chunk.endTimeUs - chunk.startTimeUs;
+        bitrateDurationProduct += chunk.trackFormat.bitrate * chunkDurationUs;
+        if (previousFormat != null && !chunk.trackFormat.equals(previousFormat)) {
+          switchCount++;
+        }
+        previousFormat = chunk.trackFormat;
+        maybeStartPlayback(/* isEndOfStream= */ loadPositionUs >= mediaDurationUs);
+      }
+      maybeStartPlayback(/* isEndOfStream= */ true);
+      // Play out the remaining buffer.
+      advanceTime(loadPositionUs - playbackPositionUs);
+      discardPlayedChunks();
+      loadControl.onReleased();
+      trackSelection.disable();
+      return new Result(
+          C.usToMs(playbackPositionUs),
+          C.usToMs(startupDelayUs),
+          C.usToMs(rebufferDurationUs),
+          rebufferCount,
+          loadPositionUs == 0 ? 0 : bitrateDurationProduct / loadPositionUs,
+          switchCount,
+          peakAllocatedBytes);
+    }
+
+    /** Allocates the memory holding the given number of bytes of loaded media. */
+    private Allocation[] allocate(long length) {
+      Allocation[] allocations =
+          new Allocation[(int) Util.ceilDivide(length, allocator.getIndividualAllocationLength())];
+      for (int i = 0; i < allocations.length; i++) {
+        allocations[i] = allocator.allocate();
+      }
+      peakAllocatedBytes = max(peakAllocatedBytes, allocator.getTotalBytesAllocated());
+      return allocations;
+    }
+
+    /** Removes the played chunks from the queue and releases their memory. */
+    private void discardPlayedChunks() {
+      while (!queue.isEmpty() && queue.get(0).endTimeUs <= playbackPositionUs) {
+        queue.remove(0);
+        allocator.release(queueAllocations.remove(0));
+      }
+    }
+
+    /** Advances the time while transferring the data of the given {@link DataSpec}. */
+    private void load(DataSpec dataSpec) {
+      transferListener.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+      transferListener.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      advanceTime(trace.timeToFirstByteUs);
+      long remainingBytes = dataSpec.length;
+      while (remainingBytes > 0) {
+        long bitrate = trace.bitrates[trace.getSegmentIndex(timeUs)];
+        long timeToSegmentEndUs = trace.getTimeToSegmentEndUs(timeUs);
+        long segmentBytes = bitrate * timeToSegmentEndUs / (8 * 1_000_000);
+        long readBytes = min(remainingBytes, READ_LENGTH);
+        if (segmentBytes >= readBytes) {
+          advanceTime(Util.ceilDivide(readBytes * 8 * 1_000_000, bitrate));
+          transferListener.onBytesTransferred(
+              dataSource, dataSpec, /* isNetwork= */ true, (int) readBytes);
+          remainingBytes -= readBytes;
+        } else {
+          advanceTime(timeToSegmentEndUs);
+          if (segmentBytes > 0) {
+            transferListener.onBytesTransferred(
+                dataSource, dataSpec, /* isNetwork= */ true, (int) segmentBytes);
+            remainingBytes -= segmentBytes;
+          }
+        }
+      }
+      transferListener.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+    }
+
+    /** Advances the time, playing the buffered media if playback has started. */
+    private void advanceTime(long durationUs) {
+      if (isPlaying) {
+        long playedDurationUs = min(durationUs, loadPositionUs - playbackPositionUs);
+        playbackPositionUs += playedDurationUs;
+        if (playedDurationUs < durationUs) {
+          isPlaying = false;
+          rebufferCount++;
+          rebufferDurationUs += durationUs - playedDurationUs;
+          trackSelection.onRebuffer();
+        }
+      } else if (hasStarted) {
+        rebufferDurationUs += durationUs;
+      } else {
+        startupDelayUs += durationUs;
+      }
+      timeUs += durationUs;
+      clock.advanceTime(timeUs / 1000 - clock.elapsedRealtime());
+    }
+
+    private void maybeStartPlayback(boolean isEndOfStream) {
+      if (!isPlaying
+          && (isEndOfStream
+              || loadControl.shouldStartPlayback(
+                  loadPositionUs - playbackPositionUs,
+                  /* playbackSpeed= */ 1f,
+                  /* rebuffering= */ hasStarted,
+                  /* targetLiveOffsetUs= */ C.TIME_UNSET))) {
+        isPlaying = true;
+        hasStarted = true;
+      }
+    }
+  }
+}
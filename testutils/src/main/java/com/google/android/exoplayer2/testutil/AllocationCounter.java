@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import androidx.annotation.Nullable;
+import java.lang.reflect.Method;
+
+/**
+ * Counts the bytes allocated by the current thread, for allocation benchmarks in JVM tests.
+ *
+ * <p>Counting relies on the {@code com.sun.management.ThreadMXBean} extension of the JVM, which is
+ * accessed reflectively because it isn't available on Android. Tests should skip their allocation
+ * assertions if counting is not {@link #isSupported() supported}.
+ */
+public final class AllocationCounter {
+
+  @Nullable private static final Object threadMxBean;
+  @Nullable private static final Method getThreadAllocatedBytesMethod;
+
+  static {
+    @Nullable Object bean = null;
+    @Nullable Method method = null;
+    try {
+      bean =
+          Class.forName("java.lang.management.ManagementFactory")
+              .getMethod("getThreadMXBean")
+              .invoke(/* obj= */ null);
+      Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+      if (beanClass.isInstance(bean)
+          && (boolean) beanClass.getMethod("isThreadAllocatedMemorySupported").invoke(bean)) {
+        beanClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(bean, true);
+        method = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+      }
+    } catch (Exception e) {
+      // Allocation counting is not supported.
+    }
+    threadMxBean = bean;
+    getThreadAllocatedBytesMethod = method;
+  }
+
+  private AllocationCounter() {}
+
+  /** Returns whether allocations can be counted. */
+  public static boolean isSupported() {
+    return getThreadAllocatedBytesMethod != null;
+  }
+
+  /**
+   * Returns the total number of bytes allocated by the current thread so far. The difference
+   * between two calls is the number of bytes allocated in between, plus a small constant overhead.
+   *
+   * @throws IllegalStateException If allocation counting is not {@link #isSupported() supported}.
+   */
+  public static long getAllocatedBytes() {
+    if (getThreadAllocatedBytesMethod == null) {
+      throw new IllegalStateException("Allocation counting is not supported");
+    }
+    try {
+      return (long)
+          getThreadAllocatedBytesMethod.invoke(threadMxBean, Thread.currentThread().getId());
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
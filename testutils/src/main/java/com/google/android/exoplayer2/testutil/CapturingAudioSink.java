@@ -51,6 +51,12 @@ public final class CapturingAudioSink extends ForwardingAudioSink implements Dum
     super.handleDiscontinuity();
   }
 
+  @Override
+  public void handleStreamTransition() {
+    interceptedData.add(new DumpableDiscontinuity());
+    super.handleStreamTransition();
+  }
+
   @Override
   @SuppressWarnings("ReferenceEquality")
   public boolean handleBuffer(
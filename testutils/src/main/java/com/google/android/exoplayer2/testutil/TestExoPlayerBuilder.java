@@ -22,6 +22,7 @@ import android.os.Looper;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.DefaultLoadControl;
 import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.PlaybackThreadPool;
 import com.google.android.exoplayer2.Renderer;
 import com.google.android.exoplayer2.RenderersFactory;
 import com.google.android.exoplayer2.SimpleExoPlayer;
@@ -44,6 +45,8 @@ public class TestExoPlayerBuilder {
   @Nullable private Renderer[] renderers;
   @Nullable private RenderersFactory renderersFactory;
   private boolean useLazyPreparation;
+  private boolean dynamicSchedulingEnabled;
+  @Nullable private PlaybackThreadPool playbackThreadPool;
   private @MonotonicNonNull Looper looper;
 
   public TestExoPlayerBuilder(Context context) {
@@ -74,6 +77,31 @@ public class TestExoPlayerBuilder {
     return useLazyPreparation;
   }
 
+  /**
+   * Sets whether the player's playback loop is only run when renderers need to make progress.
+   *
+   * @param dynamicSchedulingEnabled Whether to enable dynamic scheduling.
+   * @return This builder.
+   */
+  public TestExoPlayerBuilder experimentalSetDynamicSchedulingEnabled(
+      boolean dynamicSchedulingEnabled) {
+    this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
+    return this;
+  }
+
+  /**
+   * Sets the {@link PlaybackThreadPool} providing the thread on which the player runs its playback
+   * loop. The default value is {@code null}, meaning that the player uses a dedicated thread.
+   *
+   * @param playbackThreadPool The {@link PlaybackThreadPool}, or {@code null}.
+   * @return This builder.
+   */
+  public TestExoPlayerBuilder experimentalSetPlaybackThreadPool(
+      @Nullable PlaybackThreadPool playbackThreadPool) {
+    this.playbackThreadPool = playbackThreadPool;
+    return this;
+  }
+
   /**
    * Sets a {@link DefaultTrackSelector}. The default value is a {@link DefaultTrackSelector} in its
    * initial configuration.
@@ -246,6 +274,8 @@ public class TestExoPlayerBuilder {
         .setAnalyticsCollector(new AnalyticsCollector(clock))
         .setClock(clock)
         .setUseLazyPreparation(useLazyPreparation)
+        .experimentalSetDynamicSchedulingEnabled(dynamicSchedulingEnabled)
+        .experimentalSetPlaybackThreadPool(playbackThreadPool)
         .setLooper(looper)
         .build();
   }